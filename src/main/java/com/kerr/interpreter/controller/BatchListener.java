@@ -0,0 +1,21 @@
+package com.kerr.interpreter.controller;
+
+/**
+ * Interface for listeners that receive the turns, moves and shots of a script in one batch once
+ * the script finishes instead of as each one is made. The listener's turn, move and shoot methods
+ * are not called while a script is executed in batched mode.
+ *
+ * @author allankerr
+ *
+ */
+public interface BatchListener extends ScriptListener {
+
+  /**
+   * Informs the listener that the script finished executing, successfully or not, with the
+   * commands it made. This is called instead of scriptFinished() in batched mode and after
+   * scriptInterrupted if the script was interrupted.
+   *
+   * @param commands The turns, moves and shots made by the script in the order they were made.
+   */
+  public void scriptFinished(CommandBuffer commands);
+}
@@ -0,0 +1,59 @@
+package com.kerr.interpreter.controller;
+
+import com.kerr.interpreter.model.RobotType;
+import com.kerr.interpreter.model.Value;
+
+/**
+ * Records the turns, moves and shots of a script in a command buffer while sending everything else
+ * straight to the listener the script is executed for.
+ *
+ * @author allankerr
+ *
+ */
+class BufferingListener implements ScriptListener {
+
+  private final ScriptListener listener;
+
+  private final CommandBuffer commands;
+
+  BufferingListener(ScriptListener listener, CommandBuffer commands) {
+    this.listener = listener;
+    this.commands = commands;
+  }
+
+  public void turn(int direction) {
+    commands.turn(direction);
+  }
+
+  public void move() {
+    commands.move();
+  }
+
+  public void shoot(int direction, int distance) {
+    commands.shoot(direction, distance);
+  }
+
+  public int scan() {
+    return listener.scan();
+  }
+
+  public IdentifyResponse identify(int index) {
+    return listener.identify(index);
+  }
+
+  public CheckResponse check(int direction) {
+    return listener.check(direction);
+  }
+
+  public boolean sendMessage(RobotType type, Value<?> value) {
+    return listener.sendMessage(type, value);
+  }
+
+  public void scriptInterrupted(Exception exception) {
+    listener.scriptInterrupted(exception);
+  }
+
+  public void scriptFinished() {
+    listener.scriptFinished();
+  }
+}
@@ -0,0 +1,127 @@
+package com.kerr.interpreter.controller;
+
+import java.util.Arrays;
+
+/**
+ * The turns, moves and shots made by a script during a single execution in the order they were
+ * made. Commands are stored as an opcode followed by two integer arguments so recording one never
+ * allocates, and the buffer is handed to the listener once the script finishes so the board can be
+ * updated in a single batch.
+ *
+ * @author allankerr
+ *
+ */
+public final class CommandBuffer {
+
+  /**
+   * Turns the robot. The first argument is the direction relative to the current direction.
+   */
+  public static final int TURN = 0;
+
+  /**
+   * Moves the robot. The command has no arguments.
+   */
+  public static final int MOVE = 1;
+
+  /**
+   * Shoots at a tile. The arguments are the direction and the distance of the tile.
+   */
+  public static final int SHOOT = 2;
+
+  /**
+   * The number of ints used to store each command.
+   */
+  private static final int STRIDE = 3;
+
+  private int[] commands = new int[STRIDE * 8];
+
+  private int size;
+
+  void turn(int direction) {
+    append(TURN, direction, 0);
+  }
+
+  void move() {
+    append(MOVE, 0, 0);
+  }
+
+  void shoot(int direction, int distance) {
+    append(SHOOT, direction, distance);
+  }
+
+  private void append(int opcode, int first, int second) {
+    int offset = size * STRIDE;
+    if (offset == commands.length) {
+      commands = Arrays.copyOf(commands, commands.length * 2);
+    }
+    commands[offset] = opcode;
+    commands[offset + 1] = first;
+    commands[offset + 2] = second;
+    size++;
+  }
+
+  /**
+   * Gets the number of commands in the buffer.
+   *
+   * @return The number of commands.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Gets the opcode of a command.
+   *
+   * @param index The index of the command in the order it was made.
+   * @return The opcode of the command.
+   * @throws IndexOutOfBoundsException Thrown if the index is outside of the buffer.
+   */
+  public int getOpcode(int index) {
+    return commands[offset(index)];
+  }
+
+  /**
+   * Gets an argument of a command. Arguments a command doesn't have are zero.
+   *
+   * @param index The index of the command in the order it was made.
+   * @param argument The index of the argument, which is either zero or one.
+   * @return The value of the argument.
+   * @throws IndexOutOfBoundsException Thrown if either index is out of range.
+   */
+  public int getArgument(int index, int argument) {
+    if (argument < 0 || argument >= STRIDE - 1) {
+      throw new IndexOutOfBoundsException("Commands have two arguments.");
+    }
+    return commands[offset(index) + 1 + argument];
+  }
+
+  private int offset(int index) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException(
+          "The command " + index + " is outside of a buffer of size " + size + ".");
+    }
+    return index * STRIDE;
+  }
+
+  /**
+   * Sends every command to a listener in the order the commands were made as if the listener had
+   * been called when they were made.
+   *
+   * @param listener The listener to send the commands to.
+   */
+  public void replay(ScriptListener listener) {
+    for (int offset = 0; offset < size * STRIDE; offset += STRIDE) {
+      switch (commands[offset]) {
+        case TURN:
+          listener.turn(commands[offset + 1]);
+          break;
+        case MOVE:
+          listener.move();
+          break;
+        default:
+          listener.shoot(commands[offset + 1], commands[offset + 2]);
+          break;
+      }
+    }
+  }
+}
@@ -0,0 +1,21 @@
+package com.kerr.interpreter.controller;
+
+/**
+ * How the script controller sends the turns, moves and shots of a script to its listener.
+ *
+ * @author allankerr
+ *
+ */
+public enum CommandMode {
+
+  /**
+   * Calls the listener as each turn, move and shot is made.
+   */
+  IMMEDIATE,
+
+  /**
+   * Records the turns, moves and shots in a command buffer that is handed to the listener once the
+   * script finishes. The listener must be a batch listener.
+   */
+  BATCHED
+}
@@ -0,0 +1,131 @@
+package com.kerr.interpreter.controller;
+
+import com.kerr.interpreter.model.ScriptData;
+import com.kerr.interpreter.vm.Bytecode;
+import com.kerr.interpreter.vm.BytecodeInterpreter;
+import com.kerr.interpreter.vm.CompiledScript;
+import com.kerr.interpreter.vm.Continuation;
+
+/**
+ * The engines available to the script controller for executing built scripts. Every engine
+ * produces the same output for the same script so they can be swapped to compare their
+ * performance.
+ *
+ * @author allankerr
+ *
+ */
+public enum ExecutionEngine {
+
+  /**
+   * Executes scripts by recursively executing the word-tree produced during script building.
+   */
+  TREE_WALKER {
+    @Override
+    public long run(ScriptData data, ScriptListener listener, ScriptDataSource dataSource) {
+      data.clearLoops();
+      data.clearWordCount();
+      data.getOptimizedPlayWord().execute(data, listener, dataSource);
+      return data.getWordCount();
+    }
+
+    @Override
+    long run(ScriptData data, ScriptListener listener, ScriptDataSource dataSource,
+        Exception[] failure) {
+      try {
+        return run(data, listener, dataSource);
+      } catch (Exception ex) {
+        // The script counts the words executed before the exception
+        failure[0] = ex;
+        return data.getWordCount();
+      }
+    }
+  },
+
+  /**
+   * Executes scripts by compiling the word-tree into flat bytecode the first time the script is
+   * executed and running it with a single dispatch loop.
+   */
+  BYTECODE {
+    @Override
+    public long run(ScriptData data, ScriptListener listener, ScriptDataSource dataSource) {
+      Bytecode bytecode = data.getBytecode();
+      data.clearLoops();
+      return new BytecodeInterpreter().execute(bytecode, data, listener, dataSource);
+    }
+
+    @Override
+    long run(ScriptData data, ScriptListener listener, ScriptDataSource dataSource,
+        Exception[] failure) {
+      BytecodeInterpreter interpreter = new BytecodeInterpreter();
+      Continuation continuation = interpreter.start(data.getBytecode(), data);
+      try {
+        interpreter.resume(continuation, listener, dataSource, Long.MAX_VALUE);
+      } catch (Exception ex) {
+        // The continuation counts the instructions executed before the exception
+        failure[0] = ex;
+      }
+      return continuation.getInstructionsExecuted();
+    }
+  },
+
+  /**
+   * Executes scripts by compiling the user-defined words into a hidden JVM class the first time the
+   * script is executed so the JIT compiler can optimize the script like regular Java code. Scripts
+   * too large to compile are executed by the bytecode engine instead.
+   */
+  COMPILED {
+    @Override
+    public long run(ScriptData data, ScriptListener listener, ScriptDataSource dataSource) {
+      CompiledScript script = data.getCompiledScript();
+      if (script == null) {
+        return BYTECODE.run(data, listener, dataSource);
+      }
+      data.clearLoops();
+      script.run(data, listener, dataSource);
+      return -1;
+    }
+
+    @Override
+    long run(ScriptData data, ScriptListener listener, ScriptDataSource dataSource,
+        Exception[] failure) {
+      if (data.getCompiledScript() == null) {
+        return BYTECODE.run(data, listener, dataSource, failure);
+      }
+      return super.run(data, listener, dataSource, failure);
+    }
+  };
+
+  /**
+   * Executes a built script on the calling thread starting from its play word.
+   *
+   * @param data The pre-built script to be executed.
+   * @param listener The listener for which script execution output should be sent to.
+   * @param dataSource The data provider for the robot the script is controlling.
+   * @return The number of instructions executed or -1 if the engine doesn't count instructions.
+   *         The tree-walker counts the words it executes and the bytecode engine its instructions.
+   *         The compiled engine doesn't count them since it has no instructions to count without
+   *         slowing every script down.
+   */
+  public abstract long run(ScriptData data, ScriptListener listener, ScriptDataSource dataSource);
+
+  /**
+   * Executes a built script in the same way as run but catches the exception that interrupts it so
+   * the instructions executed before the script was interrupted are still counted.
+   *
+   * @param data The pre-built script to be executed.
+   * @param listener The listener for which script execution output should be sent to.
+   * @param dataSource The data provider for the robot the script is controlling.
+   * @param failure Receives the exception that interrupted the script as its first element. It is
+   *        left unchanged if the script finished.
+   * @return The number of instructions executed or -1 if the engine doesn't count instructions.
+   */
+  long run(ScriptData data, ScriptListener listener, ScriptDataSource dataSource,
+      Exception[] failure) {
+    try {
+      return run(data, listener, dataSource);
+    } catch (Exception ex) {
+      failure[0] = ex;
+      return -1;
+    }
+  }
+}
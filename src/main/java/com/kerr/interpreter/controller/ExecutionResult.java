@@ -0,0 +1,119 @@
+package com.kerr.interpreter.controller;
+
+/**
+ * The result of executing a script asynchronously through the script controller. The result is
+ * given once the listener has been told the script finished so every effect of the script has
+ * already been sent to the listener.
+ *
+ * @author allankerr
+ *
+ */
+public final class ExecutionResult {
+
+  /**
+   * How the execution of a script ended.
+   */
+  public enum Outcome {
+
+    /**
+     * The script ran until its play word returned.
+     */
+    FINISHED,
+
+    /**
+     * The script was stopped by an error or was never run because the executor refused it.
+     */
+    INTERRUPTED
+  }
+
+  private final Outcome outcome;
+
+  private final Exception exception;
+
+  private final long instructions;
+
+  private final long wallNanos;
+
+  private final long cpuNanos;
+
+  private final int stackHighWaterMark;
+
+  /**
+   * Construct the result of an execution.
+   *
+   * @param exception The exception that interrupted the script or null if it finished.
+   * @param instructions The number of instructions executed or -1 if they weren't counted.
+   * @param wallNanos The elapsed time the script ran for.
+   * @param cpuNanos The processor time the script ran for or -1 if it wasn't measured.
+   * @param stackHighWaterMark The script's stack high-water mark.
+   */
+  ExecutionResult(Exception exception, long instructions, long wallNanos, long cpuNanos,
+      int stackHighWaterMark) {
+    this.outcome = exception == null ? Outcome.FINISHED : Outcome.INTERRUPTED;
+    this.exception = exception;
+    this.instructions = instructions;
+    this.wallNanos = wallNanos;
+    this.cpuNanos = cpuNanos;
+    this.stackHighWaterMark = stackHighWaterMark;
+  }
+
+  public Outcome getOutcome() {
+    return outcome;
+  }
+
+  /**
+   * Gets the exception that interrupted the script.
+   *
+   * @return The exception or null if the script finished.
+   */
+  public Exception getException() {
+    return exception;
+  }
+
+  /**
+   * Gets the number of instructions the script executed, including those executed before it was
+   * interrupted. The tree-walker counts each word it executes as an instruction, and the compiled
+   * engine doesn't count instructions.
+   *
+   * @return The number of instructions executed or -1 if they weren't counted.
+   */
+  public long getInstructionsExecuted() {
+    return instructions;
+  }
+
+  /**
+   * Gets the elapsed time the script ran for, including time spent waiting on the listener and
+   * data source.
+   *
+   * @return The wall-clock time in nanoseconds.
+   */
+  public long getWallNanos() {
+    return wallNanos;
+  }
+
+  /**
+   * Gets the processor time used by the thread that ran the script while it ran.
+   *
+   * @return The processor time in nanoseconds or -1 if the platform doesn't measure it.
+   */
+  public long getCpuNanos() {
+    return cpuNanos;
+  }
+
+  /**
+   * Gets the largest number of values that have been on the script's stack at once. The stack
+   * persists between turns so this covers every execution of the script so far.
+   *
+   * @return The stack's high-water mark.
+   */
+  public int getStackHighWaterMark() {
+    return stackHighWaterMark;
+  }
+
+  @Override
+  public String toString() {
+    return outcome + (exception == null ? "" : " (" + exception + ")") + ", " + instructions
+        + " instructions, " + wallNanos + " ns wall, " + cpuNanos + " ns cpu, stack "
+        + stackHighWaterMark;
+  }
+}
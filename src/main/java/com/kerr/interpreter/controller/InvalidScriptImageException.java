@@ -0,0 +1,22 @@
+package com.kerr.interpreter.controller;
+
+import java.io.IOException;
+
+/**
+ * An exception that is thrown when a compiled script image is malformed, was written by an
+ * unsupported version, fails its checksum, or describes a script that would not pass verification
+ * had it been built from source.
+ * @author allankerr
+ *
+ */
+@SuppressWarnings("serial")
+public class InvalidScriptImageException extends IOException {
+
+  public InvalidScriptImageException(String message) {
+    super(message);
+  }
+
+  public InvalidScriptImageException(String message, Throwable cause) {
+    super(message, cause);
+  }
+}
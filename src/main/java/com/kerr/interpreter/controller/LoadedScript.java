@@ -0,0 +1,60 @@
+package com.kerr.interpreter.controller;
+
+/**
+ * A script that has been loaded from file and is ready to be built along with how long it took to
+ * load.
+ *
+ * @author allankerr
+ *
+ */
+public final class LoadedScript {
+
+  /**
+   * The name of the script. This is the path of the file relative to the directory or jar it was
+   * loaded from without the ".fs" extension.
+   */
+  private final String name;
+
+  /**
+   * The decoded script.
+   */
+  private final String script;
+
+  /**
+   * The size of the file in bytes.
+   */
+  private final long size;
+
+  /**
+   * The time taken to read and decode the file in nanoseconds.
+   */
+  private final long loadTime;
+
+  LoadedScript(String name, String script, long size, long loadTime) {
+    this.name = name;
+    this.script = script;
+    this.size = size;
+    this.loadTime = loadTime;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public String getScript() {
+    return script;
+  }
+
+  public long getSize() {
+    return size;
+  }
+
+  public long getLoadTime() {
+    return loadTime;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s (%,d bytes in %.3f ms)", name, size, loadTime / 1e6);
+  }
+}
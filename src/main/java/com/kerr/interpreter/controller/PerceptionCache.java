@@ -0,0 +1,110 @@
+package com.kerr.interpreter.controller;
+
+import com.kerr.interpreter.model.RobotType;
+import com.kerr.interpreter.model.Value;
+import java.util.Arrays;
+
+/**
+ * Remembers the scans and identifies answered by a listener during a single execution of a script
+ * so scripts that scan and identify the same robots several times a turn only ask the listener
+ * once. What a robot can see only changes when it moves or turns, and a shot can damage or destroy
+ * the robots it sees, so the remembered answers are forgotten whenever the script moves, turns or
+ * shoots. Everything else is sent straight to the listener.
+ *
+ * @author allankerr
+ *
+ */
+class PerceptionCache implements ScriptListener {
+
+  /**
+   * The number of robots that can be remembered. Far more robots than can be seen at once.
+   */
+  private static final int MAX_IDENTIFIED = 64;
+
+  private final ScriptListener listener;
+
+  private boolean scanned;
+
+  private int robots;
+
+  /**
+   * The identified robots indexed by the index they were identified with or null if no robot has
+   * been identified since the cache was last cleared.
+   */
+  private IdentifyResponse[] identified;
+
+  PerceptionCache(ScriptListener listener) {
+    this.listener = listener;
+  }
+
+  /**
+   * Forgets every scan and identify.
+   */
+  private void clear() {
+    scanned = false;
+    if (identified != null) {
+      Arrays.fill(identified, null);
+    }
+  }
+
+  public void turn(int direction) {
+    clear();
+    listener.turn(direction);
+  }
+
+  public void move() {
+    clear();
+    listener.move();
+  }
+
+  public void shoot(int direction, int distance) {
+    clear();
+    listener.shoot(direction, distance);
+  }
+
+  public int scan() {
+    if (!scanned) {
+      robots = listener.scan();
+      scanned = true;
+    }
+    return robots;
+  }
+
+  /**
+   * Identifies a robot, asking the listener only if the robot hasn't been identified since the
+   * script last moved, turned or shot. Indexes the listener can't identify are never remembered.
+   */
+  public IdentifyResponse identify(int index) {
+    if (index < 0 || index >= MAX_IDENTIFIED) {
+      return listener.identify(index);
+    }
+    if (identified == null) {
+      identified = new IdentifyResponse[Math.max(8, index + 1)];
+    } else if (index >= identified.length) {
+      identified = Arrays.copyOf(identified,
+          Math.min(MAX_IDENTIFIED, Math.max(identified.length * 2, index + 1)));
+    }
+    IdentifyResponse response = identified[index];
+    if (response == null) {
+      response = listener.identify(index);
+      identified[index] = response;
+    }
+    return response;
+  }
+
+  public CheckResponse check(int direction) {
+    return listener.check(direction);
+  }
+
+  public boolean sendMessage(RobotType type, Value<?> value) {
+    return listener.sendMessage(type, value);
+  }
+
+  public void scriptInterrupted(Exception exception) {
+    listener.scriptInterrupted(exception);
+  }
+
+  public void scriptFinished() {
+    listener.scriptFinished();
+  }
+}
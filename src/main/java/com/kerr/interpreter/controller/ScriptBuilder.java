@@ -1,10 +1,18 @@
 package com.kerr.interpreter.controller;
 
 import com.kerr.interpreter.model.BoolValue;
+import com.kerr.interpreter.model.Program;
 import com.kerr.interpreter.model.ScriptData;
 import com.kerr.interpreter.model.StringValue;
+import com.kerr.interpreter.vm.StackVerifier;
 import com.kerr.interpreter.words.IfWord;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -29,6 +37,28 @@ import com.kerr.interpreter.words.Word;
  */
 class ScriptBuilder {
 
+  /**
+   * The number of words inlining user-defined words may add to each script.
+   */
+  private int inlineBudget = ScriptOptimizer.DEFAULT_INLINE_BUDGET;
+
+  public int getInlineBudget() {
+    return inlineBudget;
+  }
+
+  /**
+   * Sets the number of words inlining user-defined words may add to each script built after.
+   * 
+   * @param inlineBudget The inline budget. Zero disables inlining.
+   * @throws IllegalArgumentException Thrown if the budget is negative.
+   */
+  public void setInlineBudget(int inlineBudget) {
+    if (inlineBudget < 0) {
+      throw new IllegalArgumentException("The inline budget must not be negative.");
+    }
+    this.inlineBudget = inlineBudget;
+  }
+
   /**
    * Parses the script into tokens and builds the word tree structure based on the resulting tokens.
    * 
@@ -41,25 +71,75 @@ class ScriptBuilder {
    */
   public ScriptData build(String teamName, String scriptName, String script)
       throws UnexpectedTokenException, UnknownWordException {
+    return build(teamName, scriptName, new ScriptTokenizer(script));
+  }
 
-    Map<String, Value<?>> variables = new HashMap<String, Value<?>>();
+  /**
+   * Parses the script into tokens as it is read and builds the word tree structure based on the
+   * resulting tokens. The reader is not closed.
+   * 
+   * @param teamName The name of the team the script belongs to.
+   * @param scriptName The name of the script being built.
+   * @param script The reader the script is read from.
+   * @return
+   * @throws UnexpectedTokenException Thrown when the script is missing a block end token
+   * @throws UnknownWordException Thrown when an invalid word is found in the script.
+   * @throws IOException Thrown if the script couldn't be read.
+   */
+  public ScriptData build(String teamName, String scriptName, Reader script)
+      throws UnexpectedTokenException, UnknownWordException, IOException {
+    try {
+      return build(teamName, scriptName, new ScriptTokenizer(script));
+    } catch (UncheckedIOException ex) {
+      throw ex.getCause();
+    }
+  }
+
+  /**
+   * Parses the script into tokens as it is read from a channel and builds the word tree structure
+   * based on the resulting tokens. The channel is not closed.
+   * 
+   * @param teamName The name of the team the script belongs to.
+   * @param scriptName The name of the script being built.
+   * @param script The channel the script is read from.
+   * @param charset The character set the script is encoded in.
+   * @return
+   * @throws UnexpectedTokenException Thrown when the script is missing a block end token
+   * @throws UnknownWordException Thrown when an invalid word is found in the script.
+   * @throws IOException Thrown if the script couldn't be read.
+   */
+  public ScriptData build(String teamName, String scriptName, ReadableByteChannel script,
+      Charset charset) throws UnexpectedTokenException, UnknownWordException, IOException {
+    try {
+      return build(teamName, scriptName, new ScriptTokenizer(script, charset));
+    } catch (UncheckedIOException ex) {
+      throw ex.getCause();
+    }
+  }
+
+  private ScriptData build(String teamName, String scriptName, ScriptTokenizer tokenizer)
+      throws UnexpectedTokenException, UnknownWordException {
+
+    // Variables are resolved to slots in the order they are declared
+    Map<String, VariableValue> variables = new LinkedHashMap<String, VariableValue>();
     Map<String, Word> userWords = new HashMap<String, Word>();
-    variables.put("I", new IntValue(0));
 
     List<Word> buildWords = new LinkedList<Word>();
 
     Word start;
     MultiWord buildWord;
 
-    ScriptTokenizer tokenizer = new ScriptTokenizer(script);
     while (tokenizer.hasNext()) {
       ScriptToken token = tokenizer.nextToken();
       switch (token) {
 
         case VARIABLE:
-          // Add variable to the map for script data
+          // Add variable to the map for script data. The loop index I is always predefined, so a
+          // variable declared with its name is ignored as it was when I was stored as a variable.
           String variableName = tokenizer.getVariable();
-          variables.put(variableName, new IntValue(0));
+          if (!variableName.equals("I") && !variables.containsKey(variableName)) {
+            variables.put(variableName, new VariableValue(variableName, variables.size()));
+          }
           tokenizer.nextToken();
           break;
 
@@ -83,7 +163,7 @@ class ScriptBuilder {
 
         case BOOLEAN:
           // Handles a build word that starts with a boolean value
-          start = new LiteralWord(new BoolValue(tokenizer.getBoolValue()));
+          start = new LiteralWord(BoolValue.of(tokenizer.getBoolValue()));
           buildWord = new MultiWord(start, build(tokenizer, variables, userWords));
           buildWords.add(buildWord);
 
@@ -103,7 +183,7 @@ class ScriptBuilder {
 
         case INTEGER:
           // Handles a build word that starts with a integer value
-          start = new LiteralWord(new IntValue(tokenizer.getIntValue()));
+          start = new LiteralWord(IntValue.of(tokenizer.getIntValue()));
           buildWord = new MultiWord(start, build(tokenizer, variables, userWords));
           buildWords.add(buildWord);
 
@@ -122,11 +202,25 @@ class ScriptBuilder {
               "Encountered unexpected token '" + token.toString() + "' while building the script");
       }
     }
-    ScriptData data = new ScriptData(teamName, scriptName, userWords, variables);
+    Map<String, Value<?>> values = new LinkedHashMap<String, Value<?>>();
+    for (String variableName : variables.keySet()) {
+      values.put(variableName, IntValue.of(0));
+    }
+    // Type errors are reported against the words as written before they are optimized
+    StackVerifier verifier = new StackVerifier();
+    verifier.verify(userWords);
+    Map<String, Word> optimizedWords = new ScriptOptimizer(inlineBudget).optimize(userWords);
+    Program program = new Program(userWords, optimizedWords, values, null,
+        verifier.verify(optimizedWords));
+    ScriptData data = program.newScript(teamName, scriptName);
+    if (buildWords.isEmpty()) {
+      return data;
+    }
     for (Word word : buildWords) {
       word.execute(data, null, null);
     }
-    return data;
+    // Robots running the script start from the state the build words left
+    return data.toProgram().newScript(teamName, scriptName);
   }
 
   /**
@@ -140,7 +234,7 @@ class ScriptBuilder {
    * @throws UnexpectedTokenException Thrown when the script is missing a block end token
    * @throws UnknownWordException Thrown when an invalid word is found in the script.
    */
-  private void startBlock(ScriptTokenizer tokenizer, Map<String, Value<?>> variables,
+  private void startBlock(ScriptTokenizer tokenizer, Map<String, VariableValue> variables,
       Map<String, Word> userWords) throws UnexpectedTokenException, UnknownWordException {
     if (tokenizer.hasNext()) {
       // Add word to scriptData
@@ -166,7 +260,7 @@ class ScriptBuilder {
    * @throws UnexpectedTokenException Thrown when the script is missing a block end token
    * @throws UnknownWordException Thrown when an invalid word is found in the script.
    */
-  private MultiWord build(ScriptTokenizer tokenizer, Map<String, Value<?>> variables,
+  private MultiWord build(ScriptTokenizer tokenizer, Map<String, VariableValue> variables,
       Map<String, Word> userWords) throws UnexpectedTokenException, UnknownWordException {
     PredefinedWords predefinedWords = PredefinedWords.getInstance();
     LinkedList<Word> words = new LinkedList<Word>();
@@ -199,8 +293,7 @@ class ScriptBuilder {
         case WORD:
           String name = tokenizer.getWordValue();
           if (variables.containsKey(name)) {
-            VariableValue variableValue = new VariableValue(name);
-            Word stringWord = new LiteralWord(variableValue);
+            Word stringWord = new LiteralWord(variables.get(name));
             words.add(stringWord);
           } else if (predefinedWords.hasWord(name)) {
             words.add(predefinedWords.getWord(name));
@@ -221,14 +314,14 @@ class ScriptBuilder {
 
         // Handles integer literal tokens
         case INTEGER:
-          IntValue intValue = new IntValue(tokenizer.getIntValue());
+          IntValue intValue = IntValue.of(tokenizer.getIntValue());
           Word intWord = new LiteralWord(intValue);
           words.add(intWord);
           break;
 
         // Handles boolean literal tokens
         case BOOLEAN:
-          BoolValue boolValue = new BoolValue(tokenizer.getBoolValue());
+          BoolValue boolValue = BoolValue.of(tokenizer.getBoolValue());
           Word boolWord = new LiteralWord(boolValue);
           words.add(boolWord);
           break;
@@ -251,12 +344,12 @@ class ScriptBuilder {
         "Failed to find terminating character while building the script.");
   }
 
-  private Word getWord(String name, Map<String, Value<?>> variables, Map<String, Word> userWords)
+  private Word getWord(String name, Map<String, VariableValue> variables,
+      Map<String, Word> userWords)
       throws UnknownWordException {
     PredefinedWords predefinedWords = PredefinedWords.getInstance();
     if (variables.containsKey(name)) {
-      VariableValue variableValue = new VariableValue(name);
-      return new LiteralWord(variableValue);
+      return new LiteralWord(variables.get(name));
     } else if (predefinedWords.hasWord(name)) {
       return predefinedWords.getWord(name);
     } else if (userWords.containsKey(name)) {
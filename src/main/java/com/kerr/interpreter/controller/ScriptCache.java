@@ -0,0 +1,282 @@
+package com.kerr.interpreter.controller;
+
+import com.kerr.interpreter.model.Program;
+import com.kerr.interpreter.model.ScriptData;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * A bounded cache of built scripts keyed by a hash of their source so the same script is only
+ * tokenized, built and optimized once. Each script is built once into an immutable program that is
+ * shared, and every request for it is given a new script running the program with its own stack,
+ * variables and mailboxes.
+ *
+ * Keys are the SHA-256 hash of the compiler version, the inline budget, and the source with its
+ * leading and trailing whitespace removed, which never changes the tokens of a script. The cache
+ * is bounded by the total length of the sources it holds and evicts the least recently used
+ * scripts first. Concurrent requests for a script that is being built wait for that build instead
+ * of building it again. Scripts that fail to build are not cached. Neither are scripts whose build
+ * words generate random numbers, so that every request for them runs the build words again and
+ * gets its own numbers, as it would without a cache.
+ *
+ * @author allankerr
+ *
+ */
+public final class ScriptCache {
+
+  /**
+   * The version of the script builder and optimizer. This must be changed whenever a change to them
+   * would build the same source differently so cached scripts are never reused across versions.
+   */
+  public static final int COMPILER_VERSION = 1;
+
+  /**
+   * The default total length of the sources of the cached scripts.
+   */
+  public static final long DEFAULT_MAX_WEIGHT = 8L * 1024 * 1024;
+
+  private final long maxWeight;
+
+  /**
+   * The cached scripts in least to most recently used order.
+   */
+  private final LinkedHashMap<String, Entry> entries =
+      new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+  private long weight;
+
+  private long hits;
+
+  private long misses;
+
+  private long evictions;
+
+  /**
+   * A cached script that may still be being built.
+   */
+  private static final class Entry {
+
+    private final FutureTask<Program> build;
+
+    private final long weight;
+
+    Entry(FutureTask<Program> build, long weight) {
+      this.build = build;
+      this.weight = weight;
+    }
+  }
+
+  /**
+   * Construct a cache with the default maximum weight.
+   */
+  public ScriptCache() {
+    this(DEFAULT_MAX_WEIGHT);
+  }
+
+  /**
+   * Construct a cache that holds scripts up to a total source length.
+   *
+   * @param maxWeight The total length of the sources of the cached scripts in characters.
+   * @throws IllegalArgumentException Thrown if maxWeight isn't positive.
+   */
+  public ScriptCache(long maxWeight) {
+    if (maxWeight <= 0) {
+      throw new IllegalArgumentException("The maximum weight of a script cache must be positive.");
+    }
+    this.maxWeight = maxWeight;
+  }
+
+  /**
+   * Gets a copy of a cached script, building and caching the script if it isn't cached.
+   *
+   * @param teamName The name of the team the copy belongs to.
+   * @param scriptName The name of the copy.
+   * @param script The source of the script.
+   * @param inlineBudget The inline budget the script is built with.
+   * @param builder Builds the program of the script if it isn't cached.
+   * @return A new script running the cached program that doesn't share any state with other
+   *         scripts.
+   * @throws UnexpectedTokenException Thrown when the script is missing a block end token
+   * @throws UnknownWordException Thrown when an invalid word is found in the script.
+   */
+  ScriptData get(String teamName, String scriptName, String script, int inlineBudget,
+      Callable<Program> builder) throws UnexpectedTokenException, UnknownWordException {
+    String normalized = normalize(script);
+    String key = key(normalized, inlineBudget);
+    Entry entry;
+    boolean building = false;
+    synchronized (this) {
+      entry = entries.get(key);
+      if (entry == null) {
+        misses++;
+        building = true;
+        entry = new Entry(new FutureTask<Program>(builder), normalized.length());
+        entries.put(key, entry);
+        weight += entry.weight;
+        evict();
+      } else {
+        hits++;
+      }
+    }
+    if (building) {
+      entry.build.run();
+    }
+    Program program;
+    try {
+      program = await(entry.build);
+    } catch (UnexpectedTokenException | UnknownWordException | RuntimeException | Error ex) {
+      remove(key, entry);
+      throw ex;
+    }
+    if (!program.isDeterministic()) {
+      remove(key, entry);
+      if (!building) {
+        // The program holds the random numbers of another request so the script is built again
+        synchronized (this) {
+          hits--;
+          misses++;
+        }
+        FutureTask<Program> build = new FutureTask<Program>(builder);
+        build.run();
+        program = await(build);
+      }
+    }
+    return program.newScript(teamName, scriptName);
+  }
+
+  /**
+   * Evicts the least recently used scripts until the cache is within its maximum weight. The
+   * script that was just added is the most recently used so it is only evicted if it is larger
+   * than the cache on its own.
+   */
+  private void evict() {
+    Iterator<Entry> iterator = entries.values().iterator();
+    while (weight > maxWeight && iterator.hasNext()) {
+      Entry eldest = iterator.next();
+      iterator.remove();
+      weight -= eldest.weight;
+      evictions++;
+    }
+  }
+
+  private synchronized void remove(String key, Entry entry) {
+    if (entries.get(key) == entry) {
+      entries.remove(key);
+      weight -= entry.weight;
+    }
+  }
+
+  /**
+   * Waits for a script to be built without being interrupted.
+   */
+  private static Program await(FutureTask<Program> build)
+      throws UnexpectedTokenException, UnknownWordException {
+    boolean interrupted = false;
+    try {
+      while (true) {
+        try {
+          return build.get();
+        } catch (InterruptedException ex) {
+          interrupted = true;
+        } catch (ExecutionException ex) {
+          Throwable cause = ex.getCause();
+          if (cause instanceof UnexpectedTokenException) {
+            throw (UnexpectedTokenException) cause;
+          } else if (cause instanceof UnknownWordException) {
+            throw (UnknownWordException) cause;
+          } else if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+          } else if (cause instanceof Error) {
+            throw (Error) cause;
+          }
+          throw new IllegalStateException("The script couldn't be built.", cause);
+        }
+      }
+    } finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /**
+   * Removes the leading and trailing whitespace of a script. Tokens are separated by whitespace so
+   * this never changes the tokens of a script that builds.
+   */
+  private static String normalize(String script) {
+    int start = 0;
+    int end = script.length();
+    while (start < end && Character.isWhitespace(script.charAt(start))) {
+      start++;
+    }
+    while (end > start && Character.isWhitespace(script.charAt(end - 1))) {
+      end--;
+    }
+    return script.substring(start, end);
+  }
+
+  private static String key(String script, int inlineBudget) {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException ex) {
+      // Every Java platform is required to support SHA-256
+      throw new IllegalStateException(ex);
+    }
+    digest.update((COMPILER_VERSION + ":" + inlineBudget + ":").getBytes(StandardCharsets.UTF_8));
+    byte[] hash = digest.digest(script.getBytes(StandardCharsets.UTF_8));
+    StringBuilder key = new StringBuilder(hash.length * 2);
+    for (byte b : hash) {
+      key.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+    }
+    return key.toString();
+  }
+
+  public synchronized long getHits() {
+    return hits;
+  }
+
+  public synchronized long getMisses() {
+    return misses;
+  }
+
+  public synchronized long getEvictions() {
+    return evictions;
+  }
+
+  /**
+   * Gets the number of scripts in the cache including those that are being built.
+   *
+   * @return The number of cached scripts.
+   */
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  /**
+   * Gets the total length of the sources of the cached scripts.
+   *
+   * @return The weight of the cache in characters.
+   */
+  public synchronized long getWeight() {
+    return weight;
+  }
+
+  public long getMaxWeight() {
+    return maxWeight;
+  }
+
+  /**
+   * Removes every script from the cache. The counters are kept.
+   */
+  public synchronized void clear() {
+    entries.clear();
+    weight = 0;
+  }
+}
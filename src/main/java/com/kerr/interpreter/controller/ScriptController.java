@@ -1,21 +1,76 @@
 package com.kerr.interpreter.controller;
 
 
+import com.kerr.interpreter.model.Program;
 import com.kerr.interpreter.model.ScriptData;
+import com.kerr.interpreter.vm.BytecodeInterpreter;
+import com.kerr.interpreter.vm.Continuation;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
 import java.net.URISyntaxException;
-
-import com.kerr.interpreter.words.Word;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Primary controller class for interfacing with the interpreter component found in the design.The
  * building and executing of scripts are delegated to other classes within the interpreter from this
  * class.
  * 
+ * Scripts are executed on an executor that is either supplied by the caller or a bounded pool of
+ * daemon threads created the first time a script is executed. Controllers should be closed once
+ * they are no longer used so the pool's threads are released. A script that never halts holds one
+ * of the pool's threads for good, so once as many scripts as the pool has threads are stuck in
+ * endless loops no other script runs. Callers expecting such scripts should supply their own
+ * executor, use virtual threads, or step scripts with an instruction budget through start.
+ * 
  * @author allankerr
  *
  */
-public class ScriptController {
+public class ScriptController implements AutoCloseable {
+
+  /**
+   * The number of threads in the default pool. Scripts spend much of their time waiting on the
+   * listener for the board so there are more threads than processors.
+   */
+  public static final int DEFAULT_POOL_SIZE =
+      Math.max(2, Runtime.getRuntime().availableProcessors() * 2);
+
+  /**
+   * The number of executions the default pool queues while its threads are busy. Scripts executed
+   * while the queue is full are interrupted with a RejectedExecutionException.
+   */
+  public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+  /**
+   * The number of seconds an idle thread in the default pool is kept before it is released.
+   */
+  private static final long KEEP_ALIVE_SECONDS = 30;
+
+  /**
+   * The factory method for executors that run each task on a new virtual thread or null if the
+   * runtime doesn't support virtual threads. It is looked up reflectively because virtual threads
+   * were added in Java 21.
+   */
+  private static final Method VIRTUAL_THREAD_EXECUTOR = findVirtualThreadExecutor();
 
   /**
    * Responsible for parsing and building word-tree representation of scripts.
@@ -28,6 +83,63 @@ public class ScriptController {
    */
   private ScriptListener listener;
 
+  /**
+   * The cache of built scripts or null if every script is built from scratch.
+   */
+  private ScriptCache cache = new ScriptCache();
+
+  /**
+   * The engine used to execute built scripts.
+   */
+  private ExecutionEngine engine = ExecutionEngine.TREE_WALKER;
+
+  /**
+   * How turns, moves and shots are sent to the listener.
+   */
+  private CommandMode commandMode = CommandMode.IMMEDIATE;
+
+  /**
+   * Whether scans and identifies are remembered until the script moves, turns or shoots.
+   */
+  private boolean cachingPerception = true;
+
+  /**
+   * The executor scripts are run on or null if the default pool hasn't been created yet. This is
+   * read without locking so executing scripts never blocks on a monitor, which would pin the carrier
+   * of a virtual thread.
+   */
+  private volatile ExecutorService executor;
+
+  /**
+   * Whether the executor was created by the controller, which is shut down when the controller is
+   * closed.
+   */
+  private boolean ownsExecutor;
+
+  private volatile boolean closed;
+
+  /**
+   * Guards changes to the executor.
+   */
+  private final ReentrantLock lock = new ReentrantLock();
+
+  /**
+   * The number of executions that have been submitted but haven't started.
+   */
+  private final AtomicInteger queued = new AtomicInteger();
+
+  /**
+   * The number of executions that are running.
+   */
+  private final AtomicInteger active = new AtomicInteger();
+
+  private final AtomicLong completed = new AtomicLong();
+
+  /**
+   * Signalled once the controller has been closed and every submitted execution has finished.
+   */
+  private final Condition terminated = lock.newCondition();
+
   /**
    * Construct a new script controller.
    * 
@@ -41,6 +153,22 @@ public class ScriptController {
     this.listener = listener;
   }
 
+  /**
+   * Construct a new script controller that executes scripts on the specified executor. The executor
+   * belongs to the caller so it isn't shut down when the controller is closed.
+   * 
+   * @param listener The listener for which script execution output should be sent to.
+   * @param executor The executor to run scripts on.
+   * @throw IllegalArgumentException Thrown if listener or executor is null.
+   */
+  public ScriptController(ScriptListener listener, ExecutorService executor) {
+    this(listener);
+    if (executor == null) {
+      throw new IllegalArgumentException("Script controller must have a non-null executor.");
+    }
+    this.executor = executor;
+  }
+
   /**
    * Construct a new script controller exclusively for building scripts.
    * 
@@ -49,8 +177,103 @@ public class ScriptController {
 
   }
 
+  public ScriptListener getListener() {
+    return listener;
+  }
+
+  public ExecutionEngine getEngine() {
+    return engine;
+  }
+
+  /**
+   * Sets the engine used by all subsequent calls to execute.
+   * 
+   * @param engine The engine to execute scripts with.
+   * @throws IllegalArgumentException Thrown if engine is null.
+   */
+  public void setEngine(ExecutionEngine engine) {
+    if (engine == null) {
+      throw new IllegalArgumentException("Script controller must have a non-null engine.");
+    }
+    this.engine = engine;
+  }
+
+  public CommandMode getCommandMode() {
+    return commandMode;
+  }
+
+  /**
+   * Sets how the turns, moves and shots of all subsequently executed scripts are sent to the
+   * listener. In batched mode they are recorded in a command buffer that is handed to the listener
+   * once the script finishes so the board can be updated in a single batch. The mode applies to
+   * execute and executeAsync; turn schedulers record and apply commands themselves in either mode.
+   * 
+   * @param commandMode The command mode.
+   * @throws IllegalArgumentException Thrown if commandMode is null.
+   * @throws IllegalStateException Thrown if commands are batched but the listener isn't a batch
+   *         listener.
+   */
+  public void setCommandMode(CommandMode commandMode) {
+    if (commandMode == null) {
+      throw new IllegalArgumentException("Script controller must have a non-null command mode.");
+    }
+    if (commandMode == CommandMode.BATCHED && !(listener instanceof BatchListener)) {
+      throw new IllegalStateException("Batched commands require a batch listener.");
+    }
+    this.commandMode = commandMode;
+  }
+
+  public boolean isCachingPerception() {
+    return cachingPerception;
+  }
+
+  /**
+   * Sets whether each execution of a script remembers the answers to its scans and identifies
+   * until the script moves, turns or shoots so the listener is only asked once. This is enabled by
+   * default and should only be disabled if the robots a script can see change during its turn
+   * without it moving, turning or shooting.
+   * 
+   * @param cachingPerception True to remember scans and identifies or false to always ask the
+   *        listener.
+   */
+  public void setCachingPerception(boolean cachingPerception) {
+    this.cachingPerception = cachingPerception;
+  }
+
+  public ScriptCache getCache() {
+    return cache;
+  }
+
+  /**
+   * Sets the cache that scripts built from strings are shared through. Scripts built from readers
+   * and channels are never cached.
+   * 
+   * @param cache The cache to build scripts with or null to build every script from scratch.
+   */
+  public void setCache(ScriptCache cache) {
+    this.cache = cache;
+  }
+
+  public int getInlineBudget() {
+    return builder.getInlineBudget();
+  }
+
+  /**
+   * Sets the number of words that inlining small user-defined words into their callers may add to
+   * each script built after.
+   * 
+   * @param inlineBudget The inline budget. Zero disables inlining.
+   * @throws IllegalArgumentException Thrown if the budget is negative.
+   */
+  public void setInlineBudget(int inlineBudget) {
+    builder.setInlineBudget(inlineBudget);
+  }
+
   /**
    * Parses the script into tokens and builds the word-tree structure based on the resulting tokens.
+   * Scripts are shared through the controller's cache so building the same script again only
+   * copies its state, unless its build words generate random numbers, in which case they are run
+   * again for each build.
    * 
    * @param script The string represented of the script to be parsed.
    * @return
@@ -58,14 +281,81 @@ public class ScriptController {
    * @throws UnknownWordException Thrown when an invalid word is found in the script.
    * @throws IllegalArgumentException Thrown if script is null.
    */
-  public ScriptData build(String teamName, String scriptName, String script)
+  public ScriptData build(final String teamName, final String scriptName, final String script)
+      throws UnexpectedTokenException, UnknownWordException {
+    if (script == null) {
+      throw new IllegalArgumentException("Attempted to build a null script.");
+    }
+    ScriptCache cache = this.cache;
+    if (cache == null) {
+      return builder.build(teamName, scriptName, script);
+    }
+    return cache.get(teamName, scriptName, script, builder.getInlineBudget(),
+        new Callable<Program>() {
+          public Program call() throws Exception {
+            return builder.build(teamName, scriptName, script).getProgram();
+          }
+        });
+  }
+
+  /**
+   * Builds a script that was loaded from file using the script's name.
+   * 
+   * @param teamName The name of the team the script belongs to.
+   * @param script The loaded script to be parsed.
+   * @return
+   * @throws UnexpectedTokenException Thrown when the script is missing a block end token
+   * @throws UnknownWordException Thrown when an invalid word is found in the script.
+   * @throws IllegalArgumentException Thrown if script is null.
+   */
+  public ScriptData build(String teamName, LoadedScript script)
       throws UnexpectedTokenException, UnknownWordException {
     if (script == null) {
       throw new IllegalArgumentException("Attempted to build a null script.");
     }
+    return build(teamName, script.getName(), script.getScript());
+  }
+
+  /**
+   * Parses the script into tokens as it is read and builds the word-tree structure based on the
+   * resulting tokens. Tokens are built as the script is read so large scripts are never held in
+   * memory in full. The reader is not closed.
+   * 
+   * @param script The reader the script is read from.
+   * @return
+   * @throws UnexpectedTokenException Thrown when the script is missing a block end token
+   * @throws UnknownWordException Thrown when an invalid word is found in the script.
+   * @throws IOException Thrown if the script couldn't be read.
+   * @throws IllegalArgumentException Thrown if script is null.
+   */
+  public ScriptData build(String teamName, String scriptName, Reader script)
+      throws UnexpectedTokenException, UnknownWordException, IOException {
+    if (script == null) {
+      throw new IllegalArgumentException("Attempted to build a null script.");
+    }
     return builder.build(teamName, scriptName, script);
   }
 
+  /**
+   * Parses the script into tokens as it is read from a channel and builds the word-tree structure
+   * based on the resulting tokens. The channel is not closed.
+   * 
+   * @param script The channel the script is read from.
+   * @param charset The character set the script is encoded in.
+   * @return
+   * @throws UnexpectedTokenException Thrown when the script is missing a block end token
+   * @throws UnknownWordException Thrown when an invalid word is found in the script.
+   * @throws IOException Thrown if the script couldn't be read.
+   * @throws IllegalArgumentException Thrown if script or charset is null.
+   */
+  public ScriptData build(String teamName, String scriptName, ReadableByteChannel script,
+      Charset charset) throws UnexpectedTokenException, UnknownWordException, IOException {
+    if (script == null || charset == null) {
+      throw new IllegalArgumentException("Attempted to build a null script.");
+    }
+    return builder.build(teamName, scriptName, script, charset);
+  }
+
   /**
    * Parses the script that is loaded from the resources directory and builds the word-tree
    * structure based on the resulting tokens.
@@ -84,37 +374,433 @@ public class ScriptController {
     if (fileName == null) {
       throw new IllegalArgumentException("Attempted to load script with null file name.");
     }
-    String script = ScriptLoader.load(fileName);
-    return build(null, null, script);
+    try (Reader script = ScriptLoader.open(fileName)) {
+      return build(null, null, script);
+    }
+  }
+
+  /**
+   * Writes a built script as a compiled image that can be read back without building the script
+   * again. The image holds the values of the script's variables and stack so scripts should be
+   * written before they are executed.
+   * 
+   * @param data The built script to write.
+   * @param output The stream to write the image to. The stream is not closed.
+   * @throws IOException Thrown if the image couldn't be written.
+   * @throws IllegalArgumentException Thrown if data or output is null.
+   */
+  public void writeImage(ScriptData data, OutputStream output) throws IOException {
+    ScriptImage.write(data, output);
+  }
+
+  /**
+   * Reads a script from a compiled image. The image is verified before the script is returned so
+   * malformed or tampered images are never executed.
+   * 
+   * @param input The stream to read the image from. The stream is not closed.
+   * @return The script ready to be executed.
+   * @throws InvalidScriptImageException Thrown if the image is malformed, of another version, fails
+   *         its checksum, or fails verification.
+   * @throws IOException Thrown if the image couldn't be read.
+   * @throws IllegalArgumentException Thrown if input is null.
+   */
+  public ScriptData readImage(InputStream input) throws IOException {
+    return ScriptImage.read(input);
   }
 
   /**
    * Executes the pre-built script with all messages that interact with the board being sent to the
-   * script listener.
+   * script listener. The script is run on the controller's executor by the controller's current
+   * engine. The listener is told the script finished once it stops, after being told it was
+   * interrupted if it stopped with an error. This includes scripts the executor refuses to run,
+   * which are reported on the calling thread.
    * 
    * @param data The pre-built script to be executed.
    * @param dataSource The data provider for script providing information on the robot the script is
    *        controlling such as remaining health and moves.
-   * @throws IllegalArgumentException Thrown if dataSource is null.
+   * @throws IllegalArgumentException Thrown if data or dataSource is null.
+   * @throws IllegalStateException Thrown if the controller has no listener or has been closed.
    */
-  public void execute(final ScriptData data, final ScriptDataSource dataSource) {
+  public void execute(ScriptData data, ScriptDataSource dataSource) {
+    submit(data, dataSource, null);
+  }
+
+  /**
+   * Executes the pre-built script in the same way as execute and completes the returned future
+   * with the result of the execution once the listener has been told the script finished. The
+   * future is completed with the result even if the script is interrupted so it is only completed
+   * exceptionally if the script stops with an error that isn't an exception.
+   * 
+   * @param data The pre-built script to be executed.
+   * @param dataSource The data provider for script providing information on the robot the script is
+   *        controlling such as remaining health and moves.
+   * @return The future result of the execution.
+   * @throws IllegalArgumentException Thrown if data or dataSource is null.
+   * @throws IllegalStateException Thrown if the controller has no listener or has been closed.
+   */
+  public CompletableFuture<ExecutionResult> executeAsync(ScriptData data,
+      ScriptDataSource dataSource) {
+    CompletableFuture<ExecutionResult> future = new CompletableFuture<ExecutionResult>();
+    submit(data, dataSource, future);
+    return future;
+  }
+
+  /**
+   * Submits a script to the executor.
+   * 
+   * @param future The future completed with the result of the execution or null if the result
+   *        isn't needed.
+   */
+  private void submit(final ScriptData data, final ScriptDataSource dataSource,
+      final CompletableFuture<ExecutionResult> future) {
     if (listener == null) {
       throw new IllegalStateException(
           "A script controller must have a non-null script listener to execute scripts.");
     }
+    if (data == null) {
+      throw new IllegalArgumentException("Attempted to execute a null script.");
+    }
     if (dataSource == null) {
       throw new IllegalArgumentException("A script must be executed with a non-null data source.");
     }
-    new Thread(new Runnable() {
-      public void run() {
-        Word playWord = data.getPlayWord();
-        try {
-          playWord.execute(data, listener, dataSource);
-        } catch (Exception ex) {
-          listener.scriptInterrupted(ex);
+    final ExecutionEngine engine = this.engine;
+    final boolean batched = commandMode == CommandMode.BATCHED;
+    final boolean cached = cachingPerception;
+    ExecutorService executor = executor();
+    queued.incrementAndGet();
+    try {
+      executor.execute(new Runnable() {
+        public void run() {
+          queued.decrementAndGet();
+          active.incrementAndGet();
+          try {
+            ExecutionResult result =
+                ScriptController.this.run(engine, batched, cached, data, dataSource);
+            if (future != null) {
+              future.complete(result);
+            }
+          } catch (Throwable ex) {
+            if (future != null) {
+              future.completeExceptionally(ex);
+            }
+            throw ex;
+          } finally {
+            completed.incrementAndGet();
+            active.decrementAndGet();
+            signalIfTerminated();
+          }
+        }
+      });
+    } catch (RejectedExecutionException ex) {
+      queued.decrementAndGet();
+      signalIfTerminated();
+      listener.scriptInterrupted(ex);
+      finish(batched ? new CommandBuffer() : null);
+      if (future != null) {
+        future.complete(new ExecutionResult(ex, 0, 0, 0, data.getStackHighWaterMark()));
+      }
+    }
+  }
+
+  /**
+   * Runs a script on the calling thread, measuring it and informing the listener once it finishes.
+   */
+  private ExecutionResult run(ExecutionEngine engine, boolean batched, boolean cached,
+      ScriptData data, ScriptDataSource dataSource) {
+    CommandBuffer commands = null;
+    ScriptListener target = listener;
+    if (batched) {
+      commands = new CommandBuffer();
+      target = new BufferingListener(listener, commands);
+    }
+    if (cached) {
+      target = new PerceptionCache(target);
+    }
+    long cpuStart = cpuTime();
+    long wallStart = System.nanoTime();
+    Exception[] failure = new Exception[1];
+    long instructions = engine.run(data, target, dataSource, failure);
+    Exception exception = failure[0];
+    long wall = System.nanoTime() - wallStart;
+    long cpuEnd = cpuTime();
+    long cpu = cpuStart < 0 || cpuEnd < 0 ? -1 : cpuEnd - cpuStart;
+    if (exception != null) {
+      listener.scriptInterrupted(exception);
+    }
+    finish(commands);
+    return new ExecutionResult(exception, instructions, wall, cpu, data.getStackHighWaterMark());
+  }
+
+  /**
+   * Informs the listener that a script finished, handing it the script's commands if they were
+   * batched.
+   * 
+   * @param commands The commands of the script or null if they were sent immediately.
+   */
+  private void finish(CommandBuffer commands) {
+    if (commands == null) {
+      listener.scriptFinished();
+    } else {
+      ((BatchListener) listener).scriptFinished(commands);
+    }
+  }
+
+  /**
+   * Gets the processor time used by the calling thread or -1 if the platform doesn't measure it.
+   */
+  private static long cpuTime() {
+    ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    if (!threads.isCurrentThreadCpuTimeSupported() || !threads.isThreadCpuTimeEnabled()) {
+      return -1;
+    }
+    return threads.getCurrentThreadCpuTime();
+  }
+
+  /**
+   * Prepares a script to be run a number of instructions at a time by the bytecode interpreter on
+   * the calling thread instead of being executed on the controller's executor. This lets a single
+   * thread step many robots each turn, including robots whose scripts never halt. The listener is
+   * not told when the script finishes; the continuation reports it instead.
+   * 
+   * @param data The pre-built script to run.
+   * @return The continuation of the script suspended before its first instruction.
+   * @throws IllegalArgumentException Thrown if data is null.
+   */
+  public Continuation start(ScriptData data) {
+    if (data == null) {
+      throw new IllegalArgumentException("Attempted to start a null script.");
+    }
+    return new BytecodeInterpreter().start(data.getBytecode(), data);
+  }
+
+  /**
+   * Gets the executor scripts are run on, creating the default pool if no executor was supplied.
+   * 
+   * @return The executor.
+   * @throws IllegalStateException Thrown if the controller has been closed.
+   */
+  public ExecutorService getExecutor() {
+    return executor();
+  }
+
+  /**
+   * Sets the executor all subsequent calls to execute run scripts on. The executor belongs to the
+   * caller so it isn't shut down when the controller is closed.
+   * 
+   * @param executor The executor to run scripts on.
+   * @throws IllegalArgumentException Thrown if executor is null.
+   * @throws IllegalStateException Thrown if the controller has been closed.
+   */
+  public void setExecutor(ExecutorService executor) {
+    if (executor == null) {
+      throw new IllegalArgumentException("Script controller must have a non-null executor.");
+    }
+    replaceExecutor(executor, false);
+  }
+
+  /**
+   * Runs every subsequently executed script on its own virtual thread. Scripts spend most of their
+   * time blocked in the listener waiting for the board so virtual threads let every robot run at
+   * once without a platform thread each. The controller owns the executor so it is shut down when
+   * the controller is closed.
+   * 
+   * @throws IllegalStateException Thrown if virtual threads aren't supported by the runtime or the
+   *         controller has been closed.
+   */
+  public void useVirtualThreads() {
+    if (VIRTUAL_THREAD_EXECUTOR == null) {
+      throw new IllegalStateException("Virtual threads require Java 21 or later.");
+    }
+    ExecutorService executor;
+    try {
+      executor = (ExecutorService) VIRTUAL_THREAD_EXECUTOR.invoke(null);
+    } catch (IllegalAccessException | InvocationTargetException ex) {
+      throw new IllegalStateException("Failed to create a virtual thread executor.", ex);
+    }
+    replaceExecutor(executor, true);
+  }
+
+  /**
+   * Determines whether the runtime supports running scripts on virtual threads.
+   * 
+   * @return True if virtual threads are supported; otherwise, false.
+   */
+  public static boolean isVirtualThreadSupported() {
+    return VIRTUAL_THREAD_EXECUTOR != null;
+  }
+
+  private static Method findVirtualThreadExecutor() {
+    try {
+      return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+    } catch (NoSuchMethodException ex) {
+      return null;
+    }
+  }
+
+  /**
+   * Replaces the executor scripts are run on. If the controller created the previous executor, it
+   * is shut down once the scripts already submitted to it finish.
+   */
+  private void replaceExecutor(ExecutorService executor, boolean owned) {
+    lock.lock();
+    try {
+      if (closed) {
+        if (owned) {
+          executor.shutdown();
+        }
+        throw new IllegalStateException("The script controller has been closed.");
+      }
+      if (ownsExecutor) {
+        this.executor.shutdown();
+      }
+      this.executor = executor;
+      ownsExecutor = owned;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private ExecutorService executor() {
+    ExecutorService executor = this.executor;
+    if (executor != null && !closed) {
+      return executor;
+    }
+    lock.lock();
+    try {
+      if (closed) {
+        throw new IllegalStateException("The script controller has been closed.");
+      }
+      if (this.executor == null) {
+        this.executor = newDefaultPool();
+        ownsExecutor = true;
+      }
+      return this.executor;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private static ExecutorService newDefaultPool() {
+    return newPool(DEFAULT_POOL_SIZE, "script-executor-");
+  }
+
+  /**
+   * Creates a fixed pool of daemon threads so scripts that are still running never keep the
+   * application from exiting. Threads are released once they have been idle for a while. Tasks
+   * submitted while the pool's queue is full are rejected rather than queued without limit.
+   * 
+   * @param size The number of threads in the pool.
+   * @param name The prefix of the names of the pool's threads.
+   * @return The pool.
+   */
+  static ExecutorService newPool(int size, final String name) {
+    final AtomicInteger count = new AtomicInteger();
+    ThreadPoolExecutor pool = new ThreadPoolExecutor(size, size, KEEP_ALIVE_SECONDS,
+        TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(DEFAULT_QUEUE_CAPACITY),
+        new ThreadFactory() {
+          public Thread newThread(Runnable task) {
+            Thread thread = new Thread(task, name + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+          }
+        });
+    pool.allowCoreThreadTimeOut(true);
+    return pool;
+  }
+
+  /**
+   * Gets the number of executions that have been submitted to the executor but haven't started.
+   * 
+   * @return The queue depth.
+   */
+  public int getQueuedCount() {
+    return queued.get();
+  }
+
+  /**
+   * Gets the number of scripts being executed.
+   * 
+   * @return The number of running executions.
+   */
+  public int getActiveCount() {
+    return active.get();
+  }
+
+  /**
+   * Gets the number of executions that have finished whether or not they were interrupted.
+   * 
+   * @return The number of finished executions.
+   */
+  public long getCompletedCount() {
+    return completed.get();
+  }
+
+  public boolean isClosed() {
+    return closed;
+  }
+
+  /**
+   * Closes the controller so no more scripts can be executed. Scripts that were already submitted
+   * still run to completion. The default pool is shut down while a supplied executor is left to its
+   * owner. Closing a closed controller has no effect.
+   */
+  @Override
+  public void close() {
+    lock.lock();
+    try {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      if (ownsExecutor) {
+        executor.shutdown();
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Waits for the scripts submitted by this controller to finish after it has been closed.
+   * 
+   * @param timeout The longest time to wait.
+   * @param unit The unit of the timeout.
+   * @return True if every script finished or false if the timeout elapsed first.
+   * @throws InterruptedException Thrown if the thread was interrupted while waiting.
+   * @throws IllegalStateException Thrown if the controller hasn't been closed.
+   */
+  public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+    if (!closed) {
+      throw new IllegalStateException("The script controller must be closed before waiting.");
+    }
+    long remaining = unit.toNanos(timeout);
+    lock.lock();
+    try {
+      while (queued.get() > 0 || active.get() > 0) {
+        if (remaining <= 0) {
+          return false;
         }
-        listener.scriptFinished();
+        remaining = terminated.awaitNanos(remaining);
+      }
+      return true;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Wakes the threads waiting for termination if the controller is closed and the last execution
+   * has finished. The lock is only taken once the controller is closed so running scripts never
+   * contend for it.
+   */
+  private void signalIfTerminated() {
+    if (closed && queued.get() == 0 && active.get() == 0) {
+      lock.lock();
+      try {
+        terminated.signalAll();
+      } finally {
+        lock.unlock();
       }
-    }).start();
+    }
   }
 }
@@ -0,0 +1,696 @@
+package com.kerr.interpreter.controller;
+
+import com.kerr.interpreter.model.BoolValue;
+import com.kerr.interpreter.model.IntValue;
+import com.kerr.interpreter.model.Program;
+import com.kerr.interpreter.model.ScriptData;
+import com.kerr.interpreter.model.StringValue;
+import com.kerr.interpreter.model.Value;
+import com.kerr.interpreter.model.VariableValue;
+import com.kerr.interpreter.vm.StackEffects;
+import com.kerr.interpreter.vm.StackVerifier;
+import com.kerr.interpreter.words.CountedLoopWord;
+import com.kerr.interpreter.words.GuardedLoopWord;
+import com.kerr.interpreter.words.IfWord;
+import com.kerr.interpreter.words.LiteralWord;
+import com.kerr.interpreter.words.MultiWord;
+import com.kerr.interpreter.words.PredefinedWords;
+import com.kerr.interpreter.words.Word;
+import com.kerr.interpreter.words.WordVisitor;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Reads and writes compiled script images, the ".fsc" format, so built scripts can be loaded
+ * without being tokenized, built, or having their build words executed again. An image holds the
+ * optimized user-defined words, an interned pool of the constants they use, the variables in slot
+ * order with their values after building, and the values the build words left on the stack. The
+ * layout is:
+ *
+ * <pre>
+ *   int    magic "FSC\0"
+ *   short  format version
+ *   name   team name, name script name   (a presence byte followed by a string)
+ *   int    constant count, constants      (a tag byte followed by the value)
+ *   int    word count, int symbol count, symbols
+ *   int    variable count, variables      (a name and a constant)
+ *   int    stack depth, constants
+ *   word   the body of each user-defined word in symbol order
+ *   int    CRC-32 of every preceding byte
+ * </pre>
+ *
+ * The first symbols are the names of the user-defined words and the rest are the names of the
+ * predefined words that are used. Images are verified before they are returned: the checksum
+ * rejects corrupted images, and because a checksum can be recomputed, every count, index and tag
+ * is also checked, calls between user-defined words must not be recursive, and the words must pass
+ * the stack verifier like a script built from source.
+ *
+ * @author allankerr
+ *
+ */
+public final class ScriptImage {
+
+  /**
+   * The extension for compiled script images.
+   */
+  public static final String IMAGE_EXTENSION = ".fsc";
+
+  /**
+   * The version of the format written. Images of any other version are rejected.
+   */
+  public static final int FORMAT_VERSION = 1;
+
+  private static final int MAGIC = 0x46534300;
+
+  private static final int VALUE_INT = 1;
+  private static final int VALUE_BOOL = 2;
+  private static final int VALUE_STRING = 3;
+  private static final int VALUE_VARIABLE = 4;
+
+  private static final int WORD_MULTI = 1;
+  private static final int WORD_LITERAL = 2;
+  private static final int WORD_PREDEFINED = 3;
+  private static final int WORD_CALL = 4;
+  private static final int WORD_IF = 5;
+  private static final int WORD_COUNTED_LOOP = 6;
+  private static final int WORD_GUARDED_LOOP = 7;
+
+  /**
+   * The deepest nesting of control statements that is read. This stops a malicious image from
+   * exhausting the reader's stack.
+   */
+  private static final int MAX_NESTING = 512;
+
+  private ScriptImage() {
+
+  }
+
+  /**
+   * Writes the image of a built script. The image holds the current values of the script's
+   * variables and stack so scripts should be written before they are executed.
+   *
+   * @param data The built script to write.
+   * @param output The stream to write the image to. The stream is not closed.
+   * @throws IOException Thrown if the image couldn't be written to the stream.
+   * @throws IllegalArgumentException Thrown if data or output is null.
+   */
+  public static void write(ScriptData data, OutputStream output) throws IOException {
+    if (data == null || output == null) {
+      throw new IllegalArgumentException("Attempted to write a null script image.");
+    }
+    byte[] image = new Writer().write(data);
+    CRC32 crc = new CRC32();
+    crc.update(image);
+    DataOutputStream out = new DataOutputStream(output);
+    out.write(image);
+    out.writeInt((int) crc.getValue());
+    out.flush();
+  }
+
+  /**
+   * Reads and verifies the image of a built script.
+   *
+   * @param input The stream to read the image from. The stream is read to its end but not closed.
+   * @return The script ready to be executed.
+   * @throws InvalidScriptImageException Thrown if the image is malformed, of another version, fails
+   *         its checksum, or fails verification.
+   * @throws IOException Thrown if the stream couldn't be read.
+   * @throws IllegalArgumentException Thrown if input is null.
+   */
+  public static ScriptData read(InputStream input) throws IOException {
+    if (input == null) {
+      throw new IllegalArgumentException("Attempted to read a script image from a null stream.");
+    }
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    byte[] buffer = new byte[8192];
+    int count;
+    while ((count = input.read(buffer)) >= 0) {
+      bytes.write(buffer, 0, count);
+    }
+    return read(bytes.toByteArray());
+  }
+
+  /**
+   * Reads and verifies the image of a built script.
+   *
+   * @param image The bytes of the image.
+   * @return The script ready to be executed.
+   * @throws InvalidScriptImageException Thrown if the image is malformed, of another version, fails
+   *         its checksum, or fails verification.
+   * @throws IllegalArgumentException Thrown if image is null.
+   */
+  public static ScriptData read(byte[] image) throws InvalidScriptImageException {
+    if (image == null) {
+      throw new IllegalArgumentException("Attempted to read a null script image.");
+    }
+    if (image.length < 10) {
+      throw new InvalidScriptImageException("The script image is truncated.");
+    }
+    int length = image.length - 4;
+    CRC32 crc = new CRC32();
+    crc.update(image, 0, length);
+    if ((int) crc.getValue() != ByteBuffer.wrap(image, length, 4).getInt()) {
+      throw new InvalidScriptImageException("The script image failed its checksum.");
+    }
+    try {
+      return new Reader(image, length).read();
+    } catch (EOFException ex) {
+      throw new InvalidScriptImageException("The script image is truncated.", ex);
+    } catch (InvalidScriptImageException ex) {
+      throw ex;
+    } catch (IOException ex) {
+      throw new InvalidScriptImageException("The script image couldn't be read.", ex);
+    }
+  }
+
+  /**
+   * Encodes the user-defined words of a script, interning the constants and symbols they use.
+   */
+  private static final class Writer implements WordVisitor {
+
+    private final List<Value<?>> constants = new ArrayList<Value<?>>();
+
+    /**
+     * The index of each constant keyed by its type and value.
+     */
+    private final Map<String, Integer> constantIndices = new HashMap<String, Integer>();
+
+    private final List<String> symbols = new ArrayList<String>();
+
+    private final Map<String, Integer> symbolIndices = new HashMap<String, Integer>();
+
+    /**
+     * The symbol of each user-defined word so calls can be told apart from control statements.
+     */
+    private final Map<Word, Integer> userWords = new IdentityHashMap<Word, Integer>();
+
+    private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+    private final DataOutputStream code = new DataOutputStream(body);
+
+    private Word definition;
+
+    byte[] write(ScriptData data) throws IOException {
+      Map<String, Word> words = data.getOptimizedWords();
+      for (Map.Entry<String, Word> entry : words.entrySet()) {
+        if (!(entry.getValue() instanceof MultiWord)) {
+          throw new IllegalArgumentException(
+              "The user-defined word '" + entry.getKey() + "' can't be written to an image.");
+        }
+        userWords.put(entry.getValue(), symbol(entry.getKey()));
+      }
+      try {
+        for (Word word : words.values()) {
+          definition = word;
+          word.accept(this);
+        }
+      } catch (UncheckedIOException ex) {
+        throw ex.getCause();
+      }
+
+      List<Integer> variables = new ArrayList<Integer>();
+      for (String name : data.getVariableNames()) {
+        variables.add(constant(data.getVariable(name)));
+      }
+      List<Integer> stack = new ArrayList<Integer>();
+      for (int i = 0; i < data.getStackDepth(); i++) {
+        stack.add(constant(data.getStackValue(i)));
+      }
+
+      ByteArrayOutputStream image = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(image);
+      out.writeInt(MAGIC);
+      out.writeShort(FORMAT_VERSION);
+      writeName(out, data.getTeamName());
+      writeName(out, data.getScriptName());
+      out.writeInt(constants.size());
+      for (Value<?> value : constants) {
+        writeValue(out, value);
+      }
+      out.writeInt(words.size());
+      out.writeInt(symbols.size());
+      for (String symbol : symbols) {
+        writeString(out, symbol);
+      }
+      out.writeInt(variables.size());
+      int slot = 0;
+      for (String name : data.getVariableNames()) {
+        writeString(out, name);
+        out.writeInt(variables.get(slot++));
+      }
+      out.writeInt(stack.size());
+      for (int constant : stack) {
+        out.writeInt(constant);
+      }
+      code.flush();
+      body.writeTo(out);
+      out.flush();
+      return image.toByteArray();
+    }
+
+    private int symbol(String name) {
+      Integer index = symbolIndices.get(name);
+      if (index == null) {
+        index = symbols.size();
+        symbols.add(name);
+        symbolIndices.put(name, index);
+      }
+      return index;
+    }
+
+    private int constant(Value<?> value) {
+      String key;
+      if (value instanceof VariableValue) {
+        key = "v" + ((VariableValue) value).getSlot() + ":" + value.getValue();
+      } else if (value instanceof IntValue || value instanceof BoolValue
+          || value instanceof StringValue) {
+        key = value.getClass().getSimpleName() + ":" + value.getValue();
+      } else {
+        throw new IllegalArgumentException("The value '" + value + "' can't be written to an image.");
+      }
+      Integer index = constantIndices.get(key);
+      if (index == null) {
+        index = constants.size();
+        constants.add(value);
+        constantIndices.put(key, index);
+      }
+      return index;
+    }
+
+    private void emit(int... values) {
+      try {
+        code.writeByte(values[0]);
+        for (int i = 1; i < values.length; i++) {
+          code.writeInt(values[i]);
+        }
+      } catch (IOException ex) {
+        throw new UncheckedIOException(ex);
+      }
+    }
+
+    private void emit(Word word) {
+      Integer symbol = userWords.get(word);
+      if (symbol != null && word != definition) {
+        emit(WORD_CALL, symbol);
+      } else {
+        word.accept(this);
+      }
+    }
+
+    @Override
+    public void visitLiteral(LiteralWord word, Value<?> value) {
+      emit(WORD_LITERAL, constant(value));
+    }
+
+    @Override
+    public void visitPredefined(Word word, String name) {
+      emit(WORD_PREDEFINED, symbol(name));
+    }
+
+    @Override
+    public void visitMulti(MultiWord word, List<Word> words) {
+      emit(WORD_MULTI, words.size());
+      for (Word child : words) {
+        emit(child);
+      }
+    }
+
+    @Override
+    public void visitIf(IfWord word, MultiWord trueCase, MultiWord falseCase) {
+      emit(WORD_IF);
+      trueCase.accept(this);
+      falseCase.accept(this);
+    }
+
+    @Override
+    public void visitCountedLoop(CountedLoopWord word, MultiWord body) {
+      emit(WORD_COUNTED_LOOP);
+      body.accept(this);
+    }
+
+    @Override
+    public void visitGuardedLoop(GuardedLoopWord word, MultiWord body) {
+      emit(WORD_GUARDED_LOOP);
+      body.accept(this);
+    }
+
+    private static void writeName(DataOutputStream out, String name) throws IOException {
+      out.writeBoolean(name != null);
+      if (name != null) {
+        writeString(out, name);
+      }
+    }
+
+    private static void writeValue(DataOutputStream out, Value<?> value) throws IOException {
+      if (value instanceof IntValue) {
+        out.writeByte(VALUE_INT);
+        out.writeInt(((IntValue) value).getValue());
+      } else if (value instanceof BoolValue) {
+        out.writeByte(VALUE_BOOL);
+        out.writeBoolean(((BoolValue) value).getValue());
+      } else if (value instanceof VariableValue) {
+        out.writeByte(VALUE_VARIABLE);
+        writeString(out, ((VariableValue) value).getValue());
+        out.writeInt(((VariableValue) value).getSlot());
+      } else {
+        out.writeByte(VALUE_STRING);
+        writeString(out, ((StringValue) value).getValue());
+      }
+    }
+
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+      byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+      out.writeInt(bytes.length);
+      out.write(bytes);
+    }
+  }
+
+  /**
+   * Decodes and verifies an image whose checksum has been checked.
+   */
+  private static final class Reader {
+
+    private final DataInputStream in;
+
+    /**
+     * The number of bytes of the image that haven't been read, excluding the checksum.
+     */
+    private int remaining;
+
+    private Value<?>[] constants;
+
+    private String[] symbols;
+
+    private int wordCount;
+
+    /**
+     * The definition of each user-defined word. These are created before any body is read so
+     * calls can refer to words that are read later.
+     */
+    private MultiWord[] definitions;
+
+    private List<List<Word>> bodies;
+
+    /**
+     * The user-defined words called by each user-defined word.
+     */
+    private List<List<Integer>> calls;
+
+    private int current;
+
+    private int nesting;
+
+    Reader(byte[] image, int length) {
+      in = new DataInputStream(new ByteArrayInputStream(image, 0, length));
+      remaining = length;
+    }
+
+    ScriptData read() throws IOException {
+      if (readInt() != MAGIC) {
+        throw new InvalidScriptImageException("The data is not a script image.");
+      }
+      remaining -= 2;
+      int version = in.readUnsignedShort();
+      if (version != FORMAT_VERSION) {
+        throw new InvalidScriptImageException("The script image has version " + version
+            + " but only version " + FORMAT_VERSION + " is supported.");
+      }
+      String teamName = readName();
+      String scriptName = readName();
+
+      constants = new Value<?>[readCount(1)];
+      for (int i = 0; i < constants.length; i++) {
+        constants[i] = readValue();
+      }
+      wordCount = readCount(1);
+      symbols = new String[readCount(4)];
+      if (wordCount > symbols.length) {
+        throw new InvalidScriptImageException("The script image has more words than symbols.");
+      }
+      Map<String, Word> words = new HashMap<String, Word>();
+      definitions = new MultiWord[wordCount];
+      bodies = new ArrayList<List<Word>>(wordCount);
+      calls = new ArrayList<List<Integer>>(wordCount);
+      for (int i = 0; i < symbols.length; i++) {
+        symbols[i] = readString();
+        if (i < wordCount) {
+          List<Word> body = new ArrayList<Word>();
+          definitions[i] = new MultiWord(body);
+          bodies.add(body);
+          calls.add(new ArrayList<Integer>());
+          if (words.put(symbols[i], definitions[i]) != null) {
+            throw new InvalidScriptImageException(
+                "The script image defines '" + symbols[i] + "' more than once.");
+          }
+        } else if (!PredefinedWords.getInstance().hasWord(symbols[i])) {
+          throw new InvalidScriptImageException(
+              "The script image uses the unknown word '" + symbols[i] + "'.");
+        }
+      }
+
+      int variableCount = readCount(8);
+      Map<String, Value<?>> variables = new LinkedHashMap<String, Value<?>>();
+      List<String> names = new ArrayList<String>(variableCount);
+      for (int i = 0; i < variableCount; i++) {
+        String name = readString();
+        if (variables.put(name, readConstant()) != null) {
+          throw new InvalidScriptImageException(
+              "The script image declares the variable '" + name + "' more than once.");
+        }
+        names.add(name);
+      }
+      for (Value<?> constant : constants) {
+        if (constant instanceof VariableValue) {
+          int slot = ((VariableValue) constant).getSlot();
+          if (slot != VariableValue.UNRESOLVED && (slot < 0 || slot >= variableCount
+              || !names.get(slot).equals(constant.getValue()))) {
+            throw new InvalidScriptImageException("The script image refers to the variable '"
+                + constant.getValue() + "' with the wrong slot.");
+          }
+        }
+      }
+      Value<?>[] stack = new Value<?>[readCount(4)];
+      for (int i = 0; i < stack.length; i++) {
+        stack[i] = readConstant();
+      }
+
+      for (current = 0; current < wordCount; current++) {
+        readBody(bodies.get(current));
+      }
+      if (remaining != 0) {
+        throw new InvalidScriptImageException("The script image has trailing data.");
+      }
+      checkAcyclic();
+
+      StackEffects stackEffects;
+      try {
+        stackEffects = new StackVerifier().verify(words);
+      } catch (ScriptTypeException ex) {
+        throw new InvalidScriptImageException(
+            "The script image failed verification. " + ex.getMessage(), ex);
+      }
+      Program program;
+      try {
+        program = new Program(words, null, variables, Arrays.asList(stack), stackEffects);
+      } catch (IllegalArgumentException ex) {
+        throw new InvalidScriptImageException("The script image has no play word.", ex);
+      }
+      return program.newScript(teamName, scriptName);
+    }
+
+    /**
+     * Reads the body of a multi-word into a list.
+     */
+    private void readBody(List<Word> body) throws IOException {
+      if (readByte() != WORD_MULTI) {
+        throw new InvalidScriptImageException("The script image has a malformed word.");
+      }
+      int count = readCount(1);
+      for (int i = 0; i < count; i++) {
+        body.add(readWord());
+      }
+    }
+
+    private MultiWord readMulti() throws IOException {
+      if (++nesting > MAX_NESTING) {
+        throw new InvalidScriptImageException("The script image nests words too deeply.");
+      }
+      List<Word> body = new ArrayList<Word>();
+      readBody(body);
+      nesting--;
+      return new MultiWord(body);
+    }
+
+    private Word readWord() throws IOException {
+      int tag = readByte();
+      switch (tag) {
+        case WORD_LITERAL:
+          return new LiteralWord(readConstant());
+        case WORD_PREDEFINED: {
+          int symbol = readInt();
+          if (symbol < wordCount || symbol >= symbols.length) {
+            throw new InvalidScriptImageException("The script image has a malformed word.");
+          }
+          return PredefinedWords.getInstance().getWord(symbols[symbol]);
+        }
+        case WORD_CALL: {
+          int symbol = readInt();
+          if (symbol < 0 || symbol >= wordCount) {
+            throw new InvalidScriptImageException("The script image has a malformed word.");
+          }
+          calls.get(current).add(symbol);
+          return definitions[symbol];
+        }
+        case WORD_MULTI: {
+          // Nested multi-words are read from the tag that was already consumed
+          if (++nesting > MAX_NESTING) {
+            throw new InvalidScriptImageException("The script image nests words too deeply.");
+          }
+          int count = readCount(1);
+          List<Word> body = new ArrayList<Word>(count);
+          for (int i = 0; i < count; i++) {
+            body.add(readWord());
+          }
+          nesting--;
+          return new MultiWord(body);
+        }
+        case WORD_IF: {
+          MultiWord trueCase = readMulti();
+          return new IfWord(trueCase, readMulti());
+        }
+        case WORD_COUNTED_LOOP:
+          return new CountedLoopWord(readMulti());
+        case WORD_GUARDED_LOOP:
+          return new GuardedLoopWord(readMulti());
+        default:
+          throw new InvalidScriptImageException("The script image has a malformed word.");
+      }
+    }
+
+    /**
+     * Checks that no user-defined word calls itself directly or through other words, since words
+     * built from source are always defined before they are used.
+     */
+    private void checkAcyclic() throws InvalidScriptImageException {
+      // 0 is unvisited, 1 is being visited, and 2 is finished
+      int[] states = new int[wordCount];
+      for (int i = 0; i < wordCount; i++) {
+        if (states[i] == 0) {
+          visit(i, states);
+        }
+      }
+    }
+
+    private void visit(int word, int[] states) throws InvalidScriptImageException {
+      // Iterate with an explicit stack so long call chains can't exhaust the reader's stack
+      List<int[]> frames = new ArrayList<int[]>();
+      frames.add(new int[] {word, 0});
+      states[word] = 1;
+      while (!frames.isEmpty()) {
+        int[] frame = frames.get(frames.size() - 1);
+        List<Integer> callees = calls.get(frame[0]);
+        if (frame[1] == callees.size()) {
+          states[frame[0]] = 2;
+          frames.remove(frames.size() - 1);
+          continue;
+        }
+        int callee = callees.get(frame[1]++);
+        if (states[callee] == 1) {
+          throw new InvalidScriptImageException(
+              "The script image has the recursive word '" + symbols[callee] + "'.");
+        }
+        if (states[callee] == 0) {
+          states[callee] = 1;
+          frames.add(new int[] {callee, 0});
+        }
+      }
+    }
+
+    private Value<?> readValue() throws IOException {
+      int tag = readByte();
+      switch (tag) {
+        case VALUE_INT:
+          return IntValue.of(readInt());
+        case VALUE_BOOL:
+          return BoolValue.of(readByte() != 0);
+        case VALUE_STRING:
+          return new StringValue(readString());
+        case VALUE_VARIABLE: {
+          String name = readString();
+          return new VariableValue(name, readInt());
+        }
+        default:
+          throw new InvalidScriptImageException("The script image has a malformed constant.");
+      }
+    }
+
+    private Value<?> readConstant() throws IOException {
+      int index = readInt();
+      if (index < 0 || index >= constants.length) {
+        throw new InvalidScriptImageException("The script image has a malformed constant.");
+      }
+      return constants[index];
+    }
+
+    private String readName() throws IOException {
+      return readByte() != 0 ? readString() : null;
+    }
+
+    private String readString() throws IOException {
+      byte[] bytes = new byte[readCount(1)];
+      in.readFully(bytes);
+      remaining -= bytes.length;
+      try {
+        return StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPORT)
+            .onUnmappableCharacter(CodingErrorAction.REPORT)
+            .decode(ByteBuffer.wrap(bytes))
+            .toString();
+      } catch (CharacterCodingException ex) {
+        throw new InvalidScriptImageException("The script image has a malformed string.", ex);
+      }
+    }
+
+    /**
+     * Reads a count and checks that the image is large enough to hold that many items.
+     *
+     * @param itemSize The fewest bytes each item takes.
+     */
+    private int readCount(int itemSize) throws IOException {
+      int count = readInt();
+      if (count < 0 || (long) count * itemSize > remaining) {
+        throw new InvalidScriptImageException("The script image has a malformed count.");
+      }
+      return count;
+    }
+
+    private int readInt() throws IOException {
+      remaining -= 4;
+      return in.readInt();
+    }
+
+    private int readByte() throws IOException {
+      remaining -= 1;
+      return in.readUnsignedByte();
+    }
+  }
+}
@@ -1,19 +1,37 @@
 package com.kerr.interpreter.controller;
 
-import java.io.BufferedInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.ProviderNotFoundException;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
 
 /**
- * Load a forth script from file and return the string representation of it. This is used
- * exclusively for loading the default script from file.
- * 
+ * Loads forth scripts from file. Scripts are read in bulk with channels, memory-mapping large files,
+ * and are decoded as UTF-8. A whole directory or jar of scripts can be loaded in one call.
+ *
  * @author allankerr
  *
  */
-class ScriptLoader {
+public final class ScriptLoader {
 
   /**
    * The default extension for forth scripts.
@@ -21,26 +39,166 @@ class ScriptLoader {
   private static final String SCRIPT_EXTENSION = ".fs";
 
   /**
-   * Loads the script as a string from file using the default resources directory.
-   * 
+   * The size in bytes from which files are memory-mapped rather than read. Mapping only pays for
+   * itself once the file is large enough to outweigh the cost of setting up the mapping.
+   */
+  static final long MAP_THRESHOLD = 1 << 20;
+
+  private ScriptLoader() {
+
+  }
+
+  /**
+   * Opens the script from file using the default resources directory. The script is streamed
+   * rather than read into memory so it can be tokenized as it is read.
+   *
    * @param fileName The file name of the forth script excluding the ".fs" extension.
-   * @return The string representation of the forth script with the specified file name
+   * @return A reader for the forth script with the specified file name that must be closed.
    * @throws URISyntaxException Thrown if the file name results in an invalid URI.
    * @throws IOException Thrown if the file cannot be found.
    */
-  public static String load(String fileName) throws URISyntaxException, IOException {
+  static Reader open(String fileName) throws URISyntaxException, IOException {
     ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
     InputStream input = classLoader.getResourceAsStream(fileName + SCRIPT_EXTENSION);
     if (input == null) {
       throw new IOException("Unable to find forth script " + fileName);
     }
-    BufferedInputStream inputSteam = new BufferedInputStream(input);
-    ByteArrayOutputStream output = new ByteArrayOutputStream();
-    int result = inputSteam.read();
-    while(result != -1) {
-        output.write((byte) result);
-        result = inputSteam.read();
+    return new InputStreamReader(input, StandardCharsets.UTF_8.newDecoder()
+        .onMalformedInput(CodingErrorAction.REPORT)
+        .onUnmappableCharacter(CodingErrorAction.REPORT));
+  }
+
+  /**
+   * Loads a single script from file.
+   *
+   * @param file The forth script to load.
+   * @return The loaded script named after the file without its extension.
+   * @throws IOException Thrown if the file cannot be read or isn't valid UTF-8.
+   * @throws IllegalArgumentException Thrown if file is null.
+   */
+  public static LoadedScript load(Path file) throws IOException {
+    if (file == null) {
+      throw new IllegalArgumentException("Attempted to load a script from a null file.");
+    }
+    return load(file, file.getFileName().toString());
+  }
+
+  /**
+   * Loads every script with the ".fs" extension in a directory or jar, including those in nested
+   * directories. Scripts are returned in order of their names.
+   *
+   * @param path The directory or jar file to load the scripts from.
+   * @return The loaded scripts named after their paths relative to the directory or jar without
+   *         their extensions.
+   * @throws IOException Thrown if the path is neither a directory nor a jar or if the directory or
+   *         jar or any of its scripts cannot be read.
+   * @throws IllegalArgumentException Thrown if path is null.
+   */
+  public static List<LoadedScript> loadAll(Path path) throws IOException {
+    if (path == null) {
+      throw new IllegalArgumentException("Attempted to load scripts from a null path.");
+    }
+    if (Files.isDirectory(path)) {
+      return loadTree(path);
+    }
+    try (FileSystem jar = openJar(path)) {
+      return loadTree(jar.getPath("/"));
+    }
+  }
+
+  /**
+   * Opens a jar as a file system.
+   *
+   * @throws IOException Thrown if the jar can't be read or the path isn't a jar.
+   */
+  private static FileSystem openJar(Path path) throws IOException {
+    try {
+      return FileSystems.newFileSystem(path, (ClassLoader) null);
+    } catch (ProviderNotFoundException ex) {
+      throw new IOException("'" + path + "' is neither a directory nor a jar file.", ex);
+    }
+  }
+
+  private static List<LoadedScript> loadTree(final Path root) throws IOException {
+    final List<LoadedScript> scripts = new ArrayList<LoadedScript>();
+    Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+      @Override
+      public FileVisitResult visitFile(Path file, BasicFileAttributes attributes)
+          throws IOException {
+        if (attributes.isRegularFile()
+            && file.getFileName().toString().endsWith(SCRIPT_EXTENSION)) {
+          String name = root.relativize(file).toString();
+          scripts.add(load(file, name.replace(file.getFileSystem().getSeparator(), "/")));
+        }
+        return FileVisitResult.CONTINUE;
+      }
+    });
+    Collections.sort(scripts, new Comparator<LoadedScript>() {
+      @Override
+      public int compare(LoadedScript a, LoadedScript b) {
+        return a.getName().compareTo(b.getName());
+      }
+    });
+    return scripts;
+  }
+
+  /**
+   * Reads and decodes a script.
+   *
+   * @param file The forth script to load.
+   * @param name The name of the script including the ".fs" extension if it has one.
+   * @return The loaded script.
+   * @throws IOException Thrown if the file cannot be read or isn't valid UTF-8.
+   */
+  private static LoadedScript load(Path file, String name) throws IOException {
+    long start = System.nanoTime();
+    ByteBuffer bytes;
+    long size;
+    if (file.getFileSystem() == FileSystems.getDefault()) {
+      try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+        size = checkSize(channel.size());
+        bytes = size >= MAP_THRESHOLD ? channel.map(FileChannel.MapMode.READ_ONLY, 0, size)
+            : read(channel, size);
+      }
+    } else {
+      // Files in a jar are compressed so they can't be mapped
+      try (SeekableByteChannel channel = Files.newByteChannel(file)) {
+        size = checkSize(channel.size());
+        bytes = read(channel, size);
+      }
+    }
+    String script = StandardCharsets.UTF_8.newDecoder()
+        .onMalformedInput(CodingErrorAction.REPORT)
+        .onUnmappableCharacter(CodingErrorAction.REPORT)
+        .decode(bytes)
+        .toString();
+    if (name.endsWith(SCRIPT_EXTENSION)) {
+      name = name.substring(0, name.length() - SCRIPT_EXTENSION.length());
+    }
+    return new LoadedScript(name, script, size, System.nanoTime() - start);
+  }
+
+  /**
+   * Reads the whole of a channel into a buffer.
+   *
+   * @param channel The channel to read.
+   * @param size The number of bytes in the channel.
+   * @return The buffer ready to be decoded.
+   * @throws IOException Thrown if the channel cannot be read.
+   */
+  private static ByteBuffer read(SeekableByteChannel channel, long size) throws IOException {
+    ByteBuffer bytes = ByteBuffer.allocate((int) size);
+    while (bytes.hasRemaining() && channel.read(bytes) >= 0) {
+      // Keep reading until the buffer is full or the channel ends
+    }
+    bytes.flip();
+    return bytes;
+  }
+
+  private static long checkSize(long size) throws IOException {
+    if (size > Integer.MAX_VALUE) {
+      throw new IOException("The forth script is too large to be loaded.");
     }
-    return output.toString();
+    return size;
   }
 }
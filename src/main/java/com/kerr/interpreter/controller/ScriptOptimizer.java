@@ -0,0 +1,359 @@
+package com.kerr.interpreter.controller;
+
+import com.kerr.interpreter.model.BoolValue;
+import com.kerr.interpreter.model.IntValue;
+import com.kerr.interpreter.model.StringValue;
+import com.kerr.interpreter.model.Value;
+import com.kerr.interpreter.words.CountedLoopWord;
+import com.kerr.interpreter.words.DefinitionOrder;
+import com.kerr.interpreter.words.GuardedLoopWord;
+import com.kerr.interpreter.words.IfWord;
+import com.kerr.interpreter.words.LiteralWord;
+import com.kerr.interpreter.words.MultiWord;
+import com.kerr.interpreter.words.Word;
+import com.kerr.interpreter.words.WordVisitor;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Optimizes the word-trees of a built script before it is executed. Arithmetic, comparison, logic
+ * and stack words whose operands are all literals are folded into literals, user-defined words
+ * that only push literals are replaced by their literals, small user-defined words are inlined
+ * into their callers, and if-statements whose condition is a literal are replaced by the branch
+ * that is always taken. Only literals are removed or combined
+ * so words with side effects are always executed in their original order. The words as built are
+ * never modified.
+ * 
+ * @author allankerr
+ *
+ */
+class ScriptOptimizer implements WordVisitor {
+
+  /**
+   * The default number of words that inlining may add to a script.
+   */
+  static final int DEFAULT_INLINE_BUDGET = 64;
+
+  /**
+   * The largest user-defined word that is inlined measured in words including the words of nested
+   * bodies.
+   */
+  private static final int MAX_INLINE_SIZE = 8;
+
+  /**
+   * The number of words that inlining may still add to the script being optimized.
+   */
+  private int budget;
+
+  /**
+   * The user-defined words as built keyed by their multi-word.
+   */
+  private Map<Word, String> userWords;
+
+  /**
+   * The optimized multi-word of each user-defined word that has been optimized keyed by the
+   * multi-word as built.
+   */
+  private Map<Word, MultiWord> optimized;
+
+  /**
+   * The literals pushed by each optimized user-defined word whose optimized body only contains
+   * literals keyed by the multi-word as built.
+   */
+  private Map<Word, List<Value<?>>> constants;
+
+  /**
+   * The user-defined word being optimized.
+   */
+  private Word definition;
+
+  /**
+   * The optimized words of the body being optimized.
+   */
+  private List<Word> output;
+
+  /**
+   * The value of each optimized word of the body if it is a literal or null if it isn't.
+   */
+  private List<Value<?>> values;
+
+  /**
+   * The value of each word of the body that was optimized last.
+   */
+  private List<Value<?>> bodyValues;
+
+  /**
+   * The size of the optimized body of each user-defined word keyed by the multi-word as built.
+   */
+  private Map<Word, Integer> sizes;
+
+  /**
+   * The number of words in the body being optimized including the words of nested bodies.
+   */
+  private int size;
+
+  /**
+   * The size of the body that was optimized last.
+   */
+  private int bodySize;
+
+  /**
+   * Constructs a new optimizer.
+   * 
+   * @param budget The number of words inlining may add to each script. Inlining is disabled if the
+   *        budget is zero.
+   * @throws IllegalArgumentException Thrown if budget is negative.
+   */
+  public ScriptOptimizer(int budget) {
+    if (budget < 0) {
+      throw new IllegalArgumentException("The inline budget must not be negative.");
+    }
+    this.budget = budget;
+  }
+
+  /**
+   * Optimizes the user-defined words of a built script.
+   * 
+   * @param words The user-defined words as built keyed by their names.
+   * @return The optimized user-defined words keyed by their names.
+   */
+  public Map<String, Word> optimize(Map<String, Word> words) {
+    userWords = new IdentityHashMap<Word, String>();
+    optimized = new IdentityHashMap<Word, MultiWord>();
+    constants = new IdentityHashMap<Word, List<Value<?>>>();
+    sizes = new IdentityHashMap<Word, Integer>();
+    for (Map.Entry<String, Word> entry : words.entrySet()) {
+      userWords.put(entry.getValue(), entry.getKey());
+    }
+    for (Word word : DefinitionOrder.sort(words.values())) {
+      optimizeWord(word);
+    }
+    Map<String, Word> result = new HashMap<String, Word>();
+    for (Map.Entry<String, Word> entry : words.entrySet()) {
+      result.put(entry.getKey(), optimized.get(entry.getValue()));
+    }
+    return result;
+  }
+
+  /**
+   * Optimizes a user-defined word whose callees have all been optimized.
+   * 
+   * @param word The user-defined word as built.
+   */
+  private void optimizeWord(Word word) {
+    definition = word;
+    optimized.put(word, optimizeBody(word));
+    sizes.put(word, bodySize);
+    if (!bodyValues.contains(null)) {
+      constants.put(word, bodyValues);
+    }
+  }
+
+  /**
+   * Optimizes the body of a user-defined word or control statement into a new multi-word.
+   * 
+   * @param body The body as built.
+   * @return The optimized body.
+   */
+  private MultiWord optimizeBody(Word body) {
+    List<Word> savedOutput = output;
+    List<Value<?>> savedValues = values;
+    int savedSize = size;
+    output = new ArrayList<Word>();
+    values = new ArrayList<Value<?>>();
+    size = 0;
+    body.accept(this);
+    MultiWord result = new MultiWord(output);
+    bodyValues = values;
+    bodySize = size;
+    output = savedOutput;
+    values = savedValues;
+    size = savedSize;
+    return result;
+  }
+
+  @Override
+  public void visitLiteral(LiteralWord word, Value<?> value) {
+    append(word, value);
+  }
+
+  @Override
+  public void visitPredefined(Word word, String name) {
+    if (!fold(name)) {
+      append(word, null);
+    }
+  }
+
+  @Override
+  public void visitMulti(MultiWord word, List<Word> words) {
+    if (word != definition && userWords.containsKey(word)) {
+      MultiWord callee = optimized.get(word);
+      List<Value<?>> literals = constants.get(word);
+      int calleeSize = sizes.get(word);
+      if (literals != null) {
+        // The word only pushes literals so its literals are used in place of the call
+        for (Value<?> literal : literals) {
+          push(literal);
+        }
+      } else if (calleeSize <= MAX_INLINE_SIZE && calleeSize <= budget) {
+        // The word's body is optimized again in place so it is folded with the surrounding words
+        budget -= calleeSize;
+        for (Word child : words) {
+          child.accept(this);
+        }
+      } else {
+        append(callee, null);
+      }
+      return;
+    }
+    for (Word child : words) {
+      child.accept(this);
+    }
+  }
+
+  @Override
+  public void visitIf(IfWord word, MultiWord trueCase, MultiWord falseCase) {
+    Value<?> condition = constant(0);
+    if (condition instanceof BoolValue) {
+      // Only the branch that is always taken is kept and it is folded with the surrounding words
+      remove(1);
+      if (((BoolValue) condition).getValue()) {
+        trueCase.accept(this);
+      } else {
+        falseCase.accept(this);
+      }
+      return;
+    }
+    MultiWord trueBody = optimizeBody(trueCase);
+    int trueSize = bodySize;
+    MultiWord falseBody = optimizeBody(falseCase);
+    append(new IfWord(trueBody, falseBody), null);
+    size += trueSize + bodySize;
+  }
+
+  @Override
+  public void visitCountedLoop(CountedLoopWord word, MultiWord body) {
+    append(new CountedLoopWord(optimizeBody(body)), null);
+    size += bodySize;
+  }
+
+  @Override
+  public void visitGuardedLoop(GuardedLoopWord word, MultiWord body) {
+    append(new GuardedLoopWord(optimizeBody(body)), null);
+    size += bodySize;
+  }
+
+  /**
+   * Folds a predefined word into the literals before it if the word has no side effects and all of
+   * its operands are literals of the expected types.
+   * 
+   * @param name The name of the predefined word.
+   * @return True if the word was folded; otherwise, false.
+   */
+  private boolean fold(String name) {
+    Value<?> val1 = constant(0);
+    Value<?> val2 = constant(1);
+    Value<?> val3 = constant(2);
+    switch (name) {
+      case "drop":
+      case "pop":
+        return val1 != null && remove(1);
+      case "dup":
+        return val1 != null && push(val1);
+      case "swap":
+        return val2 != null && remove(2) && push(val1) && push(val2);
+      case "rot":
+        return val3 != null && remove(3) && push(val2) && push(val1) && push(val3);
+      case "invert":
+        return val1 instanceof BoolValue && remove(1)
+            && push(BoolValue.of(!((BoolValue) val1).getValue()));
+      case "=":
+      case "<>":
+        if (!isComparable(val1) || !isComparable(val2)) {
+          return false;
+        }
+        boolean equal = val1.getValue().equals(val2.getValue());
+        return remove(2) && push(BoolValue.of(name.equals("=") ? equal : !equal));
+      case "and":
+      case "or":
+        if (!(val1 instanceof BoolValue) || !(val2 instanceof BoolValue)) {
+          return false;
+        }
+        boolean bool1 = ((BoolValue) val1).getValue();
+        boolean bool2 = ((BoolValue) val2).getValue();
+        return remove(2) && push(BoolValue.of(name.equals("and") ? bool1 && bool2 : bool1 || bool2));
+      default:
+        break;
+    }
+    if (!(val1 instanceof IntValue) || !(val2 instanceof IntValue)) {
+      return false;
+    }
+    int int1 = ((IntValue) val1).getValue();
+    int int2 = ((IntValue) val2).getValue();
+    switch (name) {
+      case "+":
+        return remove(2) && push(IntValue.of(int1 + int2));
+      case "-":
+        return remove(2) && push(IntValue.of(int2 - int1));
+      case "*":
+        return remove(2) && push(IntValue.of(int1 * int2));
+      case "/mod":
+        // Division by zero is left to fail when the script is executed
+        return int1 != 0 && remove(2) && push(IntValue.of(int2 % int1))
+            && push(IntValue.of(int2 / int1));
+      case "<":
+        return remove(2) && push(BoolValue.of(int2 < int1));
+      case "<=":
+        return remove(2) && push(BoolValue.of(int2 <= int1));
+      case ">":
+        return remove(2) && push(BoolValue.of(int2 > int1));
+      case "=>":
+        return remove(2) && push(BoolValue.of(int2 >= int1));
+      default:
+        return false;
+    }
+  }
+
+  private static boolean isComparable(Value<?> value) {
+    return value instanceof IntValue || value instanceof BoolValue || value instanceof StringValue;
+  }
+
+  /**
+   * Gets the value of one of the literals at the end of the optimized body.
+   * 
+   * @param depth The number of words from the end of the body with the last word at depth 0.
+   * @return The value of the literal or null if the word at the depth isn't a literal.
+   */
+  private Value<?> constant(int depth) {
+    for (int i = 0; i <= depth; i++) {
+      int index = values.size() - 1 - i;
+      if (index < 0 || values.get(index) == null) {
+        return null;
+      }
+    }
+    return values.get(values.size() - 1 - depth);
+  }
+
+  private boolean push(Value<?> value) {
+    return append(new LiteralWord(value), value);
+  }
+
+  private boolean append(Word word, Value<?> value) {
+    output.add(word);
+    values.add(value);
+    size++;
+    return true;
+  }
+
+  private boolean remove(int count) {
+    for (int i = 0; i < count; i++) {
+      output.remove(output.size() - 1);
+      values.remove(values.size() - 1);
+    }
+    size -= count;
+    return true;
+  }
+}
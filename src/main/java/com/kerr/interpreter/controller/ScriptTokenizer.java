@@ -1,15 +1,23 @@
 package com.kerr.interpreter.controller;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
 import java.util.InputMismatchException;
-import java.util.LinkedList;
-import java.util.List;
 import java.util.NoSuchElementException;
-import java.util.Scanner;
-import java.util.regex.Pattern;
 
 /**
  * This class is responsible for breaking scripts up into the raw tokens that they consist of. The
- * list of tokens that result can be found in the ScriptToken enum.
+ * list of tokens that result can be found in the ScriptToken enum. Tokens are separated by
+ * whitespace and each token is classified in a single pass over the script's characters.
+ * 
+ * Scripts may be read from a Reader or channel through a fixed-size buffer so tokens are produced
+ * as the script is read and memory stays bounded regardless of the size of the script. Only the
+ * characters of the current token are kept once it has been parsed.
  * 
  * @author allankerr
  *
@@ -17,23 +25,9 @@ import java.util.regex.Pattern;
 class ScriptTokenizer {
 
   /**
-   * A pattern to change the scanner to during parsing script patterns based on the ScriptPattern
-   * class. This pattern includes whitespace so as to not lose it in the body of complex patterns
-   * that represent singular tokens.
-   */
-  private static final Pattern LOOKAROUND_DELIMITER = Pattern.compile("(?=(\\s+))");
-
-  /**
-   * The complex pattern used to match strings within the script being parsed.
-   */
-  private static final ScriptPattern STRING_PATTERN =
-      new ScriptPattern(ScriptToken.STRING, "\\.\".*", ".*\"", "\\.\".*\"", 2, 1);
-
-  /**
-   * The complex pattern used to match comments within the script being parsed.
+   * The largest magnitude of a negative integer token.
    */
-  private static final ScriptPattern COMMENT_PATTERN =
-      new ScriptPattern(ScriptToken.COMMENT, "\\(.*", ".*\\)", "\\(.*\\)", 1, 1);
+  private static final long MAX_MAGNITUDE = -(long) Integer.MIN_VALUE;
 
   /**
    * The value of the token that was most recently parsed using next. It may be an integer, boolean,
@@ -47,9 +41,50 @@ class ScriptTokenizer {
    */
   private ScriptToken token;
 
-  private Scanner scanner;
+  /**
+   * The number of characters that are read from a Reader or channel at a time.
+   */
+  static final int BUFFER_SIZE = 8192;
+
+  /**
+   * The source of the script's characters or null if the whole script is in the buffer.
+   */
+  private final Reader reader;
+
+  /**
+   * The characters of the script that have been read but not parsed.
+   */
+  private final char[] buffer;
 
-  private List<ScriptPattern> patterns;
+  /**
+   * The index of the next character in the buffer to be parsed.
+   */
+  private int position;
+
+  /**
+   * The number of characters in the buffer.
+   */
+  private int limit;
+
+  /**
+   * The offset in the script of the first character in the buffer.
+   */
+  private long bufferOffset;
+
+  /**
+   * The characters of the token or string part that is being parsed.
+   */
+  private char[] text = new char[64];
+
+  /**
+   * The number of characters in text.
+   */
+  private int length;
+
+  /**
+   * The offset in the script of the first character of the last scanned token.
+   */
+  private long tokenOffset = -1;
 
   /**
    * The integer value of the last scanned token.
@@ -129,6 +164,15 @@ class ScriptTokenizer {
     return (String)value;
   }
 
+  /**
+   * The offset of the last scanned token from the start of the script in characters.
+   * 
+   * @return The offset of the token's first character or -1 if no token has been scanned.
+   */
+  public long getTokenOffset() {
+    return tokenOffset;
+  }
+
   /**
    * Construct a tokenizer for parsing the specified script.
    * @param script The string representation of the script to be parsed.
@@ -138,24 +182,60 @@ class ScriptTokenizer {
     if (script == null) {
       throw new IllegalArgumentException("Script tokenizer must be initialized with a non-null script.");
     }
-    scanner = new Scanner(script);
-    patterns = new LinkedList<ScriptPattern>();
-    patterns.add(STRING_PATTERN);
-    patterns.add(COMMENT_PATTERN);
+    reader = null;
+    buffer = script.toCharArray();
+    limit = buffer.length;
+  }
+
+  /**
+   * Construct a tokenizer for parsing a script as it is read. The reader is not closed by the
+   * tokenizer.
+   * @param reader The reader the script's characters are read from.
+   * @throws IllegalArgumentException Thrown if the reader is null.
+   */
+  public ScriptTokenizer(Reader reader) {
+    if (reader == null) {
+      throw new IllegalArgumentException("Script tokenizer must be initialized with a non-null reader.");
+    }
+    this.reader = reader;
+    buffer = new char[BUFFER_SIZE];
+  }
+
+  /**
+   * Construct a tokenizer for parsing a script as it is read from a channel. The channel is not
+   * closed by the tokenizer.
+   * @param channel The channel the script's bytes are read from.
+   * @param charset The character set the script is encoded in.
+   * @throws IllegalArgumentException Thrown if the channel or character set is null.
+   */
+  public ScriptTokenizer(ReadableByteChannel channel, Charset charset) {
+    this(newReader(channel, charset));
+  }
+
+  private static Reader newReader(ReadableByteChannel channel, Charset charset) {
+    if (channel == null || charset == null) {
+      throw new IllegalArgumentException("Script tokenizer must be initialized with a non-null channel and charset.");
+    }
+    return Channels.newReader(channel, charset.newDecoder(), BUFFER_SIZE);
   }
 
   /**
    * Determines whether or not there is another token left to parse.
    * @return True if there is a next token or false if all the tokens have been parsed.
+   * @throws UncheckedIOException Thrown if the script couldn't be read.
    */
   public boolean hasNext() {
-    return scanner.hasNext();
+    while (fill() && Character.isWhitespace(buffer[position])) {
+      position++;
+    }
+    return position < limit;
   }
 
   /**
    * Parses the next token in the script.
    * @return The type of the next token that was parsed.
    * @throws NoSuchElementException Thrown if the script does not have a next element.
+   * @throws UncheckedIOException Thrown if the script couldn't be read.
    */
   public ScriptToken nextToken() {
     // Keep track of the current token type for input checking
@@ -169,100 +249,235 @@ class ScriptTokenizer {
    * @throws NoSuchElementException Thrown if the script does not have a next element.
    */
   private ScriptToken getNextToken() {
-    if (!scanner.hasNext()) {
+    if (!hasNext()) {
       throw new NoSuchElementException();
     }
-    if (scanner.hasNextInt()) {
-      value = scanner.nextInt();
+    tokenOffset = bufferOffset + position;
+    length = 0;
+    readToken();
+    if (parseInt()) {
       return ScriptToken.INTEGER;
-    } else if (scanner.hasNextBoolean()) {
-      value = scanner.nextBoolean();
+    }
+    if (equalsIgnoreCase("true")) {
+      value = true;
       return ScriptToken.BOOLEAN;
-    } else if (scanner.hasNext(ScriptToken.BLOCK_START.toString())) {
-      scanner.next();
-      return ScriptToken.BLOCK_START;
-    } else if (scanner.hasNext(ScriptToken.BLOCK_END.toString())) {
-      scanner.next();
-      return ScriptToken.BLOCK_END;
-    } else if (scanner.hasNext(ScriptToken.VARIABLE.toString())) {
-      // Skip the variable token to get its name
-      scanner.next();
-      value = scanner.next();
-      return ScriptToken.VARIABLE;
-    } else if (scanner.hasNext(ScriptToken.IF_STATEMENT.toString())) {
-      scanner.next();
-      return ScriptToken.IF_STATEMENT;
-    } else if (scanner.hasNext(ScriptToken.ELSE_STATEMENT.toString())) {
-      scanner.next();
-      return ScriptToken.ELSE_STATEMENT;
-    } else if (scanner.hasNext(ScriptToken.THEN_STATEMENT.toString())) {
-      scanner.next();
-      return ScriptToken.THEN_STATEMENT;
-    } else if (scanner.hasNext(ScriptToken.DO_STATEMENT.toString())) {
-      scanner.next();
-      return ScriptToken.DO_STATEMENT;
-    } else if (scanner.hasNext(ScriptToken.LOOP_STATEMENT.toString())) {
-      scanner.next();
-      return ScriptToken.LOOP_STATEMENT;
-    } else if (scanner.hasNext(ScriptToken.BEGIN_STATEMENT.toString())) {
-      scanner.next();
-      return ScriptToken.BEGIN_STATEMENT;
-    } else if (scanner.hasNext(ScriptToken.UNTIL_STATEMENT.toString())) {
-      scanner.next();
-      return ScriptToken.UNTIL_STATEMENT;
-    } else {
-      boolean foundMatch = false;
-      ScriptPattern pattern = null;
-      for (int i = 0; (i < patterns.size()) && !foundMatch; i++) {
-        pattern = patterns.get(i);
-        foundMatch = scanner.hasNext(pattern.getStartPattern());
+    } else if (equalsIgnoreCase("false")) {
+      value = false;
+      return ScriptToken.BOOLEAN;
+    }
+    String word = new String(text, 0, length);
+    switch (word) {
+      case ":":
+        return ScriptToken.BLOCK_START;
+      case ";":
+        return ScriptToken.BLOCK_END;
+      case "variable":
+        // Skip the variable token to get its name
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        length = 0;
+        readToken();
+        value = new String(text, 0, length);
+        return ScriptToken.VARIABLE;
+      case "if":
+        return ScriptToken.IF_STATEMENT;
+      case "else":
+        return ScriptToken.ELSE_STATEMENT;
+      case "then":
+        return ScriptToken.THEN_STATEMENT;
+      case "do":
+        return ScriptToken.DO_STATEMENT;
+      case "loop":
+        return ScriptToken.LOOP_STATEMENT;
+      case "begin":
+        return ScriptToken.BEGIN_STATEMENT;
+      case "until":
+        return ScriptToken.UNTIL_STATEMENT;
+      default:
+        break;
+    }
+    if (length >= 2 && text[0] == '.' && text[1] == '"' && isSingleLine(2)) {
+      value = parseDelimited(2, '"');
+      return ScriptToken.STRING;
+    }
+    if (text[0] == '(' && isSingleLine(1)) {
+      value = parseDelimited(1, ')');
+      return ScriptToken.COMMENT;
+    }
+    value = word;
+    return ScriptToken.WORD;
+  }
+
+  /**
+   * Parses a string or comment whose first token is in text. If the first token doesn't end with
+   * the terminating character then the following whitespace and tokens are included until a token
+   * on the same line ends with the terminating character.
+   * 
+   * @param startLength The number of characters that start the string or comment.
+   * @param terminator The character that ends the string or comment.
+   * @return The content of the string or comment.
+   * @throws NoSuchElementException Thrown if the script ends before the terminating character.
+   */
+  private String parseDelimited(int startLength, char terminator) {
+    if (length > startLength && text[length - 1] == terminator) {
+      // The string or comment didn't include any white spaces
+      return new String(text, startLength, length - startLength - 1);
+    }
+    StringBuilder builder = new StringBuilder();
+    builder.append(text, startLength, length - startLength);
+
+    // Each following part is a single whitespace character and the characters up to the next one
+    while (true) {
+      if (!fill()) {
+        throw new NoSuchElementException();
+      }
+      text[0] = buffer[position++];
+      length = 1;
+      readToken();
+      if (text[length - 1] == terminator && isSingleLine(0)) {
+        builder.append(text, 0, length - 1);
+        return builder.toString();
+      }
+      builder.append(text, 0, length);
+    }
+  }
+
+  /**
+   * Parses the integer token in text. Integers may start with a sign and group their digits with
+   * commas.
+   * 
+   * @return True if the token is an integer that fits in an int; otherwise, false.
+   */
+  private boolean parseInt() {
+    int index = 0;
+    boolean negative = text[index] == '-';
+    if (negative || text[index] == '+') {
+      index++;
+    }
+    if (index == length) {
+      return false;
+    }
+    boolean grouped = false;
+    int groupLength = 0;
+    long magnitude = 0;
+    for (int i = index; i < length; i++) {
+      char c = text[i];
+      if (c == ',') {
+        // Groups follow one to three leading digits that don't start with zero
+        if (grouped ? groupLength != 3
+            : groupLength < 1 || groupLength > 3 || text[index] == '0') {
+          return false;
+        }
+        grouped = true;
+        groupLength = 0;
+        continue;
+      }
+      int digit = Character.digit(c, 10);
+      if (digit < 0) {
+        return false;
+      }
+      magnitude = magnitude * 10 + digit;
+      if (magnitude > MAX_MAGNITUDE) {
+        return false;
+      }
+      groupLength++;
+    }
+    if (grouped && groupLength != 3 || !negative && magnitude > Integer.MAX_VALUE) {
+      return false;
+    }
+    value = (int) (negative ? -magnitude : magnitude);
+    return true;
+  }
+
+  /**
+   * Appends the characters up to the next whitespace character or the end of the script to text.
+   * Tokens may span several reads of the buffer.
+   */
+  private void readToken() {
+    while (fill()) {
+      int start = position;
+      while (position < limit && !Character.isWhitespace(buffer[position])) {
+        position++;
+      }
+      int count = position - start;
+      if (length + count > text.length) {
+        text = Arrays.copyOf(text, Math.max(text.length * 2, length + count));
       }
-      if (foundMatch) {
-        value = parsePattern(pattern);
-        return pattern.getScriptToken();
-      } else {
-        value = scanner.next();
-        return ScriptToken.WORD;
+      System.arraycopy(buffer, start, text, length, count);
+      length += count;
+      if (position < limit) {
+        return;
       }
     }
   }
 
   /**
-   * Parses a complex token encountered within the script.
-   * @param pattern The pattern of complex token found within the script
-   *    based on matching its start pattern.
-   * @return The string representation of the parsed pattern.
+   * Reads more of the script into the buffer if all of the characters in it have been parsed.
+   * 
+   * @return True if there are characters left to parse; otherwise, false.
+   * @throws UncheckedIOException Thrown if the script couldn't be read.
    */
-  private String parsePattern(ScriptPattern pattern) {
-    if (scanner.hasNext(pattern.getWholePattern())) {
-      // The pattern didn't include any white spaces
-      String match = scanner.next(pattern.getWholePattern());
-      return match.substring(pattern.getStartLength(), match.length() - pattern.getEndLength());
-    } else {
-
-      // Parse while including white spaces
-      String part = scanner.next(pattern.getStartPattern());
-      String component = part.substring(pattern.getStartLength());
-      StringBuilder builder = new StringBuilder();
-
-      // Save the standard delimiter for once parsing is finished
-      Pattern delimiter = scanner.delimiter();
-
-      // Switch to a look around delimiter to prevent loss of spacing in strings
-      scanner = scanner.useDelimiter(LOOKAROUND_DELIMITER);
-
-      boolean foundEnd = false;
-      while (!foundEnd) {
-        builder.append(component);
-        foundEnd = scanner.hasNext(pattern.getEndPattern());
-        component = scanner.next();
+  private boolean fill() {
+    if (position < limit) {
+      return true;
+    }
+    if (reader == null) {
+      return false;
+    }
+    try {
+      int count;
+      do {
+        count = reader.read(buffer, 0, buffer.length);
+      } while (count == 0);
+      if (count < 0) {
+        return false;
       }
-      // Switch back to standard delimiter
-      scanner.useDelimiter(delimiter);
+      bufferOffset += limit;
+      position = 0;
+      limit = count;
+      return true;
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+  }
 
-      // Substring to remove ending quotation
-      builder.append(component.subSequence(0, component.length() - pattern.getEndLength()));
-      return builder.toString();
+  /**
+   * Determines whether the characters in text from an index contain no line terminators. Strings
+   * and comments only end on a part that is on a single line.
+   * 
+   * @param start The index of the first character.
+   * @return True if there are no line terminators in the range; otherwise, false.
+   */
+  private boolean isSingleLine(int start) {
+    for (int i = start; i < length; i++) {
+      char c = text[i];
+      if (c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029') {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Compares the token in text to a lower case keyword ignoring the case of ASCII letters.
+   * 
+   * @param keyword The lower case keyword.
+   * @return True if the token is the keyword; otherwise, false.
+   */
+  private boolean equalsIgnoreCase(String keyword) {
+    if (length != keyword.length()) {
+      return false;
+    }
+    for (int i = 0; i < length; i++) {
+      char c = text[i];
+      if (c >= 'A' && c <= 'Z') {
+        c += 'a' - 'A';
+      }
+      if (c != keyword.charAt(i)) {
+        return false;
+      }
     }
+    return true;
   }
 }
@@ -0,0 +1,16 @@
+package com.kerr.interpreter.controller;
+
+/**
+ * An exception that is thrown when the stack verifier proves that a word in a script is passed a
+ * value of the wrong type. This is a kind of unexpected token since the script contains a literal or
+ * word whose result is used where a value of another type was expected.
+ * @author allankerr
+ *
+ */
+@SuppressWarnings("serial")
+public class ScriptTypeException extends UnexpectedTokenException {
+
+  public ScriptTypeException(String message) {
+    super(message);
+  }
+}
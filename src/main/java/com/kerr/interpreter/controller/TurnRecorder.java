@@ -0,0 +1,159 @@
+package com.kerr.interpreter.controller;
+
+import com.kerr.interpreter.model.RobotType;
+import com.kerr.interpreter.model.Value;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Records the effects a script has on the board during a turn so they can be applied later in a
+ * fixed order. Turns, moves, shots and messages are recorded while scans, identifies and checks
+ * are answered immediately by the listener the turn is recorded for. Each recorder is only used by
+ * one thread at a time.
+ *
+ * @author allankerr
+ *
+ */
+class TurnRecorder implements ScriptListener {
+
+  private static final int TURN = 0;
+
+  private static final int MOVE = 1;
+
+  private static final int SHOOT = 2;
+
+  private static final int SEND = 3;
+
+  /**
+   * The listener that answers queries and that the recorded effects are applied to.
+   */
+  private final ScriptListener listener;
+
+  /**
+   * The recorded effects each stored as an effect code followed by its operands.
+   */
+  private int[] effects = new int[16];
+
+  private int length;
+
+  /**
+   * The values sent by the recorded messages in the order they were sent.
+   */
+  private final ArrayList<Value<?>> messages = new ArrayList<Value<?>>();
+
+  /**
+   * The number of messages that can still be delivered this turn to the team member of each type
+   * indexed by the type's ordinal.
+   */
+  private final int[] deliverable;
+
+  private Exception interruption;
+
+  private boolean finished;
+
+  /**
+   * Construct a recorder for a turn.
+   *
+   * @param listener The listener that answers queries and that the recorded effects are applied to.
+   * @param deliverable The number of messages that can be delivered this turn to the team member of
+   *        each type indexed by the type's ordinal.
+   */
+  TurnRecorder(ScriptListener listener, int[] deliverable) {
+    this.listener = listener;
+    this.deliverable = deliverable;
+  }
+
+  /**
+   * Applies the recorded effects to the listener in the order the script made them followed by the
+   * script's interruption and completion.
+   */
+  void replay() {
+    int message = 0;
+    int i = 0;
+    while (i < length) {
+      switch (effects[i]) {
+        case TURN:
+          listener.turn(effects[i + 1]);
+          i += 2;
+          break;
+        case MOVE:
+          listener.move();
+          i += 1;
+          break;
+        case SHOOT:
+          listener.shoot(effects[i + 1], effects[i + 2]);
+          i += 3;
+          break;
+        default:
+          listener.sendMessage(RobotType.values()[effects[i + 1]], messages.get(message++));
+          i += 2;
+          break;
+      }
+    }
+    if (interruption != null) {
+      listener.scriptInterrupted(interruption);
+    }
+    if (finished) {
+      listener.scriptFinished();
+    }
+  }
+
+  private void record(int effect, int first, int second, int operands) {
+    if (length + 3 > effects.length) {
+      effects = Arrays.copyOf(effects, effects.length * 2);
+    }
+    effects[length++] = effect;
+    if (operands > 0) {
+      effects[length++] = first;
+    }
+    if (operands > 1) {
+      effects[length++] = second;
+    }
+  }
+
+  public void turn(int direction) {
+    record(TURN, direction, 0, 1);
+  }
+
+  public void move() {
+    record(MOVE, 0, 0, 0);
+  }
+
+  public void shoot(int direction, int distance) {
+    record(SHOOT, direction, distance, 2);
+  }
+
+  public int scan() {
+    return listener.scan();
+  }
+
+  public IdentifyResponse identify(int index) {
+    return listener.identify(index);
+  }
+
+  public CheckResponse check(int direction) {
+    return listener.check(direction);
+  }
+
+  /**
+   * Records a message to be sent once the turn is applied if the recipient's mailbox had room for
+   * it when the tick started. Messages that are reported as not sent are never applied.
+   */
+  public boolean sendMessage(RobotType type, Value<?> value) {
+    if (deliverable[type.ordinal()] == 0) {
+      return false;
+    }
+    deliverable[type.ordinal()]--;
+    record(SEND, type.ordinal(), 0, 1);
+    messages.add(value);
+    return true;
+  }
+
+  public void scriptInterrupted(Exception exception) {
+    interruption = exception;
+  }
+
+  public void scriptFinished() {
+    finished = true;
+  }
+}
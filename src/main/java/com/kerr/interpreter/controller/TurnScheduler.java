@@ -0,0 +1,372 @@
+package com.kerr.interpreter.controller;
+
+import com.kerr.interpreter.model.Mailbox;
+import com.kerr.interpreter.model.RobotType;
+import com.kerr.interpreter.model.ScriptData;
+import com.kerr.interpreter.model.TeamColor;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Runs one turn for every robot in a match in lockstep ticks over a fixed pool of worker threads.
+ * The robots of a tick are split into one contiguous partition per worker and every robot's script
+ * is executed by the script controller's engine. The effects the scripts have on the board are
+ * recorded while they run and are applied to the listeners on the calling thread once every script
+ * has finished, one robot at a time in the order the robots were given. Scans, identifies and
+ * checks are answered immediately so they see the board as it was at the start of the tick and the
+ * listeners must answer them from any worker thread.
+ *
+ * Each robot's random numbers are seeded from the scheduler's seed, the tick and the robot's
+ * position in the tick so the same seed plays the same match however many workers are used. The
+ * robot's own generator is restored once the tick has been applied.
+ *
+ * Messages are delivered when the tick is applied, so whether a message can be sent is decided from
+ * the recipient's mailbox as it was at the start of the tick. The recipient is the first robot of
+ * the tick on the sender's team with the type the message is sent to. The room left in its mailbox
+ * is shared in robot order between the robots of the tick that send to it. A message sent to a
+ * robot that isn't part of the tick or to a mailbox without room is reported as not sent and is
+ * never applied.
+ *
+ * Ticks always record the turns, moves and shots of each robot and apply them once every robot
+ * has finished, whatever the controller's command mode. Batch listeners have their scriptFinished
+ * method called as usual rather than being handed a command buffer.
+ *
+ * @author allankerr
+ *
+ */
+public final class TurnScheduler implements AutoCloseable {
+
+  /**
+   * A robot taking part in a tick.
+   */
+  public static final class Robot {
+
+    private final ScriptData data;
+
+    private final ScriptListener listener;
+
+    private final ScriptDataSource dataSource;
+
+    /**
+     * Construct a robot whose effects are sent to the script controller's listener.
+     *
+     * @param data The robot's script.
+     * @param dataSource The data provider for the robot.
+     * @throws IllegalArgumentException Thrown if data or dataSource is null.
+     */
+    public Robot(ScriptData data, ScriptDataSource dataSource) {
+      this(data, null, dataSource);
+    }
+
+    /**
+     * Construct a robot with its own listener.
+     *
+     * @param data The robot's script.
+     * @param listener The listener the robot's effects are sent to or null to use the script
+     *        controller's listener.
+     * @param dataSource The data provider for the robot.
+     * @throws IllegalArgumentException Thrown if data or dataSource is null.
+     */
+    public Robot(ScriptData data, ScriptListener listener, ScriptDataSource dataSource) {
+      if (data == null || dataSource == null) {
+        throw new IllegalArgumentException("A robot must have a non-null script and data source.");
+      }
+      this.data = data;
+      this.listener = listener;
+      this.dataSource = dataSource;
+    }
+
+    public ScriptData getData() {
+      return data;
+    }
+
+    public ScriptListener getListener() {
+      return listener;
+    }
+
+    public ScriptDataSource getDataSource() {
+      return dataSource;
+    }
+  }
+
+  /**
+   * Spreads the seeds of consecutive robots and ticks across the range of seeds.
+   */
+  private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+  private final ScriptController controller;
+
+  private final int workers;
+
+  private final long seed;
+
+  private final ExecutorService pool;
+
+  /**
+   * The statistics of the ticks that have been run. They are only written by the thread running a
+   * tick and can be read at any time.
+   */
+  private volatile long ticks;
+
+  private volatile long lastTickNanos;
+
+  private volatile long maxTickNanos;
+
+  private volatile long totalTickNanos;
+
+  private volatile boolean closed;
+
+  /**
+   * Construct a scheduler with its own pool of worker threads.
+   *
+   * @param controller The controller whose engine and listener are used to run the robots.
+   * @param workers The number of worker threads.
+   * @param seed The seed every robot's random numbers are generated from.
+   * @throws IllegalArgumentException Thrown if controller is null or workers isn't positive.
+   */
+  public TurnScheduler(ScriptController controller, int workers, long seed) {
+    if (controller == null) {
+      throw new IllegalArgumentException("A turn scheduler must have a non-null controller.");
+    }
+    if (workers <= 0) {
+      throw new IllegalArgumentException("A turn scheduler must have at least one worker.");
+    }
+    this.controller = controller;
+    this.workers = workers;
+    this.seed = seed;
+    this.pool = ScriptController.newPool(workers, "turn-worker-");
+  }
+
+  /**
+   * Runs one turn for every robot and applies their effects in order. The call returns once every
+   * effect has been applied. Ticks run one at a time.
+   *
+   * @param robots The robots in the order their effects are applied.
+   * @return The time the tick took in nanoseconds.
+   * @throws InterruptedException Thrown if the thread was interrupted while waiting for the
+   *         workers. No effects are applied.
+   * @throws IllegalArgumentException Thrown if robots is null.
+   * @throws IllegalStateException Thrown if the scheduler has been closed or a robot has no
+   *         listener and neither does the controller.
+   */
+  public synchronized long tick(List<Robot> robots) throws InterruptedException {
+    if (robots == null) {
+      throw new IllegalArgumentException("Attempted to run a tick for null robots.");
+    }
+    if (closed) {
+      throw new IllegalStateException("The turn scheduler has been closed.");
+    }
+    long start = System.nanoTime();
+    final ExecutionEngine engine = controller.getEngine();
+    final boolean cached = controller.isCachingPerception();
+    final Robot[] scheduled = robots.toArray(new Robot[robots.size()]);
+    final TurnRecorder[] recorders = new TurnRecorder[scheduled.length];
+    int[][] deliverable = deliverable(scheduled);
+    for (int i = 0; i < scheduled.length; i++) {
+      ScriptListener listener = scheduled[i].listener;
+      if (listener == null) {
+        listener = controller.getListener();
+      }
+      if (listener == null) {
+        throw new IllegalStateException("A robot was scheduled without a listener.");
+      }
+      recorders[i] = new TurnRecorder(listener, deliverable[i]);
+    }
+    SplittableRandom[] generators = new SplittableRandom[scheduled.length];
+    long tickSeed = seed + ticks * GOLDEN_GAMMA;
+    for (int i = 0; i < scheduled.length; i++) {
+      generators[i] = scheduled[i].data.getRandom();
+      scheduled[i].data.setSeed(mix(tickSeed + i * GOLDEN_GAMMA));
+    }
+    try {
+      run(engine, cached, scheduled, recorders);
+      for (TurnRecorder recorder : recorders) {
+        recorder.replay();
+      }
+    } finally {
+      for (int i = 0; i < scheduled.length; i++) {
+        scheduled[i].data.setRandom(generators[i]);
+      }
+    }
+    long elapsed = System.nanoTime() - start;
+    ticks++;
+    lastTickNanos = elapsed;
+    maxTickNanos = Math.max(maxTickNanos, elapsed);
+    totalTickNanos += elapsed;
+    return elapsed;
+  }
+
+  /**
+   * Runs every robot's script across the workers, recording their effects.
+   */
+  private void run(final ExecutionEngine engine, final boolean cached, final Robot[] scheduled,
+      final TurnRecorder[] recorders) throws InterruptedException {
+    int partitions = Math.min(workers, scheduled.length);
+    List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(partitions);
+    for (int p = 0; p < partitions; p++) {
+      final int from = (int) ((long) scheduled.length * p / partitions);
+      final int to = (int) ((long) scheduled.length * (p + 1) / partitions);
+      tasks.add(new Callable<Void>() {
+        public Void call() {
+          for (int i = from; i < to; i++) {
+            Robot robot = scheduled[i];
+            ScriptListener listener = recorders[i];
+            if (cached) {
+              listener = new PerceptionCache(listener);
+            }
+            try {
+              engine.run(robot.data, listener, robot.dataSource);
+            } catch (Exception ex) {
+              recorders[i].scriptInterrupted(ex);
+            }
+            recorders[i].scriptFinished();
+          }
+          return null;
+        }
+      });
+    }
+    for (Future<Void> result : pool.invokeAll(tasks)) {
+      try {
+        result.get();
+      } catch (ExecutionException ex) {
+        Throwable cause = ex.getCause();
+        if (cause instanceof Error) {
+          throw (Error) cause;
+        }
+        throw new IllegalStateException("A worker failed to run its robots.", cause);
+      }
+    }
+  }
+
+  /**
+   * Decides how many messages each robot can send to the team member of each type this tick from
+   * the recipients' mailboxes as they are before any script runs. The room left in a mailbox is
+   * split between the robots sharing it with earlier robots getting any remainder.
+   *
+   * @param scheduled The robots of the tick.
+   * @return The number of deliverable messages indexed by robot and then by recipient type.
+   */
+  private static int[][] deliverable(Robot[] scheduled) {
+    RobotType[] types = RobotType.values();
+    TeamColor[] teams = new TeamColor[scheduled.length];
+    RobotType[] robotTypes = new RobotType[scheduled.length];
+    // The index of the first robot of each type on each team or -1 if the team has no such robot
+    Map<TeamColor, int[]> recipients = new EnumMap<TeamColor, int[]>(TeamColor.class);
+    for (int i = 0; i < scheduled.length; i++) {
+      teams[i] = scheduled[i].dataSource.team();
+      robotTypes[i] = scheduled[i].dataSource.type();
+      if (teams[i] == null || robotTypes[i] == null) {
+        continue;
+      }
+      int[] team = recipients.get(teams[i]);
+      if (team == null) {
+        team = new int[types.length];
+        Arrays.fill(team, -1);
+        recipients.put(teams[i], team);
+      }
+      if (team[robotTypes[i].ordinal()] < 0) {
+        team[robotTypes[i].ordinal()] = i;
+      }
+    }
+
+    // The robots sending to a mailbox are the robots of the recipient's team with the sender's
+    // type, so each mailbox is identified by its recipient and the sender's type
+    int[] senders = new int[scheduled.length * types.length];
+    int[][] ranks = new int[scheduled.length][types.length];
+    for (int i = 0; i < scheduled.length; i++) {
+      int[] team = teams[i] == null ? null : recipients.get(teams[i]);
+      if (team == null || robotTypes[i] == null) {
+        continue;
+      }
+      for (RobotType type : types) {
+        int recipient = team[type.ordinal()];
+        if (recipient >= 0) {
+          ranks[i][type.ordinal()] = senders[recipient * types.length + robotTypes[i].ordinal()]++;
+        }
+      }
+    }
+
+    int[][] deliverable = new int[scheduled.length][types.length];
+    for (int i = 0; i < scheduled.length; i++) {
+      int[] team = teams[i] == null ? null : recipients.get(teams[i]);
+      if (team == null || robotTypes[i] == null) {
+        continue;
+      }
+      for (RobotType type : types) {
+        int recipient = team[type.ordinal()];
+        if (recipient < 0) {
+          continue;
+        }
+        Mailbox mailbox = scheduled[recipient].data.getMailbox(robotTypes[i]);
+        int room = mailbox.getCapacity() - mailbox.size();
+        int sharing = senders[recipient * types.length + robotTypes[i].ordinal()];
+        int rank = ranks[i][type.ordinal()];
+        deliverable[i][type.ordinal()] = room / sharing + (rank < room % sharing ? 1 : 0);
+      }
+    }
+    return deliverable;
+  }
+
+  /**
+   * Mixes the bits of a seed so seeds that only differ slightly generate unrelated numbers.
+   */
+  private static long mix(long z) {
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
+  }
+
+  public int getWorkers() {
+    return workers;
+  }
+
+  public long getSeed() {
+    return seed;
+  }
+
+  public long getTickCount() {
+    return ticks;
+  }
+
+  /**
+   * Gets the time the most recent tick took from when it was started until every effect was
+   * applied.
+   *
+   * @return The latency of the last tick in nanoseconds or zero if no tick has been run.
+   */
+  public long getLastTickNanos() {
+    return lastTickNanos;
+  }
+
+  public long getMaxTickNanos() {
+    return maxTickNanos;
+  }
+
+  /**
+   * Gets the mean time the ticks have taken.
+   *
+   * @return The mean latency of the ticks in nanoseconds or zero if no tick has been run.
+   */
+  public long getMeanTickNanos() {
+    long ticks = this.ticks;
+    return ticks == 0 ? 0 : totalTickNanos / ticks;
+  }
+
+  /**
+   * Closes the scheduler and releases its workers once the tick being run finishes. Closing a
+   * closed scheduler has no effect.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    pool.shutdown();
+  }
+}
@@ -5,11 +5,27 @@ package com.kerr.interpreter.model;
  * class is not strictly necessary but was created to
  * create more readable code and prevent errors by 
  * having BoolValue appear rather than Value<Boolean>.
+ * Values are immutable so the two booleans are shared
+ * through {@link #TRUE}, {@link #FALSE}, and {@link #of(boolean)}.
  * @author allankerr
  *
  */
 public class BoolValue extends Value<Boolean> {
 
+  public static final BoolValue TRUE = new BoolValue(Boolean.TRUE);
+
+  public static final BoolValue FALSE = new BoolValue(Boolean.FALSE);
+
+  /**
+   * Gets the shared value representing a boolean.
+   * 
+   * @param value The boolean to be represented.
+   * @return TRUE or FALSE.
+   */
+  public static BoolValue of(boolean value) {
+    return value ? TRUE : FALSE;
+  }
+
   public BoolValue(Boolean value) {
     super(value);
   }
@@ -5,11 +5,45 @@ package com.kerr.interpreter.model;
  * class is not strictly necessary but was created to
  * create more readable code and prevent errors by 
  * having IntValue appear rather than Value<Integer>.
+ * Values are immutable so the common values are cached
+ * and shared through {@link #of(int)}.
  * @author allankerr
  *
  */
 public class IntValue extends Value<Integer> {
 
+  /**
+   * The smallest cached integer. Covers negative turn directions and offsets.
+   */
+  private static final int CACHE_LOW = -128;
+
+  /**
+   * The largest cached integer. Covers directions, distances, health, and typical loop indices.
+   */
+  private static final int CACHE_HIGH = 1023;
+
+  private static final IntValue[] CACHE = new IntValue[CACHE_HIGH - CACHE_LOW + 1];
+
+  static {
+    for (int i = 0; i < CACHE.length; i++) {
+      CACHE[i] = new IntValue(i + CACHE_LOW);
+    }
+  }
+
+  /**
+   * Gets the value representing an integer. Integers in the common range are returned from a cache
+   * so no allocation occurs.
+   * 
+   * @param value The integer to be represented.
+   * @return The value representing the integer.
+   */
+  public static IntValue of(int value) {
+    if (value >= CACHE_LOW && value <= CACHE_HIGH) {
+      return CACHE[value - CACHE_LOW];
+    }
+    return new IntValue(value);
+  }
+
   public IntValue(Integer value) {
     super(value);
   }
@@ -0,0 +1,180 @@
+package com.kerr.interpreter.model;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A fixed-capacity mailbox that any number of robots can send messages to at once while the robot
+ * it belongs to receives them. Messages are kept in a ring buffer without locks. Each slot holds a
+ * sequence number that tells senders when the slot is free and the receiver when its message has
+ * been written, so senders only race each other for the next position and never the receiver.
+ * Messages sent to a full mailbox are dropped.
+ *
+ * Any thread may send messages and read the counters, but only the thread executing the robot's
+ * script may receive them.
+ *
+ * @author allankerr
+ *
+ */
+public final class Mailbox {
+
+  private final int capacity;
+
+  private final AtomicReferenceArray<Value<?>> messages;
+
+  /**
+   * The sequence number of each slot. A slot is free for the message sent at position p when its
+   * sequence is p and holds that message once its sequence is p + 1.
+   */
+  private final AtomicLongArray sequences;
+
+  /**
+   * The position the next message is sent to.
+   */
+  private final AtomicLong tail = new AtomicLong();
+
+  /**
+   * The position of the next message to be received. It is only written by the receiver.
+   */
+  private volatile long head;
+
+  private final LongAdder delivered = new LongAdder();
+
+  private final LongAdder dropped = new LongAdder();
+
+  /**
+   * Construct an empty mailbox.
+   *
+   * @param capacity The number of messages the mailbox can hold.
+   * @throws IllegalArgumentException Thrown if the capacity isn't positive.
+   */
+  public Mailbox(int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("The capacity of a mailbox must be positive.");
+    }
+    this.capacity = capacity;
+    this.messages = new AtomicReferenceArray<Value<?>>(capacity);
+    this.sequences = new AtomicLongArray(capacity);
+    for (int i = 0; i < capacity; i++) {
+      sequences.set(i, i);
+    }
+  }
+
+  /**
+   * Sends a message to the mailbox if it has room for it.
+   *
+   * @param message The message to send.
+   * @return True if the message was delivered or false if the mailbox was full and the message was
+   *         dropped.
+   */
+  public boolean offer(Value<?> message) {
+    long position = tail.get();
+    while (true) {
+      int slot = (int) (position % capacity);
+      long difference = sequences.get(slot) - position;
+      if (difference == 0) {
+        if (tail.compareAndSet(position, position + 1)) {
+          messages.set(slot, message);
+          sequences.set(slot, position + 1);
+          delivered.increment();
+          return true;
+        }
+        position = tail.get();
+      } else if (difference < 0) {
+        // The slot still holds the message sent a lap ago so the mailbox is full
+        dropped.increment();
+        return false;
+      } else {
+        // Another sender took the position first
+        position = tail.get();
+      }
+    }
+  }
+
+  /**
+   * Receives the oldest message. This must only be called by the mailbox's receiver.
+   *
+   * @return The oldest message or null if the mailbox is empty.
+   */
+  public Value<?> poll() {
+    long position = head;
+    int slot = (int) (position % capacity);
+    if (sequences.get(slot) != position + 1) {
+      return null;
+    }
+    Value<?> message = messages.get(slot);
+    messages.set(slot, null);
+    sequences.set(slot, position + capacity);
+    head = position + 1;
+    return message;
+  }
+
+  /**
+   * Determines whether the mailbox holds a message that can be received. This must only be called
+   * by the mailbox's receiver.
+   *
+   * @return True if there is a message or false if the mailbox is empty.
+   */
+  public boolean hasMessage() {
+    long position = head;
+    return sequences.get((int) (position % capacity)) == position + 1;
+  }
+
+  /**
+   * Gets the number of messages in the mailbox including those that are still being sent. The
+   * number is exact unless messages are being sent or received at the same time.
+   *
+   * @return The occupancy of the mailbox.
+   */
+  public int size() {
+    long size = tail.get() - head;
+    return (int) Math.max(0, Math.min(capacity, size));
+  }
+
+  public int getCapacity() {
+    return capacity;
+  }
+
+  /**
+   * Gets the number of messages that have been delivered to the mailbox.
+   *
+   * @return The number of delivered messages.
+   */
+  public long getDelivered() {
+    return delivered.sum();
+  }
+
+  /**
+   * Gets the number of messages that were dropped because the mailbox was full.
+   *
+   * @return The number of dropped messages.
+   */
+  public long getDropped() {
+    return dropped.sum();
+  }
+
+  /**
+   * Creates a mailbox holding the messages waiting in this one for a copy of the robot's script.
+   * The counters of the copy start at zero. This must only be called by the mailbox's receiver.
+   *
+   * @return The copy.
+   */
+  Mailbox copy() {
+    Mailbox copy = new Mailbox(capacity);
+    long position = head;
+    int count = 0;
+    while (sequences.get((int) (position % capacity)) == position + 1) {
+      copy.messages.set(count, messages.get((int) (position % capacity)));
+      copy.sequences.set(count, count + 1);
+      count++;
+      position++;
+      if (count == capacity) {
+        break;
+      }
+    }
+    copy.tail.set(count);
+    return copy;
+  }
+}
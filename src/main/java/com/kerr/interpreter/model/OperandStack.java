@@ -0,0 +1,281 @@
+package com.kerr.interpreter.model;
+
+import java.util.Arrays;
+
+/**
+ * The stack that values are pushed to and popped from during script execution. A script's stack
+ * is only ever used by the thread executing the script so it isn't synchronized. Each cell stores
+ * its value as a primitive long with a tag recording its type so integers and booleans can be
+ * pushed and popped by arithmetic, comparison, and logic words without allocating values. Values
+ * pushed as objects are kept alongside their primitive so they are popped as the same object.
+ *
+ * @author allankerr
+ *
+ */
+public final class OperandStack {
+
+  /**
+   * The number of cells allocated for a new stack. The stack doubles in size when it is full.
+   */
+  private static final int INITIAL_CAPACITY = 16;
+
+  /**
+   * The tag of a cell holding a value that has no primitive representation.
+   */
+  private static final byte REFERENCE = 0;
+
+  /**
+   * The tag of a cell holding an integer.
+   */
+  private static final byte INT = 1;
+
+  /**
+   * The tag of a cell holding a boolean stored as 1 for true and 0 for false.
+   */
+  private static final byte BOOL = 2;
+
+  /**
+   * The primitive value of each cell.
+   */
+  private long[] cells;
+
+  /**
+   * The type of each cell.
+   */
+  private byte[] tags;
+
+  /**
+   * The value object of each cell or null if the cell was pushed as a primitive.
+   */
+  private Value<?>[] references;
+
+  /**
+   * The number of cells on the stack.
+   */
+  private int size;
+
+  /**
+   * The largest number of cells that have been on the stack at once.
+   */
+  private int highWaterMark;
+
+  /**
+   * Constructs a new empty stack.
+   */
+  public OperandStack() {
+    cells = new long[INITIAL_CAPACITY];
+    tags = new byte[INITIAL_CAPACITY];
+    references = new Value<?>[INITIAL_CAPACITY];
+  }
+
+  /**
+   * Pushes a value to the top of the stack. Integers and booleans are also stored as primitives so
+   * they can be popped by the typed operations.
+   *
+   * @param value The value to be pushed.
+   * @throws IllegalArgumentException Thrown if value is null.
+   */
+  public void push(Value<?> value) {
+    if (value == null) {
+      throw new IllegalArgumentException("A null value cannot be pushed to the stack.");
+    }
+    int index = grow();
+    if (value instanceof IntValue) {
+      cells[index] = ((IntValue) value).getValue();
+      tags[index] = INT;
+    } else if (value instanceof BoolValue) {
+      cells[index] = ((BoolValue) value).getValue() ? 1 : 0;
+      tags[index] = BOOL;
+    } else {
+      tags[index] = REFERENCE;
+    }
+    references[index] = value;
+  }
+
+  /**
+   * Pushes an integer to the top of the stack without allocating a value.
+   *
+   * @param value The integer to be pushed.
+   */
+  public void pushInt(int value) {
+    int index = grow();
+    cells[index] = value;
+    tags[index] = INT;
+    references[index] = null;
+  }
+
+  /**
+   * Pushes a boolean to the top of the stack without allocating a value.
+   *
+   * @param value The boolean to be pushed.
+   */
+  public void pushBool(boolean value) {
+    int index = grow();
+    cells[index] = value ? 1 : 0;
+    tags[index] = BOOL;
+    references[index] = null;
+  }
+
+  /**
+   * Pops the top-most value from the stack. Values pushed as primitives are wrapped in a
+   * cached value where possible.
+   *
+   * @return The value that was at the top of the stack.
+   * @throws IllegalArgumentException Thrown if the stack is empty.
+   */
+  public Value<?> pop() {
+    int index = shrink();
+    Value<?> value = references[index];
+    if (value == null) {
+      if (tags[index] == INT) {
+        return IntValue.of((int) cells[index]);
+      }
+      return BoolValue.of(cells[index] != 0);
+    }
+    references[index] = null;
+    return value;
+  }
+
+  /**
+   * Pops the top-most value from the stack as an integer.
+   *
+   * @return The integer that was at the top of the stack.
+   * @throws IllegalArgumentException Thrown if the stack is empty.
+   * @throws ClassCastException Thrown if the top-most value was not an integer. The value is still
+   *         popped.
+   */
+  public int popInt() {
+    int index = shrink();
+    references[index] = null;
+    if (tags[index] != INT) {
+      throw new ClassCastException("The top-most value on the stack was not an integer.");
+    }
+    return (int) cells[index];
+  }
+
+  /**
+   * Pops the top-most value from the stack as a boolean.
+   *
+   * @return The boolean that was at the top of the stack.
+   * @throws IllegalArgumentException Thrown if the stack is empty.
+   * @throws ClassCastException Thrown if the top-most value was not a boolean. The value is still
+   *         popped.
+   */
+  public boolean popBool() {
+    int index = shrink();
+    references[index] = null;
+    if (tags[index] != BOOL) {
+      throw new ClassCastException("The top-most value on the stack was not a boolean.");
+    }
+    return cells[index] != 0;
+  }
+
+  /**
+   * Pops the top-most value from the stack as an integer without checking the size of the stack or
+   * the type of the value. The value's reference isn't cleared since every push overwrites it.
+   *
+   * @return The integer that was at the top of the stack.
+   */
+  public int popIntUnchecked() {
+    return (int) cells[--size];
+  }
+
+  /**
+   * Pops the top-most value from the stack as a boolean without checking the size of the stack or
+   * the type of the value. The value's reference isn't cleared since every push overwrites it.
+   *
+   * @return The boolean that was at the top of the stack.
+   */
+  public boolean popBoolUnchecked() {
+    return cells[--size] != 0;
+  }
+
+  /**
+   * Gets a value on the stack without removing it. Values pushed as primitives are wrapped in a
+   * cached value where possible.
+   *
+   * @param index The index of the value from the bottom of the stack.
+   * @return The value at the index.
+   * @throws IndexOutOfBoundsException Thrown if the index is outside of the stack.
+   */
+  public Value<?> get(int index) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException("The stack has no value at index " + index + ".");
+    }
+    Value<?> value = references[index];
+    if (value == null) {
+      if (tags[index] == INT) {
+        return IntValue.of((int) cells[index]);
+      }
+      return BoolValue.of(cells[index] != 0);
+    }
+    return value;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  public int getHighWaterMark() {
+    return highWaterMark;
+  }
+
+  /**
+   * Removes every value from the stack. The high-water mark is kept.
+   */
+  public void clear() {
+    Arrays.fill(references, 0, size, null);
+    size = 0;
+  }
+
+  /**
+   * Creates a stack holding the same values as this stack that can be modified independently.
+   *
+   * @return The copy of this stack.
+   */
+  public OperandStack copy() {
+    OperandStack copy = new OperandStack();
+    copy.cells = cells.clone();
+    copy.tags = tags.clone();
+    copy.references = references.clone();
+    copy.size = size;
+    copy.highWaterMark = highWaterMark;
+    return copy;
+  }
+
+  /**
+   * Reserves the cell above the top of the stack, doubling the stack's capacity if it is full.
+   *
+   * @return The index of the new top-most cell.
+   */
+  private int grow() {
+    if (size == cells.length) {
+      int capacity = size * 2;
+      cells = Arrays.copyOf(cells, capacity);
+      tags = Arrays.copyOf(tags, capacity);
+      references = Arrays.copyOf(references, capacity);
+    }
+    int index = size++;
+    if (size > highWaterMark) {
+      highWaterMark = size;
+    }
+    return index;
+  }
+
+  /**
+   * Removes the top-most cell from the stack.
+   *
+   * @return The index of the removed cell.
+   * @throws IllegalArgumentException Thrown if the stack is empty.
+   */
+  private int shrink() {
+    if (size == 0) {
+      throw new IllegalArgumentException("Cannot pop value from an empty stack.");
+    }
+    return --size;
+  }
+}
@@ -0,0 +1,338 @@
+package com.kerr.interpreter.model;
+
+import com.kerr.interpreter.vm.Bytecode;
+import com.kerr.interpreter.vm.BytecodeCompiler;
+import com.kerr.interpreter.vm.CompiledScript;
+import com.kerr.interpreter.vm.PeepholeOptimizer;
+import com.kerr.interpreter.vm.ScriptClassCompiler;
+import com.kerr.interpreter.vm.StackEffects;
+import com.kerr.interpreter.words.Word;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The Program class holds the code of a built script that is shared by every robot running it. This
+ * is the user-defined words, the variable slots, and the values of the variables and stack that
+ * robots start with, which are those left by the script's build words. Programs are immutable so
+ * they can be shared freely between threads. The only exception is the code the engines run, which
+ * the program compiles from its own words the first time it is needed. It is compiled once and
+ * shared by every program with the same code.
+ *
+ * @author allankerr
+ *
+ */
+public final class Program {
+
+  /**
+   * The user-defined word all scripts must have to start script execution.
+   */
+  static final String PLAY_WORD = "play";
+
+  /**
+   * The user-defined words as they were built keyed by their names.
+   */
+  private final Map<String, Word> words;
+
+  /**
+   * The user-defined words after constant folding and dead-branch elimination keyed by their names.
+   * These are executed by every engine while the words as built are kept for inspection.
+   */
+  private final Map<String, Word> optimizedWords;
+
+  /**
+   * The slot of each variable keyed by the variable's name in slot order.
+   */
+  private final Map<String, Integer> slots;
+
+  /**
+   * The values robots start with in each variable slot.
+   */
+  private final Value<?>[] variables;
+
+  /**
+   * The values robots start with on their stacks from the bottom of the stack up.
+   */
+  private final Value<?>[] stack;
+
+  /**
+   * The stack effects inferred when the script was built or null if the script wasn't verified.
+   */
+  private final StackEffects stackEffects;
+
+  /**
+   * Whether building the program's script again always gives the same program.
+   */
+  private final boolean deterministic;
+
+  /**
+   * The code compiled from the optimized words, which is shared with the programs created by
+   * withState.
+   */
+  private final CompiledCode code;
+
+  /**
+   * Holds the code compiled from a program's optimized words. Each kind of code is compiled at most
+   * once however many threads ask for it and however many programs share the holder.
+   */
+  private static final class CompiledCode {
+
+    private volatile Bytecode bytecode;
+
+    private volatile CompiledScript compiledScript;
+
+    /**
+     * The reason the words couldn't be compiled to a JVM class or null if they haven't failed to
+     * compile.
+     */
+    private volatile IllegalStateException compileFailure;
+  }
+
+  /**
+   * Construct a program from the results of building a script.
+   *
+   * @param words The user-defined words found during script building.
+   * @param optimizedWords The optimized user-defined words or null if the script wasn't optimized.
+   * @param variables The variables found during script building with the values robots start with.
+   *        The variables are given slots in the map's iteration order, which must match the slots
+   *        of the variable values used by the words.
+   * @param stack The values robots start with on their stacks from the bottom up or null if they
+   *        start with empty stacks.
+   * @param stackEffects The stack effects inferred by the stack verifier or null if the script
+   *        wasn't verified.
+   * @throws IllegalArgumentException Thrown if words or variables is null or words does not
+   *         contain the play word.
+   */
+  public Program(Map<String, Word> words, Map<String, Word> optimizedWords,
+      Map<String, Value<?>> variables, List<Value<?>> stack, StackEffects stackEffects) {
+    if (words == null) {
+      throw new IllegalArgumentException(
+          "The user-defined words for a built script cannot be null");
+    }
+    if (variables == null) {
+      throw new IllegalArgumentException("The variables for a built script cannot be null");
+    }
+    if (!words.containsKey(PLAY_WORD)) {
+      throw new IllegalArgumentException(
+          "A user-defined play word was not found during script building.");
+    }
+    this.words = Collections.unmodifiableMap(new HashMap<String, Word>(words));
+    this.optimizedWords = optimizedWords == null ? this.words
+        : Collections.unmodifiableMap(new HashMap<String, Word>(optimizedWords));
+    Map<String, Integer> slots = new LinkedHashMap<String, Integer>();
+    this.variables = new Value<?>[variables.size()];
+    for (Map.Entry<String, Value<?>> entry : variables.entrySet()) {
+      this.variables[slots.size()] = entry.getValue();
+      slots.put(entry.getKey(), slots.size());
+    }
+    this.slots = Collections.unmodifiableMap(slots);
+    this.stack = stack == null ? new Value<?>[0] : stack.toArray(new Value<?>[stack.size()]);
+    this.stackEffects = stackEffects;
+    this.deterministic = true;
+    this.code = new CompiledCode();
+  }
+
+  /**
+   * Construct a program that shares the code of another program but starts robots with different
+   * values.
+   */
+  private Program(Program program, Value<?>[] variables, Value<?>[] stack,
+      boolean deterministic) {
+    this.words = program.words;
+    this.optimizedWords = program.optimizedWords;
+    this.slots = program.slots;
+    this.stackEffects = program.stackEffects;
+    this.code = program.code;
+    this.variables = variables;
+    this.stack = stack;
+    this.deterministic = deterministic;
+  }
+
+  /**
+   * Creates a program with the same code that starts robots with the specified values.
+   *
+   * @param variables The values of the variable slots. The array is not copied.
+   * @param stack The values on the stack from the bottom up. The array is not copied.
+   * @param deterministic Whether the values are the same every time the script is built.
+   * @return The new program.
+   */
+  Program withState(Value<?>[] variables, Value<?>[] stack, boolean deterministic) {
+    return new Program(this, variables, stack, deterministic);
+  }
+
+  /**
+   * Creates a new script for a robot to run this program. The script starts with its own copy of
+   * the program's variables and stack and shares everything else.
+   *
+   * @param teamName The name of the team running the script.
+   * @param scriptName The name of the script.
+   * @return The new script.
+   */
+  public ScriptData newScript(String teamName, String scriptName) {
+    return new ScriptData(teamName, scriptName, this);
+  }
+
+  /**
+   * Gets the play word used to start script execution.
+   *
+   * @return The play word.
+   */
+  public Word getPlayWord() {
+    return words.get(PLAY_WORD);
+  }
+
+  /**
+   * Gets the user-defined words found during script building keyed by their names.
+   *
+   * @return An unmodifiable view of the user-defined words.
+   */
+  public Map<String, Word> getWords() {
+    return words;
+  }
+
+  /**
+   * Gets the play word that is executed to run the script. This is the optimized play word if the
+   * script was optimized; otherwise, it is the play word as built.
+   *
+   * @return The play word to execute.
+   */
+  public Word getOptimizedPlayWord() {
+    return optimizedWords.get(PLAY_WORD);
+  }
+
+  /**
+   * Gets the user-defined words that are executed to run the script keyed by their names. These
+   * are the optimized words if the script was optimized; otherwise, they are the words as built.
+   *
+   * @return An unmodifiable view of the user-defined words to execute.
+   */
+  public Map<String, Word> getOptimizedWords() {
+    return optimizedWords;
+  }
+
+  public StackEffects getStackEffects() {
+    return stackEffects;
+  }
+
+  /**
+   * Determines whether building the program's script again always gives the same program. This is
+   * false if the build words generated random numbers, so each build starts robots with different
+   * values.
+   *
+   * @return True if the program is the same for every build or false if it depends on random
+   *         numbers.
+   */
+  public boolean isDeterministic() {
+    return deterministic;
+  }
+
+  /**
+   * Gets the names of every variable in slot order.
+   *
+   * @return An unmodifiable set of the variable names.
+   */
+  public Set<String> getVariableNames() {
+    return slots.keySet();
+  }
+
+  /**
+   * Gets the slot of a variable by name.
+   *
+   * @param name The name of the variable.
+   * @return The slot of the variable or null if no variable has the name.
+   */
+  public Integer getSlot(String name) {
+    return slots.get(name);
+  }
+
+  public int getVariableCount() {
+    return variables.length;
+  }
+
+  /**
+   * Gets the value robots start with in a variable slot.
+   *
+   * @param slot The slot of the variable.
+   * @return The initial value of the variable.
+   */
+  public Value<?> getInitialVariable(int slot) {
+    return variables[slot];
+  }
+
+  /**
+   * Gets the values robots start with on their stacks.
+   *
+   * @return The values from the bottom of the stack up.
+   */
+  public List<Value<?>> getInitialStack() {
+    List<Value<?>> values = new ArrayList<Value<?>>(stack.length);
+    Collections.addAll(values, stack);
+    return values;
+  }
+
+  Value<?>[] variables() {
+    return variables;
+  }
+
+  Value<?>[] stack() {
+    return stack;
+  }
+
+  /**
+   * Gets the bytecode compiled from the optimized words, compiling it the first time it is needed.
+   *
+   * @return The bytecode.
+   */
+  public Bytecode getBytecode() {
+    Bytecode bytecode = code.bytecode;
+    if (bytecode == null) {
+      synchronized (code) {
+        bytecode = code.bytecode;
+        if (bytecode == null) {
+          bytecode = new PeepholeOptimizer()
+              .optimize(new BytecodeCompiler().compile(newScript(null, null)));
+          code.bytecode = bytecode;
+        }
+      }
+    }
+    return bytecode;
+  }
+
+  /**
+   * Gets the JVM class compiled from the optimized words, compiling it the first time it is needed.
+   * Words that are too large to compile are only tried once, and later calls return null without
+   * compiling them again.
+   *
+   * @return The compiled script or null if the words couldn't be compiled.
+   */
+  public CompiledScript getCompiledScript() {
+    CompiledScript compiledScript = code.compiledScript;
+    if (compiledScript == null && code.compileFailure == null) {
+      synchronized (code) {
+        compiledScript = code.compiledScript;
+        if (compiledScript == null && code.compileFailure == null) {
+          try {
+            compiledScript = new ScriptClassCompiler().compile(newScript(null, null));
+            code.compiledScript = compiledScript;
+          } catch (IllegalStateException ex) {
+            code.compileFailure = ex;
+          }
+        }
+      }
+    }
+    return compiledScript;
+  }
+
+  /**
+   * Gets the reason the optimized words couldn't be compiled to a JVM class.
+   *
+   * @return The exception thrown by the compiler or null if the words haven't failed to compile.
+   */
+  public IllegalStateException getCompileFailure() {
+    return code.compileFailure;
+  }
+}
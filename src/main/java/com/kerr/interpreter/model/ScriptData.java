@@ -1,32 +1,23 @@
 package com.kerr.interpreter.model;
 
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.Map;
-import java.util.Stack;
+import java.util.Set;
 
+import com.kerr.interpreter.vm.Bytecode;
+import com.kerr.interpreter.vm.CompiledScript;
+import com.kerr.interpreter.vm.StackEffects;
 import com.kerr.interpreter.words.Word;
 
 /**
  * The ScriptData class is used to store scripts once they have been built. This is used by the
  * system's model component for storing scripts that have been built and executing them at later
- * times.
- * 
+ * times. Each script is a robot's own instance state together with the program it runs, which is
+ * shared with every other robot running the same script.
+ *
  * @author allankerr
  *
  */
-public class ScriptData implements Cloneable {
-
-  /**
-   * The number of items that can fit in the mailbox for each robot.
-   */
-  private static final int MAILBOX_CAPACITY = 6;
-
-  /**
-   * The user-defined word all scripts must have to start script execution.
-   */
-  private static final String PLAY_WORD = "play";
-
+public class ScriptData extends ScriptInstance {
 
   /**
    * The name of the team who built the script.
@@ -39,32 +30,46 @@ public class ScriptData implements Cloneable {
   private String scriptName;
 
   /**
-   * The stack that values are pushed to and popped from by words during script execution.
+   * The code of the script that is shared with other robots running it.
    */
-  private Stack<Value<?>> stack;
+  private final Program program;
 
   /**
-   * The user defined words that were found during script building. Every script must have a play
-   * word.
-   */
-  private Map<String, Word> words;
-
-  /**
-   * The variables that were doing during script building used to store persistent state between
-   * multiple executions of the script.
+   * Construct a new script consisting of the user defined words and variables found during script
+   * building.
+   *
+   * @param words The user-defined words found during script building.
+   * @param variables The variables found during script building with their initial values. The
+   *        variables are given slots in the map's iteration order, which must match the slots of the
+   *        variable values used by the words.
+   * @throws IllegalArgumentException Thrown if words is null.
+   * @throws IllegalArgumentException Thrown if variables is null.
+   * @throws IllegalArgumentException Thrown if words does not contain the play word.
    */
-  private Map<String, Value<?>> variables;
+  public ScriptData(String teamName, String scriptName, Map<String, Word> words,
+      Map<String, Value<?>> variables) {
+    this(teamName, scriptName, new Program(words, null, variables, null, null));
+  }
 
   /**
-   * The mailboxes that store the values sent to the robot that the script is used to control with a
-   * mailbox used for each team member.
+   * Construct a new script for a robot running a program.
+   *
+   * @param teamName The name of the team running the script.
+   * @param scriptName The name of the script.
+   * @param program The program the script runs.
+   * @throws IllegalArgumentException Thrown if program is null.
    */
-  private ArrayList<ArrayList<Value<?>>> mailboxes;
+  public ScriptData(String teamName, String scriptName, Program program) {
+    super(program);
+    this.teamName = teamName;
+    this.scriptName = scriptName;
+    this.program = program;
+  }
 
   /**
    * Determines whether the script was one of the default ones loaded directly from file or if it
    * came from the robot librarian.
-   * 
+   *
    * @return True if the script was a default script or false if it came from the robot librarian.
    */
   public boolean isDefault() {
@@ -79,148 +84,168 @@ public class ScriptData implements Cloneable {
     return scriptName;
   }
 
-  /**
-   * Saves a message that was sent from another script that was currently being executed by storing
-   * it in the mailbox reserved for messages from the specified sender.
-   * 
-   * @param sender The type of the robot who sent the message.
-   * @param value The value the robot sent as the message.
-   * @return True if the mailbox had room for the message to be added or false if it was full and
-   *         couldn't be saved.
-   */
-  public boolean saveMessage(RobotType sender, Value<?> value) {
-    ArrayList<Value<?>> mailbox = mailboxes.get(sender.ordinal());
-    if (mailbox.size() < MAILBOX_CAPACITY) {
-      mailbox.add(value);
-      return true;
-    } else {
-      return false;
-    }
+  public Program getProgram() {
+    return program;
   }
 
   /**
-   * Construct a new script consisting of the user defined words and variables found during script
-   * building.
-   * 
-   * @param words The user-defined words found during script building.
-   * @param variables The variables found during script building.
-   * @throws IllegalArgumentException Thrown if words is null.
-   * @throws IllegalArgumentException Thrown if variables is null.
-   * @throws IllegalArgumentException Thrown if words does not contain the play word.
+   * Creates a program that shares this script's code and starts robots with the current values of
+   * this script's variables and stack. This is used once the build words have run so every robot
+   * starts from the state they left.
+   *
+   * @return The program.
    */
-  public ScriptData(String teamName, String scriptName, Map<String, Word> words,
-      Map<String, Value<?>> variables) {
-    super();
-
-    if (words == null) {
-      throw new IllegalArgumentException(
-          "The user-defined words for a built script cannot be null");
-    }
-    if (variables == null) {
-      throw new IllegalArgumentException("The variables for a built script cannot be null");
-    }
-    if (!words.containsKey(PLAY_WORD)) {
-      throw new IllegalArgumentException(
-          "A user-defined play word was not found during script building.");
-    }
-    mailboxes = new ArrayList<ArrayList<Value<?>>>(RobotType.values().length);
-    for (int i = 0; i < RobotType.values().length; i++) {
-      mailboxes.add(new ArrayList<Value<?>>(MAILBOX_CAPACITY));
-    }
-    this.teamName = teamName;
-    this.scriptName = scriptName;
-    this.stack = new Stack<Value<?>>();
-    this.words = words;
-    this.variables = variables;
+  public Program toProgram() {
+    return snapshot(program);
   }
 
   /**
    * Gets the play word used to start script execution.
-   * 
+   *
    * @return The play word.
    */
   public Word getPlayWord() {
-    return this.words.get(PLAY_WORD);
+    return program.getPlayWord();
   }
 
   /**
-   * Determines if the there is a message in the mailbox corresponding to the specified robot type.
-   * 
-   * @param sender The robot type of the mailbox to be checked.
-   * @return True if the mailbox contains a message or false if it doesn't.
+   * Gets the user-defined words found during script building keyed by their names.
+   *
+   * @return An unmodifiable view of the user-defined words.
    */
-  public boolean hasMessage(RobotType sender) {
-    return mailboxes.get(sender.ordinal()).size() > 0;
+  public Map<String, Word> getWords() {
+    return program.getWords();
   }
 
   /**
-   * Pushes the next value sent by the team member with with the matching robot type to the stack.
-   * 
-   * @param sender The type of the robot who sent the message.
+   * Gets the play word that is executed to run the script. This is the optimized play word if the
+   * script was optimized; otherwise, it is the play word as built.
+   *
+   * @return The play word to execute.
    */
-  public void pushMessage(RobotType sender) {
-    ArrayList<Value<?>> mailbox = mailboxes.get(sender.ordinal());
-    this.push(mailbox.remove(0));
+  public Word getOptimizedPlayWord() {
+    return program.getOptimizedPlayWord();
+  }
+
+  /**
+   * Gets the user-defined words that are executed to run the script keyed by their names. These
+   * are the optimized words if the script was optimized; otherwise, they are the words as built.
+   *
+   * @return An unmodifiable view of the user-defined words to execute.
+   */
+  public Map<String, Word> getOptimizedWords() {
+    return program.getOptimizedWords();
+  }
+
+  /**
+   * Gets the bytecode compiled from the script's words, which is compiled once for its program and
+   * shared by every robot running it.
+   *
+   * @return The bytecode.
+   */
+  public Bytecode getBytecode() {
+    return program.getBytecode();
+  }
+
+  /**
+   * Gets the JVM class compiled from the script's words, which is compiled once for its program and
+   * shared by every robot running it.
+   *
+   * @return The compiled script or null if the script is too large to compile or the generated
+   *         class could not be loaded.
+   */
+  public CompiledScript getCompiledScript() {
+    return program.getCompiledScript();
+  }
+
+  public StackEffects getStackEffects() {
+    return program.getStackEffects();
   }
 
   /**
    * Pushes the value of the specified variable to the stack.
-   * 
+   *
    * @param variable The value that stores the name of the variable.
+   * @throws IllegalArgumentException Thrown if the variable doesn't exist.
    */
   public void pushVariable(VariableValue variable) {
-    Value<?> value = variables.get(variable.getValue());
-    this.push(value);
+    pushVariable(slot(variable));
   }
 
   /**
-   * Updates a value of
-   * 
-   * @param variable
-   * @param value
+   * Updates the value of a variable.
+   *
+   * @param variable The value that stores the name of the variable.
+   * @param value The new value of the variable.
+   * @throws IllegalArgumentException Thrown if the variable doesn't exist.
    */
   public void setVariable(VariableValue variable, Value<?> value) {
-    variables.put(variable.getValue(), value);
+    setVariable(slot(variable), value);
   }
 
   public Value<?> getVariable(VariableValue variable) {
-    return variables.get(variable.getValue());
+    return getVariable(slot(variable));
   }
 
   /**
-   * Pops the top most value from the stack for a word to perform an operation on.
-   * 
-   * @return The value that was at the top of the stack.
+   * Gets the value of a variable by name. This looks up the variable's slot so it is intended for
+   * debugging and introspection rather than script execution.
+   *
+   * @param name The name of the variable.
+   * @return The value of the variable or null if no variable has the name.
    */
-  public Value<?> pop() {
-    if (stack.isEmpty()) {
-      throw new IllegalArgumentException("Cannot pop value from an empty stack.");
-    }
-    return stack.pop();
+  public Value<?> getVariable(String name) {
+    Integer slot = program.getSlot(name);
+    return slot == null ? null : getVariable(slot);
   }
 
   /**
-   * Push a value to the top of the stack during script execution.
-   * 
-   * @param value The value to be pushed to the top of the stack.
+   * Gets the names of every variable in slot order.
+   *
+   * @return An unmodifiable set of the variable names.
    */
-  public void push(Value<?> value) {
-    if (value == null) {
-      throw new IllegalArgumentException("A null value cannot be pushed to the stack.");
+  public Set<String> getVariableNames() {
+    return program.getVariableNames();
+  }
+
+  /**
+   * Gets the slot of a variable. Variables resolved during script building already know their slot
+   * while unresolved variables are looked up by name.
+   *
+   * @param variable The value that stores the name of the variable.
+   * @return The slot of the variable.
+   * @throws IllegalArgumentException Thrown if the variable doesn't exist.
+   */
+  private int slot(VariableValue variable) {
+    int slot = variable.getSlot();
+    if (slot == VariableValue.UNRESOLVED) {
+      Integer found = program.getSlot(variable.getValue());
+      if (found == null) {
+        throw new IllegalArgumentException(
+            "The variable '" + variable.getValue() + "' does not exist.");
+      }
+      slot = found;
     }
-    stack.push(value);
+    return slot;
+  }
+
+  /**
+   * Creates a copy of the script for another robot. The copy shares the script's program but has
+   * its own stack, variables, and mailboxes.
+   *
+   * @param teamName The name of the team the copy belongs to.
+   * @param scriptName The name of the copy.
+   * @return The copy of the script.
+   */
+  public ScriptData copy(String teamName, String scriptName) {
+    ScriptData copy = clone();
+    copy.teamName = teamName;
+    copy.scriptName = scriptName;
+    return copy;
   }
-  
+
   @Override
   public ScriptData clone() {
-    try {
-      ScriptData clone = (ScriptData) super.clone();
-      clone.variables = new HashMap<String,Value<?>>(variables);
-      clone.mailboxes = new ArrayList<ArrayList<Value<?>>>(mailboxes);
-      return clone;
-    } catch (CloneNotSupportedException e) {
-      e.printStackTrace();
-      throw new RuntimeException(e);
-    }
+    return (ScriptData) super.clone();
   }
 }
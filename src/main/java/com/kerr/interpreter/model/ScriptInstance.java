@@ -0,0 +1,409 @@
+package com.kerr.interpreter.model;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The ScriptInstance class holds the state of a single robot running a program: its stack, the
+ * values of its variables, its counted loops, and its mailboxes. Instances are created from a
+ * program by copying the program's initial values so they are cheap to create and never share
+ * state with each other.
+ *
+ * @author allankerr
+ *
+ */
+public class ScriptInstance implements Cloneable {
+
+  /**
+   * The number of items that can fit in the mailbox for each robot.
+   */
+  private static final int MAILBOX_CAPACITY = 6;
+
+  /**
+   * The number of loop frames allocated for a new script. More are allocated as loops are nested.
+   */
+  private static final int INITIAL_LOOP_DEPTH = 8;
+
+  /**
+   * The stack that values are pushed to and popped from by words during script execution.
+   */
+  private OperandStack stack;
+
+  /**
+   * The values of the variables used to store persistent state between multiple executions of the
+   * script indexed by slot.
+   */
+  private Value<?>[] variables;
+
+  /**
+   * The index of each counted loop being executed with the innermost loop last. Indexes are kept
+   * as primitives so updating them each iteration doesn't allocate.
+   */
+  private int[] loopIndices;
+
+  /**
+   * The number of counted loops being executed.
+   */
+  private int loopDepth;
+
+  /**
+   * The number of words the tree-walker has executed since the count was last cleared.
+   */
+  private long wordCount;
+
+  /**
+   * The mailboxes that store the values sent to the robot that the script is used to control with a
+   * mailbox used for each team member indexed by the sender's ordinal. Other robots may send
+   * messages to them while the script is being executed.
+   */
+  private Mailbox[] mailboxes;
+
+  /**
+   * The generator used for random numbers or null if the instance hasn't been seeded and uses the
+   * generator of the thread executing it.
+   */
+  private SplittableRandom random;
+
+  /**
+   * Whether the instance has generated a random number, in which case its state may differ from
+   * that of other instances that ran the same words.
+   */
+  private boolean drewRandom;
+
+  /**
+   * Construct the state of a robot starting to run a program.
+   *
+   * @param program The program the robot runs.
+   * @throws IllegalArgumentException Thrown if program is null.
+   */
+  public ScriptInstance(Program program) {
+    if (program == null) {
+      throw new IllegalArgumentException(
+          "A script instance must be created from a non-null program.");
+    }
+    mailboxes = new Mailbox[RobotType.values().length];
+    for (int i = 0; i < mailboxes.length; i++) {
+      mailboxes[i] = new Mailbox(MAILBOX_CAPACITY);
+    }
+    stack = new OperandStack();
+    for (Value<?> value : program.stack()) {
+      stack.push(value);
+    }
+    variables = program.variables().clone();
+    loopIndices = new int[INITIAL_LOOP_DEPTH];
+  }
+
+  /**
+   * Saves a message that was sent from another script that was currently being executed by storing
+   * it in the mailbox reserved for messages from the specified sender. This is safe to call from
+   * any thread.
+   *
+   * @param sender The type of the robot who sent the message.
+   * @param value The value the robot sent as the message.
+   * @return True if the mailbox had room for the message to be added or false if it was full and
+   *         couldn't be saved.
+   */
+  public boolean saveMessage(RobotType sender, Value<?> value) {
+    return mailboxes[sender.ordinal()].offer(value);
+  }
+
+  /**
+   * Determines if the there is a message in the mailbox corresponding to the specified robot type.
+   *
+   * @param sender The robot type of the mailbox to be checked.
+   * @return True if the mailbox contains a message or false if it doesn't.
+   */
+  public boolean hasMessage(RobotType sender) {
+    return mailboxes[sender.ordinal()].hasMessage();
+  }
+
+  /**
+   * Pushes the next value sent by the team member with with the matching robot type to the stack.
+   *
+   * @param sender The type of the robot who sent the message.
+   * @throws IllegalStateException Thrown if the mailbox is empty.
+   */
+  public void pushMessage(RobotType sender) {
+    Value<?> message = mailboxes[sender.ordinal()].poll();
+    if (message == null) {
+      throw new IllegalStateException("There is no message from " + sender + " to receive.");
+    }
+    this.push(message);
+  }
+
+  /**
+   * Gets the mailbox reserved for messages from the specified sender so its occupancy and the
+   * number of messages delivered to it and dropped by it can be read.
+   *
+   * @param sender The type of the robot who sends messages to the mailbox.
+   * @return The mailbox.
+   */
+  public Mailbox getMailbox(RobotType sender) {
+    return mailboxes[sender.ordinal()];
+  }
+
+  /**
+   * Pushes the value of the variable in the specified slot to the stack.
+   *
+   * @param slot The slot of the variable.
+   */
+  public void pushVariable(int slot) {
+    this.push(variables[slot]);
+  }
+
+  /**
+   * Updates the value of the variable in the specified slot.
+   *
+   * @param slot The slot of the variable.
+   * @param value The new value of the variable.
+   */
+  public void setVariable(int slot, Value<?> value) {
+    variables[slot] = value;
+  }
+
+  public Value<?> getVariable(int slot) {
+    return variables[slot];
+  }
+
+  /**
+   * Counts a word executed by the tree-walker.
+   */
+  public void countWord() {
+    wordCount++;
+  }
+
+  public long getWordCount() {
+    return wordCount;
+  }
+
+  /**
+   * Sets the number of words executed back to zero before the script is executed.
+   */
+  public void clearWordCount() {
+    wordCount = 0;
+  }
+
+  /**
+   * Starts a frame for a counted loop that becomes the innermost loop.
+   *
+   * @param index The loop's starting index.
+   */
+  public void enterLoop(int index) {
+    if (loopDepth == loopIndices.length) {
+      loopIndices = Arrays.copyOf(loopIndices, loopDepth * 2);
+    }
+    loopIndices[loopDepth++] = index;
+  }
+
+  /**
+   * Updates the index of the innermost counted loop.
+   *
+   * @param index The loop's new index.
+   */
+  public void setLoopIndex(int index) {
+    loopIndices[loopDepth - 1] = index;
+  }
+
+  /**
+   * Ends the frame of the innermost counted loop.
+   */
+  public void exitLoop() {
+    loopDepth--;
+  }
+
+  /**
+   * Ends the frames of every counted loop. This is used before execution in case the previous
+   * execution was interrupted by an error from within a loop.
+   */
+  public void clearLoops() {
+    loopDepth = 0;
+  }
+
+  /**
+   * Pushes the index of the innermost counted loop to the stack or zero if no counted loop is being
+   * executed.
+   */
+  public void pushLoopIndex() {
+    stack.pushInt(loopDepth == 0 ? 0 : loopIndices[loopDepth - 1]);
+  }
+
+  /**
+   * Seeds the generator used for random numbers so the instance generates the same numbers
+   * whichever thread executes it.
+   *
+   * @param seed The seed.
+   */
+  public void setSeed(long seed) {
+    random = new SplittableRandom(seed);
+  }
+
+  /**
+   * Gets the generator used for random numbers so it can be restored after the instance has been
+   * seeded temporarily.
+   *
+   * @return The generator or null if the instance hasn't been seeded.
+   */
+  public SplittableRandom getRandom() {
+    return random;
+  }
+
+  /**
+   * Sets the generator used for random numbers.
+   *
+   * @param random The generator or null to use the generator of the thread executing the instance.
+   */
+  public void setRandom(SplittableRandom random) {
+    this.random = random;
+  }
+
+  /**
+   * Generates a random number for the script.
+   *
+   * @param bound The exclusive upper bound of the number, which must be positive.
+   * @return A number between zero and the bound.
+   * @throws IllegalArgumentException Thrown if bound isn't positive.
+   */
+  public int nextRandom(int bound) {
+    drewRandom = true;
+    return random == null ? ThreadLocalRandom.current().nextInt(bound) : random.nextInt(bound);
+  }
+
+  /**
+   * Pops the top most value from the stack for a word to perform an operation on.
+   *
+   * @return The value that was at the top of the stack.
+   */
+  public Value<?> pop() {
+    return stack.pop();
+  }
+
+  /**
+   * Pops the top most value from the stack as an integer without allocating a value.
+   *
+   * @return The integer that was at the top of the stack.
+   * @throws ClassCastException Thrown if the top most value was not an integer.
+   */
+  public int popInt() {
+    return stack.popInt();
+  }
+
+  /**
+   * Pops the top most value from the stack as a boolean without allocating a value.
+   *
+   * @return The boolean that was at the top of the stack.
+   * @throws ClassCastException Thrown if the top most value was not a boolean.
+   */
+  public boolean popBool() {
+    return stack.popBool();
+  }
+
+  /**
+   * Pops the top most value from the stack as an integer without checking that the stack contains
+   * an integer. This must only be used where the stack verifier proved the value is an integer.
+   *
+   * @return The integer that was at the top of the stack.
+   */
+  public int popIntUnchecked() {
+    return stack.popIntUnchecked();
+  }
+
+  /**
+   * Pops the top most value from the stack as a boolean without checking that the stack contains
+   * a boolean. This must only be used where the stack verifier proved the value is a boolean.
+   *
+   * @return The boolean that was at the top of the stack.
+   */
+  public boolean popBoolUnchecked() {
+    return stack.popBoolUnchecked();
+  }
+
+  /**
+   * Push a value to the top of the stack during script execution.
+   *
+   * @param value The value to be pushed to the top of the stack.
+   */
+  public void push(Value<?> value) {
+    stack.push(value);
+  }
+
+  /**
+   * Push an integer to the top of the stack without allocating a value.
+   *
+   * @param value The integer to be pushed to the top of the stack.
+   */
+  public void pushInt(int value) {
+    stack.pushInt(value);
+  }
+
+  /**
+   * Push a boolean to the top of the stack without allocating a value.
+   *
+   * @param value The boolean to be pushed to the top of the stack.
+   */
+  public void pushBool(boolean value) {
+    stack.pushBool(value);
+  }
+
+  public int getStackDepth() {
+    return stack.size();
+  }
+
+  /**
+   * Gets a value on the stack without removing it.
+   *
+   * @param index The index of the value from the bottom of the stack.
+   * @return The value at the index.
+   * @throws IndexOutOfBoundsException Thrown if the index is outside of the stack.
+   */
+  public Value<?> getStackValue(int index) {
+    return stack.get(index);
+  }
+
+  /**
+   * Gets the largest number of values that have been on the stack at once.
+   *
+   * @return The stack's high-water mark.
+   */
+  public int getStackHighWaterMark() {
+    return stack.getHighWaterMark();
+  }
+
+  /**
+   * Copies the values of the variables and stack so they can become the initial values of a
+   * program. The program is only deterministic if this instance never generated a random number.
+   *
+   * @param program The program whose code is shared.
+   * @return A program with this instance's variables and stack.
+   */
+  protected Program snapshot(Program program) {
+    Value<?>[] values = new Value<?>[stack.size()];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = stack.get(i);
+    }
+    return program.withState(variables.clone(), values, !drewRandom);
+  }
+
+  /**
+   * Creates a copy of the instance whose stack, variables, loops and mailboxes can be modified
+   * independently of this instance. The copy isn't seeded.
+   */
+  @Override
+  public ScriptInstance clone() {
+    try {
+      ScriptInstance clone = (ScriptInstance) super.clone();
+      clone.stack = stack.copy();
+      clone.variables = variables.clone();
+      clone.loopIndices = loopIndices.clone();
+      clone.random = null;
+      clone.mailboxes = new Mailbox[mailboxes.length];
+      for (int i = 0; i < mailboxes.length; i++) {
+        clone.mailboxes[i] = mailboxes[i].copy();
+      }
+      return clone;
+    } catch (CloneNotSupportedException e) {
+      e.printStackTrace();
+      throw new RuntimeException(e);
+    }
+  }
+}
@@ -15,6 +15,12 @@ public enum TeamColor {
   
   private String name;     
 
+  /**
+   * The value pushed to the stack for the color. Values are immutable so one is shared by every
+   * script.
+   */
+  private final StringValue value;
+
   @Override
   public String toString() {
      return name;
@@ -22,5 +28,10 @@ public enum TeamColor {
   
   private TeamColor(String name) {
       this.name = name;
+      this.value = new StringValue(name);
+  }
+
+  public StringValue getValue() {
+    return value;
   }
 }
@@ -6,12 +6,43 @@ package com.kerr.interpreter.model;
  * create more readable code and prevent errors by 
  * having VariableValue appear rather than Value<String>.
  * This helps differentiate between variables and strings.
+ * Variables found during script building are resolved to
+ * the slot storing their value so they can be accessed
+ * without looking up their name.
  * @author allankerr
  *
  */
 public class VariableValue extends Value<String> {
 
+  /**
+   * The value of an unresolved variable's slot.
+   */
+  public static final int UNRESOLVED = -1;
+
+  /**
+   * The index of the script's variable slot holding the variable's value.
+   */
+  private final int slot;
+
+  /**
+   * Constructs an unresolved variable that is looked up by name.
+   * @param value The name of the variable.
+   */
   public VariableValue(String value) {
+    this(value, UNRESOLVED);
+  }
+
+  /**
+   * Constructs a variable resolved to a slot during script building.
+   * @param value The name of the variable.
+   * @param slot The index of the slot holding the variable's value.
+   */
+  public VariableValue(String value, int slot) {
     super(value);
-  }  
+    this.slot = slot;
+  }
+
+  public int getSlot() {
+    return slot;
+  }
 }
@@ -0,0 +1,103 @@
+package com.kerr.interpreter.vm;
+
+import com.kerr.interpreter.model.Value;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The flat instruction stream compiled from the word-tree of a built script. Bytecode is immutable
+ * once compiled so it can be shared by every copy of the script it was compiled from. Execution
+ * always starts at the first instruction.
+ *
+ * @author allankerr
+ *
+ */
+public final class Bytecode {
+
+  /**
+   * The instructions and their operands. Jump and call operands are absolute addresses into this
+   * array.
+   */
+  private final int[] code;
+
+  /**
+   * The literal values referenced by the literal instructions.
+   */
+  private final Value<?>[] constants;
+
+  /**
+   * The address each user-defined word was compiled to keyed by address. Only used for printing.
+   */
+  private final Map<Integer, String> entries;
+
+  /**
+   * Constructs new bytecode from a compiled instruction stream.
+   *
+   * @param code The instructions and their operands.
+   * @param constants The literal values referenced by the literal instructions.
+   * @param entries The user-defined word names keyed by the address they were compiled to.
+   */
+  Bytecode(int[] code, Value<?>[] constants, Map<Integer, String> entries) {
+    this.code = code;
+    this.constants = constants;
+    this.entries = Collections.unmodifiableMap(new TreeMap<Integer, String>(entries));
+  }
+
+  /**
+   * Gets a copy of the instruction stream.
+   *
+   * @return The instructions and their operands.
+   */
+  public int[] getCode() {
+    return Arrays.copyOf(code, code.length);
+  }
+
+  /**
+   * Gets the number of ints in the instruction stream.
+   *
+   * @return The length of the instruction stream.
+   */
+  public int getLength() {
+    return code.length;
+  }
+
+  int[] code() {
+    return code;
+  }
+
+  Value<?>[] constants() {
+    return constants;
+  }
+
+  Map<Integer, String> entries() {
+    return entries;
+  }
+
+  /**
+   * Prints one instruction per line with the entry of each user-defined word labelled.
+   */
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder();
+    int pc = 0;
+    while (pc < code.length) {
+      String entry = entries.get(pc);
+      if (entry != null) {
+        builder.append(entry + ":\n");
+      }
+      int opcode = code[pc];
+      builder.append(String.format("%5d\t%s", pc, Opcode.getName(opcode)));
+      for (int i = 1; i <= Opcode.operandCount(opcode); i++) {
+        builder.append(" " + code[pc + i]);
+      }
+      if (opcode == Opcode.LITERAL) {
+        builder.append("\t(" + constants[code[pc + 1]] + ")");
+      }
+      builder.append("\n");
+      pc += 1 + Opcode.operandCount(opcode);
+    }
+    return builder.toString();
+  }
+}
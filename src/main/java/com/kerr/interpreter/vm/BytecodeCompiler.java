@@ -0,0 +1,243 @@
+package com.kerr.interpreter.vm;
+
+import com.kerr.interpreter.model.ScriptData;
+import com.kerr.interpreter.model.Value;
+import com.kerr.interpreter.words.CountedLoopWord;
+import com.kerr.interpreter.words.GuardedLoopWord;
+import com.kerr.interpreter.words.IfWord;
+import com.kerr.interpreter.words.LiteralWord;
+import com.kerr.interpreter.words.MultiWord;
+import com.kerr.interpreter.words.Word;
+import com.kerr.interpreter.words.WordVisitor;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiles the word-tree of a built script into a flat instruction stream. Every user-defined word
+ * reachable from the play word is compiled once as a subroutine ending in a return instruction and
+ * is invoked with a call instruction. If-statements and loops are lowered onto jumps so executing
+ * the result never recurses.
+ *
+ * @author allankerr
+ *
+ */
+public class BytecodeCompiler implements WordVisitor {
+
+  /**
+   * The name of the user-defined word execution starts from.
+   */
+  private static final String PLAY_WORD = "play";
+
+  /**
+   * The instruction stream being built.
+   */
+  private int[] code;
+
+  /**
+   * The number of ints written to the instruction stream.
+   */
+  private int size;
+
+  /**
+   * The literal values referenced by literal instructions.
+   */
+  private List<Value<?>> constants;
+
+  /**
+   * The user-defined words of the script being compiled keyed by their multi-word. Identity is
+   * used since user-defined words are shared by reference in the word-tree.
+   */
+  private Map<Word, String> userWords;
+
+  /**
+   * The address each user-defined word was compiled to.
+   */
+  private Map<Word, Integer> addresses;
+
+  /**
+   * The call operands waiting for the address of the user-defined word they call.
+   */
+  private Map<Integer, Word> calls;
+
+  /**
+   * The user-defined words that have been called but not yet compiled.
+   */
+  private LinkedList<Word> pending;
+
+  /**
+   * The user-defined word whose body is currently being compiled.
+   */
+  private Word definition;
+
+  /**
+   * The stack effects inferred when the script was built or null if the script wasn't verified.
+   */
+  private StackEffects stackEffects;
+
+  /**
+   * Whether the word being compiled was proven to receive operands of the expected types.
+   */
+  private boolean verified;
+
+  /**
+   * Compiles the user-defined words reachable from the script's play word into bytecode.
+   *
+   * @param data The built script to compile.
+   * @return The compiled bytecode.
+   * @throws IllegalArgumentException Thrown if data is null.
+   */
+  public Bytecode compile(ScriptData data) {
+    if (data == null) {
+      throw new IllegalArgumentException("Attempted to compile a null script.");
+    }
+    code = new int[64];
+    size = 0;
+    constants = new ArrayList<Value<?>>();
+    userWords = new IdentityHashMap<Word, String>();
+    addresses = new IdentityHashMap<Word, Integer>();
+    calls = new HashMap<Integer, Word>();
+    pending = new LinkedList<Word>();
+    stackEffects = data.getStackEffects();
+
+    for (Map.Entry<String, Word> entry : data.getOptimizedWords().entrySet()) {
+      userWords.put(entry.getValue(), entry.getKey());
+    }
+    emitCall(data.getOptimizedWords().get(PLAY_WORD));
+    emit(Opcode.HALT);
+
+    Map<Integer, String> entries = new HashMap<Integer, String>();
+    while (!pending.isEmpty()) {
+      definition = pending.removeFirst();
+      addresses.put(definition, size);
+      entries.put(size, userWords.get(definition));
+      definition.accept(this);
+      emit(Opcode.RETURN);
+    }
+    definition = null;
+
+    for (Map.Entry<Integer, Word> call : calls.entrySet()) {
+      code[call.getKey()] = addresses.get(call.getValue());
+    }
+    return new Bytecode(Arrays.copyOf(code, size), constants.toArray(new Value<?>[0]), entries);
+  }
+
+  @Override
+  public void visitLiteral(LiteralWord word, Value<?> value) {
+    emit(Opcode.LITERAL, constant(value));
+  }
+
+  @Override
+  public void visitPredefined(Word word, String name) {
+    int opcode = Opcode.forPredefinedWord(name);
+    if (verified && Opcode.unchecked(opcode) >= 0) {
+      opcode = Opcode.unchecked(opcode);
+    }
+    emit(opcode);
+  }
+
+  @Override
+  public void visitMulti(MultiWord word, List<Word> words) {
+    if (word != definition && userWords.containsKey(word)) {
+      emitCall(word);
+    } else {
+      for (int i = 0; i < words.size(); i++) {
+        verified = stackEffects != null && stackEffects.isVerified(word, i);
+        words.get(i).accept(this);
+      }
+      verified = false;
+    }
+  }
+
+  @Override
+  public void visitIf(IfWord word, MultiWord trueCase, MultiWord falseCase) {
+    int falseJump = emit(Opcode.JUMP_IF_FALSE, -1);
+    compileBody(trueCase);
+    int endJump = emit(Opcode.JUMP, -1);
+    code[falseJump + 1] = size;
+    compileBody(falseCase);
+    code[endJump + 1] = size;
+  }
+
+  @Override
+  public void visitCountedLoop(CountedLoopWord word, MultiWord body) {
+    int start = emit(Opcode.DO, -1);
+    int bodyAddress = size;
+    compileBody(body);
+    emit(Opcode.LOOP, bodyAddress);
+    code[start + 1] = size;
+    emit(Opcode.UNLOOP);
+  }
+
+  @Override
+  public void visitGuardedLoop(GuardedLoopWord word, MultiWord body) {
+    int start = emit(Opcode.BEGIN, -1);
+    int bodyAddress = size;
+    compileBody(body);
+    emit(Opcode.UNTIL, bodyAddress);
+    code[start + 1] = size;
+    emit(Opcode.END_LOOP);
+  }
+
+  /**
+   * Compiles the body of a control statement inline. Bodies are never user-defined words so
+   * visiting them always expands their words in place.
+   *
+   * @param body The body to be compiled.
+   */
+  private void compileBody(MultiWord body) {
+    body.accept(this);
+  }
+
+  /**
+   * Emits a call to a user-defined word, scheduling the word to be compiled if it hasn't been.
+   *
+   * @param word The user-defined word to call.
+   */
+  private void emitCall(Word word) {
+    if (!addresses.containsKey(word) && !pending.contains(word)) {
+      pending.add(word);
+    }
+    int address = emit(Opcode.CALL, -1);
+    calls.put(address + 1, word);
+  }
+
+  /**
+   * Gets the index of a value in the constants, adding it if it isn't present.
+   *
+   * @param value The literal value.
+   * @return The index of the value in the constants.
+   */
+  private int constant(Value<?> value) {
+    for (int i = 0; i < constants.size(); i++) {
+      if (constants.get(i) == value) {
+        return i;
+      }
+    }
+    constants.add(value);
+    return constants.size() - 1;
+  }
+
+  /**
+   * Appends an instruction and its operands to the instruction stream.
+   *
+   * @param opcode The instruction to append.
+   * @param operands The operands of the instruction.
+   * @return The address the instruction was written to.
+   */
+  private int emit(int opcode, int... operands) {
+    if (size + operands.length + 1 > code.length) {
+      code = Arrays.copyOf(code, Math.max(code.length * 2, size + operands.length + 1));
+    }
+    int address = size;
+    code[size++] = opcode;
+    for (int operand : operands) {
+      code[size++] = operand;
+    }
+    return address;
+  }
+}
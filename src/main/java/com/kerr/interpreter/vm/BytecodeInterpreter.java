@@ -0,0 +1,483 @@
+package com.kerr.interpreter.vm;
+
+import com.kerr.interpreter.controller.ScriptDataSource;
+import com.kerr.interpreter.controller.ScriptListener;
+import com.kerr.interpreter.model.ScriptData;
+import com.kerr.interpreter.model.Value;
+import java.util.Arrays;
+
+/**
+ * Executes compiled bytecode with a single dispatch loop. Calls to user-defined words and loops
+ * are tracked on explicit return and loop stacks rather than the Java call stack. The operation
+ * performed by each instruction is shared with the generated classes through Primitives.
+ *
+ * Because the return and loop stacks are explicit, a script can be suspended between any two
+ * instructions and resumed later from a continuation. This lets a single thread step many scripts
+ * a number of instructions at a time, including scripts that never halt.
+ *
+ * @author allankerr
+ *
+ */
+public class BytecodeInterpreter {
+
+  /**
+   * Executes a script's bytecode from its first instruction until it halts.
+   *
+   * @param bytecode The compiled bytecode of the script.
+   * @param data The script being executed used to access the stack and variables.
+   * @param listener The listener that output is sent to.
+   * @param dataSource The data source that provides information on the robot the script is being
+   *        executed for.
+   * @return The number of instructions executed.
+   */
+  public long execute(Bytecode bytecode, ScriptData data, ScriptListener listener,
+      ScriptDataSource dataSource) {
+    return run(new Continuation(bytecode, data), listener, dataSource, Long.MAX_VALUE);
+  }
+
+  /**
+   * Prepares a script to be executed a number of instructions at a time. No instructions are
+   * executed until the continuation is resumed.
+   *
+   * @param bytecode The compiled bytecode of the script.
+   * @param data The script to execute.
+   * @return The continuation of the script suspended before its first instruction.
+   * @throws IllegalArgumentException Thrown if bytecode or data is null.
+   */
+  public Continuation start(Bytecode bytecode, ScriptData data) {
+    if (bytecode == null || data == null) {
+      throw new IllegalArgumentException("Attempted to start a null script.");
+    }
+    data.clearLoops();
+    return new Continuation(bytecode, data);
+  }
+
+  /**
+   * Executes a suspended script until it halts or has executed the budgeted number of
+   * instructions. Superinstructions count as a single instruction.
+   *
+   * @param continuation The state of the suspended script, which is updated to where the script
+   *        stopped.
+   * @param listener The listener that output is sent to.
+   * @param dataSource The data source that provides information on the robot the script is being
+   *        executed for.
+   * @param budget The largest number of instructions to execute.
+   * @return The number of instructions executed, which is less than the budget only if the script
+   *         halted.
+   * @throws IllegalArgumentException Thrown if continuation is null or the budget isn't positive.
+   * @throws IllegalStateException Thrown if the script has already finished.
+   */
+  public long resume(Continuation continuation, ScriptListener listener,
+      ScriptDataSource dataSource, long budget) {
+    if (continuation == null) {
+      throw new IllegalArgumentException("Attempted to resume a null continuation.");
+    }
+    if (budget <= 0) {
+      throw new IllegalArgumentException("The instruction budget must be positive.");
+    }
+    if (continuation.finished) {
+      throw new IllegalStateException("The script has already finished.");
+    }
+    return run(continuation, listener, dataSource, budget);
+  }
+
+  /**
+   * Runs the dispatch loop with the registers of a continuation held in locals, saving them back
+   * once the script halts or the budget runs out. A script that stops with an error is finished
+   * since its state is left partway through an instruction.
+   */
+  private long run(Continuation continuation, ScriptListener listener,
+      ScriptDataSource dataSource, long budget) {
+    final ScriptData data = continuation.data;
+    final int[] code = continuation.bytecode.code();
+    final Value<?>[] constants = continuation.bytecode.constants();
+
+    int[] returns = continuation.returns;
+    int rsp = continuation.rsp;
+
+    // The index of counted loops is mirrored into the script's loop frames for the loop-index
+    // instruction.
+    int[] loopExits = continuation.loopExits;
+    int[] loopReturns = continuation.loopReturns;
+    int[] loopIndices = continuation.loopIndices;
+    int[] loopEnds = continuation.loopEnds;
+    int lsp = continuation.lsp;
+
+    int pc = continuation.pc;
+    long remaining = budget;
+    boolean halted = false;
+    try {
+      dispatch:
+      while (remaining > 0) {
+        remaining--;
+        int opcode = code[pc++];
+        switch (opcode) {
+
+          case Opcode.HALT:
+            halted = true;
+            break dispatch;
+
+          case Opcode.CALL:
+            if (rsp == returns.length) {
+              returns = Arrays.copyOf(returns, rsp * 2);
+            }
+            returns[rsp++] = pc + 1;
+            pc = code[pc];
+            break;
+
+          case Opcode.RETURN:
+            pc = returns[--rsp];
+            break;
+
+          case Opcode.JUMP:
+            pc = code[pc];
+            break;
+
+          case Opcode.JUMP_IF_FALSE:
+            pc = Primitives.condition(data) ? pc + 1 : code[pc];
+            break;
+
+          case Opcode.DO: {
+            int start = Primitives.loopBound(data);
+            int end = Primitives.loopBound(data);
+            if (lsp == loopExits.length) {
+              loopExits = Arrays.copyOf(loopExits, lsp * 2);
+              loopReturns = Arrays.copyOf(loopReturns, lsp * 2);
+              loopIndices = Arrays.copyOf(loopIndices, lsp * 2);
+              loopEnds = Arrays.copyOf(loopEnds, lsp * 2);
+            }
+            loopExits[lsp] = code[pc];
+            loopReturns[lsp] = rsp;
+            loopIndices[lsp] = start;
+            loopEnds[lsp] = end;
+            lsp++;
+            Primitives.enterLoop(data, start);
+            if (start <= end) {
+              pc++;
+            } else {
+              pc = code[pc];
+            }
+            break;
+          }
+
+          case Opcode.LOOP: {
+            int index = ++loopIndices[lsp - 1];
+            if (index <= loopEnds[lsp - 1]) {
+              Primitives.setLoopIndex(data, index);
+              pc = code[pc];
+            } else {
+              pc++;
+            }
+            break;
+          }
+
+          case Opcode.UNLOOP:
+            lsp--;
+            Primitives.exitLoop(data);
+            break;
+
+          case Opcode.BEGIN:
+            if (lsp == loopExits.length) {
+              loopExits = Arrays.copyOf(loopExits, lsp * 2);
+              loopReturns = Arrays.copyOf(loopReturns, lsp * 2);
+              loopIndices = Arrays.copyOf(loopIndices, lsp * 2);
+              loopEnds = Arrays.copyOf(loopEnds, lsp * 2);
+            }
+            loopExits[lsp] = code[pc];
+            loopReturns[lsp] = rsp;
+            lsp++;
+            pc++;
+            break;
+
+          case Opcode.UNTIL:
+            pc = Primitives.guard(data) ? code[pc] : pc + 1;
+            break;
+
+          case Opcode.END_LOOP:
+            lsp--;
+            break;
+
+          case Opcode.LEAVE:
+            // Leave unwinds any user-defined words called from within the innermost loop
+            if (lsp == 0) {
+              Primitives.leave();
+            }
+            rsp = loopReturns[lsp - 1];
+            pc = loopExits[lsp - 1];
+            break;
+
+          case Opcode.LITERAL:
+            data.push(constants[code[pc++]]);
+            break;
+
+          case Opcode.LOOP_INDEX:
+            Primitives.loopIndex(data);
+            break;
+
+          case Opcode.DROP:
+            Primitives.drop(data);
+            break;
+
+          case Opcode.DUP:
+            Primitives.dup(data);
+            break;
+
+          case Opcode.SWAP:
+            Primitives.swap(data);
+            break;
+
+          case Opcode.ROT:
+            Primitives.rot(data);
+            break;
+
+          case Opcode.ADD:
+            Primitives.add(data);
+            break;
+
+          case Opcode.SUBTRACT:
+            Primitives.subtract(data);
+            break;
+
+          case Opcode.MULTIPLY:
+            Primitives.multiply(data);
+            break;
+
+          case Opcode.MOD:
+            Primitives.mod(data);
+            break;
+
+          case Opcode.LESS_THAN:
+            Primitives.lessThan(data);
+            break;
+
+          case Opcode.LESS_THAN_OR_EQUAL:
+            Primitives.lessThanOrEqual(data);
+            break;
+
+          case Opcode.EQUALS:
+            Primitives.equals(data);
+            break;
+
+          case Opcode.NOT_EQUALS:
+            Primitives.notEquals(data);
+            break;
+
+          case Opcode.GREATER_THAN:
+            Primitives.greaterThan(data);
+            break;
+
+          case Opcode.GREATER_THAN_OR_EQUAL:
+            Primitives.greaterThanOrEqual(data);
+            break;
+
+          case Opcode.AND:
+            Primitives.and(data);
+            break;
+
+          case Opcode.OR:
+            Primitives.or(data);
+            break;
+
+          case Opcode.INVERT:
+            Primitives.invert(data);
+            break;
+
+          case Opcode.ADD_UNCHECKED:
+            Primitives.addUnchecked(data);
+            break;
+
+          case Opcode.SUBTRACT_UNCHECKED:
+            Primitives.subtractUnchecked(data);
+            break;
+
+          case Opcode.MULTIPLY_UNCHECKED:
+            Primitives.multiplyUnchecked(data);
+            break;
+
+          case Opcode.MOD_UNCHECKED:
+            Primitives.modUnchecked(data);
+            break;
+
+          case Opcode.LESS_THAN_UNCHECKED:
+            Primitives.lessThanUnchecked(data);
+            break;
+
+          case Opcode.LESS_THAN_OR_EQUAL_UNCHECKED:
+            Primitives.lessThanOrEqualUnchecked(data);
+            break;
+
+          case Opcode.GREATER_THAN_UNCHECKED:
+            Primitives.greaterThanUnchecked(data);
+            break;
+
+          case Opcode.GREATER_THAN_OR_EQUAL_UNCHECKED:
+            Primitives.greaterThanOrEqualUnchecked(data);
+            break;
+
+          case Opcode.AND_UNCHECKED:
+            Primitives.andUnchecked(data);
+            break;
+
+          case Opcode.OR_UNCHECKED:
+            Primitives.orUnchecked(data);
+            break;
+
+          case Opcode.INVERT_UNCHECKED:
+            Primitives.invertUnchecked(data);
+            break;
+
+          case Opcode.ADD_IMMEDIATE:
+            Primitives.addImmediate(data, code[pc++]);
+            break;
+
+          case Opcode.SUBTRACT_IMMEDIATE:
+            Primitives.subtractImmediate(data, code[pc++]);
+            break;
+
+          case Opcode.SQUARE:
+            Primitives.square(data);
+            break;
+
+          case Opcode.LOAD_VARIABLE:
+            data.pushVariable(code[pc++]);
+            break;
+
+          case Opcode.STORE_VARIABLE:
+            data.setVariable(code[pc++], data.pop());
+            break;
+
+          case Opcode.TURN_IMMEDIATE:
+            listener.turn(code[pc++]);
+            break;
+
+          case Opcode.JUMP_UNLESS_LESS_THAN:
+            pc = Primitives.testLessThan(data) ? pc + 1 : code[pc];
+            break;
+
+          case Opcode.JUMP_UNLESS_LESS_THAN_OR_EQUAL:
+            pc = Primitives.testLessThanOrEqual(data) ? pc + 1 : code[pc];
+            break;
+
+          case Opcode.JUMP_UNLESS_EQUALS:
+            pc = Primitives.testEquals(data) ? pc + 1 : code[pc];
+            break;
+
+          case Opcode.JUMP_UNLESS_NOT_EQUALS:
+            pc = Primitives.testNotEquals(data) ? pc + 1 : code[pc];
+            break;
+
+          case Opcode.JUMP_UNLESS_GREATER_THAN:
+            pc = Primitives.testGreaterThan(data) ? pc + 1 : code[pc];
+            break;
+
+          case Opcode.JUMP_UNLESS_GREATER_THAN_OR_EQUAL:
+            pc = Primitives.testGreaterThanOrEqual(data) ? pc + 1 : code[pc];
+            break;
+
+          case Opcode.STORE:
+            Primitives.store(data);
+            break;
+
+          case Opcode.FETCH:
+            Primitives.fetch(data);
+            break;
+
+          case Opcode.PRINT:
+            Primitives.print(data);
+            break;
+
+          case Opcode.RANDOM:
+            Primitives.random(data);
+            break;
+
+          case Opcode.SHOOT:
+            Primitives.shoot(data, listener);
+            break;
+
+          case Opcode.MOVE:
+            Primitives.move(data, listener);
+            break;
+
+          case Opcode.TURN:
+            Primitives.turn(data, listener);
+            break;
+
+          case Opcode.CHECK:
+            Primitives.check(data, listener);
+            break;
+
+          case Opcode.SCAN:
+            Primitives.scan(data, listener);
+            break;
+
+          case Opcode.IDENTIFY:
+            Primitives.identify(data, listener);
+            break;
+
+          case Opcode.ATTACK:
+            Primitives.attack(data, dataSource);
+            break;
+
+          case Opcode.HEALTH_LEFT:
+            Primitives.healthLeft(data, dataSource);
+            break;
+
+          case Opcode.HEALTH:
+            Primitives.health(data, dataSource);
+            break;
+
+          case Opcode.MOVES_LEFT:
+            Primitives.movesLeft(data, dataSource);
+            break;
+
+          case Opcode.MOVES:
+            Primitives.moves(data, dataSource);
+            break;
+
+          case Opcode.RANGE:
+            Primitives.range(data, dataSource);
+            break;
+
+          case Opcode.TEAM:
+            Primitives.team(data, dataSource);
+            break;
+
+          case Opcode.TYPE:
+            Primitives.type(data, dataSource);
+            break;
+
+          case Opcode.SEND:
+            Primitives.send(data, listener);
+            break;
+
+          case Opcode.RECEIVE:
+            Primitives.receive(data);
+            break;
+
+          case Opcode.MESSAGE:
+            Primitives.message(data);
+            break;
+
+          default:
+            throw new IllegalStateException(
+                "Encountered unknown instruction " + opcode + " at address " + (pc - 1) + ".");
+        }
+      }
+    } catch (RuntimeException | Error ex) {
+      continuation.finished = true;
+      continuation.instructions += budget - remaining;
+      throw ex;
+    }
+    continuation.pc = pc;
+    continuation.returns = returns;
+    continuation.rsp = rsp;
+    continuation.loopExits = loopExits;
+    continuation.loopReturns = loopReturns;
+    continuation.loopIndices = loopIndices;
+    continuation.loopEnds = loopEnds;
+    continuation.lsp = lsp;
+    continuation.finished = halted;
+    continuation.instructions += budget - remaining;
+    return budget - remaining;
+  }
+}
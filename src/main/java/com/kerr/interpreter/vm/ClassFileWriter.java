@@ -0,0 +1,466 @@
+package com.kerr.interpreter.vm;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A minimal writer for JVM class files. It supports exactly what the script class compiler needs:
+ * a constant pool, static fields, and methods with exception handlers. Class files are written as
+ * version 49 so the JVM verifies them by type inference and no stack map frames have to be
+ * computed.
+ *
+ * @author allankerr
+ *
+ */
+final class ClassFileWriter {
+
+  static final int ACC_PUBLIC = 0x0001;
+  static final int ACC_PRIVATE = 0x0002;
+  static final int ACC_STATIC = 0x0008;
+  static final int ACC_FINAL = 0x0010;
+  static final int ACC_SUPER = 0x0020;
+
+  /**
+   * The class file version written. Version 49 does not require stack map frames.
+   */
+  private static final int MAJOR_VERSION = 49;
+
+  private static final int CONSTANT_UTF8 = 1;
+  private static final int CONSTANT_INTEGER = 3;
+  private static final int CONSTANT_CLASS = 7;
+  private static final int CONSTANT_STRING = 8;
+  private static final int CONSTANT_FIELD = 9;
+  private static final int CONSTANT_METHOD = 10;
+  private static final int CONSTANT_INTERFACE_METHOD = 11;
+  private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+  /**
+   * The serialized constant pool entries.
+   */
+  private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+
+  /**
+   * The index of each constant pool entry keyed by its tag and contents so entries are shared.
+   */
+  private final Map<String, Integer> poolIndices = new HashMap<String, Integer>();
+
+  /**
+   * The index the next constant pool entry will be written to.
+   */
+  private int poolCount = 1;
+
+  private final int thisClass;
+
+  private final int superClass;
+
+  private final List<Integer> interfaces = new ArrayList<Integer>();
+
+  private final List<byte[]> fields = new ArrayList<byte[]>();
+
+  private final List<byte[]> methods = new ArrayList<byte[]>();
+
+  /**
+   * Constructs a writer for a new class.
+   *
+   * @param name The internal name of the class such as com/kerr/interpreter/vm/GeneratedScript.
+   * @param superName The internal name of the super class.
+   * @param interfaceNames The internal names of the interfaces the class implements.
+   */
+  ClassFileWriter(String name, String superName, String... interfaceNames) {
+    thisClass = classRef(name);
+    superClass = classRef(superName);
+    for (String interfaceName : interfaceNames) {
+      interfaces.add(classRef(interfaceName));
+    }
+  }
+
+  int utf8(String value) {
+    String key = "U" + value;
+    Integer index = poolIndices.get(key);
+    if (index == null) {
+      DataOutputStream out = new DataOutputStream(pool);
+      try {
+        out.writeByte(CONSTANT_UTF8);
+        out.writeUTF(value);
+      } catch (IOException ex) {
+        throw new IllegalStateException(ex);
+      }
+      index = poolCount++;
+      poolIndices.put(key, index);
+    }
+    return index;
+  }
+
+  int integer(int value) {
+    String key = "I" + value;
+    Integer index = poolIndices.get(key);
+    if (index == null) {
+      pool.write(CONSTANT_INTEGER);
+      writeInt(pool, value);
+      index = poolCount++;
+      poolIndices.put(key, index);
+    }
+    return index;
+  }
+
+  int classRef(String name) {
+    return entry(CONSTANT_CLASS, utf8(name));
+  }
+
+  int string(String value) {
+    return entry(CONSTANT_STRING, utf8(value));
+  }
+
+  int fieldRef(String owner, String name, String descriptor) {
+    return entry(CONSTANT_FIELD, classRef(owner), nameAndType(name, descriptor));
+  }
+
+  int methodRef(String owner, String name, String descriptor) {
+    return entry(CONSTANT_METHOD, classRef(owner), nameAndType(name, descriptor));
+  }
+
+  int interfaceMethodRef(String owner, String name, String descriptor) {
+    return entry(CONSTANT_INTERFACE_METHOD, classRef(owner), nameAndType(name, descriptor));
+  }
+
+  private int nameAndType(String name, String descriptor) {
+    return entry(CONSTANT_NAME_AND_TYPE, utf8(name), utf8(descriptor));
+  }
+
+  /**
+   * Adds a constant pool entry made up of one or two references to other entries.
+   *
+   * @param tag The constant pool tag of the entry.
+   * @param references The indices of the entries referenced.
+   * @return The index of the entry.
+   */
+  private int entry(int tag, int... references) {
+    StringBuilder key = new StringBuilder().append(tag);
+    for (int reference : references) {
+      key.append(':').append(reference);
+    }
+    Integer index = poolIndices.get(key.toString());
+    if (index == null) {
+      pool.write(tag);
+      for (int reference : references) {
+        writeShort(pool, reference);
+      }
+      index = poolCount++;
+      poolIndices.put(key.toString(), index);
+    }
+    return index;
+  }
+
+  /**
+   * Adds a field to the class.
+   *
+   * @param access The access flags of the field.
+   * @param name The name of the field.
+   * @param descriptor The type descriptor of the field.
+   */
+  void addField(int access, String name, String descriptor) {
+    ByteArrayOutputStream field = new ByteArrayOutputStream();
+    writeShort(field, access);
+    writeShort(field, utf8(name));
+    writeShort(field, utf8(descriptor));
+    writeShort(field, 0);
+    fields.add(field.toByteArray());
+  }
+
+  /**
+   * Adds a method to the class.
+   *
+   * @param access The access flags of the method.
+   * @param name The name of the method.
+   * @param descriptor The method descriptor.
+   * @param code The finished body of the method.
+   */
+  void addMethod(int access, String name, String descriptor, CodeWriter code) {
+    byte[] body = code.toByteArray();
+    ByteArrayOutputStream method = new ByteArrayOutputStream();
+    writeShort(method, access);
+    writeShort(method, utf8(name));
+    writeShort(method, utf8(descriptor));
+    writeShort(method, 1);
+    writeShort(method, utf8("Code"));
+    writeInt(method, body.length);
+    method.write(body, 0, body.length);
+    methods.add(method.toByteArray());
+  }
+
+  /**
+   * Serializes the class.
+   *
+   * @return The bytes of the class file.
+   */
+  byte[] toByteArray() {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    writeInt(out, 0xCAFEBABE);
+    writeShort(out, 0);
+    writeShort(out, MAJOR_VERSION);
+    writeShort(out, poolCount);
+    byte[] entries = pool.toByteArray();
+    out.write(entries, 0, entries.length);
+    writeShort(out, ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+    writeShort(out, thisClass);
+    writeShort(out, superClass);
+    writeShort(out, interfaces.size());
+    for (int index : interfaces) {
+      writeShort(out, index);
+    }
+    writeShort(out, fields.size());
+    for (byte[] field : fields) {
+      out.write(field, 0, field.length);
+    }
+    writeShort(out, methods.size());
+    for (byte[] method : methods) {
+      out.write(method, 0, method.length);
+    }
+    writeShort(out, 0);
+    return out.toByteArray();
+  }
+
+  static void writeShort(ByteArrayOutputStream out, int value) {
+    out.write((value >>> 8) & 0xFF);
+    out.write(value & 0xFF);
+  }
+
+  static void writeInt(ByteArrayOutputStream out, int value) {
+    writeShort(out, value >>> 16);
+    writeShort(out, value);
+  }
+
+  /**
+   * A label marking a position within a method's code that branches and exception handlers refer
+   * to. Branches may be written before the label is placed.
+   */
+  static final class Label {
+
+    /**
+     * The offset of the label within the code or -1 if it hasn't been placed.
+     */
+    private int position = -1;
+
+    /**
+     * The offsets of the branch instructions waiting for the label to be placed.
+     */
+    private final List<Integer> branches = new ArrayList<Integer>();
+  }
+
+  /**
+   * Writes the instructions of a single method. The operand stack and local variable sizes are
+   * provided by the caller since the script class compiler knows them ahead of time.
+   */
+  static final class CodeWriter {
+
+    static final int ICONST_0 = 0x03;
+    static final int BIPUSH = 0x10;
+    static final int SIPUSH = 0x11;
+    static final int LDC = 0x12;
+    static final int LDC_W = 0x13;
+    static final int ILOAD = 0x15;
+    static final int ALOAD = 0x19;
+    static final int AALOAD = 0x32;
+    static final int ISTORE = 0x36;
+    static final int ASTORE = 0x3A;
+    static final int POP = 0x57;
+    static final int DUP_X1 = 0x5A;
+    static final int SWAP = 0x5F;
+    static final int IADD = 0x60;
+    static final int ISUB = 0x64;
+    static final int IMUL = 0x68;
+    static final int IINC = 0x84;
+    static final int IFEQ = 0x99;
+    static final int IFNE = 0x9A;
+    static final int IF_ICMPLT = 0xA1;
+    static final int IF_ICMPGE = 0xA2;
+    static final int IF_ICMPGT = 0xA3;
+    static final int IF_ICMPLE = 0xA4;
+    static final int GOTO = 0xA7;
+    static final int RETURN = 0xB1;
+    static final int GETSTATIC = 0xB2;
+    static final int PUTSTATIC = 0xB3;
+    static final int INVOKEVIRTUAL = 0xB6;
+    static final int INVOKESPECIAL = 0xB7;
+    static final int INVOKESTATIC = 0xB8;
+    static final int INVOKEINTERFACE = 0xB9;
+    static final int CHECKCAST = 0xC0;
+
+    private final ByteArrayOutputStream handlers = new ByteArrayOutputStream();
+
+    private int handlerCount;
+
+    private byte[] code = new byte[256];
+
+    private int size;
+
+    private int maxStack;
+
+    private int maxLocals;
+
+    CodeWriter(int maxStack, int maxLocals) {
+      this.maxStack = maxStack;
+      this.maxLocals = maxLocals;
+    }
+
+    void setMaxLocals(int maxLocals) {
+      this.maxLocals = Math.max(this.maxLocals, maxLocals);
+    }
+
+    void op(int opcode) {
+      put(opcode);
+    }
+
+    void op(int opcode, int index) {
+      put(opcode);
+      put(index >>> 8);
+      put(index);
+    }
+
+    void invokeInterface(int index, int argumentCount) {
+      op(INVOKEINTERFACE, index);
+      put(argumentCount);
+      put(0);
+    }
+
+    void load(int opcode, int local) {
+      put(opcode);
+      put(local);
+    }
+
+    void iinc(int local, int increment) {
+      put(IINC);
+      put(local);
+      put(increment);
+    }
+
+    /**
+     * Pushes an int constant using the shortest instruction available.
+     *
+     * @param value The constant to push.
+     * @param writer The class file the method belongs to used for large constants.
+     */
+    void pushInt(int value, ClassFileWriter writer) {
+      if (value >= -1 && value <= 5) {
+        put(ICONST_0 + value);
+      } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+        put(BIPUSH);
+        put(value);
+      } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+        put(SIPUSH);
+        put(value >>> 8);
+        put(value);
+      } else {
+        ldc(writer.integer(value));
+      }
+    }
+
+    void ldc(int index) {
+      if (index < 256) {
+        put(LDC);
+        put(index);
+      } else {
+        op(LDC_W, index);
+      }
+    }
+
+    void branch(int opcode, Label label) {
+      label.branches.add(size);
+      put(opcode);
+      put(0);
+      put(0);
+    }
+
+    /**
+     * Places a label at the current position and patches any branches already written to it.
+     *
+     * @param label The label to place.
+     * @throws IllegalStateException Thrown if a branch is too far away to be encoded.
+     */
+    void mark(Label label) {
+      label.position = size;
+      for (int branch : label.branches) {
+        int offset = size - branch;
+        if (offset > Short.MAX_VALUE) {
+          throw new IllegalStateException("The generated method is too large to branch within.");
+        }
+        code[branch + 1] = (byte) (offset >>> 8);
+        code[branch + 2] = (byte) offset;
+      }
+      label.branches.clear();
+    }
+
+    /**
+     * Writes a branch backwards to a label that has already been placed.
+     *
+     * @param opcode The branch instruction.
+     * @param label The placed label.
+     * @throws IllegalStateException Thrown if the label is too far away to be encoded.
+     */
+    void branchBack(int opcode, Label label) {
+      int offset = label.position - size;
+      if (offset < Short.MIN_VALUE) {
+        throw new IllegalStateException("The generated method is too large to branch within.");
+      }
+      put(opcode);
+      put(offset >>> 8);
+      put(offset);
+    }
+
+    /**
+     * Adds an exception handler covering the code between two placed labels.
+     *
+     * @param start The first instruction covered.
+     * @param end The instruction after the last instruction covered.
+     * @param handler The first instruction of the handler.
+     * @param catchType The constant pool index of the exception class caught.
+     */
+    void handler(Label start, Label end, Label handler, int catchType) {
+      writeShort(handlers, start.position);
+      writeShort(handlers, end.position);
+      writeShort(handlers, handler.position);
+      writeShort(handlers, catchType);
+      handlerCount++;
+    }
+
+    int size() {
+      return size;
+    }
+
+    private void put(int value) {
+      if (size == code.length) {
+        byte[] grown = new byte[code.length * 2];
+        System.arraycopy(code, 0, grown, 0, size);
+        code = grown;
+      }
+      code[size++] = (byte) value;
+    }
+
+    /**
+     * Serializes the code attribute without its name and length.
+     *
+     * @return The bytes of the code attribute.
+     * @throws IllegalStateException Thrown if the method exceeds the JVM's method size limit.
+     */
+    byte[] toByteArray() {
+      if (size > 65535) {
+        throw new IllegalStateException("The generated method exceeds the JVM's size limit.");
+      }
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      writeShort(out, maxStack);
+      writeShort(out, maxLocals);
+      writeInt(out, size);
+      out.write(code, 0, size);
+      writeShort(out, handlerCount);
+      byte[] table = handlers.toByteArray();
+      out.write(table, 0, table.length);
+      writeShort(out, 0);
+      return out.toByteArray();
+    }
+  }
+}
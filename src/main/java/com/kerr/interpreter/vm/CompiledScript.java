@@ -0,0 +1,26 @@
+package com.kerr.interpreter.vm;
+
+import com.kerr.interpreter.controller.ScriptDataSource;
+import com.kerr.interpreter.controller.ScriptListener;
+import com.kerr.interpreter.model.ScriptData;
+
+/**
+ * A script whose user-defined words were compiled into a JVM class by the script class compiler.
+ * The compiled class is immutable so it can be shared by every copy of the script it was compiled
+ * from.
+ *
+ * @author allankerr
+ *
+ */
+public interface CompiledScript {
+
+  /**
+   * Executes the compiled play word.
+   *
+   * @param data The script being executed used to access the stack and variables.
+   * @param listener The listener that output is sent to.
+   * @param dataSource The data source that provides information on the robot the script is being
+   *        executed for.
+   */
+  public void run(ScriptData data, ScriptListener listener, ScriptDataSource dataSource);
+}
@@ -0,0 +1,122 @@
+package com.kerr.interpreter.vm;
+
+import com.kerr.interpreter.controller.ScriptDataSource;
+import com.kerr.interpreter.controller.ScriptListener;
+import com.kerr.interpreter.model.ScriptData;
+
+/**
+ * The suspended state of a script being executed by the bytecode interpreter a number of
+ * instructions at a time. The interpreter keeps its registers in locals while it runs and only
+ * saves them here when it runs out of instructions so suspending costs nothing until it happens.
+ *
+ * A continuation holds no reference to the thread that last resumed it so it can be resumed on any
+ * thread, but it must not be resumed by two threads at once. Executors and other hand-offs between
+ * threads already make the saved state visible to the next thread. The stack, variables and counted
+ * loops live in the script so it must not be executed by anything else until the continuation
+ * finishes.
+ *
+ * @author allankerr
+ *
+ */
+public final class Continuation {
+
+  /**
+   * The initial depth of the return and loop stacks. They grow as needed.
+   */
+  private static final int INITIAL_DEPTH = 16;
+
+  final Bytecode bytecode;
+
+  final ScriptData data;
+
+  /**
+   * The address of the next instruction.
+   */
+  int pc;
+
+  /**
+   * Return addresses of the user-defined words being executed.
+   */
+  int[] returns = new int[INITIAL_DEPTH];
+
+  int rsp;
+
+  /**
+   * The exit address, return depth, index and end of each loop being executed.
+   */
+  int[] loopExits = new int[INITIAL_DEPTH];
+
+  int[] loopReturns = new int[INITIAL_DEPTH];
+
+  int[] loopIndices = new int[INITIAL_DEPTH];
+
+  int[] loopEnds = new int[INITIAL_DEPTH];
+
+  int lsp;
+
+  /**
+   * Whether the script halted or stopped with an error.
+   */
+  boolean finished;
+
+  /**
+   * The number of instructions executed over every call to resume.
+   */
+  long instructions;
+
+  /**
+   * Construct the state of a script that is about to execute its first instruction.
+   *
+   * @param bytecode The compiled bytecode of the script.
+   * @param data The script being executed.
+   */
+  Continuation(Bytecode bytecode, ScriptData data) {
+    this.bytecode = bytecode;
+    this.data = data;
+  }
+
+  /**
+   * Executes the script until it halts or has executed the budgeted number of instructions.
+   *
+   * @param listener The listener that output is sent to.
+   * @param dataSource The data source that provides information on the robot the script is being
+   *        executed for.
+   * @param budget The largest number of instructions to execute.
+   * @return The number of instructions executed, which is less than the budget only if the script
+   *         halted.
+   * @throws IllegalArgumentException Thrown if the budget isn't positive.
+   * @throws IllegalStateException Thrown if the script has already finished.
+   */
+  public long resume(ScriptListener listener, ScriptDataSource dataSource, long budget) {
+    return new BytecodeInterpreter().resume(this, listener, dataSource, budget);
+  }
+
+  /**
+   * Determines whether the script has stopped running, either because it halted or because it
+   * stopped with an error, so it can't be resumed.
+   *
+   * @return True if the script has finished or false if it is suspended.
+   */
+  public boolean isFinished() {
+    return finished;
+  }
+
+  /**
+   * Gets the number of instructions the script has executed over every call to resume.
+   *
+   * @return The number of instructions executed.
+   */
+  public long getInstructionsExecuted() {
+    return instructions;
+  }
+
+  /**
+   * Gets the script being run, whose stack, variables and mailboxes the continuation updates as it
+   * is resumed.
+   *
+   * @return The script.
+   */
+  public ScriptData getScript() {
+    return data;
+  }
+}
@@ -0,0 +1,318 @@
+package com.kerr.interpreter.vm;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The instruction set of the bytecode interpreter. Each instruction is a single int in the
+ * instruction stream followed by its operands, if it has any. Predefined words map one to one onto
+ * an instruction while literals, user-defined words, if-statements, and loops are lowered onto the
+ * literal, call, and jump instructions.
+ *
+ * @author allankerr
+ *
+ */
+public final class Opcode {
+
+  // Control Instructions
+  public static final int HALT = 0;
+  public static final int CALL = 1;
+  public static final int RETURN = 2;
+  public static final int JUMP = 3;
+  public static final int JUMP_IF_FALSE = 4;
+  public static final int DO = 5;
+  public static final int LOOP = 6;
+  public static final int UNLOOP = 7;
+  public static final int BEGIN = 8;
+  public static final int UNTIL = 9;
+  public static final int END_LOOP = 10;
+  public static final int LEAVE = 11;
+
+  // Literal Instructions
+  public static final int LITERAL = 12;
+  public static final int LOOP_INDEX = 13;
+
+  // Stack Instructions
+  public static final int DROP = 14;
+  public static final int DUP = 15;
+  public static final int SWAP = 16;
+  public static final int ROT = 17;
+
+  // Arithmetic Instructions
+  public static final int ADD = 18;
+  public static final int SUBTRACT = 19;
+  public static final int MULTIPLY = 20;
+  public static final int MOD = 21;
+
+  // Comparison Instructions
+  public static final int LESS_THAN = 22;
+  public static final int LESS_THAN_OR_EQUAL = 23;
+  public static final int EQUALS = 24;
+  public static final int NOT_EQUALS = 25;
+  public static final int GREATER_THAN = 26;
+  public static final int GREATER_THAN_OR_EQUAL = 27;
+
+  // Logic Instructions
+  public static final int AND = 28;
+  public static final int OR = 29;
+  public static final int INVERT = 30;
+
+  // Variable Instructions
+  public static final int STORE = 31;
+  public static final int FETCH = 32;
+
+  // Utility Instructions
+  public static final int PRINT = 33;
+  public static final int RANDOM = 34;
+
+  // Robot Instructions
+  public static final int SHOOT = 35;
+  public static final int MOVE = 36;
+  public static final int TURN = 37;
+  public static final int CHECK = 38;
+  public static final int SCAN = 39;
+  public static final int IDENTIFY = 40;
+
+  // Robot Status Instructions
+  public static final int ATTACK = 41;
+  public static final int HEALTH_LEFT = 42;
+  public static final int HEALTH = 43;
+  public static final int MOVES_LEFT = 44;
+  public static final int MOVES = 45;
+  public static final int RANGE = 46;
+  public static final int TEAM = 47;
+  public static final int TYPE = 48;
+
+  // Mail Instructions
+  public static final int SEND = 49;
+  public static final int RECEIVE = 50;
+  public static final int MESSAGE = 51;
+
+  // Unchecked Instructions
+  // These skip the operand checks of instructions the stack verifier proved are always passed
+  // operands of the expected types.
+  public static final int ADD_UNCHECKED = 52;
+  public static final int SUBTRACT_UNCHECKED = 53;
+  public static final int MULTIPLY_UNCHECKED = 54;
+  public static final int MOD_UNCHECKED = 55;
+  public static final int LESS_THAN_UNCHECKED = 56;
+  public static final int LESS_THAN_OR_EQUAL_UNCHECKED = 57;
+  public static final int GREATER_THAN_UNCHECKED = 58;
+  public static final int GREATER_THAN_OR_EQUAL_UNCHECKED = 59;
+  public static final int AND_UNCHECKED = 60;
+  public static final int OR_UNCHECKED = 61;
+  public static final int INVERT_UNCHECKED = 62;
+
+  // Superinstructions
+  // These are fused from common pairs of instructions by the peephole optimizer.
+  public static final int ADD_IMMEDIATE = 63;
+  public static final int SUBTRACT_IMMEDIATE = 64;
+  public static final int SQUARE = 65;
+  public static final int LOAD_VARIABLE = 66;
+  public static final int STORE_VARIABLE = 67;
+  public static final int TURN_IMMEDIATE = 68;
+  public static final int JUMP_UNLESS_LESS_THAN = 69;
+  public static final int JUMP_UNLESS_LESS_THAN_OR_EQUAL = 70;
+  public static final int JUMP_UNLESS_EQUALS = 71;
+  public static final int JUMP_UNLESS_NOT_EQUALS = 72;
+  public static final int JUMP_UNLESS_GREATER_THAN = 73;
+  public static final int JUMP_UNLESS_GREATER_THAN_OR_EQUAL = 74;
+
+  /**
+   * The printable names of every instruction indexed by opcode.
+   */
+  private static final String[] NAMES = {"halt", "call", "return", "jump", "jump-if-false", "do",
+      "loop", "unloop", "begin", "until", "end-loop", "leave", "literal", "loop-index", "drop",
+      "dup", "swap", "rot", "add", "subtract", "multiply", "mod", "less-than", "less-than-or-equal",
+      "equals", "not-equals", "greater-than", "greater-than-or-equal", "and", "or", "invert",
+      "store", "fetch", "print", "random", "shoot", "move", "turn", "check", "scan", "identify",
+      "attack", "health-left", "health", "moves-left", "moves", "range", "team", "type", "send",
+      "receive", "message", "add-unchecked", "subtract-unchecked", "multiply-unchecked",
+      "mod-unchecked", "less-than-unchecked", "less-than-or-equal-unchecked",
+      "greater-than-unchecked", "greater-than-or-equal-unchecked", "and-unchecked",
+      "or-unchecked", "invert-unchecked", "add-immediate", "subtract-immediate", "square",
+      "load-variable", "store-variable", "turn-immediate", "jump-unless-less-than",
+      "jump-unless-less-than-or-equal", "jump-unless-equals", "jump-unless-not-equals",
+      "jump-unless-greater-than", "jump-unless-greater-than-or-equal"};
+
+  /**
+   * The number of operands that follow each instruction in the instruction stream indexed by
+   * opcode.
+   */
+  private static final int[] OPERANDS = new int[NAMES.length];
+
+  /**
+   * The instruction each predefined word is compiled to keyed by the predefined word's name.
+   */
+  private static final Map<String, Integer> PREDEFINED = new HashMap<String, Integer>();
+
+  static {
+    OPERANDS[CALL] = 1;
+    OPERANDS[JUMP] = 1;
+    OPERANDS[JUMP_IF_FALSE] = 1;
+    OPERANDS[DO] = 1;
+    OPERANDS[LOOP] = 1;
+    OPERANDS[BEGIN] = 1;
+    OPERANDS[UNTIL] = 1;
+    OPERANDS[LITERAL] = 1;
+    for (int opcode = ADD_IMMEDIATE; opcode <= JUMP_UNLESS_GREATER_THAN_OR_EQUAL; opcode++) {
+      OPERANDS[opcode] = opcode == SQUARE ? 0 : 1;
+    }
+
+    // Stack Words
+    PREDEFINED.put("drop", DROP);
+    PREDEFINED.put("dup", DUP);
+    PREDEFINED.put("swap", SWAP);
+    PREDEFINED.put("rot", ROT);
+    PREDEFINED.put("pop", DROP);
+
+    // Arithmetic Words
+    PREDEFINED.put("+", ADD);
+    PREDEFINED.put("-", SUBTRACT);
+    PREDEFINED.put("*", MULTIPLY);
+    PREDEFINED.put("/mod", MOD);
+
+    // Comparison Words
+    PREDEFINED.put("<", LESS_THAN);
+    PREDEFINED.put("<=", LESS_THAN_OR_EQUAL);
+    PREDEFINED.put("=", EQUALS);
+    PREDEFINED.put("<>", NOT_EQUALS);
+    PREDEFINED.put(">", GREATER_THAN);
+    PREDEFINED.put("=>", GREATER_THAN_OR_EQUAL);
+
+    // Logic Words
+    PREDEFINED.put("and", AND);
+    PREDEFINED.put("or", OR);
+    PREDEFINED.put("invert", INVERT);
+
+    // Variable Words
+    PREDEFINED.put("!", STORE);
+    PREDEFINED.put("?", FETCH);
+
+    // Utility Words
+    PREDEFINED.put(".", PRINT);
+    PREDEFINED.put("random", RANDOM);
+
+    // Robot Words
+    PREDEFINED.put("shoot!", SHOOT);
+    PREDEFINED.put("move!", MOVE);
+    PREDEFINED.put("move", MOVE);
+    PREDEFINED.put("turn!", TURN);
+    PREDEFINED.put("check!", CHECK);
+    PREDEFINED.put("scan!", SCAN);
+    PREDEFINED.put("identify!", IDENTIFY);
+
+    // Robot Status Words
+    PREDEFINED.put("attack", ATTACK);
+    PREDEFINED.put("healthLeft", HEALTH_LEFT);
+    PREDEFINED.put("health", HEALTH);
+    PREDEFINED.put("movesLeft", MOVES_LEFT);
+    PREDEFINED.put("moves", MOVES);
+    PREDEFINED.put("range", RANGE);
+    PREDEFINED.put("team", TEAM);
+    PREDEFINED.put("type", TYPE);
+
+    // Mail Words
+    PREDEFINED.put("send!", SEND);
+    PREDEFINED.put("recv!", RECEIVE);
+    PREDEFINED.put("mesg?", MESSAGE);
+
+    // Loop Words
+    PREDEFINED.put("leave", LEAVE);
+    PREDEFINED.put("I", LOOP_INDEX);
+  }
+
+  /**
+   * Gets the instruction a predefined word is compiled to.
+   *
+   * @param name The name of the predefined word.
+   * @return The opcode for the predefined word.
+   * @throws IllegalArgumentException Thrown if there is no instruction for the predefined word.
+   */
+  public static int forPredefinedWord(String name) {
+    Integer opcode = PREDEFINED.get(name);
+    if (opcode == null) {
+      throw new IllegalArgumentException("No instruction exists for the predefined word '" + name
+          + "'.");
+    }
+    return opcode;
+  }
+
+  /**
+   * Gets the unchecked form of an instruction.
+   *
+   * @param opcode The instruction.
+   * @return The unchecked instruction or -1 if the instruction has no unchecked form.
+   */
+  public static int unchecked(int opcode) {
+    switch (opcode) {
+      case ADD:
+        return ADD_UNCHECKED;
+      case SUBTRACT:
+        return SUBTRACT_UNCHECKED;
+      case MULTIPLY:
+        return MULTIPLY_UNCHECKED;
+      case MOD:
+        return MOD_UNCHECKED;
+      case LESS_THAN:
+        return LESS_THAN_UNCHECKED;
+      case LESS_THAN_OR_EQUAL:
+        return LESS_THAN_OR_EQUAL_UNCHECKED;
+      case GREATER_THAN:
+        return GREATER_THAN_UNCHECKED;
+      case GREATER_THAN_OR_EQUAL:
+        return GREATER_THAN_OR_EQUAL_UNCHECKED;
+      case AND:
+        return AND_UNCHECKED;
+      case OR:
+        return OR_UNCHECKED;
+      case INVERT:
+        return INVERT_UNCHECKED;
+      default:
+        return -1;
+    }
+  }
+
+  /**
+   * Determines whether an instruction's operand is an address in the instruction stream.
+   *
+   * @param opcode The instruction.
+   * @return True if the instruction's operand is an address; otherwise, false.
+   */
+  public static boolean hasAddress(int opcode) {
+    switch (opcode) {
+      case CALL:
+      case JUMP:
+      case JUMP_IF_FALSE:
+      case DO:
+      case LOOP:
+      case BEGIN:
+      case UNTIL:
+        return true;
+      default:
+        return opcode >= JUMP_UNLESS_LESS_THAN && opcode <= JUMP_UNLESS_GREATER_THAN_OR_EQUAL;
+    }
+  }
+
+  /**
+   * Gets the number of operands that follow an instruction in the instruction stream.
+   *
+   * @param opcode The instruction.
+   * @return The number of operands.
+   */
+  public static int operandCount(int opcode) {
+    return OPERANDS[opcode];
+  }
+
+  /**
+   * Gets the printable name of an instruction.
+   *
+   * @param opcode The instruction.
+   * @return The name of the instruction.
+   */
+  public static String getName(int opcode) {
+    return NAMES[opcode];
+  }
+
+  private Opcode() {}
+}
@@ -0,0 +1,498 @@
+package com.kerr.interpreter.vm;
+
+import com.kerr.interpreter.controller.CheckResponse;
+import com.kerr.interpreter.controller.IdentifyResponse;
+import com.kerr.interpreter.controller.ScriptDataSource;
+import com.kerr.interpreter.controller.ScriptListener;
+import com.kerr.interpreter.model.IntValue;
+import com.kerr.interpreter.model.RobotType;
+import com.kerr.interpreter.model.ScriptData;
+import com.kerr.interpreter.model.StringValue;
+import com.kerr.interpreter.model.Value;
+import com.kerr.interpreter.model.VariableValue;
+import com.kerr.interpreter.words.LeaveLoopException;
+
+/**
+ * The operations performed by each instruction shared by the bytecode interpreter and the classes
+ * generated by the script class compiler. Every operation has the same effect on the script,
+ * listener, and data source as the predefined word it implements, including the exceptions thrown
+ * when a script is ill-formed. The methods are small and static so the JIT compiler can inline them
+ * into the dispatch loop and the generated classes.
+ *
+ * @author allankerr
+ *
+ */
+final class Primitives {
+
+  // Control Operations
+
+  static boolean condition(ScriptData data) {
+    try {
+      return data.popBool();
+    } catch (ClassCastException ex) {
+      throw new IllegalStateException("The condition for the if-word operation was not a boolean.");
+    }
+  }
+
+  static boolean guard(ScriptData data) {
+    try {
+      return data.popBool();
+    } catch (ClassCastException ex) {
+      throw new IllegalStateException(
+          "The guard value for the guarded loop was not a boolean value as expected.");
+    }
+  }
+
+  static int loopBound(ScriptData data) {
+    try {
+      return data.popInt();
+    } catch (ClassCastException ex) {
+      throw new IllegalStateException(
+          "The start or end value of a counted loop was not of the expected type");
+    }
+  }
+
+  static void enterLoop(ScriptData data, int index) {
+    data.enterLoop(index);
+  }
+
+  static void setLoopIndex(ScriptData data, int index) {
+    data.setLoopIndex(index);
+  }
+
+  static void exitLoop(ScriptData data) {
+    data.exitLoop();
+  }
+
+  static void loopIndex(ScriptData data) {
+    data.pushLoopIndex();
+  }
+
+  static void leave() {
+    throw LeaveLoopException.INSTANCE;
+  }
+
+  // Stack Operations
+
+  static void drop(ScriptData data) {
+    data.pop();
+  }
+
+  static void dup(ScriptData data) {
+    Value<?> val = data.pop();
+    data.push(val);
+    data.push(val);
+  }
+
+  static void swap(ScriptData data) {
+    Value<?> val1 = data.pop();
+    Value<?> val2 = data.pop();
+    data.push(val1);
+    data.push(val2);
+  }
+
+  static void rot(ScriptData data) {
+    Value<?> val1 = data.pop();
+    Value<?> val2 = data.pop();
+    Value<?> val3 = data.pop();
+    data.push(val2);
+    data.push(val1);
+    data.push(val3);
+  }
+
+  // Arithmetic Operations
+
+  static void add(ScriptData data) {
+    int val1 = popInt(data, "+");
+    int val2 = popInt(data, "+");
+    data.pushInt(val1 + val2);
+  }
+
+  static void subtract(ScriptData data) {
+    int val1 = popInt(data, "-");
+    int val2 = popInt(data, "-");
+    data.pushInt(val2 - val1);
+  }
+
+  static void multiply(ScriptData data) {
+    int val1 = popInt(data, "*");
+    int val2 = popInt(data, "*");
+    data.pushInt(val1 * val2);
+  }
+
+  static void mod(ScriptData data) {
+    int val1 = popInt(data, "/mod");
+    int val2 = popInt(data, "/mod");
+    data.pushInt(val2 % val1);
+    data.pushInt(val2 / val1);
+  }
+
+  // Comparison Operations
+
+  static void lessThan(ScriptData data) {
+    data.pushBool(testLessThan(data));
+  }
+
+  static boolean testLessThan(ScriptData data) {
+    int val1 = popInt(data, "<");
+    int val2 = popInt(data, "<");
+    return val2 < val1;
+  }
+
+  static void lessThanOrEqual(ScriptData data) {
+    data.pushBool(testLessThanOrEqual(data));
+  }
+
+  static boolean testLessThanOrEqual(ScriptData data) {
+    int val1 = popInt(data, "<=");
+    int val2 = popInt(data, "<=");
+    return val2 <= val1;
+  }
+
+  static void equals(ScriptData data) {
+    data.pushBool(testEquals(data));
+  }
+
+  static boolean testEquals(ScriptData data) {
+    Value<?> val1 = data.pop();
+    Value<?> val2 = data.pop();
+    return val1.getValue().equals(val2.getValue());
+  }
+
+  static void notEquals(ScriptData data) {
+    data.pushBool(testNotEquals(data));
+  }
+
+  static boolean testNotEquals(ScriptData data) {
+    Value<?> val1 = data.pop();
+    Value<?> val2 = data.pop();
+    return !val1.getValue().equals(val2.getValue());
+  }
+
+  static void greaterThan(ScriptData data) {
+    data.pushBool(testGreaterThan(data));
+  }
+
+  static boolean testGreaterThan(ScriptData data) {
+    int val1 = popInt(data, ">");
+    int val2 = popInt(data, ">");
+    return val2 > val1;
+  }
+
+  static void greaterThanOrEqual(ScriptData data) {
+    data.pushBool(testGreaterThanOrEqual(data));
+  }
+
+  static boolean testGreaterThanOrEqual(ScriptData data) {
+    int val1 = popInt(data, "=>");
+    int val2 = popInt(data, "=>");
+    return val2 >= val1;
+  }
+
+  // Logic Operations
+
+  static void and(ScriptData data) {
+    boolean val1 = popBool(data, "and");
+    boolean val2 = popBool(data, "and");
+    data.pushBool(val1 && val2);
+  }
+
+  static void or(ScriptData data) {
+    boolean val1 = popBool(data, "or");
+    boolean val2 = popBool(data, "or");
+    data.pushBool(val1 || val2);
+  }
+
+  static void invert(ScriptData data) {
+    boolean val;
+    try {
+      val = data.popBool();
+    } catch (ClassCastException ex) {
+      throw new IllegalStateException("The condition for the if-word operation was not a boolean.");
+    }
+    data.pushBool(!val);
+  }
+
+  // Unchecked Operations
+
+  static void addUnchecked(ScriptData data) {
+    int val1 = data.popIntUnchecked();
+    int val2 = data.popIntUnchecked();
+    data.pushInt(val1 + val2);
+  }
+
+  static void subtractUnchecked(ScriptData data) {
+    int val1 = data.popIntUnchecked();
+    int val2 = data.popIntUnchecked();
+    data.pushInt(val2 - val1);
+  }
+
+  static void multiplyUnchecked(ScriptData data) {
+    int val1 = data.popIntUnchecked();
+    int val2 = data.popIntUnchecked();
+    data.pushInt(val1 * val2);
+  }
+
+  static void modUnchecked(ScriptData data) {
+    int val1 = data.popIntUnchecked();
+    int val2 = data.popIntUnchecked();
+    data.pushInt(val2 % val1);
+    data.pushInt(val2 / val1);
+  }
+
+  static void lessThanUnchecked(ScriptData data) {
+    int val1 = data.popIntUnchecked();
+    int val2 = data.popIntUnchecked();
+    data.pushBool(val2 < val1);
+  }
+
+  static void lessThanOrEqualUnchecked(ScriptData data) {
+    int val1 = data.popIntUnchecked();
+    int val2 = data.popIntUnchecked();
+    data.pushBool(val2 <= val1);
+  }
+
+  static void greaterThanUnchecked(ScriptData data) {
+    int val1 = data.popIntUnchecked();
+    int val2 = data.popIntUnchecked();
+    data.pushBool(val2 > val1);
+  }
+
+  static void greaterThanOrEqualUnchecked(ScriptData data) {
+    int val1 = data.popIntUnchecked();
+    int val2 = data.popIntUnchecked();
+    data.pushBool(val2 >= val1);
+  }
+
+  static void andUnchecked(ScriptData data) {
+    boolean val1 = data.popBoolUnchecked();
+    boolean val2 = data.popBoolUnchecked();
+    data.pushBool(val1 && val2);
+  }
+
+  static void orUnchecked(ScriptData data) {
+    boolean val1 = data.popBoolUnchecked();
+    boolean val2 = data.popBoolUnchecked();
+    data.pushBool(val1 || val2);
+  }
+
+  static void invertUnchecked(ScriptData data) {
+    data.pushBool(!data.popBoolUnchecked());
+  }
+
+  // Superinstruction Operations
+
+  static void addImmediate(ScriptData data, int value) {
+    data.pushInt(popInt(data, "+") + value);
+  }
+
+  static void subtractImmediate(ScriptData data, int value) {
+    data.pushInt(popInt(data, "-") - value);
+  }
+
+  static void square(ScriptData data) {
+    int val = data.popIntUnchecked();
+    data.pushInt(val * val);
+  }
+
+  // Variable Operations
+
+  static void store(ScriptData data) {
+    VariableValue variable;
+    try {
+      variable = (VariableValue) data.pop();
+    } catch (ClassCastException ex) {
+      throw new IllegalStateException("Attempted to set the value of an invalid variable name.");
+    }
+    data.setVariable(variable, data.pop());
+  }
+
+  static void fetch(ScriptData data) {
+    VariableValue variable;
+    try {
+      variable = (VariableValue) data.pop();
+    } catch (ClassCastException ex) {
+      throw new IllegalStateException("Attempted to get the value of an invalid variable name.");
+    }
+    data.pushVariable(variable);
+  }
+
+  // Utility Operations
+
+  static void print(ScriptData data) {
+    System.out.println(data.pop());
+  }
+
+  static void random(ScriptData data) {
+    int val = popArgument(data, "random");
+    data.pushInt(data.nextRandom(val + 1));
+  }
+
+  // Robot Operations
+
+  static void shoot(ScriptData data, ScriptListener listener) {
+    int distance = popInt(data, "shoot!");
+    int direction = popInt(data, "shoot!");
+    listener.shoot(direction, distance);
+  }
+
+  static void move(ScriptData data, ScriptListener listener) {
+    listener.move();
+  }
+
+  static void turn(ScriptData data, ScriptListener listener) {
+    listener.turn(popArgument(data, "turn!"));
+  }
+
+  static void check(ScriptData data, ScriptListener listener) {
+    CheckResponse response = listener.check(popArgument(data, "check!"));
+    if (response == null) {
+      throw new IllegalArgumentException("Script received a null check response.");
+    }
+    data.push(new StringValue(response.toString()));
+  }
+
+  static void scan(ScriptData data, ScriptListener listener) {
+    data.pushInt(listener.scan());
+  }
+
+  static void identify(ScriptData data, ScriptListener listener) {
+    int val;
+    try {
+      val = data.popInt();
+    } catch (ClassCastException ex) {
+      throw new IllegalStateException(
+          "The parameters for the identify! operation was not an integer");
+    }
+    IdentifyResponse response = listener.identify(val);
+    data.pushInt(response.getRemainingHealth());
+    data.pushInt(response.getDirection());
+    data.pushInt(response.getRange());
+    data.push(response.getTeam().getValue());
+  }
+
+  // Robot Status Operations
+
+  static void attack(ScriptData data, ScriptDataSource dataSource) {
+    data.pushInt(dataSource.attack());
+  }
+
+  static void healthLeft(ScriptData data, ScriptDataSource dataSource) {
+    data.pushInt(dataSource.healthLeft());
+  }
+
+  static void health(ScriptData data, ScriptDataSource dataSource) {
+    data.pushInt(dataSource.health());
+  }
+
+  static void movesLeft(ScriptData data, ScriptDataSource dataSource) {
+    data.pushInt(dataSource.movesLeft());
+  }
+
+  static void moves(ScriptData data, ScriptDataSource dataSource) {
+    data.pushInt(dataSource.moves());
+  }
+
+  static void range(ScriptData data, ScriptDataSource dataSource) {
+    data.pushInt(dataSource.range());
+  }
+
+  static void team(ScriptData data, ScriptDataSource dataSource) {
+    data.push(dataSource.team().getValue());
+  }
+
+  static void type(ScriptData data, ScriptDataSource dataSource) {
+    data.push(new StringValue(dataSource.type().toString()));
+  }
+
+  // Mail Operations
+
+  static void send(ScriptData data, ScriptListener listener) {
+    Value<?> val = data.pop();
+    StringValue senderVal;
+    try {
+      senderVal = (StringValue) data.pop();
+    } catch (ClassCastException ex) {
+      throw new IllegalStateException(
+          "One of the arguments to 'send!' was not of the expected type.");
+    }
+    RobotType sender = RobotType.valueOf(senderVal.getValue());
+    data.pushBool(listener.sendMessage(sender, val));
+  }
+
+  static void receive(ScriptData data) {
+    data.pushMessage(RobotType.valueOf(popString(data, "recv!")));
+  }
+
+  static void message(ScriptData data) {
+    RobotType sender = RobotType.valueOf(popString(data, "mesg?"));
+    data.pushBool(data.hasMessage(sender));
+  }
+
+  /**
+   * Pops one of the integer arguments of a binary operation.
+   *
+   * @param data The script being executed.
+   * @param name The name of the predefined word the operation implements.
+   * @return The integer that was on the top of the stack.
+   * @throws IllegalStateException Thrown if the top-most value was not an integer.
+   */
+  private static int popInt(ScriptData data, String name) {
+    try {
+      return data.popInt();
+    } catch (ClassCastException ex) {
+      throw new IllegalStateException("One of the arguments to '" + name + "' was not an integer.");
+    }
+  }
+
+  /**
+   * Pops the only integer argument of a unary operation.
+   *
+   * @param data The script being executed.
+   * @param name The name of the predefined word the operation implements.
+   * @return The integer that was on the top of the stack.
+   * @throws IllegalStateException Thrown if the top-most value was not an integer.
+   */
+  private static int popArgument(ScriptData data, String name) {
+    try {
+      return data.popInt();
+    } catch (ClassCastException ex) {
+      throw new IllegalStateException("The arguments to '" + name + "' was not an integer.");
+    }
+  }
+
+  /**
+   * Pops one of the boolean arguments of a binary logic operation.
+   *
+   * @param data The script being executed.
+   * @param name The name of the predefined word the operation implements.
+   * @return The boolean that was on the top of the stack.
+   * @throws IllegalStateException Thrown if the top-most value was not a boolean.
+   */
+  private static boolean popBool(ScriptData data, String name) {
+    try {
+      return data.popBool();
+    } catch (ClassCastException ex) {
+      throw new IllegalStateException(
+          "One of the parameters to '" + name + "' operation was not a boolean");
+    }
+  }
+
+  /**
+   * Pops the robot type argument of a mail operation.
+   *
+   * @param data The script being executed.
+   * @param name The name of the predefined word the operation implements.
+   * @return The string that was on the top of the stack.
+   * @throws IllegalStateException Thrown if the top-most value was not a string.
+   */
+  private static String popString(ScriptData data, String name) {
+    try {
+      return ((StringValue) data.pop()).getValue();
+    } catch (ClassCastException ex) {
+      throw new IllegalStateException("The arguments to '" + name + "' was not a string.");
+    }
+  }
+
+  private Primitives() {}
+}
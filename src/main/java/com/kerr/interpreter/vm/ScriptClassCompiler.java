@@ -0,0 +1,780 @@
+package com.kerr.interpreter.vm;
+
+import com.kerr.interpreter.model.BoolValue;
+import com.kerr.interpreter.model.IntValue;
+import com.kerr.interpreter.model.ScriptData;
+import com.kerr.interpreter.model.Value;
+import com.kerr.interpreter.vm.ClassFileWriter.CodeWriter;
+import com.kerr.interpreter.vm.ClassFileWriter.Label;
+import com.kerr.interpreter.words.CountedLoopWord;
+import com.kerr.interpreter.words.GuardedLoopWord;
+import com.kerr.interpreter.words.IfWord;
+import com.kerr.interpreter.words.LiteralWord;
+import com.kerr.interpreter.words.MultiWord;
+import com.kerr.interpreter.words.Word;
+import com.kerr.interpreter.words.WordVisitor;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiles the user-defined words of a built script into a JVM class so the JIT compiler can
+ * optimize across the whole script. Every user-defined word reachable from the play word becomes a
+ * static method of a single hidden class and calls between user-defined words become static calls.
+ * Integer and boolean literals, drop, dup and swap are emitted inline as JVM instructions, as are
+ * arithmetic, comparisons, fetches and stores whose operands the stack verifier proved have the
+ * expected types. A verified comparison followed by an if-statement branches on the integers
+ * directly rather than pushing a boolean. The remaining predefined words, which are the words that
+ * call the listener or data source and the words whose operands must be checked, are emitted as
+ * static calls to the operations in Primitives so they report the same errors as the word-tree.
+ *
+ * @author allankerr
+ *
+ */
+public class ScriptClassCompiler implements WordVisitor {
+
+  /**
+   * The name of the user-defined word execution starts from.
+   */
+  private static final String PLAY_WORD = "play";
+
+  /**
+   * The internal name of the generated class. The JVM appends a unique suffix to hidden classes.
+   */
+  private static final String CLASS_NAME = "com/kerr/interpreter/vm/GeneratedScript";
+
+  private static final String PRIMITIVES = "com/kerr/interpreter/vm/Primitives";
+
+  private static final String SCRIPT_DATA = "com/kerr/interpreter/model/ScriptData";
+
+  private static final String VALUE = "Lcom/kerr/interpreter/model/Value;";
+
+  private static final String VARIABLE_VALUE = "com/kerr/interpreter/model/VariableValue";
+
+  private static final String CONSTANTS = "constants";
+
+  private static final String CONSTANTS_TYPE = "[" + VALUE;
+
+  /**
+   * The descriptor shared by the methods generated for user-defined words.
+   */
+  private static final String WORD_DESCRIPTOR = "(L" + SCRIPT_DATA
+      + ";Lcom/kerr/interpreter/controller/ScriptListener;"
+      + "Lcom/kerr/interpreter/controller/ScriptDataSource;)V";
+
+  private static final String DATA_DESCRIPTOR = "(L" + SCRIPT_DATA + ";)V";
+
+  private static final String LISTENER_DESCRIPTOR =
+      "(L" + SCRIPT_DATA + ";Lcom/kerr/interpreter/controller/ScriptListener;)V";
+
+  private static final String DATA_SOURCE_DESCRIPTOR =
+      "(L" + SCRIPT_DATA + ";Lcom/kerr/interpreter/controller/ScriptDataSource;)V";
+
+  /**
+   * The local variables holding the method parameters of generated user-defined words.
+   */
+  private static final int DATA = 0;
+  private static final int LISTENER = 1;
+  private static final int DATA_SOURCE = 2;
+
+  /**
+   * The operand stack depth needed by every generated method.
+   */
+  private static final int MAX_STACK = 3;
+
+  /**
+   * The Primitives method implementing each instruction indexed by opcode.
+   */
+  private static final String[] OPERATIONS = new String[Opcode.INVERT_UNCHECKED + 1];
+
+  /**
+   * The descriptor of the Primitives method implementing each instruction indexed by opcode.
+   */
+  private static final String[] DESCRIPTORS = new String[Opcode.INVERT_UNCHECKED + 1];
+
+  static {
+    operation(Opcode.LOOP_INDEX, "loopIndex", DATA_DESCRIPTOR);
+    operation(Opcode.DROP, "drop", DATA_DESCRIPTOR);
+    operation(Opcode.DUP, "dup", DATA_DESCRIPTOR);
+    operation(Opcode.SWAP, "swap", DATA_DESCRIPTOR);
+    operation(Opcode.ROT, "rot", DATA_DESCRIPTOR);
+    operation(Opcode.ADD, "add", DATA_DESCRIPTOR);
+    operation(Opcode.SUBTRACT, "subtract", DATA_DESCRIPTOR);
+    operation(Opcode.MULTIPLY, "multiply", DATA_DESCRIPTOR);
+    operation(Opcode.MOD, "mod", DATA_DESCRIPTOR);
+    operation(Opcode.LESS_THAN, "lessThan", DATA_DESCRIPTOR);
+    operation(Opcode.LESS_THAN_OR_EQUAL, "lessThanOrEqual", DATA_DESCRIPTOR);
+    operation(Opcode.EQUALS, "equals", DATA_DESCRIPTOR);
+    operation(Opcode.NOT_EQUALS, "notEquals", DATA_DESCRIPTOR);
+    operation(Opcode.GREATER_THAN, "greaterThan", DATA_DESCRIPTOR);
+    operation(Opcode.GREATER_THAN_OR_EQUAL, "greaterThanOrEqual", DATA_DESCRIPTOR);
+    operation(Opcode.AND, "and", DATA_DESCRIPTOR);
+    operation(Opcode.OR, "or", DATA_DESCRIPTOR);
+    operation(Opcode.INVERT, "invert", DATA_DESCRIPTOR);
+    operation(Opcode.STORE, "store", DATA_DESCRIPTOR);
+    operation(Opcode.FETCH, "fetch", DATA_DESCRIPTOR);
+    operation(Opcode.PRINT, "print", DATA_DESCRIPTOR);
+    operation(Opcode.RANDOM, "random", DATA_DESCRIPTOR);
+    operation(Opcode.SHOOT, "shoot", LISTENER_DESCRIPTOR);
+    operation(Opcode.MOVE, "move", LISTENER_DESCRIPTOR);
+    operation(Opcode.TURN, "turn", LISTENER_DESCRIPTOR);
+    operation(Opcode.CHECK, "check", LISTENER_DESCRIPTOR);
+    operation(Opcode.SCAN, "scan", LISTENER_DESCRIPTOR);
+    operation(Opcode.IDENTIFY, "identify", LISTENER_DESCRIPTOR);
+    operation(Opcode.ATTACK, "attack", DATA_SOURCE_DESCRIPTOR);
+    operation(Opcode.HEALTH_LEFT, "healthLeft", DATA_SOURCE_DESCRIPTOR);
+    operation(Opcode.HEALTH, "health", DATA_SOURCE_DESCRIPTOR);
+    operation(Opcode.MOVES_LEFT, "movesLeft", DATA_SOURCE_DESCRIPTOR);
+    operation(Opcode.MOVES, "moves", DATA_SOURCE_DESCRIPTOR);
+    operation(Opcode.RANGE, "range", DATA_SOURCE_DESCRIPTOR);
+    operation(Opcode.TEAM, "team", DATA_SOURCE_DESCRIPTOR);
+    operation(Opcode.TYPE, "type", DATA_SOURCE_DESCRIPTOR);
+    operation(Opcode.SEND, "send", LISTENER_DESCRIPTOR);
+    operation(Opcode.RECEIVE, "receive", DATA_DESCRIPTOR);
+    operation(Opcode.MESSAGE, "message", DATA_DESCRIPTOR);
+    operation(Opcode.ADD_UNCHECKED, "addUnchecked", DATA_DESCRIPTOR);
+    operation(Opcode.SUBTRACT_UNCHECKED, "subtractUnchecked", DATA_DESCRIPTOR);
+    operation(Opcode.MULTIPLY_UNCHECKED, "multiplyUnchecked", DATA_DESCRIPTOR);
+    operation(Opcode.MOD_UNCHECKED, "modUnchecked", DATA_DESCRIPTOR);
+    operation(Opcode.LESS_THAN_UNCHECKED, "lessThanUnchecked", DATA_DESCRIPTOR);
+    operation(Opcode.LESS_THAN_OR_EQUAL_UNCHECKED, "lessThanOrEqualUnchecked", DATA_DESCRIPTOR);
+    operation(Opcode.GREATER_THAN_UNCHECKED, "greaterThanUnchecked", DATA_DESCRIPTOR);
+    operation(Opcode.GREATER_THAN_OR_EQUAL_UNCHECKED, "greaterThanOrEqualUnchecked",
+        DATA_DESCRIPTOR);
+    operation(Opcode.AND_UNCHECKED, "andUnchecked", DATA_DESCRIPTOR);
+    operation(Opcode.OR_UNCHECKED, "orUnchecked", DATA_DESCRIPTOR);
+    operation(Opcode.INVERT_UNCHECKED, "invertUnchecked", DATA_DESCRIPTOR);
+  }
+
+  private static void operation(int opcode, String name, String descriptor) {
+    OPERATIONS[opcode] = name;
+    DESCRIPTORS[opcode] = descriptor;
+  }
+
+  /**
+   * A loop enclosing the code currently being generated. Leave statements inside the loop branch
+   * directly to its exit.
+   */
+  private static final class Loop {
+
+    private final Label exit = new Label();
+
+    /**
+     * The local variable holding the index of a counted loop or -1 for guarded loops.
+     */
+    private int index = -1;
+
+    /**
+     * Whether the loop's body calls a user-defined word that may leave the loop by throwing.
+     */
+    private boolean calls;
+  }
+
+  /**
+   * Determines whether a body calls a user-defined word anywhere within it, including within
+   * nested if-statements and loops.
+   */
+  private static final class CallFinder implements WordVisitor {
+
+    private final Map<Word, String> userWords;
+
+    private boolean found;
+
+    private CallFinder(Map<Word, String> userWords) {
+      this.userWords = userWords;
+    }
+
+    static boolean containsCalls(MultiWord body, Map<Word, String> userWords) {
+      CallFinder finder = new CallFinder(userWords);
+      body.accept(finder);
+      return finder.found;
+    }
+
+    @Override
+    public void visitLiteral(LiteralWord word, Value<?> value) {}
+
+    @Override
+    public void visitPredefined(Word word, String name) {}
+
+    @Override
+    public void visitMulti(MultiWord word, List<Word> words) {
+      if (userWords.containsKey(word)) {
+        found = true;
+      } else {
+        for (Word child : words) {
+          child.accept(this);
+        }
+      }
+    }
+
+    @Override
+    public void visitIf(IfWord word, MultiWord trueCase, MultiWord falseCase) {
+      trueCase.accept(this);
+      falseCase.accept(this);
+    }
+
+    @Override
+    public void visitCountedLoop(CountedLoopWord word, MultiWord body) {
+      body.accept(this);
+    }
+
+    @Override
+    public void visitGuardedLoop(GuardedLoopWord word, MultiWord body) {
+      body.accept(this);
+    }
+  }
+
+  private ClassFileWriter writer;
+
+  private CodeWriter code;
+
+  private List<Value<?>> constants;
+
+  /**
+   * The generated method name of each user-defined word keyed by its multi-word.
+   */
+  private Map<Word, String> methods;
+
+  /**
+   * The user-defined words of the script being compiled keyed by their multi-word.
+   */
+  private Map<Word, String> userWords;
+
+  /**
+   * The user-defined words that have been called but not yet compiled.
+   */
+  private LinkedList<Word> pending;
+
+  /**
+   * The user-defined word whose method is currently being generated.
+   */
+  private Word definition;
+
+  /**
+   * The loops enclosing the code currently being generated with the innermost first.
+   */
+  private LinkedList<Loop> loops;
+
+  /**
+   * The next free local variable in the method currently being generated.
+   */
+  private int nextLocal;
+
+  /**
+   * The stack effects inferred when the script was built or null if the script wasn't verified.
+   */
+  private StackEffects stackEffects;
+
+  /**
+   * Whether the word being compiled was proven to receive operands of the expected types.
+   */
+  private boolean verified;
+
+  /**
+   * Whether the word being compiled is immediately followed by an if-statement.
+   */
+  private boolean beforeIf;
+
+  /**
+   * The label a comparison fused with the following if-statement branches to when it is false or
+   * null if the if-statement must pop its condition.
+   */
+  private Label fusedCondition;
+
+  /**
+   * Compiles the user-defined words reachable from the script's play word into a hidden class.
+   *
+   * @param data The built script to compile.
+   * @return The compiled script.
+   * @throws IllegalArgumentException Thrown if data is null.
+   * @throws IllegalStateException Thrown if the script is too large to compile or the generated
+   *         class could not be loaded.
+   */
+  public CompiledScript compile(ScriptData data) {
+    if (data == null) {
+      throw new IllegalArgumentException("Attempted to compile a null script.");
+    }
+    byte[] bytes = generate(data);
+    try {
+      MethodHandles.Lookup lookup = MethodHandles.lookup()
+          .defineHiddenClassWithClassData(bytes, constants.toArray(new Value<?>[0]), true);
+      return (CompiledScript) lookup
+          .findConstructor(lookup.lookupClass(), MethodType.methodType(void.class)).invoke();
+    } catch (Throwable ex) {
+      throw new IllegalStateException("Failed to load the compiled script.", ex);
+    }
+  }
+
+  /**
+   * Generates the class file for a script.
+   *
+   * @param data The built script to compile.
+   * @return The bytes of the generated class file.
+   */
+  byte[] generate(ScriptData data) {
+    writer = new ClassFileWriter(CLASS_NAME, "java/lang/Object",
+        "com/kerr/interpreter/vm/CompiledScript");
+    constants = new ArrayList<Value<?>>();
+    methods = new IdentityHashMap<Word, String>();
+    userWords = new IdentityHashMap<Word, String>();
+    pending = new LinkedList<Word>();
+    loops = new LinkedList<Loop>();
+    stackEffects = data.getStackEffects();
+    for (Map.Entry<String, Word> entry : data.getOptimizedWords().entrySet()) {
+      userWords.put(entry.getValue(), entry.getKey());
+    }
+
+    writer.addField(ClassFileWriter.ACC_PRIVATE | ClassFileWriter.ACC_STATIC
+        | ClassFileWriter.ACC_FINAL, CONSTANTS, CONSTANTS_TYPE);
+    generateInitializers();
+
+    // run(data, listener, dataSource) calls the play word's method
+    code = new CodeWriter(MAX_STACK, 4);
+    code.load(CodeWriter.ALOAD, 1);
+    code.load(CodeWriter.ALOAD, 2);
+    code.load(CodeWriter.ALOAD, 3);
+    String play = method(data.getOptimizedWords().get(PLAY_WORD));
+    code.op(CodeWriter.INVOKESTATIC, writer.methodRef(CLASS_NAME, play, WORD_DESCRIPTOR));
+    code.op(CodeWriter.RETURN);
+    writer.addMethod(ClassFileWriter.ACC_PUBLIC, "run", WORD_DESCRIPTOR, code);
+
+    while (!pending.isEmpty()) {
+      definition = pending.removeFirst();
+      code = new CodeWriter(MAX_STACK, 3);
+      nextLocal = 3;
+      definition.accept(this);
+      code.op(CodeWriter.RETURN);
+      writer.addMethod(ClassFileWriter.ACC_PRIVATE | ClassFileWriter.ACC_STATIC,
+          methods.get(definition), WORD_DESCRIPTOR, code);
+    }
+    definition = null;
+    return writer.toByteArray();
+  }
+
+  /**
+   * Generates the constructor and the static initializer that loads the literal values passed as
+   * the hidden class's class data.
+   */
+  private void generateInitializers() {
+    code = new CodeWriter(1, 1);
+    code.load(CodeWriter.ALOAD, 0);
+    code.op(CodeWriter.INVOKESPECIAL, writer.methodRef("java/lang/Object", "<init>", "()V"));
+    code.op(CodeWriter.RETURN);
+    writer.addMethod(ClassFileWriter.ACC_PUBLIC, "<init>", "()V", code);
+
+    code = new CodeWriter(MAX_STACK, 0);
+    code.op(CodeWriter.INVOKESTATIC, writer.methodRef("java/lang/invoke/MethodHandles", "lookup",
+        "()Ljava/lang/invoke/MethodHandles$Lookup;"));
+    code.ldc(writer.string("_"));
+    code.ldc(writer.classRef(CONSTANTS_TYPE));
+    code.op(CodeWriter.INVOKESTATIC, writer.methodRef("java/lang/invoke/MethodHandles",
+        "classData",
+        "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/Class;)"
+            + "Ljava/lang/Object;"));
+    code.op(CodeWriter.CHECKCAST, writer.classRef(CONSTANTS_TYPE));
+    code.op(CodeWriter.PUTSTATIC, writer.fieldRef(CLASS_NAME, CONSTANTS, CONSTANTS_TYPE));
+    code.op(CodeWriter.RETURN);
+    writer.addMethod(ClassFileWriter.ACC_STATIC, "<clinit>", "()V", code);
+  }
+
+  @Override
+  public void visitLiteral(LiteralWord word, Value<?> value) {
+    code.load(CodeWriter.ALOAD, DATA);
+    if (value instanceof IntValue) {
+      code.pushInt(((IntValue) value).getValue(), writer);
+      invokeData("pushInt", "(I)V");
+      return;
+    }
+    if (value instanceof BoolValue) {
+      code.pushInt(((BoolValue) value).getValue() ? 1 : 0, writer);
+      invokeData("pushBool", "(Z)V");
+      return;
+    }
+    code.op(CodeWriter.GETSTATIC, writer.fieldRef(CLASS_NAME, CONSTANTS, CONSTANTS_TYPE));
+    code.pushInt(constant(value), writer);
+    code.op(CodeWriter.AALOAD);
+    code.op(CodeWriter.INVOKEVIRTUAL, writer.methodRef(SCRIPT_DATA, "push", "(" + VALUE + ")V"));
+  }
+
+  @Override
+  public void visitPredefined(Word word, String name) {
+    int opcode = Opcode.forPredefinedWord(name);
+    if (opcode == Opcode.LEAVE) {
+      if (loops.isEmpty()) {
+        // Leave the loop of a calling user-defined word
+        invokePrimitive("leave", "()V");
+      } else {
+        code.branch(CodeWriter.GOTO, loops.getFirst().exit);
+      }
+      return;
+    }
+    if (opcode == Opcode.LOOP_INDEX) {
+      Loop counted = innermostCountedLoop();
+      if (counted != null) {
+        // The index of a lexically enclosing loop is already in a local variable
+        code.load(CodeWriter.ALOAD, DATA);
+        code.load(CodeWriter.ILOAD, counted.index);
+        code.op(CodeWriter.INVOKEVIRTUAL, writer.methodRef(SCRIPT_DATA, "pushInt", "(I)V"));
+        return;
+      }
+    }
+    if (verified && Opcode.unchecked(opcode) >= 0) {
+      opcode = Opcode.unchecked(opcode);
+    }
+    if (generateInline(opcode)) {
+      return;
+    }
+    String descriptor = DESCRIPTORS[opcode];
+    code.load(CodeWriter.ALOAD, DATA);
+    if (descriptor == LISTENER_DESCRIPTOR) {
+      code.load(CodeWriter.ALOAD, LISTENER);
+    } else if (descriptor == DATA_SOURCE_DESCRIPTOR) {
+      code.load(CodeWriter.ALOAD, DATA_SOURCE);
+    }
+    invokePrimitive(OPERATIONS[opcode], descriptor);
+  }
+
+  @Override
+  public void visitMulti(MultiWord word, List<Word> words) {
+    if (word != definition && userWords.containsKey(word)) {
+      if (!loops.isEmpty()) {
+        loops.getFirst().calls = true;
+      }
+      code.load(CodeWriter.ALOAD, DATA);
+      code.load(CodeWriter.ALOAD, LISTENER);
+      code.load(CodeWriter.ALOAD, DATA_SOURCE);
+      code.op(CodeWriter.INVOKESTATIC, writer.methodRef(CLASS_NAME, method(word), WORD_DESCRIPTOR));
+    } else {
+      for (int i = 0; i < words.size(); i++) {
+        verified = stackEffects != null && stackEffects.isVerified(word, i);
+        beforeIf = i + 1 < words.size() && words.get(i + 1) instanceof IfWord;
+        words.get(i).accept(this);
+      }
+      verified = false;
+      beforeIf = false;
+    }
+  }
+
+  @Override
+  public void visitIf(IfWord word, MultiWord trueCase, MultiWord falseCase) {
+    Label falseLabel = fusedCondition;
+    Label end = new Label();
+    if (falseLabel == null) {
+      falseLabel = new Label();
+      code.load(CodeWriter.ALOAD, DATA);
+      invokePrimitive("condition", "(L" + SCRIPT_DATA + ";)Z");
+      code.branch(CodeWriter.IFEQ, falseLabel);
+    }
+    fusedCondition = null;
+    trueCase.accept(this);
+    code.branch(CodeWriter.GOTO, end);
+    code.mark(falseLabel);
+    falseCase.accept(this);
+    code.mark(end);
+  }
+
+  @Override
+  public void visitCountedLoop(CountedLoopWord word, MultiWord body) {
+    Loop loop = new Loop();
+    loop.index = nextLocal;
+    int end = nextLocal + 1;
+    nextLocal += 2;
+    code.setMaxLocals(nextLocal);
+
+    code.load(CodeWriter.ALOAD, DATA);
+    invokePrimitive("loopBound", "(L" + SCRIPT_DATA + ";)I");
+    code.load(CodeWriter.ISTORE, loop.index);
+    code.load(CodeWriter.ALOAD, DATA);
+    invokePrimitive("loopBound", "(L" + SCRIPT_DATA + ";)I");
+    code.load(CodeWriter.ISTORE, end);
+
+    // The index is only mirrored into the script's loop frames if a called word may read it
+    boolean frame = CallFinder.containsCalls(body, userWords);
+    if (frame) {
+      code.load(CodeWriter.ALOAD, DATA);
+      code.load(CodeWriter.ILOAD, loop.index);
+      invokePrimitive("enterLoop", "(L" + SCRIPT_DATA + ";I)V");
+    }
+
+    Label test = new Label();
+    code.mark(test);
+    code.load(CodeWriter.ILOAD, loop.index);
+    code.load(CodeWriter.ILOAD, end);
+    code.branch(CodeWriter.IF_ICMPGT, loop.exit);
+    if (frame) {
+      code.load(CodeWriter.ALOAD, DATA);
+      code.load(CodeWriter.ILOAD, loop.index);
+      invokePrimitive("setLoopIndex", "(L" + SCRIPT_DATA + ";I)V");
+    }
+
+    loops.addFirst(loop);
+    body.accept(this);
+    loops.removeFirst();
+
+    code.iinc(loop.index, 1);
+    code.branchBack(CodeWriter.GOTO, test);
+    Label handler = generateLeaveHandler(loop, test);
+    code.mark(loop.exit);
+    if (frame) {
+      code.load(CodeWriter.ALOAD, DATA);
+      invokePrimitive("exitLoop", DATA_DESCRIPTOR);
+    }
+    if (handler != null) {
+      code.handler(test, handler, handler,
+          writer.classRef("com/kerr/interpreter/words/LeaveLoopException"));
+    }
+    nextLocal -= 2;
+  }
+
+  @Override
+  public void visitGuardedLoop(GuardedLoopWord word, MultiWord body) {
+    Loop loop = new Loop();
+    Label start = new Label();
+    code.mark(start);
+
+    loops.addFirst(loop);
+    body.accept(this);
+    loops.removeFirst();
+
+    code.load(CodeWriter.ALOAD, DATA);
+    invokePrimitive("guard", "(L" + SCRIPT_DATA + ";)Z");
+    code.branchBack(CodeWriter.IFNE, start);
+    if (loop.calls) {
+      code.branch(CodeWriter.GOTO, loop.exit);
+    }
+    Label handler = generateLeaveHandler(loop, start);
+    code.mark(loop.exit);
+    if (handler != null) {
+      code.handler(start, handler, handler,
+          writer.classRef("com/kerr/interpreter/words/LeaveLoopException"));
+    }
+  }
+
+  /**
+   * Generates the JVM instructions for a predefined word that doesn't need to call Primitives.
+   *
+   * @param opcode The instruction the word compiles to after unchecked variants are selected.
+   * @return True if the word was generated inline; otherwise, false.
+   */
+  private boolean generateInline(int opcode) {
+    switch (opcode) {
+      case Opcode.DROP:
+        code.load(CodeWriter.ALOAD, DATA);
+        invokeData("pop", "()" + VALUE);
+        code.op(CodeWriter.POP);
+        return true;
+      case Opcode.DUP:
+        code.load(CodeWriter.ALOAD, DATA);
+        code.load(CodeWriter.ALOAD, DATA);
+        invokeData("pop", "()" + VALUE);
+        code.op(CodeWriter.DUP_X1);
+        invokeData("push", "(" + VALUE + ")V");
+        code.load(CodeWriter.ALOAD, DATA);
+        code.op(CodeWriter.SWAP);
+        invokeData("push", "(" + VALUE + ")V");
+        return true;
+      case Opcode.SWAP:
+        code.setMaxLocals(nextLocal + 1);
+        code.load(CodeWriter.ALOAD, DATA);
+        code.load(CodeWriter.ALOAD, DATA);
+        invokeData("pop", "()" + VALUE);
+        code.load(CodeWriter.ALOAD, DATA);
+        invokeData("pop", "()" + VALUE);
+        code.load(CodeWriter.ASTORE, nextLocal);
+        invokeData("push", "(" + VALUE + ")V");
+        code.load(CodeWriter.ALOAD, DATA);
+        code.load(CodeWriter.ALOAD, nextLocal);
+        invokeData("push", "(" + VALUE + ")V");
+        return true;
+      case Opcode.ADD_UNCHECKED:
+      case Opcode.SUBTRACT_UNCHECKED:
+      case Opcode.MULTIPLY_UNCHECKED:
+        code.load(CodeWriter.ALOAD, DATA);
+        popInts();
+        if (opcode == Opcode.ADD_UNCHECKED) {
+          code.op(CodeWriter.IADD);
+        } else if (opcode == Opcode.SUBTRACT_UNCHECKED) {
+          code.op(CodeWriter.ISUB);
+        } else {
+          code.op(CodeWriter.IMUL);
+        }
+        invokeData("pushInt", "(I)V");
+        return true;
+      case Opcode.LESS_THAN_UNCHECKED:
+      case Opcode.LESS_THAN_OR_EQUAL_UNCHECKED:
+      case Opcode.GREATER_THAN_UNCHECKED:
+      case Opcode.GREATER_THAN_OR_EQUAL_UNCHECKED:
+        if (beforeIf) {
+          fusedCondition = new Label();
+          generateComparison(opcode, fusedCondition);
+          return true;
+        }
+        Label falseLabel = new Label();
+        Label end = new Label();
+        code.load(CodeWriter.ALOAD, DATA);
+        generateComparison(opcode, falseLabel);
+        code.pushInt(1, writer);
+        code.branch(CodeWriter.GOTO, end);
+        code.mark(falseLabel);
+        code.pushInt(0, writer);
+        code.mark(end);
+        invokeData("pushBool", "(Z)V");
+        return true;
+      case Opcode.EQUALS:
+      case Opcode.NOT_EQUALS:
+        if (!beforeIf) {
+          return false;
+        }
+        // The values are compared without pushing the result for the if-statement to pop
+        fusedCondition = new Label();
+        code.load(CodeWriter.ALOAD, DATA);
+        invokePrimitive(opcode == Opcode.EQUALS ? "testEquals" : "testNotEquals",
+            "(L" + SCRIPT_DATA + ";)Z");
+        code.branch(CodeWriter.IFEQ, fusedCondition);
+        return true;
+      case Opcode.FETCH:
+        if (!verified) {
+          return false;
+        }
+        code.load(CodeWriter.ALOAD, DATA);
+        popVariable();
+        invokeData("pushVariable", "(L" + VARIABLE_VALUE + ";)V");
+        return true;
+      case Opcode.STORE:
+        if (!verified) {
+          return false;
+        }
+        code.load(CodeWriter.ALOAD, DATA);
+        popVariable();
+        code.load(CodeWriter.ALOAD, DATA);
+        invokeData("pop", "()" + VALUE);
+        invokeData("setVariable", "(L" + VARIABLE_VALUE + ";" + VALUE + ")V");
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * Generates a verified integer comparison that branches when the comparison is false.
+   *
+   * @param opcode The unchecked comparison instruction.
+   * @param falseLabel The label branched to when the comparison is false.
+   */
+  private void generateComparison(int opcode, Label falseLabel) {
+    popInts();
+    switch (opcode) {
+      case Opcode.LESS_THAN_UNCHECKED:
+        code.branch(CodeWriter.IF_ICMPGE, falseLabel);
+        break;
+      case Opcode.LESS_THAN_OR_EQUAL_UNCHECKED:
+        code.branch(CodeWriter.IF_ICMPGT, falseLabel);
+        break;
+      case Opcode.GREATER_THAN_UNCHECKED:
+        code.branch(CodeWriter.IF_ICMPLE, falseLabel);
+        break;
+      default:
+        code.branch(CodeWriter.IF_ICMPLT, falseLabel);
+        break;
+    }
+  }
+
+  /**
+   * Pops the two integer operands of a verified word onto the JVM operand stack in the order they
+   * were pushed, so the top-most value of the script's stack ends up on top.
+   */
+  private void popInts() {
+    code.load(CodeWriter.ALOAD, DATA);
+    invokeData("popIntUnchecked", "()I");
+    code.load(CodeWriter.ALOAD, DATA);
+    invokeData("popIntUnchecked", "()I");
+    code.op(CodeWriter.SWAP);
+  }
+
+  /**
+   * Pops a variable the stack verifier proved is on the top of the stack.
+   */
+  private void popVariable() {
+    code.load(CodeWriter.ALOAD, DATA);
+    invokeData("pop", "()" + VALUE);
+    code.op(CodeWriter.CHECKCAST, writer.classRef(VARIABLE_VALUE));
+  }
+
+  /**
+   * Generates the handler that catches a leave statement executed by a user-defined word called
+   * from within a loop. The handler falls through to the loop's exit. No handler is generated if
+   * the loop's body doesn't call any user-defined words.
+   *
+   * @param loop The loop being generated.
+   * @param start The first instruction of the loop.
+   * @return The label of the handler or null if no handler was needed.
+   */
+  private Label generateLeaveHandler(Loop loop, Label start) {
+    if (!loop.calls) {
+      return null;
+    }
+    Label handler = new Label();
+    code.mark(handler);
+    code.op(CodeWriter.POP);
+    return handler;
+  }
+
+  /**
+   * Finds the innermost lexically enclosing counted loop of the code currently being generated.
+   *
+   * @return The innermost counted loop or null if the code isn't within a counted loop.
+   */
+  private Loop innermostCountedLoop() {
+    for (Loop loop : loops) {
+      if (loop.index >= 0) {
+        return loop;
+      }
+    }
+    return null;
+  }
+
+  private void invokePrimitive(String name, String descriptor) {
+    code.op(CodeWriter.INVOKESTATIC, writer.methodRef(PRIMITIVES, name, descriptor));
+  }
+
+  private void invokeData(String name, String descriptor) {
+    code.op(CodeWriter.INVOKEVIRTUAL, writer.methodRef(SCRIPT_DATA, name, descriptor));
+  }
+
+  /**
+   * Gets the generated method name of a user-defined word, scheduling the word to be compiled if it
+   * hasn't been. Method names include the word's name so stack traces identify the word.
+   *
+   * @param word The user-defined word.
+   * @return The name of the method generated for the word.
+   */
+  private String method(Word word) {
+    String name = methods.get(word);
+    if (name == null) {
+      name = "word" + methods.size() + "_" + userWords.get(word).replaceAll("[^A-Za-z0-9_]", "_");
+      methods.put(word, name);
+      pending.add(word);
+    }
+    return name;
+  }
+
+  /**
+   * Gets the index of a value in the constants, adding it if it isn't present.
+   *
+   * @param value The literal value.
+   * @return The index of the value in the constants.
+   */
+  private int constant(Value<?> value) {
+    for (int i = 0; i < constants.size(); i++) {
+      if (constants.get(i) == value) {
+        return i;
+      }
+    }
+    constants.add(value);
+    return constants.size() - 1;
+  }
+}
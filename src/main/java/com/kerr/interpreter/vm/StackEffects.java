@@ -0,0 +1,64 @@
+package com.kerr.interpreter.vm;
+
+import com.kerr.interpreter.words.MultiWord;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * The result of verifying a script's user-defined words. This records the stack effect inferred
+ * for each user-defined word and which predefined words were proven to always receive operands of
+ * the expected types so the compilers can use the unchecked form of their instructions.
+ *
+ * @author allankerr
+ *
+ */
+public final class StackEffects {
+
+  /**
+   * The printable stack effect of each user-defined word keyed by the word's name.
+   */
+  private final Map<String, String> effects;
+
+  /**
+   * The indexes of the verified words within each multi-word.
+   */
+  private final Map<MultiWord, BitSet> verified;
+
+  StackEffects(Map<String, String> effects, Map<MultiWord, BitSet> verified) {
+    this.effects = Collections.unmodifiableMap(effects);
+    this.verified = verified;
+  }
+
+  /**
+   * Determines whether a word was proven to always receive operands of the expected types.
+   *
+   * @param parent The multi-word containing the word.
+   * @param index The index of the word within the multi-word.
+   * @return True if the word's operand checks can be skipped; otherwise, false.
+   */
+  public boolean isVerified(MultiWord parent, int index) {
+    BitSet words = verified.get(parent);
+    return words != null && words.get(index);
+  }
+
+  /**
+   * Gets the inferred stack effect of a user-defined word in the conventional ( before -- after )
+   * notation. A leading ... means the word consumes an unknown number of values.
+   *
+   * @param name The name of the user-defined word.
+   * @return The stack effect or null if there is no user-defined word with the name.
+   */
+  public String getEffect(String name) {
+    return effects.get(name);
+  }
+
+  /**
+   * Gets the inferred stack effect of every user-defined word.
+   *
+   * @return An unmodifiable map of the stack effects keyed by the words' names.
+   */
+  public Map<String, String> getEffects() {
+    return effects;
+  }
+}
@@ -0,0 +1,682 @@
+package com.kerr.interpreter.vm;
+
+import com.kerr.interpreter.controller.ScriptTypeException;
+import com.kerr.interpreter.model.BoolValue;
+import com.kerr.interpreter.model.IntValue;
+import com.kerr.interpreter.model.StringValue;
+import com.kerr.interpreter.model.Value;
+import com.kerr.interpreter.model.VariableValue;
+import com.kerr.interpreter.words.CountedLoopWord;
+import com.kerr.interpreter.words.DefinitionOrder;
+import com.kerr.interpreter.words.GuardedLoopWord;
+import com.kerr.interpreter.words.IfWord;
+import com.kerr.interpreter.words.LiteralWord;
+import com.kerr.interpreter.words.MultiWord;
+import com.kerr.interpreter.words.Word;
+import com.kerr.interpreter.words.WordVisitor;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Verifies the user-defined words of a built script by inferring the types of the values on the
+ * stack before and after every word. Values left on the stack by previous executions, fetched from
+ * variables, or received as messages have an unknown type so only words that are definitely passed
+ * a value of the wrong type are rejected. Each user-defined word is summarized by its stack effect
+ * once, after the words it calls, and the summary is applied wherever the word is called. Loops
+ * are analyzed until the types on the stack at the start of the body stop changing.
+ *
+ * @author allankerr
+ *
+ */
+public class StackVerifier implements WordVisitor {
+
+  /**
+   * The types of values that can be on the stack.
+   */
+  enum Type {
+    INT("an integer"), BOOL("a boolean"), STRING("a string"), VARIABLE("a variable"),
+
+    /**
+     * A value whose type can't be determined before execution.
+     */
+    ANY("a value");
+
+    private final String description;
+
+    private Type(String description) {
+      this.description = description;
+    }
+
+    @Override
+    public String toString() {
+      return name().toLowerCase();
+    }
+  }
+
+  /**
+   * The number of times a loop's body is analyzed before the stack is assumed to be unknown.
+   */
+  private static final int MAX_ITERATIONS = 32;
+
+  /**
+   * The operand types of each instruction indexed by opcode with the top-most operand first.
+   */
+  private static final Type[][] INPUTS = new Type[Opcode.MESSAGE + 1][];
+
+  /**
+   * The result types of each instruction indexed by opcode in the order they are pushed.
+   */
+  private static final Type[][] OUTPUTS = new Type[Opcode.MESSAGE + 1][];
+
+  static {
+    Type[] none = {};
+    Type[] integer = {Type.INT};
+    Type[] integers = {Type.INT, Type.INT};
+    Type[] bool = {Type.BOOL};
+    Type[] string = {Type.STRING};
+    effect(Opcode.LOOP_INDEX, none, integer);
+    effect(Opcode.ADD, integers, integer);
+    effect(Opcode.SUBTRACT, integers, integer);
+    effect(Opcode.MULTIPLY, integers, integer);
+    effect(Opcode.MOD, integers, integers);
+    effect(Opcode.LESS_THAN, integers, bool);
+    effect(Opcode.LESS_THAN_OR_EQUAL, integers, bool);
+    effect(Opcode.EQUALS, new Type[] {Type.ANY, Type.ANY}, bool);
+    effect(Opcode.NOT_EQUALS, new Type[] {Type.ANY, Type.ANY}, bool);
+    effect(Opcode.GREATER_THAN, integers, bool);
+    effect(Opcode.GREATER_THAN_OR_EQUAL, integers, bool);
+    effect(Opcode.AND, new Type[] {Type.BOOL, Type.BOOL}, bool);
+    effect(Opcode.OR, new Type[] {Type.BOOL, Type.BOOL}, bool);
+    effect(Opcode.INVERT, bool, bool);
+    effect(Opcode.STORE, new Type[] {Type.VARIABLE, Type.ANY}, none);
+    effect(Opcode.FETCH, new Type[] {Type.VARIABLE}, new Type[] {Type.ANY});
+    effect(Opcode.PRINT, new Type[] {Type.ANY}, none);
+    effect(Opcode.RANDOM, integer, integer);
+    effect(Opcode.SHOOT, integers, none);
+    effect(Opcode.MOVE, none, none);
+    effect(Opcode.TURN, integer, none);
+    effect(Opcode.CHECK, integer, string);
+    effect(Opcode.SCAN, none, integer);
+    effect(Opcode.IDENTIFY, integer, new Type[] {Type.INT, Type.INT, Type.INT, Type.STRING});
+    effect(Opcode.ATTACK, none, integer);
+    effect(Opcode.HEALTH_LEFT, none, integer);
+    effect(Opcode.HEALTH, none, integer);
+    effect(Opcode.MOVES_LEFT, none, integer);
+    effect(Opcode.MOVES, none, integer);
+    effect(Opcode.RANGE, none, integer);
+    effect(Opcode.TEAM, none, string);
+    effect(Opcode.TYPE, none, string);
+    effect(Opcode.SEND, new Type[] {Type.ANY, Type.STRING}, bool);
+    effect(Opcode.RECEIVE, string, new Type[] {Type.ANY});
+    effect(Opcode.MESSAGE, string, bool);
+  }
+
+  private static void effect(int opcode, Type[] inputs, Type[] outputs) {
+    INPUTS[opcode] = inputs;
+    OUTPUTS[opcode] = outputs;
+  }
+
+  /**
+   * A value on the stack during verification.
+   */
+  private static final class Slot {
+
+    private static final Slot UNKNOWN = new Slot(Type.ANY, -1);
+
+    private final Type type;
+
+    /**
+     * The index of the user-defined word's input this value is or -1 if the value was produced
+     * within the word.
+     */
+    private final int input;
+
+    private Slot(Type type, int input) {
+      this.type = type;
+      this.input = input;
+    }
+
+    private static Slot merge(Slot a, Slot b) {
+      Type type = a.type == b.type ? a.type : Type.ANY;
+      int input = a.input == b.input ? a.input : -1;
+      return type == a.type && input == a.input ? a : new Slot(type, input);
+    }
+
+    private boolean sameAs(Slot other) {
+      return type == other.type && input == other.input;
+    }
+  }
+
+  /**
+   * The stack at a point within a user-defined word. The stack holds the values pushed since the
+   * word was entered on top of the word's inputs.
+   */
+  private static final class State {
+
+    /**
+     * The values whose types are known with the top-most value last.
+     */
+    private final ArrayList<Slot> stack = new ArrayList<Slot>();
+
+    /**
+     * The number of the word's inputs that have been popped.
+     */
+    private int pulled;
+
+    /**
+     * Whether the depth of the stack relative to the word's inputs is unknown because paths with
+     * different stack effects were merged. Only the values on the top of the stack are known.
+     */
+    private boolean lost;
+
+    /**
+     * Whether this point is unreachable because every path to it left a loop.
+     */
+    private boolean dead;
+
+    private State copy() {
+      State copy = new State();
+      copy.stack.addAll(stack);
+      copy.pulled = pulled;
+      copy.lost = lost;
+      copy.dead = dead;
+      return copy;
+    }
+
+    private static State dead() {
+      State state = new State();
+      state.dead = true;
+      return state;
+    }
+
+    /**
+     * Merges the stacks of two paths that join.
+     *
+     * @param a The stack at the end of the first path.
+     * @param b The stack at the end of the second path.
+     * @return A stack describing both paths.
+     */
+    private static State merge(State a, State b) {
+      if (a.dead) {
+        return b.copy();
+      }
+      if (b.dead) {
+        return a.copy();
+      }
+      // Inputs popped by only one path are still on the other path's stack
+      State first = a.unpull(Math.max(a.pulled, b.pulled));
+      State second = b.unpull(first.pulled);
+      State merged = new State();
+      merged.pulled = Math.max(first.pulled, second.pulled);
+      merged.lost = first.lost || second.lost || first.stack.size() != second.stack.size();
+      int size = Math.min(first.stack.size(), second.stack.size());
+      int firstOffset = first.stack.size() - size;
+      int secondOffset = second.stack.size() - size;
+      for (int i = 0; i < size; i++) {
+        merged.stack.add(
+            Slot.merge(first.stack.get(firstOffset + i), second.stack.get(secondOffset + i)));
+      }
+      return merged;
+    }
+
+    /**
+     * Creates a copy of this stack that treats more of the word's inputs as popped by putting the
+     * additional inputs back on the bottom of the stack.
+     *
+     * @param pulled The number of inputs the copy has popped.
+     * @return The copy.
+     */
+    private State unpull(int pulled) {
+      State copy = copy();
+      if (!lost) {
+        for (int input = this.pulled; input < pulled; input++) {
+          copy.stack.add(0, new Slot(Type.ANY, input));
+        }
+        copy.pulled = pulled;
+      }
+      return copy;
+    }
+
+    private boolean sameAs(State other) {
+      if (dead != other.dead || lost != other.lost || pulled != other.pulled
+          || stack.size() != other.stack.size()) {
+        return false;
+      }
+      for (int i = 0; i < stack.size(); i++) {
+        if (!stack.get(i).sameAs(other.stack.get(i))) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  /**
+   * The inferred stack effect of a user-defined word.
+   */
+  private static final class Effect {
+
+    /**
+     * The type each input must have with the top-most input first. Null means the input may have
+     * any type.
+     */
+    private final List<Type> inputs;
+
+    /**
+     * The stack when the word returns or null if the word never returns.
+     */
+    private final State result;
+
+    /**
+     * Whether the word may leave a loop of the word that called it.
+     */
+    private final boolean leaves;
+
+    private Effect(List<Type> inputs, State result, boolean leaves) {
+      this.inputs = inputs;
+      this.result = result;
+      this.leaves = leaves;
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder builder = new StringBuilder("(");
+      if (result != null && result.lost) {
+        builder.append(" ...");
+      }
+      for (int i = inputs.size() - 1; i >= 0; i--) {
+        builder.append(" ").append(inputs.get(i) == null ? Type.ANY : inputs.get(i));
+      }
+      builder.append(" --");
+      if (result == null) {
+        builder.append(" leave");
+      } else {
+        for (Slot slot : result.stack) {
+          builder.append(" ").append(slot.type);
+        }
+      }
+      return builder.append(" )").toString();
+    }
+  }
+
+  /**
+   * The user-defined words of the script being verified keyed by their multi-word.
+   */
+  private Map<Word, String> userWords;
+
+  /**
+   * The stack effect of each user-defined word that has been verified.
+   */
+  private Map<Word, Effect> effects;
+
+  /**
+   * The words whose operand types were checked within each multi-word.
+   */
+  private Map<MultiWord, BitSet> checked;
+
+  /**
+   * The words whose operand types couldn't be proven within each multi-word.
+   */
+  private Map<MultiWord, BitSet> unproven;
+
+  /**
+   * The user-defined word being verified.
+   */
+  private Word definition;
+
+  private State state;
+
+  /**
+   * The types required of the inputs of the word being verified with the top-most input first.
+   */
+  private List<Type> inputs;
+
+  /**
+   * The stacks at the exits of the loops enclosing the word being verified with the innermost
+   * first.
+   */
+  private LinkedList<State> exits;
+
+  /**
+   * Whether the word being verified may leave a loop of the word that called it.
+   */
+  private boolean leaves;
+
+  /**
+   * The multi-word containing the word being visited and the word's index within it.
+   */
+  private MultiWord parent;
+  private int index;
+
+  /**
+   * Verifies the user-defined words of a script. The words as built are verified to report type
+   * errors against the words as they were written and the optimized words are verified to prove
+   * which of the executed words receive operands of the expected types.
+   *
+   * @param words The user-defined words keyed by their names.
+   * @return The stack effects of the user-defined words and the words that were proven to always
+   *         receive operands of the expected types.
+   * @throws ScriptTypeException Thrown if a word is definitely passed a value of the wrong type.
+   * @throws IllegalArgumentException Thrown if words is null.
+   */
+  public StackEffects verify(Map<String, Word> words) throws ScriptTypeException {
+    if (words == null) {
+      throw new IllegalArgumentException("Attempted to verify null words.");
+    }
+    userWords = new IdentityHashMap<Word, String>();
+    effects = new IdentityHashMap<Word, Effect>();
+    checked = new IdentityHashMap<MultiWord, BitSet>();
+    unproven = new IdentityHashMap<MultiWord, BitSet>();
+    for (Map.Entry<String, Word> entry : words.entrySet()) {
+      userWords.put(entry.getValue(), entry.getKey());
+    }
+    try {
+      for (Word word : DefinitionOrder.sort(words.values())) {
+        effects.put(word, effectOf(word));
+      }
+      Map<String, String> summaries = new LinkedHashMap<String, String>();
+      for (Map.Entry<String, Word> entry : words.entrySet()) {
+        summaries.put(entry.getKey(), effects.get(entry.getValue()).toString());
+      }
+      Map<MultiWord, BitSet> verified = new IdentityHashMap<MultiWord, BitSet>();
+      for (Map.Entry<MultiWord, BitSet> entry : checked.entrySet()) {
+        BitSet proven = (BitSet) entry.getValue().clone();
+        proven.andNot(bits(unproven, entry.getKey()));
+        verified.put(entry.getKey(), proven);
+      }
+      return new StackEffects(summaries, verified);
+    } catch (TypeError error) {
+      throw new ScriptTypeException(error.getMessage());
+    }
+  }
+
+  /**
+   * Verifies a user-defined word whose callees have all been verified.
+   *
+   * @param word The user-defined word.
+   * @return The word's stack effect.
+   */
+  private Effect effectOf(Word word) {
+    definition = word;
+    state = new State();
+    inputs = new ArrayList<Type>();
+    exits = new LinkedList<State>();
+    leaves = false;
+    word.accept(this);
+    return new Effect(inputs, state.dead ? null : state, leaves);
+  }
+
+  @Override
+  public void visitLiteral(LiteralWord word, Value<?> value) {
+    Type type;
+    if (value instanceof IntValue) {
+      type = Type.INT;
+    } else if (value instanceof BoolValue) {
+      type = Type.BOOL;
+    } else if (value instanceof StringValue) {
+      type = Type.STRING;
+    } else if (value instanceof VariableValue) {
+      type = Type.VARIABLE;
+    } else {
+      type = Type.ANY;
+    }
+    push(new Slot(type, -1));
+  }
+
+  @Override
+  public void visitPredefined(Word word, String name) {
+    MultiWord occurrenceParent = parent;
+    int occurrence = index;
+    int opcode = Opcode.forPredefinedWord(name);
+    boolean proven = true;
+    switch (opcode) {
+      case Opcode.DROP:
+        pop();
+        break;
+      case Opcode.DUP: {
+        Slot val = pop();
+        push(val);
+        push(val);
+        break;
+      }
+      case Opcode.SWAP: {
+        Slot val1 = pop();
+        Slot val2 = pop();
+        push(val1);
+        push(val2);
+        break;
+      }
+      case Opcode.ROT: {
+        Slot val1 = pop();
+        Slot val2 = pop();
+        Slot val3 = pop();
+        push(val2);
+        push(val1);
+        push(val3);
+        break;
+      }
+      case Opcode.LEAVE:
+        leave(state);
+        state = State.dead();
+        break;
+      default:
+        for (Type input : INPUTS[opcode]) {
+          proven &= require(pop(), input, "'" + name + "'");
+        }
+        for (Type output : OUTPUTS[opcode]) {
+          push(new Slot(output, -1));
+        }
+        break;
+    }
+    if (occurrenceParent != null) {
+      bits(checked, occurrenceParent).set(occurrence);
+      if (!proven) {
+        bits(unproven, occurrenceParent).set(occurrence);
+      }
+    }
+  }
+
+  @Override
+  public void visitMulti(MultiWord word, List<Word> words) {
+    if (word != definition && userWords.containsKey(word)) {
+      call(word);
+      return;
+    }
+    for (int i = 0; i < words.size(); i++) {
+      parent = word;
+      index = i;
+      words.get(i).accept(this);
+    }
+    parent = null;
+  }
+
+  @Override
+  public void visitIf(IfWord word, MultiWord trueCase, MultiWord falseCase) {
+    require(pop(), Type.BOOL, "an if-statement");
+    State entry = state;
+    state = entry.copy();
+    trueCase.accept(this);
+    State afterTrue = state;
+    state = entry.copy();
+    falseCase.accept(this);
+    state = State.merge(afterTrue, state);
+  }
+
+  @Override
+  public void visitCountedLoop(CountedLoopWord word, MultiWord body) {
+    require(pop(), Type.INT, "a counted loop");
+    require(pop(), Type.INT, "a counted loop");
+    exits.addFirst(State.dead());
+    State start = state;
+    for (int i = 0; ; i++) {
+      state = start.copy();
+      body.accept(this);
+      State next = State.merge(start, state);
+      if (next.sameAs(start)) {
+        break;
+      }
+      start = i < MAX_ITERATIONS ? next : unknown();
+    }
+    // The loop exits when the index passes the end before the body is executed
+    state = State.merge(start, exits.removeFirst());
+  }
+
+  @Override
+  public void visitGuardedLoop(GuardedLoopWord word, MultiWord body) {
+    exits.addFirst(State.dead());
+    State start = state;
+    State end;
+    for (int i = 0; ; i++) {
+      state = start.copy();
+      body.accept(this);
+      require(pop(), Type.BOOL, "a guarded loop");
+      end = state;
+      State next = State.merge(start, end);
+      if (next.sameAs(start)) {
+        break;
+      }
+      start = i < MAX_ITERATIONS ? next : unknown();
+    }
+    // The loop exits when the guard is false after the body is executed
+    state = State.merge(end, exits.removeFirst());
+  }
+
+  /**
+   * Applies a user-defined word's stack effect where it is called.
+   *
+   * @param word The user-defined word being called.
+   */
+  private void call(MultiWord word) {
+    Effect effect = effects.get(word);
+    String name = userWords.get(word);
+    List<Slot> arguments = new ArrayList<Slot>();
+    for (Type input : effect.inputs) {
+      Slot argument = pop();
+      if (input != null) {
+        require(argument, input, "'" + name + "'");
+      }
+      arguments.add(argument);
+    }
+    if (effect.leaves) {
+      // The stack when the word leaves is unknown to the caller
+      leave(unknown());
+    }
+    if (effect.result == null) {
+      state = State.dead();
+      return;
+    }
+    if (effect.result.lost) {
+      state.stack.clear();
+      state.lost = true;
+    }
+    for (Slot result : effect.result.stack) {
+      push(result.input >= 0 ? arguments.get(result.input) : result);
+    }
+  }
+
+  /**
+   * Records that the stack flows from a leave statement to the exit of the innermost loop.
+   *
+   * @param exit The stack when the leave statement is executed.
+   */
+  private void leave(State exit) {
+    if (state.dead) {
+      return;
+    }
+    if (exits.isEmpty()) {
+      leaves = true;
+    } else {
+      exits.set(0, State.merge(exits.getFirst(), exit));
+    }
+  }
+
+  private void push(Slot slot) {
+    if (!state.dead) {
+      state.stack.add(slot);
+    }
+  }
+
+  /**
+   * Pops the top-most value. If the values pushed within the word have all been popped then one of
+   * the word's inputs is popped.
+   *
+   * @return The top-most value.
+   */
+  private Slot pop() {
+    if (state.dead || state.lost && state.stack.isEmpty()) {
+      return Slot.UNKNOWN;
+    }
+    if (state.stack.isEmpty()) {
+      inputs.add(null);
+      return new Slot(Type.ANY, state.pulled++);
+    }
+    return state.stack.remove(state.stack.size() - 1);
+  }
+
+  /**
+   * Checks that a value has the type required by the word it is passed to. Values of unknown type
+   * that are inputs of the word being verified make the input require the type.
+   *
+   * @param slot The value passed to the word.
+   * @param type The type the word requires.
+   * @param description The description of the word used in the error message.
+   * @return True if the value is known to have the required type; otherwise, false.
+   * @throws TypeError Thrown if the value definitely doesn't have the required type.
+   */
+  private boolean require(Slot slot, Type type, String description) {
+    if (type == Type.ANY || state.dead) {
+      return type == Type.ANY;
+    }
+    if (slot.type == type) {
+      return true;
+    }
+    if (slot.type != Type.ANY) {
+      throw new TypeError("The word '" + userWords.get(definition) + "' passes "
+          + slot.type.description + " to " + description + " which expects " + type.description
+          + ".");
+    }
+    if (slot.input >= 0) {
+      Type required = inputs.get(slot.input);
+      inputs.set(slot.input, required == null || required == type ? type : Type.ANY);
+    }
+    return false;
+  }
+
+  /**
+   * Creates a stack whose depth and types are unknown.
+   *
+   * @return The unknown stack.
+   */
+  private State unknown() {
+    State unknown = new State();
+    unknown.pulled = state.pulled;
+    unknown.lost = true;
+    return unknown;
+  }
+
+  private static BitSet bits(Map<MultiWord, BitSet> words, MultiWord parent) {
+    BitSet bits = words.get(parent);
+    if (bits == null) {
+      bits = new BitSet();
+      words.put(parent, bits);
+    }
+    return bits;
+  }
+
+  /**
+   * Thrown within the visitor when a type error is found since visitor methods can't throw checked
+   * exceptions.
+   */
+  @SuppressWarnings("serial")
+  private static final class TypeError extends RuntimeException {
+
+    private TypeError(String message) {
+      super(message);
+    }
+  }
+}
@@ -2,7 +2,6 @@ package com.kerr.interpreter.words;
 
 import com.kerr.interpreter.controller.ScriptDataSource;
 import com.kerr.interpreter.controller.ScriptListener;
-import com.kerr.interpreter.model.BoolValue;
 import com.kerr.interpreter.model.ScriptData;
 
 /**
@@ -26,16 +25,15 @@ class AndWord extends PredefinedWord {
    */
   @Override
   public void execute(ScriptData data, ScriptListener listener, ScriptDataSource dataSource) {
-    BoolValue val1;
-    BoolValue val2;
+    boolean val1;
+    boolean val2;
     try {
-      val1 = (BoolValue) data.pop();
-      val2 = (BoolValue) data.pop();
+      val1 = data.popBool();
+      val2 = data.popBool();
     } catch (ClassCastException ex) {
       throw new IllegalStateException(
           "One of the parameters to '" + getName() + "' operation was not a boolean");
     }
-    BoolValue result = new BoolValue(val1.getValue() && val2.getValue());
-    data.push(result);
+    data.pushBool(val1 && val2);
   }
 }
@@ -23,6 +23,6 @@ public class AttackWord extends PredefinedWord {
    */
   @Override
   public void execute(ScriptData data, ScriptListener listener, ScriptDataSource dataSource) {
-    data.push(new IntValue(dataSource.attack()));
+    data.push(IntValue.of(dataSource.attack()));
   }
 }
@@ -3,9 +3,6 @@ package com.kerr.interpreter.words;
 import com.kerr.interpreter.controller.ScriptDataSource;
 import com.kerr.interpreter.controller.ScriptListener;
 import com.kerr.interpreter.model.ScriptData;
-import com.kerr.interpreter.model.IntValue;
-import com.kerr.interpreter.model.Value;
-import com.kerr.interpreter.model.VariableValue;
 
 /**
  * Executes the loop's body until the loop's start value is equal to the loop's end value.
@@ -38,31 +35,33 @@ public class CountedLoopWord extends LoopWord {
    */
   @Override
   public void execute(ScriptData data, ScriptListener listener, ScriptDataSource dataSource) {
-
-    // Save the counter variable in case of being in a nested loop.
-    VariableValue counter = new VariableValue("I");
-    Value<?> oldVal = data.getVariable(counter);
-
-    IntValue startVal;
-    IntValue endVal;
+    int startVal;
+    int endVal;
     try {
-      startVal = (IntValue) data.pop();
-      endVal = (IntValue) data.pop();
+      startVal = data.popInt();
+      endVal = data.popInt();
     } catch (ClassCastException ex) {
       throw new IllegalStateException(
           "The start or end value of a counted loop was not of the expected type");
     }
+    // Each loop gets its own frame so nested loops don't overwrite the outer loop's index
+    data.enterLoop(startVal);
     try {
-      for (int i = startVal.getValue(); i <= endVal.getValue(); i++) {
-        data.setVariable(counter, new IntValue(i));
+      for (int i = startVal; i <= endVal; i++) {
+        data.setLoopIndex(i);
         body.execute(data, listener, dataSource);
       }
     } catch (LeaveLoopException ex) {
       // Leave loop exception is used as a pseudo goto statement to jump out
       // of as many levels of nesting from if statements and multi-words
       // when a leave statement is encountered inside a loop
+    } finally {
+      data.exitLoop();
     }
-    // Restore the old counter value
-    data.setVariable(counter, oldVal);
+  }
+
+  @Override
+  public void accept(WordVisitor visitor) {
+    visitor.visitCountedLoop(this, body);
   }
 }
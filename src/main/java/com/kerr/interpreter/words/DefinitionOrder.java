@@ -0,0 +1,122 @@
+package com.kerr.interpreter.words;
+
+import com.kerr.interpreter.model.Value;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Orders the user-defined words of a script so every word comes after the words it calls, which
+ * lets passes over a script handle each word once its callees have been handled without recursing
+ * into them. Words are always defined before they are used so a word never calls itself. The call
+ * graph is walked with an explicit stack so long call chains can't exhaust the caller's stack.
+ *
+ * @author allankerr
+ *
+ */
+public final class DefinitionOrder implements WordVisitor {
+
+  /**
+   * The user-defined words being ordered.
+   */
+  private final Set<Word> userWords;
+
+  /**
+   * The user-defined word whose callees are being collected.
+   */
+  private Word definition;
+
+  private List<Word> callees;
+
+  private DefinitionOrder(Collection<Word> words) {
+    userWords = Collections.newSetFromMap(new IdentityHashMap<Word, Boolean>());
+    userWords.addAll(words);
+  }
+
+  /**
+   * Orders user-defined words so every word comes after the user-defined words it calls.
+   *
+   * @param words The user-defined words of a script.
+   * @return The words with callees before their callers.
+   * @throws IllegalArgumentException Thrown if words is null.
+   */
+  public static List<Word> sort(Collection<Word> words) {
+    if (words == null) {
+      throw new IllegalArgumentException("Attempted to order null words.");
+    }
+    DefinitionOrder graph = new DefinitionOrder(words);
+    List<Word> order = new ArrayList<Word>(words.size());
+    Set<Word> visited = Collections.newSetFromMap(new IdentityHashMap<Word, Boolean>());
+    List<Word> path = new ArrayList<Word>();
+    List<Iterator<Word>> frames = new ArrayList<Iterator<Word>>();
+    for (Word word : words) {
+      if (!visited.add(word)) {
+        continue;
+      }
+      path.add(word);
+      frames.add(graph.calleesOf(word).iterator());
+      while (!frames.isEmpty()) {
+        Iterator<Word> frame = frames.get(frames.size() - 1);
+        if (!frame.hasNext()) {
+          order.add(path.remove(path.size() - 1));
+          frames.remove(frames.size() - 1);
+          continue;
+        }
+        Word callee = frame.next();
+        if (visited.add(callee)) {
+          path.add(callee);
+          frames.add(graph.calleesOf(callee).iterator());
+        }
+      }
+    }
+    return order;
+  }
+
+  /**
+   * Collects the user-defined words called directly by a user-defined word.
+   */
+  private List<Word> calleesOf(Word word) {
+    definition = word;
+    callees = new ArrayList<Word>();
+    word.accept(this);
+    return callees;
+  }
+
+  @Override
+  public void visitLiteral(LiteralWord word, Value<?> value) {}
+
+  @Override
+  public void visitPredefined(Word word, String name) {}
+
+  @Override
+  public void visitMulti(MultiWord word, List<Word> words) {
+    if (word != definition && userWords.contains(word)) {
+      callees.add(word);
+      return;
+    }
+    for (Word child : words) {
+      child.accept(this);
+    }
+  }
+
+  @Override
+  public void visitIf(IfWord word, MultiWord trueCase, MultiWord falseCase) {
+    trueCase.accept(this);
+    falseCase.accept(this);
+  }
+
+  @Override
+  public void visitCountedLoop(CountedLoopWord word, MultiWord body) {
+    body.accept(this);
+  }
+
+  @Override
+  public void visitGuardedLoop(GuardedLoopWord word, MultiWord body) {
+    body.accept(this);
+  }
+}
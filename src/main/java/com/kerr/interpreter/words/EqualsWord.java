@@ -28,7 +28,7 @@ class EqualsWord extends PredefinedWord {
   public void execute(ScriptData data, ScriptListener listener, ScriptDataSource dataSource) {
     Value<?> val1 = data.pop();
     Value<?> val2 = data.pop();
-    BoolValue result = new BoolValue(val1.getValue().equals(val2.getValue()));
+    BoolValue result = BoolValue.of(val1.getValue().equals(val2.getValue()));
     data.push(result);
   }
 }
@@ -2,7 +2,6 @@ package com.kerr.interpreter.words;
 
 import com.kerr.interpreter.controller.ScriptDataSource;
 import com.kerr.interpreter.controller.ScriptListener;
-import com.kerr.interpreter.model.BoolValue;
 import com.kerr.interpreter.model.ScriptData;
 
 /**
@@ -36,19 +35,24 @@ public class GuardedLoopWord extends LoopWord {
   public void execute(ScriptData data, ScriptListener listener, ScriptDataSource dataSource) {
 
     try {
-      BoolValue finishCondition;
+      boolean finishCondition;
       do {
         body.execute(data, listener, dataSource);
         try {
-          finishCondition = (BoolValue) data.pop();
+          finishCondition = data.popBool();
         } catch (ClassCastException ex) {
           throw new IllegalStateException("The guard value for the guarded loop was not a boolean value as expected.");
         }
-      } while (finishCondition.getValue());
+      } while (finishCondition);
     } catch (LeaveLoopException ex) {
       // Leave loop exception is used as a pseudo goto statement to jump out
       // of as many levels of nesting from if statements and multi-words
       // when a leave statement is encountered inside a loop
     }
   }
+
+  @Override
+  public void accept(WordVisitor visitor) {
+    visitor.visitGuardedLoop(this, body);
+  }
 }
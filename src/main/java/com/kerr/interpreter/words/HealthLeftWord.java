@@ -24,6 +24,6 @@ public class HealthLeftWord extends PredefinedWord {
    */
   @Override
   public void execute(ScriptData data, ScriptListener listener, ScriptDataSource dataSource) {
-    data.push(new IntValue(dataSource.healthLeft()));
+    data.push(IntValue.of(dataSource.healthLeft()));
   }
 }
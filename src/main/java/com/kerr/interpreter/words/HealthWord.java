@@ -24,6 +24,6 @@ public class HealthWord extends PredefinedWord {
    */
   @Override
   public void execute(ScriptData data, ScriptListener listener, ScriptDataSource dataSource) {
-    data.push(new IntValue(dataSource.health()));
+    data.push(IntValue.of(dataSource.health()));
   }
 }
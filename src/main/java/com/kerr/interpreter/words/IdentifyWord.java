@@ -40,10 +40,10 @@ class IdentifyWord extends PredefinedWord {
           "The parameters for the " + getName() + " operation was not an integer");
     }
     IdentifyResponse response = listener.identify(val.getValue());
-    StringValue team = new StringValue(response.getTeam().toString());
-    IntValue range = new IntValue(response.getRange());
-    IntValue direction = new IntValue(response.getDirection());
-    IntValue remainingHealth = new IntValue(response.getRemainingHealth());
+    StringValue team = response.getTeam().getValue();
+    IntValue range = IntValue.of(response.getRange());
+    IntValue direction = IntValue.of(response.getDirection());
+    IntValue remainingHealth = IntValue.of(response.getRemainingHealth());
     data.push(remainingHealth);
     data.push(direction);
     data.push(range);
@@ -3,7 +3,6 @@ package com.kerr.interpreter.words;
 import com.kerr.interpreter.model.ScriptData;
 import com.kerr.interpreter.controller.ScriptDataSource;
 import com.kerr.interpreter.controller.ScriptListener;
-import com.kerr.interpreter.model.BoolValue;
 
 /**
  * Pops the topmost value from the stack and executes the true case if it is true or the false case
@@ -77,17 +76,21 @@ public class IfWord extends Word {
    */
   @Override
   public void execute(ScriptData data, ScriptListener listener, ScriptDataSource dataSource) {
-    BoolValue val;
+    boolean val;
     try {
-      val = (BoolValue) data.pop();
+      val = data.popBool();
     } catch (ClassCastException ex) {
       throw new IllegalStateException("The condition for the if-word operation was not a boolean.");
     }
-    if (val.getValue()) {
+    if (val) {
       trueCase.execute(data, listener, dataSource);
     } else {
       falseCase.execute(data, listener, dataSource);
     }
   }
 
+  @Override
+  public void accept(WordVisitor visitor) {
+    visitor.visitIf(this, trueCase, falseCase);
+  }
 }
@@ -2,7 +2,6 @@ package com.kerr.interpreter.words;
 
 import com.kerr.interpreter.controller.ScriptDataSource;
 import com.kerr.interpreter.controller.ScriptListener;
-import com.kerr.interpreter.model.BoolValue;
 import com.kerr.interpreter.model.ScriptData;
 
 /**
@@ -25,14 +24,13 @@ class InvertWord extends PredefinedWord {
    */
   @Override
   public void execute(ScriptData data, ScriptListener listener, ScriptDataSource dataSource) {
-    BoolValue val;
+    boolean val;
     try {
-      val = (BoolValue) data.pop();
+      val = data.popBool();
     } catch (ClassCastException ex) {
       throw new IllegalStateException("The condition for the if-word operation was not a boolean.");
     }
-    BoolValue inverted = new BoolValue(!val.getValue());
-    data.push(inverted);
+    data.pushBool(!val);
   }
 
 }
@@ -2,12 +2,23 @@ package com.kerr.interpreter.words;
 
 /**
  * An exception that is thrown when a leave statement is encountered. This exception is always
- * caught by the loop-word that is executing the body.
+ * caught by the loop-word that is executing the body. It is only used for control flow so a single
+ * instance without a stack trace is shared rather than filling in a new stack trace each time a
+ * loop is left.
  * 
  * @author allankerr
  *
  */
 @SuppressWarnings("serial")
-class LeaveLoopException extends RuntimeException {
+public class LeaveLoopException extends RuntimeException {
 
+  /**
+   * The shared instance thrown by every leave statement.
+   */
+  public static final LeaveLoopException INSTANCE = new LeaveLoopException();
+
+  private LeaveLoopException() {
+    // Suppression and the stack trace are disabled since the exception never escapes a loop
+    super("A leave statement was executed outside of a loop.", null, false, false);
+  }
 }
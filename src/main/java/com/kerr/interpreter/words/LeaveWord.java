@@ -18,11 +18,11 @@ class LeaveWord extends PredefinedWord {
   }
 
   /**
-   * Throws a LeaveLoopException to exit the body of the loop which is caught by the loop-word
-   * executing the body.
+   * Throws the shared LeaveLoopException to exit the body of the loop which is caught by the
+   * loop-word executing the body.
    */
   @Override
   public void execute(ScriptData data, ScriptListener listener, ScriptDataSource dataSource) {
-    throw new LeaveLoopException();
+    throw LeaveLoopException.INSTANCE;
   }
 }
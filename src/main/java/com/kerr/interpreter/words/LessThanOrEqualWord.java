@@ -2,9 +2,7 @@ package com.kerr.interpreter.words;
 
 import com.kerr.interpreter.controller.ScriptDataSource;
 import com.kerr.interpreter.controller.ScriptListener;
-import com.kerr.interpreter.model.BoolValue;
 import com.kerr.interpreter.model.ScriptData;
-import com.kerr.interpreter.model.IntValue;
 
 /**
  * Pops the two top-most integers from the stack and pushes true if the second from the top integer
@@ -29,16 +27,15 @@ class LessThanOrEqualWord extends PredefinedWord {
    */
   @Override
   public void execute(ScriptData data, ScriptListener listener, ScriptDataSource dataSource) {
-    IntValue val1;
-    IntValue val2;
+    int val1;
+    int val2;
     try {
-      val1 = (IntValue) data.pop();
-      val2 = (IntValue) data.pop();
+      val1 = data.popInt();
+      val2 = data.popInt();
     } catch (ClassCastException ex) {
       throw new IllegalStateException(
           "One of the arguments to '" + this.getName() + "' was not an integer.");
     }
-    BoolValue result = new BoolValue(val2.getValue() <= val1.getValue());
-    data.push(result);
+    data.pushBool(val2 <= val1);
   }
 }
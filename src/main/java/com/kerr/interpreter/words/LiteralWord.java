@@ -4,7 +4,6 @@ import com.kerr.interpreter.controller.ScriptDataSource;
 import com.kerr.interpreter.controller.ScriptListener;
 import com.kerr.interpreter.model.ScriptData;
 import com.kerr.interpreter.model.Value;
-import com.kerr.interpreter.model.VariableValue;
 
 /**
  * This word represents a literal value within the script being executed. This may be a string,
@@ -31,17 +30,15 @@ public class LiteralWord extends Word {
   }
 
   /**
-   * Pushes the literal word's value to the stack. If the value is a variable named I then the
-   * script must be within a counted loop. In this case, the value of the counter should be pushed.
+   * Pushes the literal word's value to the stack.
    */
   @Override
   public void execute(ScriptData data, ScriptListener listener, ScriptDataSource dataSource) {
-    if (value.getValue().equals("I")) {
-      VariableValue variable = new VariableValue("I");
-      data.pushVariable(variable);
-    } else {
-      data.push(value);
-    }
+    data.push(value);
   }
 
+  @Override
+  public void accept(WordVisitor visitor) {
+    visitor.visitLiteral(this, value);
+  }
 }
@@ -0,0 +1,29 @@
+package com.kerr.interpreter.words;
+
+import com.kerr.interpreter.controller.ScriptDataSource;
+import com.kerr.interpreter.controller.ScriptListener;
+import com.kerr.interpreter.model.ScriptData;
+
+/**
+ * Pushes the index of the innermost counted loop being executed to the stack. The index is read
+ * from the script's loop frames so it is available to user-defined words called from within a loop.
+ * 
+ * @author allankerr
+ *
+ */
+class LoopIndexWord extends PredefinedWord {
+
+  @Override
+  public String getName() {
+    return "I";
+  }
+
+  /**
+   * Pushes the index of the innermost counted loop to the stack or zero if no counted loop is being
+   * executed.
+   */
+  @Override
+  public void execute(ScriptData data, ScriptListener listener, ScriptDataSource dataSource) {
+    data.pushLoopIndex();
+  }
+}
@@ -38,6 +38,6 @@ class MessageWord extends PredefinedWord {
           "The arguments to '" + this.getName() + "' was not a string.");
     }
     RobotType sender = RobotType.valueOf(senderVal.getValue());
-    data.push(new BoolValue(data.hasMessage(sender)));
+    data.push(BoolValue.of(data.hasMessage(sender)));
   }
 }
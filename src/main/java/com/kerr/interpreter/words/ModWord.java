@@ -3,7 +3,6 @@ package com.kerr.interpreter.words;
 import com.kerr.interpreter.controller.ScriptDataSource;
 import com.kerr.interpreter.controller.ScriptListener;
 import com.kerr.interpreter.model.ScriptData;
-import com.kerr.interpreter.model.IntValue;
 
 /**
  * Pops the two top-most values from the stack, divides them and pushes the remainder and quotient
@@ -28,18 +27,16 @@ class ModWord extends PredefinedWord {
    */
   @Override
   public void execute(ScriptData data, ScriptListener listener, ScriptDataSource dataSource) {
-    IntValue val1;
-    IntValue val2;
+    int val1;
+    int val2;
     try {
-      val1 = (IntValue) data.pop();
-      val2 = (IntValue) data.pop();
+      val1 = data.popInt();
+      val2 = data.popInt();
     } catch (ClassCastException ex) {
       throw new IllegalStateException(
           "One of the arguments to '" + this.getName() + "' was not an integer.");
     }
-    IntValue remainder = new IntValue(val2.getValue() % val1.getValue());
-    IntValue quotient = new IntValue(val2.getValue() / val1.getValue());
-    data.push(remainder);
-    data.push(quotient);
+    data.pushInt(val2 % val1);
+    data.pushInt(val2 / val1);
   }
 }
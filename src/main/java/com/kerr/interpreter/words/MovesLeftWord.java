@@ -26,6 +26,6 @@ public class MovesLeftWord extends PredefinedWord {
    */
   @Override
   public void execute(ScriptData data, ScriptListener listener, ScriptDataSource dataSource) {
-    data.push(new IntValue(dataSource.movesLeft()));
+    data.push(IntValue.of(dataSource.movesLeft()));
   }
 }
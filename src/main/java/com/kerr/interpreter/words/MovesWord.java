@@ -26,6 +26,6 @@ public class MovesWord extends PredefinedWord {
    */
   @Override
   public void execute(ScriptData data, ScriptListener listener, ScriptDataSource dataSource) {
-    data.push(new IntValue(dataSource.moves()));
+    data.push(IntValue.of(dataSource.moves()));
   }
 }
@@ -68,12 +68,18 @@ public class MultiWord extends Word {
   }
 
   /**
-   * Executes the words in sequential order.
+   * Executes the words in sequential order, counting each word as it is executed.
    */
   @Override
   public void execute(ScriptData data, ScriptListener listener, ScriptDataSource dataSource) {
     for (Word word : words) {
+      data.countWord();
       word.execute(data, listener, dataSource);
     }
   }
+
+  @Override
+  public void accept(WordVisitor visitor) {
+    visitor.visitMulti(this, words);
+  }
 }
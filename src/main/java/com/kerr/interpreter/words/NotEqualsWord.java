@@ -29,7 +29,7 @@ class NotEqualsWord extends PredefinedWord {
   public void execute(ScriptData data, ScriptListener listener, ScriptDataSource dataSource) {
     Value<?> val1 = data.pop();
     Value<?> val2 = data.pop();
-    BoolValue result = new BoolValue(!val1.getValue().equals(val2.getValue()));
+    BoolValue result = BoolValue.of(!val1.getValue().equals(val2.getValue()));
     data.push(result);
   }
 }
@@ -15,4 +15,9 @@ abstract class PredefinedWord extends Word {
    * @return The name of the word.
    */
   public abstract String getName();
+
+  @Override
+  public void accept(WordVisitor visitor) {
+    visitor.visitPredefined(this, getName());
+  }
 }
@@ -110,6 +110,7 @@ public class PredefinedWords {
 
     // Loop Words
     register(new LeaveWord());
+    register(new LoopIndexWord());
   }
 
   /**
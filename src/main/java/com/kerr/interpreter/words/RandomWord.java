@@ -3,7 +3,6 @@ package com.kerr.interpreter.words;
 import com.kerr.interpreter.controller.ScriptDataSource;
 import com.kerr.interpreter.controller.ScriptListener;
 import com.kerr.interpreter.model.ScriptData;
-import java.util.Random;
 
 import com.kerr.interpreter.model.IntValue;
 
@@ -35,7 +34,7 @@ class RandomWord extends PredefinedWord {
       throw new IllegalStateException(
           "The arguments to '" + this.getName() + "' was not an integer.");
     }
-    IntValue result = new IntValue(new Random().nextInt(val.getValue() + 1));
+    IntValue result = IntValue.of(data.nextRandom(val.getValue() + 1));
     data.push(result);
   }
 }
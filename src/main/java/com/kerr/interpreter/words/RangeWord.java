@@ -23,6 +23,6 @@ public class RangeWord extends PredefinedWord {
    */
   @Override
   public void execute(ScriptData data, ScriptListener listener, ScriptDataSource dataSource) {
-    data.push(new IntValue(dataSource.range()));
+    data.push(IntValue.of(dataSource.range()));
   }
 }
@@ -26,7 +26,7 @@ class ScanWord extends PredefinedWord {
    */
   @Override
   public void execute(ScriptData data, ScriptListener listener, ScriptDataSource dataSource) {
-    IntValue result = new IntValue(listener.scan());
+    IntValue result = IntValue.of(listener.scan());
     data.push(result);
   }
 }
@@ -41,6 +41,6 @@ class SendWord extends PredefinedWord {
     }
     RobotType sender = RobotType.valueOf(senderVal.getValue());
     boolean result = listener.sendMessage(sender, val);
-    data.push(new BoolValue(result));
+    data.push(BoolValue.of(result));
   }
 }
@@ -3,7 +3,6 @@ package com.kerr.interpreter.words;
 import com.kerr.interpreter.controller.ScriptDataSource;
 import com.kerr.interpreter.controller.ScriptListener;
 import com.kerr.interpreter.model.ScriptData;
-import com.kerr.interpreter.model.StringValue;
 
 /**
  * The predefined word for getting the team of the robot the script is being run for. This may be
@@ -24,6 +23,6 @@ public class TeamWord extends PredefinedWord {
    */
   @Override
   public void execute(ScriptData data, ScriptListener listener, ScriptDataSource dataSource) {
-    data.push(new StringValue(dataSource.team().toString()));
+    data.push(dataSource.team().getValue());
   }
 }
@@ -40,4 +40,12 @@ public abstract class Word {
    */
   public abstract void execute(ScriptData data, ScriptListener listener,
       ScriptDataSource dataSource);
+
+  /**
+   * Accept must be implemented by all subclasses. It forwards the word to the visit method that
+   * matches its role in the word-tree so the tree can be inspected without being executed.
+   * 
+   * @param visitor The visitor walking the word-tree.
+   */
+  public abstract void accept(WordVisitor visitor);
 }
@@ -0,0 +1,65 @@
+package com.kerr.interpreter.words;
+
+import com.kerr.interpreter.model.Value;
+import java.util.List;
+
+/**
+ * Visitor for walking a built word-tree without executing it. This is used by components such as
+ * the bytecode compiler that need to know the structure of a script rather than run it. Each word
+ * subclass forwards to the visit method matching its role in the tree.
+ *
+ * @author allankerr
+ *
+ */
+public interface WordVisitor {
+
+  /**
+   * Visits a literal word that pushes a value to the stack.
+   *
+   * @param word The literal word being visited.
+   * @param value The value the literal word pushes.
+   */
+  public void visitLiteral(LiteralWord word, Value<?> value);
+
+  /**
+   * Visits one of the predefined words registered in PredefinedWords.
+   *
+   * @param word The predefined word being visited.
+   * @param name The name the predefined word is registered under.
+   */
+  public void visitPredefined(Word word, String name);
+
+  /**
+   * Visits a multi-word. This is either a user-defined word, a build word, or the body of a
+   * control statement.
+   *
+   * @param word The multi-word being visited.
+   * @param words The words within the multi-word in execution order.
+   */
+  public void visitMulti(MultiWord word, List<Word> words);
+
+  /**
+   * Visits an if-statement.
+   *
+   * @param word The if-word being visited.
+   * @param trueCase The body executed when the condition is true.
+   * @param falseCase The body executed when the condition is false.
+   */
+  public void visitIf(IfWord word, MultiWord trueCase, MultiWord falseCase);
+
+  /**
+   * Visits a do ... loop statement.
+   *
+   * @param word The counted loop being visited.
+   * @param body The body of the loop.
+   */
+  public void visitCountedLoop(CountedLoopWord word, MultiWord body);
+
+  /**
+   * Visits a begin ... until statement.
+   *
+   * @param word The guarded loop being visited.
+   * @param body The body of the loop including the guard condition.
+   */
+  public void visitGuardedLoop(GuardedLoopWord word, MultiWord body);
+}
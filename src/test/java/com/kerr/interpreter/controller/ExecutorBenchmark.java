@@ -0,0 +1,169 @@
+package com.kerr.interpreter.controller;
+
+import com.kerr.interpreter.model.RobotType;
+import com.kerr.interpreter.model.ScriptData;
+import com.kerr.interpreter.model.TeamColor;
+import com.kerr.interpreter.model.Value;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Measures how long it takes to run a turn for every robot at once on a pool of platform threads
+ * compared to a virtual thread per robot. The listener blocks for a millisecond on every scan and
+ * check to stand in for the board answering. Virtual threads require Java 21 or later and are
+ * skipped on older runtimes. This is run manually with
+ * {@code java -cp target/classes:target/test-classes com.kerr.interpreter.controller.ExecutorBenchmark}
+ * optionally followed by the robot counts to measure.
+ *
+ * @author allankerr
+ *
+ */
+public class ExecutorBenchmark implements ScriptListener, ScriptDataSource {
+
+  private static final String SCRIPT =
+      ": play ( -- )          \n" +
+      "    scan! drop         \n" +
+      "    0 check! drop      \n" +
+      "    1 turn! move! ;    \n";
+
+  private static final int[] DEFAULT_ROBOTS = {1000, 10000, 100000};
+
+  /**
+   * The number of threads in the platform pool.
+   */
+  private static final int PLATFORM_THREADS = 200;
+
+  /**
+   * How long the listener blocks for each scan and check.
+   */
+  private static final long LATENCY_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+  private volatile CountDownLatch latch;
+
+  public static void main(String[] args) throws Exception {
+    int[] robots = DEFAULT_ROBOTS;
+    if (args.length > 0) {
+      robots = new int[args.length];
+      for (int i = 0; i < args.length; i++) {
+        robots[i] = Integer.parseInt(args[i]);
+      }
+    }
+    ExecutorBenchmark benchmark = new ExecutorBenchmark();
+    ScriptData script = new ScriptController().build("C2", "Benchmark", SCRIPT);
+    for (int count : robots) {
+      ScriptData[] scripts = new ScriptData[count];
+      for (int i = 0; i < count; i++) {
+        scripts[i] = script.copy("C2", "Robot " + i);
+      }
+
+      ScriptController platform =
+          new ScriptController(benchmark, Executors.newFixedThreadPool(PLATFORM_THREADS));
+      benchmark.report("Platform", count, benchmark.measure(platform, scripts));
+      platform.getExecutor().shutdown();
+      platform.close();
+
+      if (ScriptController.isVirtualThreadSupported()) {
+        ScriptController virtual = new ScriptController(benchmark);
+        virtual.useVirtualThreads();
+        benchmark.report("Virtual", count, benchmark.measure(virtual, scripts));
+        virtual.close();
+      } else {
+        System.out.println(String.format("%-10s %,8d robots   requires Java 21", "Virtual", count));
+      }
+    }
+  }
+
+  /**
+   * Runs a warm-up turn and then a measured turn for every robot.
+   *
+   * @return The time taken by the measured turn in nanoseconds.
+   */
+  private long measure(ScriptController controller, ScriptData[] scripts)
+      throws InterruptedException {
+    turn(controller, scripts);
+    long start = System.nanoTime();
+    turn(controller, scripts);
+    return System.nanoTime() - start;
+  }
+
+  private void turn(ScriptController controller, ScriptData[] scripts)
+      throws InterruptedException {
+    latch = new CountDownLatch(scripts.length);
+    for (ScriptData script : scripts) {
+      controller.execute(script, this);
+    }
+    latch.await();
+  }
+
+  private void report(String mode, int robots, long nanos) {
+    double seconds = nanos / 1e9;
+    System.out.println(String.format("%-10s %,8d robots %,10.1f ms %,12.0f turns/s", mode, robots,
+        nanos / 1e6, robots / seconds));
+  }
+
+  public void turn(int direction) {}
+
+  public void move() {}
+
+  public void shoot(int direction, int distance) {}
+
+  public int scan() {
+    LockSupport.parkNanos(LATENCY_NANOS);
+    return 0;
+  }
+
+  public IdentifyResponse identify(int index) {
+    return new IdentifyResponse(TeamColor.BLUE, 1, index, 2);
+  }
+
+  public CheckResponse check(int direction) {
+    LockSupport.parkNanos(LATENCY_NANOS);
+    return CheckResponse.EMPTY;
+  }
+
+  public boolean sendMessage(RobotType type, Value<?> value) {
+    return true;
+  }
+
+  public void scriptInterrupted(Exception exception) {
+    exception.printStackTrace();
+  }
+
+  public void scriptFinished() {
+    latch.countDown();
+  }
+
+  public int health() {
+    return 3;
+  }
+
+  public int healthLeft() {
+    return 3;
+  }
+
+  public int moves() {
+    return 1;
+  }
+
+  public int movesLeft() {
+    return 1;
+  }
+
+  public int attack() {
+    return 3;
+  }
+
+  public int range() {
+    return 1;
+  }
+
+  public TeamColor team() {
+    return TeamColor.RED;
+  }
+
+  public RobotType type() {
+    return RobotType.TANK;
+  }
+}
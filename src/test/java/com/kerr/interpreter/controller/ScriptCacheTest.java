@@ -0,0 +1,155 @@
+package com.kerr.interpreter.controller;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.kerr.interpreter.model.IntValue;
+import com.kerr.interpreter.model.Program;
+import com.kerr.interpreter.model.ScriptData;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+/**
+ * This class is used to test that the script cache builds each script once, gives every request
+ * its own state, evicts the least recently used scripts, and only builds a script once when it is
+ * requested concurrently.
+ *
+ * @author allankerr
+ *
+ */
+public class ScriptCacheTest {
+
+  private static final String SCRIPT =
+      "variable total ;                           \n" +
+      "5 total !                                  \n" +
+      ": play ( -- ) total ? 1 + total ! ;        \n";
+
+  /**
+   * Test that the same source is only built once and that each copy has its own variables while
+   * sharing the built words.
+   */
+  @Test
+  public void shareBuiltScripts() throws UnexpectedTokenException, UnknownWordException {
+    ScriptController controller = new ScriptController();
+    ScriptData first = controller.build("C2", "First", SCRIPT);
+    ScriptData second = controller.build("C3", "Second", "\n  " + SCRIPT + "  ");
+
+    assertEquals(1, controller.getCache().getMisses());
+    assertEquals(1, controller.getCache().getHits());
+    assertEquals("C3", second.getTeamName());
+    assertEquals("Second", second.getScriptName());
+    assertSame(first.getPlayWord(), second.getPlayWord());
+
+    first.setVariable(0, IntValue.of(9));
+    assertEquals(5, second.getVariable("total").getValue());
+
+    controller.setInlineBudget(0);
+    assertNotSame(first.getPlayWord(), controller.build("C2", "First", SCRIPT).getPlayWord());
+    assertEquals(2, controller.getCache().getMisses());
+  }
+
+  /**
+   * Test that scripts whose build words generate random numbers are built again for every request
+   * so each copy gets its own numbers.
+   */
+  @Test
+  public void buildRandomScriptsEachTime() throws UnexpectedTokenException, UnknownWordException {
+    ScriptController controller = new ScriptController();
+    String script = "variable d ; 1000000 random d ! : play ( -- ) ;";
+    List<Object> values = new ArrayList<Object>();
+    for (int i = 0; i < 5; i++) {
+      ScriptData data = controller.build("C2", "Random", script);
+      assertFalse(data.getProgram().isDeterministic());
+      values.add(data.getVariable("d").getValue());
+    }
+
+    ScriptCache cache = controller.getCache();
+    assertEquals(5, cache.getMisses());
+    assertEquals(0, cache.getHits());
+    assertEquals(0, cache.size());
+    assertNotEquals(1, new HashSet<Object>(values).size());
+    assertTrue(controller.build("C2", "Fixed", SCRIPT).getProgram().isDeterministic());
+    assertEquals(1, cache.size());
+  }
+
+  /**
+   * Test that the least recently used scripts are evicted once the cache is full.
+   */
+  @Test
+  public void evictLeastRecentlyUsed() throws UnexpectedTokenException, UnknownWordException {
+    ScriptController controller = new ScriptController();
+    String a = ": play ( -- ) 1 turn! ;";
+    String b = ": play ( -- ) 2 turn! ;";
+    String c = ": play ( -- ) 3 turn! ;";
+    controller.setCache(new ScriptCache(a.length() * 2));
+
+    controller.build(null, null, a);
+    controller.build(null, null, b);
+    controller.build(null, null, a);
+    controller.build(null, null, c);
+
+    ScriptCache cache = controller.getCache();
+    assertEquals(1, cache.getEvictions());
+    assertEquals(2, cache.size());
+    controller.build(null, null, a);
+    assertEquals(2, cache.getHits());
+    controller.build(null, null, b);
+    assertEquals(4, cache.getMisses());
+  }
+
+  /**
+   * Test that concurrent requests for a script that is being built wait for the build rather than
+   * building the script again.
+   */
+  @Test
+  public void buildOnce() throws Exception {
+    final ScriptCache cache = new ScriptCache();
+    final AtomicInteger builds = new AtomicInteger();
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final Callable<Program> builder = new Callable<Program>() {
+      public Program call() throws Exception {
+        builds.incrementAndGet();
+        started.countDown();
+        release.await();
+        return new ScriptBuilder().build(null, null, SCRIPT).getProgram();
+      }
+    };
+    List<Thread> threads = new ArrayList<Thread>();
+    final List<ScriptData> results = new ArrayList<ScriptData>();
+    for (int i = 0; i < 4; i++) {
+      Thread thread = new Thread(new Runnable() {
+        public void run() {
+          try {
+            ScriptData data = cache.get(null, null, SCRIPT, 0, builder);
+            synchronized (results) {
+              results.add(data);
+            }
+          } catch (Exception ex) {
+            throw new RuntimeException(ex);
+          }
+        }
+      });
+      threads.add(thread);
+      thread.start();
+    }
+    started.await();
+    release.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertEquals(1, builds.get());
+    assertEquals(4, results.size());
+    assertEquals(1, cache.getMisses());
+    assertEquals(3, cache.getHits());
+  }
+}
@@ -0,0 +1,121 @@
+package com.kerr.interpreter.controller;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import com.kerr.interpreter.model.RobotType;
+import com.kerr.interpreter.model.ScriptData;
+import com.kerr.interpreter.words.MockController;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.zip.CRC32;
+import org.junit.Test;
+
+/**
+ * This class is used to test that compiled script images load scripts that behave the same as
+ * the scripts they were written from and that malformed or tampered images are rejected.
+ *
+ * @author allankerr
+ *
+ */
+public class ScriptImageTest {
+
+  private static final String SCRIPT =
+      "variable total ;                           \n" +
+      "variable name ;                            \n" +
+      "5 total ! .\"TANK\" name ! 7 true          \n" +
+      ": add total ? + total ! ;                  \n" +
+      ": play ( -- )                              \n" +
+      "    3 1 do                                 \n" +
+      "        I add                              \n" +
+      "        I 2 = if 1 turn! else then         \n" +
+      "    loop                                   \n" +
+      "    begin move! movesLeft 0 > until        \n" +
+      "    name ? total ? send! drop ;            \n";
+
+  /**
+   * Test that a script read from an image keeps the values of its variables and stack after
+   * building and produces the same output as the script it was written from.
+   */
+  @Test
+  public void roundTrip() throws IOException, UnexpectedTokenException, UnknownWordException {
+    ScriptController controller = new ScriptController();
+    ScriptData data = controller.build("C2", "Image", SCRIPT);
+    ScriptData loaded = controller.readImage(new ByteArrayInputStream(image(data)));
+
+    assertEquals("C2", loaded.getTeamName());
+    assertEquals("Image", loaded.getScriptName());
+    assertEquals(data.getVariableNames(), loaded.getVariableNames());
+    assertEquals(5, loaded.getVariable("total").getValue());
+    assertEquals("TANK", loaded.getVariable("name").getValue());
+    assertEquals(2, loaded.getStackDepth());
+    assertEquals(7, loaded.getStackValue(0).getValue());
+    assertEquals(true, loaded.getStackValue(1).getValue());
+
+    for (ExecutionEngine engine : ExecutionEngine.values()) {
+      MockController expected = run(engine, data.clone());
+      MockController actual = run(engine, loaded.clone());
+      assertEquals(expected.getMessages().toString(), actual.getMessages().toString());
+      assertEquals(expected.getMoveCount(), actual.getMoveCount());
+      assertEquals(expected.getDirection(), actual.getDirection());
+    }
+  }
+
+  /**
+   * Test that images that are corrupted, truncated, or of another version are rejected even if
+   * their checksums are recomputed.
+   */
+  @Test
+  public void rejectInvalidImages()
+      throws IOException, UnexpectedTokenException, UnknownWordException {
+    byte[] image = image(new ScriptController().build("C2", "Image", SCRIPT));
+
+    byte[] corrupted = image.clone();
+    corrupted[image.length / 2] ^= 1;
+    assertRejected(corrupted, "The script image failed its checksum.");
+
+    byte[] version = image.clone();
+    version[5] = 2;
+    assertRejected(checksum(version),
+        "The script image has version 2 but only version 1 is supported.");
+
+    byte[] truncated = Arrays.copyOf(image, image.length - 8);
+    assertRejected(checksum(Arrays.copyOf(truncated, truncated.length + 4)),
+        "The script image is truncated.");
+  }
+
+  private static void assertRejected(byte[] image, String message) {
+    try {
+      ScriptImage.read(image);
+      fail();
+    } catch (InvalidScriptImageException ex) {
+      assertEquals(message, ex.getMessage());
+    }
+  }
+
+  private static byte[] image(ScriptData data) throws IOException {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    ScriptImage.write(data, output);
+    return output.toByteArray();
+  }
+
+  /**
+   * Recomputes the checksum at the end of an image.
+   */
+  private static byte[] checksum(byte[] image) {
+    CRC32 crc = new CRC32();
+    crc.update(image, 0, image.length - 4);
+    ByteBuffer.wrap(image, image.length - 4, 4).putInt((int) crc.getValue());
+    return image;
+  }
+
+  private static MockController run(ExecutionEngine engine, ScriptData data) {
+    MockController mockController = new MockController(RobotType.SCOUT, new CountDownLatch(1));
+    engine.run(data, mockController, mockController);
+    return mockController;
+  }
+}
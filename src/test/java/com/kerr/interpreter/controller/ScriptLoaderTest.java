@@ -0,0 +1,99 @@
+package com.kerr.interpreter.controller;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+
+import com.kerr.interpreter.model.ScriptData;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * This class is used to test that directories and jars of scripts are loaded as UTF-8 and can be
+ * built.
+ *
+ * @author allankerr
+ *
+ */
+public class ScriptLoaderTest {
+
+  private static final String TANK = ": play ( -- ) .\"Sch\u00fcsse\" . 1 turn! move! ;";
+
+  private static final String SCOUT = ": play ( -- ) move! move! ;";
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  /**
+   * Test that every script in a directory and its nested directories is loaded in order of name
+   * and other files are ignored.
+   */
+  @Test
+  public void loadDirectory()
+      throws IOException, UnexpectedTokenException, UnknownWordException {
+    File root = folder.newFolder("scripts");
+    Path scouts = Files.createDirectory(root.toPath().resolve("scouts"));
+    Files.write(root.toPath().resolve("tank.fs"), TANK.getBytes(StandardCharsets.UTF_8));
+    Files.write(scouts.resolve("scout.fs"), SCOUT.getBytes(StandardCharsets.UTF_8));
+    Files.write(root.toPath().resolve("notes.txt"), new byte[] {1, 2, 3});
+
+    List<LoadedScript> scripts = ScriptLoader.loadAll(root.toPath());
+
+    assertEquals(2, scripts.size());
+    assertEquals("scouts/scout", scripts.get(0).getName());
+    assertEquals(SCOUT, scripts.get(0).getScript());
+    assertEquals("tank", scripts.get(1).getName());
+    assertEquals(TANK, scripts.get(1).getScript());
+    assertEquals(TANK.getBytes(StandardCharsets.UTF_8).length, scripts.get(1).getSize());
+
+    ScriptData data = new ScriptController().build("C2", scripts.get(1));
+    assertEquals("tank", data.getScriptName());
+    assertNotNull(data.getPlayWord());
+  }
+
+  /**
+   * Test that the scripts in a jar are loaded the same way as those in a directory.
+   */
+  @Test
+  public void loadJar() throws IOException {
+    File jar = folder.newFile("scripts.jar");
+    try (JarOutputStream output = new JarOutputStream(new FileOutputStream(jar))) {
+      output.putNextEntry(new JarEntry("scouts/scout.fs"));
+      output.write(SCOUT.getBytes(StandardCharsets.UTF_8));
+      output.putNextEntry(new JarEntry("tank.fs"));
+      output.write(TANK.getBytes(StandardCharsets.UTF_8));
+    }
+
+    List<LoadedScript> scripts = ScriptLoader.loadAll(jar.toPath());
+
+    assertEquals(2, scripts.size());
+    assertEquals("scouts/scout", scripts.get(0).getName());
+    assertEquals("tank", scripts.get(1).getName());
+    assertEquals(TANK, scripts.get(1).getScript());
+  }
+
+  /**
+   * Test that paths that are neither a directory nor a jar are reported as IOExceptions.
+   */
+  @Test
+  public void loadNeitherDirectoryNorJar() throws IOException {
+    File text = folder.newFile("notes.txt");
+    Files.write(text.toPath(), TANK.getBytes(StandardCharsets.UTF_8));
+    for (File path : new File[] {text, new File(folder.getRoot(), "missing")}) {
+      try {
+        ScriptLoader.loadAll(path.toPath());
+        fail();
+      } catch (IOException ex) {}
+    }
+  }
+}
@@ -0,0 +1,211 @@
+package com.kerr.interpreter.controller;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * This class is used to test that the single-pass tokenizer produces exactly the same tokens as the
+ * Scanner-based tokenizer it replaced, including for malformed scripts and scripts that are
+ * streamed in small pieces.
+ *
+ * @author allankerr
+ *
+ */
+public class ScriptTokenizerTest {
+
+  /**
+   * Fragments that random scripts are built from. These include every keyword, integers that are
+   * grouped, signed or too large, booleans in mixed case, and strings and comments that span
+   * whitespace and lines.
+   */
+  private static final String[] FRAGMENTS = {":", ";", "variable", "if", "else", "then", "do",
+      "loop", "begin", "until", "0", "7", "-12", "+3", "007", "1,000", "12,34", ",100", "0,100",
+      "2147483647", "2147483648", "-2147483648", "-2147483649", "-", "+", "true", "FALSE", "tRuE",
+      "play", "shoot!", "=>", ".\"", ".\"a\"", ".\"a", "b\"", "\"", ".\"\"", "(", ")", "()", "(--)",
+      "--", "x)", " ", "  ", "\n", "\r\n", "\t"};
+
+  /**
+   * Test that scripts written like the team scripts are tokenized the same way.
+   */
+  @Test
+  public void matchScripts() {
+    assertSameTokens(
+        "variable canShoot ;                        \n" +
+        ": canShoot? canShoot ? ;                   \n" +
+        ": play ( -- ) maxRange 1 - random 1 +      \n" +
+        "       0 1 random <> if                    \n" +
+        "           .\"print  this message\" .      \n" +
+        "       else                                \n" +
+        "           .\"other\" . .\"\" .            \n" +
+        "       then true FALSE and ;               \n");
+    assertSameTokens("( a comment\nover lines ) .\"a string\nover lines\" 1,000 -2147483648");
+    assertSameTokens(".\"unterminated string");
+    assertSameTokens("variable");
+  }
+
+  /**
+   * Test that random sequences of fragments are tokenized the same way.
+   */
+  @Test
+  public void matchRandomScripts() {
+    Random random = new Random(42);
+    for (int i = 0; i < 2000; i++) {
+      StringBuilder script = new StringBuilder();
+      int length = random.nextInt(12);
+      for (int j = 0; j < length; j++) {
+        script.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+        if (random.nextInt(3) > 0) {
+          script.append(' ');
+        }
+      }
+      assertSameTokens(script.toString());
+    }
+  }
+
+  /**
+   * Test that streamed scripts report the offset of each token and that tokens larger than the
+   * buffer are read whole.
+   */
+  @Test
+  public void streamOffsets() {
+    String word = new String(new char[ScriptTokenizer.BUFFER_SIZE * 2]).replace('\0', 'x');
+    String script = "variable a ;\n  .\"two words\" " + word + " 12";
+    ScriptTokenizer tokenizer = new ScriptTokenizer(Channels.newChannel(
+        new ByteArrayInputStream(script.getBytes(StandardCharsets.UTF_8))), StandardCharsets.UTF_8);
+
+    assertEquals(-1, tokenizer.getTokenOffset());
+    assertEquals(ScriptToken.VARIABLE, tokenizer.nextToken());
+    assertEquals(0, tokenizer.getTokenOffset());
+    assertEquals(ScriptToken.BLOCK_END, tokenizer.nextToken());
+    assertEquals(11, tokenizer.getTokenOffset());
+    assertEquals(ScriptToken.STRING, tokenizer.nextToken());
+    assertEquals("two words", tokenizer.getStringValue());
+    assertEquals(15, tokenizer.getTokenOffset());
+    assertEquals(ScriptToken.WORD, tokenizer.nextToken());
+    assertEquals(word, tokenizer.getWordValue());
+    assertEquals(28, tokenizer.getTokenOffset());
+    assertEquals(ScriptToken.INTEGER, tokenizer.nextToken());
+    assertEquals(script.length() - 2, tokenizer.getTokenOffset());
+  }
+
+  private void assertSameTokens(String script) {
+    List<String> expected = tokens(new ScannerTokenizer(script));
+    assertEquals(script, expected, tokens(adapt(new ScriptTokenizer(script))));
+    assertEquals(script, expected, tokens(adapt(new ScriptTokenizer(new TrickleReader(script)))));
+  }
+
+  private static Tokenizer adapt(final ScriptTokenizer tokenizer) {
+    return new Tokenizer() {
+
+      @Override
+      public boolean hasNext() {
+        return tokenizer.hasNext();
+      }
+
+      @Override
+      public ScriptToken nextToken() {
+        return tokenizer.nextToken();
+      }
+
+      @Override
+      public int getIntValue() {
+        return tokenizer.getIntValue();
+      }
+
+      @Override
+      public boolean getBoolValue() {
+        return tokenizer.getBoolValue();
+      }
+
+      @Override
+      public String getCommentValue() {
+        return tokenizer.getCommentValue();
+      }
+
+      @Override
+      public String getStringValue() {
+        return tokenizer.getStringValue();
+      }
+
+      @Override
+      public String getWordValue() {
+        return tokenizer.getWordValue();
+      }
+
+      @Override
+      public String getVariable() {
+        return tokenizer.getVariable();
+      }
+    };
+  }
+
+  /**
+   * Reads a script a few characters at a time so tokens span several reads.
+   */
+  private static class TrickleReader extends Reader {
+
+    private final StringReader reader;
+
+    private int count;
+
+    TrickleReader(String script) {
+      reader = new StringReader(script);
+    }
+
+    @Override
+    public int read(char[] buffer, int offset, int length) throws IOException {
+      return reader.read(buffer, offset, Math.min(length, 1 + count++ % 3));
+    }
+
+    @Override
+    public void close() {
+      reader.close();
+    }
+  }
+
+  private static List<String> tokens(Tokenizer tokenizer) {
+    List<String> tokens = new ArrayList<String>();
+    try {
+      while (tokenizer.hasNext()) {
+        ScriptToken token = tokenizer.nextToken();
+        switch (token) {
+          case INTEGER:
+            tokens.add(token.name() + " " + tokenizer.getIntValue());
+            break;
+          case BOOLEAN:
+            tokens.add(token.name() + " " + tokenizer.getBoolValue());
+            break;
+          case STRING:
+            tokens.add(token.name() + " " + tokenizer.getStringValue());
+            break;
+          case COMMENT:
+            tokens.add(token.name() + " " + tokenizer.getCommentValue());
+            break;
+          case WORD:
+            tokens.add(token.name() + " " + tokenizer.getWordValue());
+            break;
+          case VARIABLE:
+            tokens.add(token.name() + " " + tokenizer.getVariable());
+            break;
+          default:
+            tokens.add(token.name());
+            break;
+        }
+      }
+    } catch (NoSuchElementException ex) {
+      tokens.add("end of script");
+    }
+    return tokens;
+  }
+}
@@ -0,0 +1,26 @@
+package com.kerr.interpreter.controller;
+
+/**
+ * Interface for reading the tokens of a script so the tests can compare the tokens produced by the
+ * Scanner-based tokenizer and ScriptTokenizer with the same code.
+ * @author allankerr
+ *
+ */
+interface Tokenizer {
+
+  public boolean hasNext();
+
+  public ScriptToken nextToken();
+
+  public int getIntValue();
+
+  public boolean getBoolValue();
+
+  public String getCommentValue();
+
+  public String getStringValue();
+
+  public String getWordValue();
+
+  public String getVariable();
+}
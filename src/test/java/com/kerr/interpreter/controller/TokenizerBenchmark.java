@@ -0,0 +1,119 @@
+package com.kerr.interpreter.controller;
+
+import java.io.StringReader;
+
+/**
+ * Measures the throughput of the single-pass tokenizer, both over a string and streamed from a
+ * reader, and the Scanner-based tokenizer it replaced in megabytes of script per second. The
+ * script is a catalogue of team scripts concatenated the way the robot librarian loads them. Run with:
+ *
+ * <pre>
+ * java -cp target/classes:target/test-classes com.kerr.interpreter.controller.TokenizerBenchmark
+ * </pre>
+ *
+ * @author allankerr
+ *
+ */
+public class TokenizerBenchmark {
+
+  private static final String SCRIPT =
+      "variable canShoot ;                        \n" +
+      "variable shots ;                           \n" +
+      "0 shots !                                  \n" +
+      "( returns whether the robot can shoot )    \n" +
+      ": canShoot? canShoot ? ;                   \n" +
+      ": maxRange 3 ;                             \n" +
+      ": hexesPerRange 6 ;                        \n" +
+      ": destroy!                                 \n" +
+      "    scan! dup 0 > if                       \n" +
+      "        dup 1 - 0 do                       \n" +
+      "            I identify! team <> if         \n" +
+      "                shoot! leave               \n" +
+      "            else drop drop drop then       \n" +
+      "        loop                               \n" +
+      "    else drop then ;                       \n" +
+      ": play ( -- ) maxRange 1 - random 1 +      \n" +
+      "       dup hexesPerRange * 1 - random      \n" +
+      "       swap canShoot? shoot!               \n" +
+      "       0 1 random <> if                    \n" +
+      "           .\"print this message\" .       \n" +
+      "       else                                \n" +
+      "           .\"print other message\" .      \n" +
+      "       then                                \n" +
+      "       begin destroy! move!                \n" +
+      "           movesLeft 0 = true and          \n" +
+      "       until ;                             \n";
+
+  /**
+   * The number of scripts in the catalogue.
+   */
+  private static final int SCRIPTS = 2000;
+
+  private static final int WARMUP_ROUNDS = 3;
+
+  private static final int ROUNDS = 5;
+
+  public static void main(String[] args) {
+    StringBuilder builder = new StringBuilder();
+    for (int i = 0; i < SCRIPTS; i++) {
+      builder.append(SCRIPT);
+    }
+    String catalogue = builder.toString();
+    double megabytes = catalogue.length() / (1024.0 * 1024.0);
+
+    for (int i = 0; i < WARMUP_ROUNDS; i++) {
+      scanner(catalogue);
+      singlePass(catalogue);
+      streamed(catalogue);
+    }
+    long scannerTime = 0;
+    long singlePassTime = 0;
+    long streamedTime = 0;
+    int tokens = 0;
+    for (int i = 0; i < ROUNDS; i++) {
+      long start = System.nanoTime();
+      tokens = scanner(catalogue);
+      scannerTime += System.nanoTime() - start;
+      start = System.nanoTime();
+      singlePass(catalogue);
+      singlePassTime += System.nanoTime() - start;
+      start = System.nanoTime();
+      streamed(catalogue);
+      streamedTime += System.nanoTime() - start;
+    }
+    System.out.println(String.format("%,d tokens in %.2f MB", tokens, megabytes));
+    System.out.println(String.format("Scanner       %8.2f MB/s",
+        megabytes * ROUNDS / (scannerTime / 1e9)));
+    System.out.println(String.format("Single pass   %8.2f MB/s",
+        megabytes * ROUNDS / (singlePassTime / 1e9)));
+    System.out.println(String.format("Streamed      %8.2f MB/s",
+        megabytes * ROUNDS / (streamedTime / 1e9)));
+  }
+
+  private static int scanner(String script) {
+    ScannerTokenizer tokenizer = new ScannerTokenizer(script);
+    int tokens = 0;
+    while (tokenizer.hasNext()) {
+      tokenizer.nextToken();
+      tokens++;
+    }
+    return tokens;
+  }
+
+  private static int singlePass(String script) {
+    return count(new ScriptTokenizer(script));
+  }
+
+  private static int streamed(String script) {
+    return count(new ScriptTokenizer(new StringReader(script)));
+  }
+
+  private static int count(ScriptTokenizer tokenizer) {
+    int tokens = 0;
+    while (tokenizer.hasNext()) {
+      tokenizer.nextToken();
+      tokens++;
+    }
+    return tokens;
+  }
+}
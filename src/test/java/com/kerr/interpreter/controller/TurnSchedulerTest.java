@@ -0,0 +1,166 @@
+package com.kerr.interpreter.controller;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.kerr.interpreter.model.RobotType;
+import com.kerr.interpreter.model.ScriptData;
+import com.kerr.interpreter.model.TeamColor;
+import com.kerr.interpreter.model.Value;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+/**
+ * This class is used to test that the turn scheduler applies the effects of every robot in the
+ * same order with the same random numbers however many workers run the robots.
+ *
+ * @author allankerr
+ *
+ */
+public class TurnSchedulerTest {
+
+  private static final String SCRIPT =
+      ": play ( -- )                              \n" +
+      "    scan! drop                             \n" +
+      "    5 random 2 - turn!                     \n" +
+      "    3 random 0 do move! loop               \n" +
+      "    .\"TANK\" 100 random send! drop        \n" +
+      "    2 random 1 + 2 random shoot! ;         \n";
+
+  private static final int ROBOTS = 24;
+
+  private static final int TICKS = 5;
+
+  /**
+   * Test that matches played with the same seed are the same with one worker and with several and
+   * that only as many messages are sent as the recipient's mailbox had room for.
+   */
+  @Test
+  public void sameMatchForAnyWorkers() throws Exception {
+    List<String> single = play(1, 42);
+    List<String> several = play(4, 42);
+    assertEquals(single, several);
+    assertTrue(single.size() > ROBOTS * TICKS * 3);
+    int sent = 0;
+    for (String effect : single) {
+      assertTrue(effect, !effect.contains("interrupted"));
+      if (effect.contains(" send ")) {
+        sent++;
+      }
+    }
+    // Every robot sends to the first tank, whose mailbox for tanks has room for six messages
+    assertEquals(6 * TICKS, sent);
+    assertTrue(!single.equals(play(4, 43)));
+  }
+
+  /**
+   * Plays a match and logs every effect applied to a listener in the order it was applied.
+   */
+  private List<String> play(int workers, long seed) throws Exception {
+    ScriptController controller = new ScriptController();
+    ScriptData script = controller.build("C2", "Scheduled", SCRIPT);
+    List<String> log = new ArrayList<String>();
+    List<TurnScheduler.Robot> robots = new ArrayList<TurnScheduler.Robot>();
+    for (int i = 0; i < ROBOTS; i++) {
+      Robot robot = new Robot(i, log);
+      robots.add(new TurnScheduler.Robot(script.copy("C2", "Robot " + i), robot, robot));
+    }
+    try (TurnScheduler scheduler = new TurnScheduler(controller, workers, seed)) {
+      for (int tick = 0; tick < TICKS; tick++) {
+        scheduler.tick(robots);
+      }
+      assertEquals(TICKS, scheduler.getTickCount());
+      for (TurnScheduler.Robot robot : robots) {
+        assertEquals(null, robot.getData().getRandom());
+      }
+      assertTrue(scheduler.getLastTickNanos() > 0);
+      assertTrue(scheduler.getMaxTickNanos() >= scheduler.getMeanTickNanos());
+    }
+    return log;
+  }
+
+  /**
+   * A robot that logs the effects applied to it.
+   */
+  private static class Robot implements ScriptListener, ScriptDataSource {
+
+    private final int id;
+
+    private final List<String> log;
+
+    Robot(int id, List<String> log) {
+      this.id = id;
+      this.log = log;
+    }
+
+    public void turn(int direction) {
+      log.add(id + " turn " + direction);
+    }
+
+    public void move() {
+      log.add(id + " move");
+    }
+
+    public void shoot(int direction, int distance) {
+      log.add(id + " shoot " + direction + " " + distance);
+    }
+
+    public int scan() {
+      return 0;
+    }
+
+    public IdentifyResponse identify(int index) {
+      return null;
+    }
+
+    public CheckResponse check(int direction) {
+      return CheckResponse.EMPTY;
+    }
+
+    public boolean sendMessage(RobotType type, Value<?> value) {
+      log.add(id + " send " + type + " " + value.getValue());
+      return true;
+    }
+
+    public void scriptInterrupted(Exception exception) {
+      log.add(id + " interrupted " + exception.getMessage());
+    }
+
+    public void scriptFinished() {
+      log.add(id + " finished");
+    }
+
+    public int health() {
+      return 3;
+    }
+
+    public int healthLeft() {
+      return 3;
+    }
+
+    public int moves() {
+      return 1;
+    }
+
+    public int movesLeft() {
+      return 1;
+    }
+
+    public int attack() {
+      return 3;
+    }
+
+    public int range() {
+      return 1;
+    }
+
+    public TeamColor team() {
+      return TeamColor.RED;
+    }
+
+    public RobotType type() {
+      return RobotType.TANK;
+    }
+  }
+}
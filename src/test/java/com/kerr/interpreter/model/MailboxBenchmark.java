@@ -0,0 +1,128 @@
+package com.kerr.interpreter.model;
+
+import java.util.BitSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Stresses a mailbox with several senders at once while a single receiver drains it, then checks
+ * that every message was either delivered and received exactly once or counted as dropped, and that
+ * the messages from each sender were received in the order they were sent. This is run manually
+ * with
+ * {@code java -cp target/classes:target/test-classes com.kerr.interpreter.model.MailboxBenchmark}
+ * optionally followed by the number of senders, messages per sender and rounds.
+ *
+ * @author allankerr
+ *
+ */
+public class MailboxBenchmark {
+
+  private static final int DEFAULT_SENDERS = 4;
+
+  private static final int DEFAULT_MESSAGES = 1000000;
+
+  private static final int DEFAULT_ROUNDS = 5;
+
+  /**
+   * The capacity of a robot's mailbox.
+   */
+  private static final int CAPACITY = 6;
+
+  public static void main(String[] args) throws InterruptedException {
+    int senders = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_SENDERS;
+    int messages = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_MESSAGES;
+    int rounds = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_ROUNDS;
+    boolean passed = true;
+    for (int round = 1; round <= rounds; round++) {
+      passed &= round(round, senders, messages);
+    }
+    if (!passed) {
+      System.exit(1);
+    }
+  }
+
+  /**
+   * Runs one round of senders against a new mailbox and reports the outcome.
+   *
+   * @return True if no message was lost, duplicated or reordered.
+   */
+  private static boolean round(int round, final int senders, final int messages)
+      throws InterruptedException {
+    final Mailbox mailbox = new Mailbox(CAPACITY);
+    final CountDownLatch start = new CountDownLatch(1);
+    final AtomicInteger sending = new AtomicInteger(senders);
+    Thread[] threads = new Thread[senders];
+    for (int i = 0; i < senders; i++) {
+      final int sender = i;
+      threads[i] = new Thread(new Runnable() {
+        public void run() {
+          awaitQuietly(start);
+          for (int j = 0; j < messages; j++) {
+            if (!mailbox.offer(IntValue.of(sender * messages + j))) {
+              // Give the receiver a chance to drain the mailbox so most messages are delivered
+              Thread.yield();
+            }
+          }
+          sending.decrementAndGet();
+        }
+      }, "Sender " + i);
+      threads[i].start();
+    }
+
+    BitSet received = new BitSet(senders * messages);
+    int[] last = new int[senders];
+    for (int i = 0; i < senders; i++) {
+      last[i] = -1;
+    }
+    long count = 0;
+    long duplicates = 0;
+    long reordered = 0;
+    long begin = System.nanoTime();
+    start.countDown();
+    while (true) {
+      boolean finished = sending.get() == 0;
+      Value<?> message = mailbox.poll();
+      if (message == null) {
+        if (finished) {
+          break;
+        }
+        Thread.yield();
+        continue;
+      }
+      int value = (Integer) message.getValue();
+      if (received.get(value)) {
+        duplicates++;
+      }
+      received.set(value);
+      int sender = value / messages;
+      if (value % messages <= last[sender]) {
+        reordered++;
+      }
+      last[sender] = value % messages;
+      count++;
+    }
+    long nanos = System.nanoTime() - begin;
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    long sent = (long) senders * messages;
+    long lost = mailbox.getDelivered() - count;
+    boolean passed = duplicates == 0 && reordered == 0 && lost == 0
+        && mailbox.getDelivered() + mailbox.getDropped() == sent && mailbox.size() == 0;
+    System.out.println(String.format(
+        "Round %d %,12d sent %,12d delivered %,12d dropped %,6d lost %,6d duplicated "
+            + "%,6d reordered %,8.1f ms %s",
+        round, sent, mailbox.getDelivered(), mailbox.getDropped(), lost, duplicates, reordered,
+        nanos / 1e6, passed ? "passed" : "FAILED"));
+    return passed;
+  }
+
+  private static void awaitQuietly(CountDownLatch latch) {
+    try {
+      latch.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,50 @@
+package com.kerr.interpreter.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * This class is used to test that mailboxes keep their capacity, receive messages in the order
+ * they were sent, and count the messages delivered to and dropped by them.
+ *
+ * @author allankerr
+ *
+ */
+public class MailboxTest {
+
+  /**
+   * Test that a full mailbox drops messages until one is received and that messages keep their
+   * order as the buffer wraps around.
+   */
+  @Test
+  public void boundedFifo() {
+    Mailbox mailbox = new Mailbox(3);
+    assertFalse(mailbox.hasMessage());
+    assertNull(mailbox.poll());
+    for (int i = 0; i < 3; i++) {
+      assertTrue(mailbox.offer(IntValue.of(i)));
+    }
+    assertFalse(mailbox.offer(IntValue.of(3)));
+    assertEquals(3, mailbox.size());
+
+    assertEquals(0, mailbox.poll().getValue());
+    assertTrue(mailbox.offer(IntValue.of(4)));
+    Mailbox copy = mailbox.copy();
+    for (int expected : new int[] {1, 2, 4}) {
+      assertTrue(mailbox.hasMessage());
+      assertEquals(expected, mailbox.poll().getValue());
+    }
+    assertFalse(mailbox.hasMessage());
+    assertEquals(0, mailbox.size());
+    assertEquals(4, mailbox.getDelivered());
+    assertEquals(1, mailbox.getDropped());
+
+    assertEquals(3, copy.size());
+    assertEquals(0, copy.getDelivered());
+    assertEquals(1, copy.poll().getValue());
+  }
+}
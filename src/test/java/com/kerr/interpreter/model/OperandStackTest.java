@@ -0,0 +1,79 @@
+package com.kerr.interpreter.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * This class is used to test that values pushed to the operand stack as objects and as primitives
+ * can be popped either way.
+ *
+ * @author allankerr
+ *
+ */
+public class OperandStackTest {
+
+  /**
+   * Test that values pushed as objects can be popped as primitives and values pushed as primitives
+   * can be popped as objects.
+   */
+  @Test
+  public void mixedPushAndPop() {
+    OperandStack stack = new OperandStack();
+    StringValue string = new StringValue("TANK");
+    stack.push(string);
+    stack.push(new IntValue(4));
+    stack.pushInt(7);
+    stack.pushBool(true);
+    stack.push(new BoolValue(false));
+
+    assertFalse(stack.popBool());
+    assertEquals(true, stack.pop().getValue());
+    assertEquals(7, stack.pop().getValue());
+    assertEquals(4, stack.popInt());
+    assertSame(string, stack.pop());
+    assertTrue(stack.isEmpty());
+  }
+
+  /**
+   * Test that popping a value as the wrong primitive type fails in the same way as casting it.
+   */
+  @Test(expected = ClassCastException.class)
+  public void popWrongType() {
+    OperandStack stack = new OperandStack();
+    stack.pushBool(true);
+    stack.popInt();
+  }
+
+  /**
+   * Test that popping from an empty stack fails.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void popEmpty() {
+    new OperandStack().popInt();
+  }
+
+  /**
+   * Test that the stack grows past its initial capacity and records its largest depth.
+   */
+  @Test
+  public void growth() {
+    OperandStack stack = new OperandStack();
+    for (int i = 0; i < 100; i++) {
+      stack.pushInt(i);
+    }
+    for (int i = 99; i >= 50; i--) {
+      assertEquals(i, stack.popInt());
+    }
+    assertEquals(50, stack.size());
+    assertEquals(100, stack.getHighWaterMark());
+
+    OperandStack copy = stack.copy();
+    copy.clear();
+    assertEquals(50, stack.size());
+    assertEquals(0, copy.size());
+  }
+}
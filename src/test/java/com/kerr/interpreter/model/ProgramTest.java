@@ -0,0 +1,68 @@
+package com.kerr.interpreter.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.kerr.interpreter.controller.ScriptController;
+import com.kerr.interpreter.controller.UnexpectedTokenException;
+import com.kerr.interpreter.controller.UnknownWordException;
+import org.junit.Test;
+
+/**
+ * This class is used to test that scripts created from a program share its code but never share
+ * their stacks, variables, or mailboxes.
+ *
+ * @author allankerr
+ *
+ */
+public class ProgramTest {
+
+  /**
+   * Test that new scripts start from the state left by the build words and are independent of each
+   * other and of their clones.
+   */
+  @Test
+  public void independentInstances() throws UnexpectedTokenException, UnknownWordException {
+    ScriptController controller = new ScriptController();
+    controller.setCache(null);
+    Program program = controller.build("C2", "Program",
+        "variable total ; 5 total ! 3 : play ( -- ) ;").getProgram();
+
+    ScriptData first = program.newScript("C2", "First");
+    ScriptData second = program.newScript("C2", "Second");
+    assertSame(first.getPlayWord(), second.getPlayWord());
+    assertEquals(5, second.getVariable("total").getValue());
+    assertEquals(3, second.getStackValue(0).getValue());
+
+    first.setVariable(0, IntValue.of(9));
+    first.pushInt(1);
+    first.saveMessage(RobotType.TANK, IntValue.of(2));
+    assertEquals(5, second.getVariable("total").getValue());
+    assertEquals(1, second.getStackDepth());
+    assertFalse(second.hasMessage(RobotType.TANK));
+
+    ScriptData clone = first.clone();
+    clone.pushMessage(RobotType.TANK);
+    assertTrue(first.hasMessage(RobotType.TANK));
+    assertEquals(5, program.getInitialVariable(0).getValue());
+  }
+
+  /**
+   * Test that programs created with the same code share the code compiled after they were created.
+   */
+  @Test
+  public void sharedCompiledCode() throws UnexpectedTokenException, UnknownWordException {
+    ScriptController controller = new ScriptController();
+    controller.setCache(null);
+    Program program = controller.build("C2", "Program",
+        "variable total ; 5 total ! : play ( -- ) total ? 1 + total ! ;").getProgram();
+    Program copy = program.withState(new Value<?>[] {IntValue.of(7)}, new Value<?>[0], true);
+
+    assertSame(program.getBytecode(), copy.getBytecode());
+    assertNotNull(copy.getCompiledScript());
+    assertSame(copy.getCompiledScript(), program.getCompiledScript());
+  }
+}
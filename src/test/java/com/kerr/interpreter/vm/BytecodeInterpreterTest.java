@@ -0,0 +1,398 @@
+package com.kerr.interpreter.vm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.kerr.interpreter.controller.CheckResponse;
+import com.kerr.interpreter.controller.ExecutionEngine;
+import com.kerr.interpreter.controller.IdentifyResponse;
+import com.kerr.interpreter.controller.ScriptController;
+import com.kerr.interpreter.controller.ScriptDataSource;
+import com.kerr.interpreter.controller.ScriptListener;
+import com.kerr.interpreter.controller.UnexpectedTokenException;
+import com.kerr.interpreter.controller.UnknownWordException;
+import com.kerr.interpreter.model.RobotType;
+import com.kerr.interpreter.model.ScriptData;
+import com.kerr.interpreter.model.TeamColor;
+import com.kerr.interpreter.model.Value;
+import com.kerr.interpreter.words.MockController;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+/**
+ * This class is used to test that scripts executed by the bytecode and compiled engines produce the
+ * same output as the same scripts executed by walking the word-tree.
+ * 
+ * @author allankerr
+ *
+ */
+public class BytecodeInterpreterTest {
+
+  /**
+   * A script that nests counted loops, reads the loop counter from inside a user-defined word,
+   * leaves a loop from inside a user-defined word, and uses variables and if-statements.
+   */
+  private static final String SCRIPT =
+      "variable total ;                           \n" +
+      ": counter I ;                              \n" +
+      ": stop leave ;                             \n" +
+      ": add total ? + total ! ;                  \n" +
+      ": play ( -- )                              \n" +
+      "    2 0 do                                 \n" +
+      "        3 1 do                             \n" +
+      "            .\"TANK\" counter send! drop   \n" +
+      "            I add                          \n" +
+      "        loop                               \n" +
+      "        .\"SNIPER\" I send! drop           \n" +
+      "    loop                                   \n" +
+      "    10 0 do                                \n" +
+      "        I 3 = if stop else I turn! then    \n" +
+      "    loop                                   \n" +
+      "    begin                                  \n" +
+      "        move!                              \n" +
+      "        movesLeft 0 >                      \n" +
+      "    until                                  \n" +
+      "    .\"SCOUT\" total ? send! drop          \n" +
+      "    .\"SCOUT\" I send! drop ;              \n";
+
+  /**
+   * Scripts covering every kind of word. They include the scripts run by the script controller
+   * tests, a script that leaves nested loops from a called word, and scripts interrupted by a bad
+   * argument and by a value of the wrong type.
+   */
+  private static final String[] SCRIPTS = {
+      SCRIPT,
+      ": maxRange 3 ; : hexesPerRange 6 ;                                           \n" +
+      ": play ( -- ) maxRange 1 - random 1 dup hexesPerRange * 1 - random          \n" +
+      "    swap shoot! move! -4 turn! move! .\"SCOUT\" .\"SENT A MES\" send! ;      \n",
+      ": maxRange 3 ; : hexesPerRange 6 ;                                           \n" +
+      ": play ( -- ) maxRange 1 - random 1 dup hexesPerRange * 1 - random          \n" +
+      "    swap shoot! 0 4 = if -4 turn! else 1 turn! 1 1 shoot! then              \n" +
+      "    5 0 do .\"TANK\" I send! loop move! .\"SNIPER\" .\"SENT A MES\" send! ;  \n",
+      ": destroy! scan! dup 0 > if dup 1 - 0 do I identify! team <> if             \n" +
+      "    shoot! leave else then loop else then ;                                  \n" +
+      ": play ( -- ) begin destroy! 2 random 1 - turn! move! movesLeft 0 = until   \n" +
+      "    destroy! ;                                                               \n",
+      ": play ( -- ) move! 1 turn! ;",
+      ": play ( -- ) movesLeft dup + drop move! ;",
+      ": play ( -- ) 2 turn! move! 1 3 shoot! ;",
+      ": look scan! drop 0 identify! drop drop drop drop ;                          \n" +
+      ": play ( -- ) look look move! look look 1 2 shoot! look ;                    \n",
+      ": escape ( -- ) I 1 > if leave else then ;                                   \n" +
+      ": inner ( -- ) 4 0 do I turn! escape loop ;                                  \n" +
+      ": play ( -- ) 3 0 do inner .\"TANK\" I send! drop I 1 = if leave else then  \n" +
+      "    loop 1 5 shoot! ;                                                        \n",
+      "variable x ;                                                                 \n" +
+      ": play ( -- ) 7 x ! x ? 3 - x ? * 2 swap - turn! 1 2 3 rot drop swap - turn! \n" +
+      "    5 0 do I 2 < I 3 => or if I x ? + x ! else then                          \n" +
+      "        I 4 <= I 1 > and invert if I 2 * turn! else then loop                \n" +
+      "    x ? 17 /mod turn! turn! x ? 1 <> if x ? turn! else then                  \n" +
+      "    health healthLeft moves attack range + + + + turn! type drop              \n" +
+      "    3 check! .\"TANK\" .\"GO\" send! drop .\"TANK\" mesg? drop ;              \n",
+      ": play ( -- ) -1 random drop ;",
+      "variable v ;                                                                 \n" +
+      ": play ( -- ) 1 v ! v ? 1 + turn! .\"TANK\" v ! v ? 1 + drop move! ;          \n",
+  };
+
+  /**
+   * Test that the bytecode engine sends the same messages, turns, and moves as the tree-walking
+   * engine for a script with nesting, loop counters and leave statements.
+   */
+  @Test
+  public void matchesTreeWalker() throws UnexpectedTokenException, UnknownWordException {
+    assertMatchesTreeWalker(ExecutionEngine.BYTECODE);
+  }
+
+  /**
+   * Test that the compiled engine sends the same messages, turns, and moves as the tree-walking
+   * engine for a script with nesting, loop counters and leave statements.
+   */
+  @Test
+  public void compiledMatchesTreeWalker() throws UnexpectedTokenException, UnknownWordException {
+    assertMatchesTreeWalker(ExecutionEngine.COMPILED);
+  }
+
+  /**
+   * Test that every engine makes the same calls to the listener and data source with the same
+   * arguments and in the same order, and finishes or is interrupted in the same way.
+   */
+  @Test
+  public void enginesMakeSameCalls() throws Exception {
+    int interrupted = 0;
+    for (String script : SCRIPTS) {
+      List<String> expected = record(ExecutionEngine.TREE_WALKER, script);
+      assertTrue(expected.size() > 1);
+      assertEquals(script, expected, record(ExecutionEngine.BYTECODE, script));
+      assertEquals(script, expected, record(ExecutionEngine.COMPILED, script));
+      assertNotNull(new ScriptController().build("C2", "Compiled", script).getCompiledScript());
+      if (expected.get(expected.size() - 2).startsWith("interrupted")) {
+        interrupted++;
+      }
+    }
+    assertEquals(2, interrupted);
+  }
+
+  /**
+   * Test that a word too large to fit in a JVM method is executed by the bytecode engine when the
+   * compiled engine is selected, and that the script is only compiled once.
+   */
+  @Test
+  public void compileTooLargeWord() throws Exception {
+    StringBuilder script = new StringBuilder(": play ( -- )");
+    for (int i = 0; i < 10000; i++) {
+      script.append(" ").append(i % 6).append(" turn!");
+    }
+    script.append(" ;");
+
+    List<String> expected = record(ExecutionEngine.TREE_WALKER, script.toString());
+    ScriptController controller = new ScriptController();
+    ScriptData data = controller.build("C2", "Large", script.toString());
+    assertEquals(null, data.getCompiledScript());
+    IllegalStateException failure = data.getProgram().getCompileFailure();
+    assertNotNull(failure);
+    assertEquals(expected, record(ExecutionEngine.COMPILED, script.toString()));
+    assertSame(failure, data.getProgram().getCompileFailure());
+    assertEquals(10001, expected.size());
+  }
+
+  /**
+   * Test that the script controller runs the complex script from the README through the bytecode
+   * engine on a background thread.
+   */
+  @Test
+  public void runComplexScript()
+      throws UnexpectedTokenException, UnknownWordException, InterruptedException {
+    String script =  
+        ": destroy!                 \n" +               
+        "    scan!                  \n" +      
+        "    dup 0 > if             \n" +
+        "        dup 1 -            \n" +
+        "        0 do               \n" + 
+        "            I identify!    \n" + 
+        "            team <> if     \n" +
+        "                shoot!     \n" +
+        "                leave      \n" +
+        "            else           \n" +
+        "            then           \n" +
+        "        loop               \n" +
+        "    else                   \n" +
+        "    then ;                 \n" +
+        ": play ( -- )              \n" +      
+        "    begin                  \n" +  
+        "        destroy!           \n" +
+        "        2 random 1 - turn! \n" +
+        "        move!              \n" +
+        "        movesLeft 0 =      \n" +  
+        "    until                  \n" + 
+        "    destroy! ;             \n";
+
+    CountDownLatch latch = new CountDownLatch(1);
+    MockController mockController = new MockController(RobotType.SCOUT, latch);
+    ScriptController controller = new ScriptController(mockController);
+    controller.setEngine(ExecutionEngine.BYTECODE);
+    ScriptData data = controller.build("C2", "Complex", script);
+    controller.execute(data, mockController);
+    latch.await();
+
+    assertEquals(mockController.getShotCount(), 0);
+    assertEquals(mockController.getMoveCount(), 1);
+    assertEquals(mockController.getScanCount(), 2);
+    assertTrue(mockController.isFinished());
+    assertFalse(mockController.isInterrupted());
+  }
+
+  /**
+   * Test that a script run a number of instructions at a time produces the same output as running
+   * it to completion, and that a script that never halts can be stepped on different threads.
+   */
+  @Test
+  public void resumeWithBudget() throws Exception {
+    MockController executed = run(ExecutionEngine.BYTECODE);
+    MockController stepped = new MockController(RobotType.SCOUT, new CountDownLatch(1));
+    ScriptController controller = new ScriptController();
+    Continuation continuation = controller.start(controller.build("C2", "Engines", SCRIPT));
+    long instructions = 0;
+    while (!continuation.isFinished()) {
+      long used = continuation.resume(stepped, stepped, 7);
+      assertTrue(used == 7 || continuation.isFinished());
+      instructions += used;
+    }
+    assertEquals(instructions, continuation.getInstructionsExecuted());
+    assertEquals(executed.getMessages().size(), stepped.getMessages().size());
+    assertEquals(executed.getDirection(), stepped.getDirection());
+    assertEquals(executed.getMoveCount(), stepped.getMoveCount());
+
+    final MockController endless = new MockController(RobotType.SCOUT, new CountDownLatch(1));
+    final Continuation forever = controller.start(
+        controller.build("C2", "Endless", ": play ( -- ) begin move! 1 1 = until ;"));
+    for (int i = 0; i < 3; i++) {
+      Thread thread = new Thread(new Runnable() {
+        public void run() {
+          forever.resume(endless, endless, 100);
+        }
+      });
+      thread.start();
+      thread.join();
+    }
+    assertFalse(forever.isFinished());
+    assertEquals(300, forever.getInstructionsExecuted());
+    assertTrue(endless.getMoveCount() > 50);
+  }
+
+  /**
+   * Asserts that an engine produces the same output as the tree-walking engine for the test
+   * script.
+   * 
+   * @param engine The engine to compare against the tree-walking engine.
+   */
+  private void assertMatchesTreeWalker(ExecutionEngine engine)
+      throws UnexpectedTokenException, UnknownWordException {
+    MockController treeWalked = run(ExecutionEngine.TREE_WALKER);
+    MockController executed = run(engine);
+
+    assertEquals(treeWalked.getMessages().size(), executed.getMessages().size());
+    for (int i = 0; i < treeWalked.getMessages().size(); i++) {
+      Value<?> expected = treeWalked.getMessages().get(i);
+      Value<?> actual = executed.getMessages().get(i);
+      assertEquals(expected.getValue(), actual.getValue());
+    }
+    assertEquals(treeWalked.getDirection(), executed.getDirection());
+    assertEquals(treeWalked.getMoveCount(), executed.getMoveCount());
+
+    // 9 inner iterations, 3 outer iterations, the total of the inner counters, and the restored I
+    assertEquals(14, executed.getMessages().size());
+    assertEquals(18, executed.getMessages().get(12).getValue());
+    assertEquals(0, executed.getMessages().get(13).getValue());
+  }
+
+  /**
+   * Builds the test script and executes it on the calling thread with the specified engine.
+   * 
+   * @param engine The engine to execute the script with.
+   * @return The mock controller holding the script's output.
+   */
+  private MockController run(ExecutionEngine engine)
+      throws UnexpectedTokenException, UnknownWordException {
+    MockController mockController = new MockController(RobotType.SCOUT, new CountDownLatch(1));
+    ScriptData data = new ScriptController().build("C2", "Engines", SCRIPT);
+    engine.run(data, mockController, mockController);
+    return mockController;
+  }
+
+  /**
+   * Builds a script and executes it to completion with the specified engine.
+   * 
+   * @param engine The engine to execute the script with.
+   * @param script The script to execute.
+   * @return Every call the script made to its listener and data source in the order made.
+   */
+  private List<String> record(ExecutionEngine engine, String script) throws Exception {
+    RecordingController recorder = new RecordingController();
+    ScriptController controller = new ScriptController(recorder);
+    controller.setEngine(engine);
+    ScriptData data = controller.build("C2", "Recorded", script);
+    data.setSeed(42);
+    controller.executeAsync(data, recorder).get();
+    controller.close();
+    return recorder.calls;
+  }
+
+  /**
+   * A listener and data source that records every call made to it along with its arguments and
+   * answers each call the same way every time it is executed.
+   */
+  private static final class RecordingController implements ScriptListener, ScriptDataSource {
+
+    private final List<String> calls = new ArrayList<String>();
+
+    private int movesLeft = 3;
+
+    public void turn(int direction) {
+      calls.add("turn " + direction);
+    }
+
+    public void move() {
+      calls.add("move");
+      movesLeft--;
+    }
+
+    public void shoot(int direction, int distance) {
+      calls.add("shoot " + direction + " " + distance);
+    }
+
+    public int scan() {
+      calls.add("scan");
+      return 3;
+    }
+
+    public IdentifyResponse identify(int index) {
+      calls.add("identify " + index);
+      TeamColor team = index % 2 == 0 ? TeamColor.RED : TeamColor.BLUE;
+      return new IdentifyResponse(team, index + 1, index, 4);
+    }
+
+    public CheckResponse check(int direction) {
+      calls.add("check " + direction);
+      return CheckResponse.values()[Math.abs(direction) % CheckResponse.values().length];
+    }
+
+    public boolean sendMessage(RobotType type, Value<?> value) {
+      calls.add("send " + type + " " + value.getValue());
+      return calls.size() % 2 == 0;
+    }
+
+    public void scriptInterrupted(Exception exception) {
+      calls.add("interrupted " + exception.getClass().getName());
+    }
+
+    public void scriptFinished() {
+      calls.add("finished");
+    }
+
+    public int health() {
+      calls.add("health");
+      return 10;
+    }
+
+    public int healthLeft() {
+      calls.add("healthLeft");
+      return 7;
+    }
+
+    public int moves() {
+      calls.add("moves");
+      return 3;
+    }
+
+    public int movesLeft() {
+      calls.add("movesLeft");
+      return movesLeft;
+    }
+
+    public int attack() {
+      calls.add("attack");
+      return 2;
+    }
+
+    public int range() {
+      calls.add("range");
+      return 3;
+    }
+
+    public TeamColor team() {
+      calls.add("team");
+      return TeamColor.RED;
+    }
+
+    public RobotType type() {
+      calls.add("type");
+      return RobotType.SCOUT;
+    }
+  }
+}
@@ -0,0 +1,136 @@
+package com.kerr.interpreter.vm;
+
+import com.kerr.interpreter.controller.CheckResponse;
+import com.kerr.interpreter.controller.ExecutionEngine;
+import com.kerr.interpreter.controller.IdentifyResponse;
+import com.kerr.interpreter.controller.ScriptController;
+import com.kerr.interpreter.controller.ScriptDataSource;
+import com.kerr.interpreter.controller.ScriptListener;
+import com.kerr.interpreter.model.RobotType;
+import com.kerr.interpreter.model.ScriptData;
+import com.kerr.interpreter.model.TeamColor;
+import com.kerr.interpreter.model.Value;
+
+/**
+ * Measures the number of turns per second each execution engine can run. A turn is one execution
+ * of a script's play word on the calling thread. This is run manually with
+ * {@code java -cp target/classes:target/test-classes com.kerr.interpreter.vm.EngineBenchmark}.
+ * 
+ * @author allankerr
+ *
+ */
+public class EngineBenchmark implements ScriptListener, ScriptDataSource {
+
+  /**
+   * A script that scans and identifies nearby robots every turn similar to the default scripts.
+   */
+  private static final String SCRIPT =
+      "variable shots ;                           \n" +
+      ": maxRange 3 ;                             \n" +
+      ": destroy!                                 \n" +
+      "    scan!                                  \n" +
+      "    dup 0 > if                             \n" +
+      "        dup 1 -                            \n" +
+      "        0 do                               \n" +
+      "            I identify!                    \n" +
+      "            team <> if                     \n" +
+      "                maxRange < if              \n" +
+      "                    shoot!                 \n" +
+      "                    shots ? 1 + shots !    \n" +
+      "                    leave                  \n" +
+      "                else drop drop then        \n" +
+      "            else drop drop drop then       \n" +
+      "        loop                               \n" +
+      "    else                                   \n" +
+      "    then drop ;                            \n" +
+      ": play ( -- )                              \n" +
+      "    10 0 do                                \n" +
+      "        destroy!                           \n" +
+      "        I 2 /mod drop 1 - turn!            \n" +
+      "        move!                              \n" +
+      "    loop ;                                 \n";
+
+  /**
+   * The number of turns run before measuring so the JIT compiler has warmed up.
+   */
+  private static final int WARMUP_TURNS = 20000;
+
+  /**
+   * The number of turns that are measured.
+   */
+  private static final int MEASURED_TURNS = 100000;
+
+  public static void main(String[] args) throws Exception {
+    EngineBenchmark benchmark = new EngineBenchmark();
+    ScriptData data = new ScriptController().build("C2", "Benchmark", SCRIPT);
+    for (ExecutionEngine engine : ExecutionEngine.values()) {
+      for (int i = 0; i < WARMUP_TURNS; i++) {
+        engine.run(data, benchmark, benchmark);
+      }
+      long start = System.nanoTime();
+      for (int i = 0; i < MEASURED_TURNS; i++) {
+        engine.run(data, benchmark, benchmark);
+      }
+      double seconds = (System.nanoTime() - start) / 1e9;
+      System.out.println(String.format("%-12s %,12.0f turns/s", engine, MEASURED_TURNS / seconds));
+    }
+  }
+
+  public void turn(int direction) {}
+
+  public void move() {}
+
+  public void shoot(int direction, int distance) {}
+
+  public int scan() {
+    return 3;
+  }
+
+  public IdentifyResponse identify(int index) {
+    return new IdentifyResponse(index == 1 ? TeamColor.RED : TeamColor.BLUE, index + 1, index, 2);
+  }
+
+  public CheckResponse check(int direction) {
+    return CheckResponse.EMPTY;
+  }
+
+  public boolean sendMessage(RobotType type, Value<?> value) {
+    return true;
+  }
+
+  public void scriptInterrupted(Exception exception) {}
+
+  public void scriptFinished() {}
+
+  public int health() {
+    return 3;
+  }
+
+  public int healthLeft() {
+    return 3;
+  }
+
+  public int moves() {
+    return 1;
+  }
+
+  public int movesLeft() {
+    return 1;
+  }
+
+  public int attack() {
+    return 3;
+  }
+
+  public int range() {
+    return 1;
+  }
+
+  public TeamColor team() {
+    return TeamColor.RED;
+  }
+
+  public RobotType type() {
+    return RobotType.TANK;
+  }
+}
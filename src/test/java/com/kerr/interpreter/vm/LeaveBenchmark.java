@@ -0,0 +1,105 @@
+package com.kerr.interpreter.vm;
+
+import com.kerr.interpreter.controller.ExecutionEngine;
+import com.kerr.interpreter.controller.ScriptController;
+import com.kerr.interpreter.model.ScriptData;
+import com.kerr.interpreter.words.LeaveLoopException;
+
+/**
+ * Measures the cost of leaving loops. The first part compares throwing a new exception with a
+ * stack trace, as every leave statement used to, against throwing the shared stackless
+ * LeaveLoopException from the same call depth. The second part runs a script that leaves a loop
+ * from inside a user-defined word on every iteration with each engine. This is run manually with
+ * {@code java -cp target/classes:target/test-classes com.kerr.interpreter.vm.LeaveBenchmark}.
+ * 
+ * @author allankerr
+ *
+ */
+public class LeaveBenchmark {
+
+  /**
+   * A script that scans in a hot loop and leaves the inner loop from a user-defined word and
+   * directly from the loop body.
+   */
+  private static final String SCRIPT =
+      ": found? scan! 2 > if leave else then ;    \n" +
+      ": play ( -- )                              \n" +
+      "    20 0 do                                \n" +
+      "        10 0 do found? loop                \n" +
+      "        10 0 do I 2 > if leave else then loop \n" +
+      "    loop ;                                 \n";
+
+  /**
+   * The call depth leave statements are thrown from, similar to a leave nested inside if-words and
+   * user-defined words in the tree-walker.
+   */
+  private static final int DEPTH = 24;
+
+  private static final int WARMUP = 20000;
+
+  private static final int MEASURED = 200000;
+
+  public static void main(String[] args) throws Exception {
+    for (int i = 0; i < WARMUP; i++) {
+      leaveFresh(DEPTH);
+      leaveShared(DEPTH);
+    }
+    long start = System.nanoTime();
+    for (int i = 0; i < MEASURED; i++) {
+      leaveFresh(DEPTH);
+    }
+    double fresh = (System.nanoTime() - start) / (double) MEASURED;
+    start = System.nanoTime();
+    for (int i = 0; i < MEASURED; i++) {
+      leaveShared(DEPTH);
+    }
+    double shared = (System.nanoTime() - start) / (double) MEASURED;
+    System.out.println(String.format("%-28s %,10.1f ns/leave", "new exception (before)", fresh));
+    System.out.println(String.format("%-28s %,10.1f ns/leave", "shared exception (after)", shared));
+
+    EngineBenchmark listener = new EngineBenchmark();
+    ScriptData data = new ScriptController().build("C2", "Leave", SCRIPT);
+    for (ExecutionEngine engine : ExecutionEngine.values()) {
+      for (int i = 0; i < WARMUP / 10; i++) {
+        engine.run(data, listener, listener);
+      }
+      int turns = MEASURED / 10;
+      start = System.nanoTime();
+      for (int i = 0; i < turns; i++) {
+        engine.run(data, listener, listener);
+      }
+      double seconds = (System.nanoTime() - start) / 1e9;
+      System.out.println(String.format("%-28s %,10.0f turns/s", engine, turns / seconds));
+    }
+  }
+
+  private static void leaveFresh(int depth) {
+    try {
+      throwFresh(depth);
+    } catch (RuntimeException ex) {
+      // Caught by the loop like LeaveLoopException
+    }
+  }
+
+  private static void leaveShared(int depth) {
+    try {
+      throwShared(depth);
+    } catch (LeaveLoopException ex) {
+      // Caught by the loop
+    }
+  }
+
+  private static void throwFresh(int depth) {
+    if (depth == 0) {
+      throw new RuntimeException();
+    }
+    throwFresh(depth - 1);
+  }
+
+  private static void throwShared(int depth) {
+    if (depth == 0) {
+      throw LeaveLoopException.INSTANCE;
+    }
+    throwShared(depth - 1);
+  }
+}
@@ -0,0 +1,123 @@
+package com.kerr.interpreter.vm;
+
+import com.kerr.interpreter.controller.ScriptController;
+import com.kerr.interpreter.model.ScriptData;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Counts the adjacent instruction pairs of a corpus of scripts and prints them from most to least
+ * frequent. The counts are used to check the pairs the peephole optimizer fuses into
+ * superinstructions. Run with:
+ *
+ * <pre>
+ * java -cp target/classes:target/test-classes com.kerr.interpreter.vm.PairFrequency
+ * </pre>
+ *
+ * @author allankerr
+ *
+ */
+public class PairFrequency {
+
+  /**
+   * The number of pairs to print.
+   */
+  private static final int TOP = 40;
+
+  /**
+   * Scripts written in the style of the tank, scout and sniper scripts that teams submit.
+   */
+  private static final String[] CORPUS = {
+      ": maxRange 3 ;                               \n" +
+      ": hexesPerRange 6 ;                          \n" +
+      ": play ( -- ) maxRange 1 - random 1 +        \n" +
+      "       dup hexesPerRange * 1 - random        \n" +
+      "       swap shoot! move! 1 turn! move! ;     \n",
+
+      "variable canShoot ;                          \n" +
+      "variable shots ;                             \n" +
+      "0 shots !                                    \n" +
+      ": canShoot? canShoot ? ;                     \n" +
+      ": shot shots ? 1 + shots ! ;                 \n" +
+      ": play ( -- )                                \n" +
+      "    range 1 - random 1 + dup 6 * 1 - random  \n" +
+      "    swap canShoot? if shoot! shot else drop drop then \n" +
+      "    0 1 random 0 <> if 1 turn! else 5 turn! then \n" +
+      "    movesLeft 0 > if move! else then ;       \n",
+
+      "variable target ;                            \n" +
+      "variable turns ;                             \n" +
+      ": enemy? team <> ;                           \n" +
+      ": destroy!                                   \n" +
+      "    scan! dup 0 > if                         \n" +
+      "        dup 1 - 0 do                         \n" +
+      "            I identify! enemy? if            \n" +
+      "                shoot! I target ! leave      \n" +
+      "            else drop drop drop then         \n" +
+      "        loop                                 \n" +
+      "    else drop then ;                         \n" +
+      ": play ( -- )                                \n" +
+      "    turns ? 1 + turns !                      \n" +
+      "    begin                                    \n" +
+      "        destroy!                             \n" +
+      "        2 random 1 - turn!                   \n" +
+      "        move!                                \n" +
+      "        movesLeft 0 =                        \n" +
+      "    until                                    \n" +
+      "    destroy! ;                               \n",
+
+      "variable health ;                            \n" +
+      "variable lastHealth ;                        \n" +
+      ": hurt? healthLeft lastHealth ? < ;          \n" +
+      ": report .\"TANK\" healthLeft send! drop ;   \n" +
+      ": play ( -- )                                \n" +
+      "    hurt? if report 3 turn! move! move! else then \n" +
+      "    healthLeft lastHealth !                  \n" +
+      "    .\"SCOUT\" mesg? if .\"SCOUT\" recv! health ! else then \n" +
+      "    health ? 0 > if health ? 1 - random turn! else then \n" +
+      "    range 0 do                               \n" +
+      "        I check! .\"OUT_OF_BOUNDS\" = if leave else then \n" +
+      "        move!                                \n" +
+      "    loop ;                                   \n",
+
+      "variable total ;                             \n" +
+      ": counter I ;                                \n" +
+      ": add total ? + total ! ;                    \n" +
+      ": play ( -- )                                \n" +
+      "    2 0 do                                   \n" +
+      "        3 1 do                               \n" +
+      "            .\"TANK\" counter send! drop     \n" +
+      "            I add                            \n" +
+      "        loop                                 \n" +
+      "    loop                                     \n" +
+      "    10 0 do                                  \n" +
+      "        I 3 = if leave else I turn! then     \n" +
+      "    loop                                     \n" +
+      "    begin move! movesLeft 0 > until          \n" +
+      "    .\"SCOUT\" total ? send! drop ;          \n",
+  };
+
+  public static void main(String[] args) throws Exception {
+    ScriptController controller = new ScriptController();
+    Map<String, Integer> counts = new HashMap<String, Integer>();
+    for (int i = 0; i < CORPUS.length; i++) {
+      ScriptData data = controller.build("C2", "Corpus" + i, CORPUS[i]);
+      PeepholeOptimizer.countPairs(new BytecodeCompiler().compile(data), counts);
+    }
+    List<Map.Entry<String, Integer>> pairs =
+        new ArrayList<Map.Entry<String, Integer>>(counts.entrySet());
+    Collections.sort(pairs, new Comparator<Map.Entry<String, Integer>>() {
+      @Override
+      public int compare(Map.Entry<String, Integer> a, Map.Entry<String, Integer> b) {
+        return b.getValue() - a.getValue();
+      }
+    });
+    for (Map.Entry<String, Integer> pair : pairs.subList(0, Math.min(TOP, pairs.size()))) {
+      System.out.println(String.format("%5d  %s", pair.getValue(), pair.getKey()));
+    }
+  }
+}
@@ -0,0 +1,58 @@
+package com.kerr.interpreter.vm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.kerr.interpreter.controller.ScriptController;
+import com.kerr.interpreter.controller.UnexpectedTokenException;
+import com.kerr.interpreter.controller.UnknownWordException;
+import com.kerr.interpreter.model.ScriptData;
+import org.junit.Test;
+
+/**
+ * This class is used to test that the peephole optimizer fuses common pairs of instructions without
+ * fusing across the targets of jumps.
+ *
+ * @author allankerr
+ *
+ */
+public class PeepholeOptimizerTest {
+
+  /**
+   * Test that variable accesses, immediate arithmetic, and comparisons followed by if-statements
+   * are fused and that the loop body, which is jumped to, is never fused with the instruction
+   * before it.
+   */
+  @Test
+  public void fusePairs() throws UnexpectedTokenException, UnknownWordException {
+    String script =
+        "variable total ;                           \n" +
+        ": play ( -- )                              \n" +
+        "    total ? 1 + total !                    \n" +
+        "    3 0 do                                 \n" +
+        "        I 2 = if 1 turn! else then         \n" +
+        "    loop ;                                 \n";
+
+    ScriptData data = new ScriptController().build("C2", "Fused", script);
+    Bytecode bytecode = new BytecodeCompiler().compile(data);
+    Bytecode optimized = new PeepholeOptimizer().optimize(bytecode);
+    String code = optimized.toString();
+
+    assertTrue(code.contains("load-variable 0"));
+    assertTrue(code.contains("add-immediate 1"));
+    assertTrue(code.contains("store-variable 0"));
+    assertTrue(code.contains("jump-unless-equals"));
+    assertTrue(code.contains("turn-immediate 1"));
+    assertFalse(code.contains("fetch"));
+    assertTrue(optimized.getLength() < bytecode.getLength());
+
+    // The loop's back edge must still point at the first instruction of the body
+    int[] instructions = optimized.getCode();
+    int pc = 0;
+    while (instructions[pc] != Opcode.LOOP) {
+      pc += 1 + Opcode.operandCount(instructions[pc]);
+    }
+    assertEquals(Opcode.LOOP_INDEX, instructions[instructions[pc + 1]]);
+  }
+}
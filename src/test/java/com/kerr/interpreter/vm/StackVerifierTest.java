@@ -0,0 +1,82 @@
+package com.kerr.interpreter.vm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.kerr.interpreter.controller.ScriptController;
+import com.kerr.interpreter.controller.ScriptTypeException;
+import com.kerr.interpreter.controller.UnexpectedTokenException;
+import com.kerr.interpreter.controller.UnknownWordException;
+import com.kerr.interpreter.model.ScriptData;
+import org.junit.Test;
+
+/**
+ * This class is used to test that the stack verifier infers the stack effects of user-defined words,
+ * rejects scripts that pass values of the wrong type, and lets the compilers skip operand checks.
+ *
+ * @author allankerr
+ *
+ */
+public class StackVerifierTest {
+
+  /**
+   * Test that the stack effects of user-defined words are inferred from the words they use,
+   * including values that flow through if-statements and calls to other user-defined words.
+   */
+  @Test
+  public void inferEffects() throws UnexpectedTokenException, UnknownWordException {
+    String script =
+        ": inc 1 + ;                                \n" +
+        ": far? range inc > ;                       \n" +
+        ": pick if 1 else 2 then ;                  \n" +
+        ": both and invert ;                        \n" +
+        ": play ( -- ) 3 far? pick inc drop ;       \n";
+
+    ScriptData data = new ScriptController().build("C2", "Effects", script);
+    StackEffects effects = data.getStackEffects();
+
+    assertEquals("( int -- int )", effects.getEffect("inc"));
+    assertEquals("( int -- bool )", effects.getEffect("far?"));
+    assertEquals("( bool -- int )", effects.getEffect("pick"));
+    assertEquals("( bool bool -- bool )", effects.getEffect("both"));
+    assertEquals("( -- )", effects.getEffect("play"));
+  }
+
+  /**
+   * Test that a script that definitely passes a string to an arithmetic word is rejected when it
+   * is built rather than failing when it is executed.
+   */
+  @Test
+  public void rejectWrongType() throws UnexpectedTokenException, UnknownWordException {
+    String script =
+        ": inc 1 + ;                                \n" +
+        ": play ( -- ) team inc drop ;              \n";
+    try {
+      new ScriptController().build("C2", "Invalid", script);
+      fail();
+    } catch (ScriptTypeException ex) {
+      assertEquals("The word 'play' passes a string to 'inc' which expects an integer.",
+          ex.getMessage());
+    }
+  }
+
+  /**
+   * Test that the bytecode compiler only uses unchecked instructions for words whose operands were
+   * proven to have the expected types.
+   */
+  @Test
+  public void compileUnchecked() throws UnexpectedTokenException, UnknownWordException {
+    String script =
+        "variable total ;                           \n" +
+        ": play ( -- ) range 1 + total ? - drop ;   \n";
+
+    ScriptData data = new ScriptController().build("C2", "Unchecked", script);
+    String bytecode = new BytecodeCompiler().compile(data).toString();
+
+    assertTrue(bytecode.contains("add-unchecked"));
+    assertFalse(bytecode.contains("subtract-unchecked"));
+    assertTrue(bytecode.contains("subtract"));
+  }
+}
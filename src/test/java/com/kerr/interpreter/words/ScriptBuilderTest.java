@@ -79,6 +79,136 @@ public class ScriptBuilderTest {
     assertMultiWord(hexesPerRange, LiteralWord.class);
   }
   
+  /**
+   * This test is to test that variables declared in a script are resolved to dense slots in the
+   * order they are declared and that the build words executed during building store to those slots.
+   * 
+   */
+  @Test
+  public void buildVariableSlots() throws UnexpectedTokenException, UnknownWordException {
+    String script =
+        "variable health ;                          \n" +
+        "variable shots ;                           \n" +
+        "7 shots !                                  \n" +
+        ": play ( -- ) health ? shots ! ;           \n";
+
+    ScriptData data = controller.build("C2", "Variables", script);
+
+    assertEquals(2, data.getVariableNames().size());
+    assertEquals(0, data.getVariable(0).getValue());
+    assertEquals(7, data.getVariable(1).getValue());
+    assertEquals(7, data.getVariable("shots").getValue());
+  }
+
+  /**
+   * This test is to test that I still reads the loop index when a script declares a variable named
+   * I, rather than resolving to a variable slot.
+   * 
+   */
+  @Test
+  public void buildLoopIndexVariable() throws UnexpectedTokenException, UnknownWordException {
+    String script =
+        "variable I ;                               \n" +
+        ": play ( -- ) 3 0 do I turn! loop ;        \n";
+
+    ScriptData data = controller.build("C2", "Loop Index", script);
+    MultiWord base = (MultiWord) data.getPlayWord();
+    CountedLoopWord loop = (CountedLoopWord) base.words.get(2);
+
+    assertEquals(0, data.getVariableNames().size());
+    assertMultiWord(loop.body, LoopIndexWord.class, TurnWord.class);
+  }
+
+  /**
+   * This test is to test that the optimized play word folds constant arithmetic, replaces
+   * user-defined words that only push literals, and keeps only the taken branch of if-statements
+   * with literal conditions while the play word as built is unchanged.
+   * 
+   */
+  @Test
+  public void buildOptimizedScript() throws UnexpectedTokenException, UnknownWordException {
+    String script =
+        ": maxRange 3 ;                             \n" +
+        ": play ( -- ) maxRange 1 - random          \n" +
+        "       maxRange 2 > if                     \n" +
+        "           move!                           \n" +
+        "       else                                \n" +
+        "           turn!                           \n" +
+        "       then                                \n" +
+        "       2 3 * turn! ;                       \n";
+
+    ScriptData data = controller.build("C2", "Optimized", script);
+    assertMultiWord((MultiWord) data.getPlayWord(),
+        MultiWord.class,
+        LiteralWord.class,
+        SubtractWord.class,
+        RandomWord.class,
+        MultiWord.class,
+        LiteralWord.class,
+        GreaterThanWord.class,
+        IfWord.class);
+
+    MultiWord optimized = (MultiWord) data.getOptimizedPlayWord();
+    assertEquals(5, optimized.words.size());
+    assertMultiWord(optimized,
+        LiteralWord.class,
+        RandomWord.class,
+        MoveWord.class,
+        LiteralWord.class,
+        TurnWord.class);
+  }
+
+  /**
+   * This test is to test that small user-defined words are inlined into the optimized play word
+   * within the inline budget and are called when inlining is disabled.
+   * 
+   */
+  @Test
+  public void buildInlinedScript() throws UnexpectedTokenException, UnknownWordException {
+    String script =
+        ": inc 1 + ;                                \n" +
+        ": play ( -- ) range inc inc turn! ;        \n";
+
+    ScriptData data = controller.build("C2", "Inlined", script);
+    MultiWord optimized = (MultiWord) data.getOptimizedPlayWord();
+    assertEquals(6, optimized.words.size());
+    assertMultiWord(optimized,
+        RangeWord.class,
+        LiteralWord.class,
+        PlusWord.class,
+        LiteralWord.class,
+        PlusWord.class,
+        TurnWord.class);
+
+    controller.setInlineBudget(0);
+    data = controller.build("C2", "Called", script);
+    optimized = (MultiWord) data.getOptimizedPlayWord();
+    assertEquals(4, optimized.words.size());
+    assertMultiWord(optimized,
+        RangeWord.class,
+        MultiWord.class,
+        MultiWord.class,
+        TurnWord.class);
+  }
+
+  /**
+   * This test is to test that a script whose user-defined words form a long call chain is verified
+   * and optimized without exhausting the builder's stack.
+   * 
+   */
+  @Test
+  public void buildLongCallChain() throws UnexpectedTokenException, UnknownWordException {
+    StringBuilder script = new StringBuilder(": w0 1 + ;\n");
+    for (int i = 1; i < 5000; i++) {
+      script.append(": w").append(i).append(" w").append(i - 1).append(" move! ;\n");
+    }
+    script.append(": play ( -- ) range w4999 drop ;\n");
+
+    ScriptData data = controller.build("C2", "Chain", script.toString());
+    assertEquals("( int -- int )", data.getStackEffects().getEffect("w4999"));
+    assertEquals(5001, data.getOptimizedWords().size());
+  }
+
   /**
    * This test is to test that the ScriptController creates the expected word-tree structure when
    * compiling a moderate script including variables, if-statements, and user-defined words. The
@@ -227,7 +357,7 @@ public class ScriptBuilderTest {
          CountedLoopWord loopWord = (CountedLoopWord) trueCase.words.get(4);
          {
            assertMultiWord(loopWord.body, 
-               LiteralWord.class, 
+               LoopIndexWord.class, 
                IdentifyWord.class, 
                TeamWord.class, 
                NotEqualsWord.class,
@@ -266,7 +396,7 @@ public class ScriptBuilderTest {
          CountedLoopWord loopWord = (CountedLoopWord) trueCase.words.get(4);
          {
            assertMultiWord(loopWord.body, 
-               LiteralWord.class, 
+               LoopIndexWord.class, 
                IdentifyWord.class, 
                TeamWord.class, 
                NotEqualsWord.class,
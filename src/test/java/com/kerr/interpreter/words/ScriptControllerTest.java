@@ -3,13 +3,25 @@ package com.kerr.interpreter.words;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import com.kerr.interpreter.controller.BatchListener;
+import com.kerr.interpreter.controller.CommandBuffer;
+import com.kerr.interpreter.controller.CommandMode;
+import com.kerr.interpreter.controller.ExecutionEngine;
+import com.kerr.interpreter.controller.ExecutionResult;
+import com.kerr.interpreter.controller.IdentifyResponse;
 import com.kerr.interpreter.controller.ScriptController;
 import com.kerr.interpreter.controller.UnexpectedTokenException;
 import com.kerr.interpreter.controller.UnknownWordException;
 import com.kerr.interpreter.model.RobotType;
 import com.kerr.interpreter.model.ScriptData;
+import com.kerr.interpreter.model.TeamColor;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Test;
 
@@ -165,4 +177,183 @@ public class ScriptControllerTest {
     assertTrue(mockController.isFinished());
     assertFalse(mockController.isInterrupted());
   }
+
+  /**
+   * Test that scripts are run on a supplied executor and that closing the controller stops it from
+   * executing more scripts without shutting down the executor it doesn't own.
+   */
+  @Test
+  public void executeOnSuppliedExecutor()
+      throws UnexpectedTokenException, UnknownWordException, InterruptedException {
+    String script = ": play ( -- ) move! 1 turn! ;";
+    CountDownLatch latch = new CountDownLatch(2);
+    MockController mockController = new MockController(RobotType.SCOUT, latch);
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    ScriptController controller = new ScriptController(mockController, executor);
+    ScriptData data = controller.build("C2", "Pooled", script);
+    controller.execute(data, mockController);
+    controller.execute(data.copy("C2", "Pooled"), mockController);
+    latch.await();
+    controller.close();
+    assertTrue(controller.awaitTermination(5, TimeUnit.SECONDS));
+
+    assertEquals(2, mockController.getMoveCount());
+    assertFalse(mockController.isInterrupted());
+    assertEquals(2, controller.getCompletedCount());
+    assertEquals(0, controller.getActiveCount());
+    assertEquals(0, controller.getQueuedCount());
+    try {
+      controller.execute(data, mockController);
+      fail("A closed controller executed a script.");
+    } catch (IllegalStateException ex) {
+      // Expected
+    }
+    assertFalse(executor.isShutdown());
+    executor.shutdown();
+  }
+
+  /**
+   * Test that scripts run on virtual threads when the runtime supports them and that the controller
+   * refuses to use them otherwise.
+   */
+  @Test
+  public void executeOnVirtualThreads()
+      throws UnexpectedTokenException, UnknownWordException, InterruptedException {
+    CountDownLatch latch = new CountDownLatch(1);
+    MockController mockController = new MockController(RobotType.SCOUT, latch);
+    ScriptController controller = new ScriptController(mockController);
+    if (!ScriptController.isVirtualThreadSupported()) {
+      try {
+        controller.useVirtualThreads();
+        fail("Virtual threads were used on a runtime that doesn't support them.");
+      } catch (IllegalStateException ex) {
+        // Expected
+      }
+      return;
+    }
+    controller.useVirtualThreads();
+    controller.execute(controller.build("C2", "Virtual", ": play ( -- ) move! ;"), mockController);
+    latch.await();
+    controller.close();
+    assertTrue(controller.awaitTermination(5, TimeUnit.SECONDS));
+    assertEquals(1, mockController.getMoveCount());
+    assertTrue(mockController.isFinished());
+  }
+
+  /**
+   * Test that asynchronous executions complete with the outcome and measurements of each script
+   * without waiting on the listener, and that the tree-walker counts the words it executes.
+   */
+  @Test
+  public void executeAsync() throws Exception {
+    MockController mockController = new MockController(RobotType.SCOUT, new CountDownLatch(3));
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    ScriptController controller = new ScriptController(mockController, executor);
+    controller.setEngine(ExecutionEngine.BYTECODE);
+    ScriptData moving = controller.build("C2", "Moving", ": play ( -- ) movesLeft dup + drop move! ;");
+    ScriptData failing = controller.build("C2", "Failing", ": play ( -- ) -1 random drop ;");
+
+    CompletableFuture<ExecutionResult> first = controller.executeAsync(moving, mockController);
+    CompletableFuture<ExecutionResult> second =
+        controller.executeAsync(moving.copy("C2", "Copy"), mockController);
+    CompletableFuture<ExecutionResult> third = controller.executeAsync(failing, mockController);
+    CompletableFuture.allOf(first, second, third).get();
+    controller.close();
+    executor.shutdown();
+
+    ExecutionResult result = first.get();
+    assertEquals(ExecutionResult.Outcome.FINISHED, result.getOutcome());
+    assertEquals(null, result.getException());
+    assertTrue(result.getInstructionsExecuted() > 0);
+    assertTrue(result.getWallNanos() > 0);
+    assertTrue(result.getStackHighWaterMark() >= 1);
+    assertEquals(ExecutionResult.Outcome.INTERRUPTED, third.get().getOutcome());
+    assertTrue(third.get().getException() instanceof IllegalArgumentException);
+    assertTrue(third.get().getInstructionsExecuted() > 0);
+    assertEquals(2, mockController.getMoveCount());
+
+    // The default tree-walker counts the words it executes
+    ScriptController walker = new ScriptController(mockController);
+    assertEquals(5, walker.executeAsync(moving.copy("C2", "Walked"), mockController).get()
+        .getInstructionsExecuted());
+    assertEquals(2, walker.executeAsync(failing.copy("C2", "Walked"), mockController).get()
+        .getInstructionsExecuted());
+    walker.close();
+  }
+
+  /**
+   * Test that batched turns, moves and shots are handed to the listener in the order they were
+   * made once the script finishes rather than as they are made.
+   */
+  @Test
+  public void executeBatched() throws Exception {
+    final CommandBuffer[] batch = new CommandBuffer[1];
+    final CountDownLatch latch = new CountDownLatch(1);
+    class BatchedController extends MockController implements BatchListener {
+      BatchedController() {
+        super(RobotType.SCOUT, new CountDownLatch(1));
+      }
+
+      public void scriptFinished(CommandBuffer commands) {
+        batch[0] = commands;
+        latch.countDown();
+      }
+    }
+    BatchedController mockController = new BatchedController();
+    ScriptController controller = new ScriptController(mockController);
+    controller.setCommandMode(CommandMode.BATCHED);
+    controller.execute(controller.build("C2", "Batched", ": play ( -- ) 2 turn! move! 1 3 shoot! ;"),
+        mockController);
+    latch.await();
+    controller.close();
+
+    assertEquals(0, mockController.getMoveCount());
+    assertFalse(mockController.isFinished());
+    CommandBuffer commands = batch[0];
+    assertEquals(3, commands.size());
+    assertEquals(CommandBuffer.TURN, commands.getOpcode(0));
+    assertEquals(2, commands.getArgument(0, 0));
+    assertEquals(CommandBuffer.MOVE, commands.getOpcode(1));
+    assertEquals(CommandBuffer.SHOOT, commands.getOpcode(2));
+    assertEquals(1, commands.getArgument(2, 0));
+    assertEquals(3, commands.getArgument(2, 1));
+    commands.replay(mockController);
+    assertEquals(1, mockController.getMoveCount());
+    assertEquals(1, mockController.getShotCount());
+    assertEquals(2, mockController.getDirection());
+  }
+
+  /**
+   * Test that repeated scans and identifies within a turn only reach the listener again once the
+   * script moves or shoots, and that every one reaches the listener when caching is disabled.
+   */
+  @Test
+  public void cachePerception() throws Exception {
+    String script =
+        ": look scan! drop 0 identify! drop drop drop drop ;  \n" +
+        ": play ( -- ) look look move! look look 1 2 shoot! look ;  \n";
+    assertEquals(3, perceive(script, true).getIdentifyCount());
+    assertEquals(5, perceive(script, false).getIdentifyCount());
+    assertEquals(3, perceive(script, true).getScanCount());
+  }
+
+  /**
+   * Executes a script with a listener that identifies a robot at every index.
+   */
+  private MockController perceive(String script, boolean cachingPerception) throws Exception {
+    MockController mockController = new MockController(RobotType.SCOUT, new CountDownLatch(1)) {
+      @Override
+      public IdentifyResponse identify(int index) {
+        super.identify(index);
+        return new IdentifyResponse(TeamColor.BLUE, 1, index, 2);
+      }
+    };
+    ScriptController controller = new ScriptController(mockController);
+    controller.setCachingPerception(cachingPerception);
+    ExecutionResult result =
+        controller.executeAsync(controller.build("C2", "Perceive", script), mockController).get();
+    controller.close();
+    assertEquals(ExecutionResult.Outcome.FINISHED, result.getOutcome());
+    return mockController;
+  }
 }